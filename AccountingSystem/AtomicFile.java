@@ -0,0 +1,214 @@
+// AtomicFile.java - 原子化存檔工具
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 原子化存檔工具
+ * ------------
+ * 存檔先完整寫到 檔名.tmp（區塊壓縮格式，每個區塊有 CRC32 與結尾標記），
+ * 依同步策略 fsync 後，把目前的檔案保留為 檔名.bak，再以原子 rename 取代正式檔案
+ * 任何時間點當機，磁碟上都至少有一份完整的存檔：正式檔案不是舊版就是新版，不會寫到一半
+ * 讀取時依序嘗試正式檔案與 .bak，校驗失敗的檔案會被略過
+ *
+ * 同步策略由 -Dledger.fsync 指定：
+ * none（只交給作業系統快取）、file（預設，rename 前同步暫存檔）、full（另外同步目錄，確保 rename 本身落地）
+ */
+public final class AtomicFile {
+
+    /**
+     * 同步策略
+     */
+    public enum FsyncPolicy {
+        /** 不呼叫 fsync（最快，作業系統當機可能遺失最近的存檔） */
+        NONE,
+        /** rename 前同步暫存檔內容 */
+        FILE,
+        /** 同步暫存檔內容，rename 後再同步所在目錄 */
+        FULL
+    }
+
+    // 暫存檔與上一版存檔的副檔名
+    static final String TEMP_SUFFIX = ".tmp";
+    static final String BACKUP_SUFFIX = ".bak";
+    static final String CORRUPT_SUFFIX = ".corrupt";
+
+    // 目前的同步策略
+    private static volatile FsyncPolicy fsyncPolicy =
+        FsyncPolicy.valueOf(System.getProperty("ledger.fsync", "file").toUpperCase(Locale.ROOT));
+
+    private AtomicFile() {
+    }
+
+    /**
+     * 寫入存檔內容的動作
+     */
+    @FunctionalInterface
+    public interface Body {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * 讀取存檔內容的動作
+     *
+     * @param <T> 讀出的資料型別
+     */
+    @FunctionalInterface
+    public interface Reader<T> {
+        T readFrom(InputStream in) throws IOException, ClassNotFoundException;
+    }
+
+    public static FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public static void setFsyncPolicy(FsyncPolicy policy) {
+        fsyncPolicy = policy;
+    }
+
+    /**
+     * 原子化寫入檔案：寫暫存檔、同步、保留上一版為 .bak、rename 取代正式檔案
+     * 寫入失敗時正式檔案維持原狀
+     *
+     * @param filename 正式檔案路徑
+     * @param body 寫入內容的動作（寫入區塊壓縮串流）
+     * @throws IOException 寫入或 rename 失敗
+     */
+    public static void write(String filename, Body body) throws IOException {
+        Path target = Paths.get(filename).toAbsolutePath();
+        Path temp = sibling(target, TEMP_SUFFIX);
+        try (BlockCompressedOutputStream out = BlockCompressedOutputStream.open(temp.toString())) {
+            body.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        FsyncPolicy policy = fsyncPolicy;
+        if (policy != FsyncPolicy.NONE) {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        if (Files.exists(target)) {
+            keepBackup(target);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (policy == FsyncPolicy.FULL) {
+            syncDirectory(target.getParent());
+        }
+    }
+
+    /**
+     * 依序從正式檔案與 .bak 讀取，返回第一份校驗通過的內容
+     * 略過的檔案會把原因印到 System.err
+     *
+     * @param filename 正式檔案路徑
+     * @param reader 讀取內容的動作
+     * @param <T> 讀出的資料型別
+     * @return 讀出的資料
+     * @throws IOException 所有版本都無法讀取（FileNotFoundException 表示完全沒有存檔）
+     */
+    public static <T> T read(String filename, Reader<T> reader) throws IOException {
+        List<Path> candidates = generations(filename);
+        if (candidates.isEmpty()) {
+            throw new FileNotFoundException(filename);
+        }
+        IOException failure = null;
+        for (Path candidate : candidates) {
+            T value;
+            try (InputStream in = BlockCompressedInputStream.open(candidate.toString())) {
+                value = reader.readFrom(in);
+                in.transferTo(OutputStream.nullOutputStream()); // 讀到結尾標記，確認沒有截斷且每個區塊都校驗過
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                System.err.println("存檔 " + candidate.getFileName() + " 無法讀取: " + e.getMessage());
+                if (failure == null) {
+                    failure = new IOException("所有存檔版本都無法讀取: " + filename);
+                }
+                failure.addSuppressed(e);
+                continue;
+            }
+            if (failure != null) {
+                System.err.println("已改用上一版存檔 " + candidate.getFileName() + "。");
+                restoreFrom(candidate, candidates.get(0));
+            }
+            return value;
+        }
+        throw failure;
+    }
+
+    // 以通過校驗的 .bak 取代損毀的正式檔案（損毀的檔案改名為 .corrupt 留存），
+    // 避免下次存檔把損毀的檔案保留成 .bak
+    private static void restoreFrom(Path backup, Path target) {
+        try {
+            Files.move(target, sibling(target, CORRUPT_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+            Path temp = sibling(target, TEMP_SUFFIX);
+            Files.copy(backup, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("無法以上一版存檔修復 " + target.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 列出可讀取的存檔版本（正式檔案在前，.bak 在後），並清掉上次當機留下的暫存檔
+     *
+     * @param filename 正式檔案路徑
+     * @return 存在的檔案
+     */
+    public static List<Path> generations(String filename) {
+        Path target = Paths.get(filename).toAbsolutePath();
+        try {
+            Files.deleteIfExists(sibling(target, TEMP_SUFFIX)); // 寫到一半的暫存檔不可信
+        } catch (IOException e) {
+            System.err.println("無法清除暫存檔: " + e.getMessage());
+        }
+        List<Path> result = new ArrayList<>(2);
+        if (Files.isRegularFile(target)) result.add(target);
+        Path backup = sibling(target, BACKUP_SUFFIX);
+        if (Files.isRegularFile(backup)) result.add(backup);
+        return result;
+    }
+
+    /**
+     * 是否有任何版本的存檔
+     *
+     * @param filename 正式檔案路徑
+     * @return 正式檔案或 .bak 存在時返回 true
+     */
+    public static boolean exists(String filename) {
+        Path target = Paths.get(filename).toAbsolutePath();
+        return Files.isRegularFile(target) || Files.isRegularFile(sibling(target, BACKUP_SUFFIX));
+    }
+
+    // 目前的正式檔案保留為 .bak（優先用硬連結，不需複製內容）
+    private static void keepBackup(Path target) throws IOException {
+        Path backup = sibling(target, BACKUP_SUFFIX);
+        Files.deleteIfExists(backup);
+        try {
+            Files.createLink(backup, target);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(target, backup, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // 同步目錄，讓 rename 在當機後仍然有效（部分平台不支援開啟目錄，略過）
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Windows 等平台無法同步目錄
+        }
+    }
+
+    private static Path sibling(Path target, String suffix) {
+        return target.resolveSibling(target.getFileName() + suffix);
+    }
+}
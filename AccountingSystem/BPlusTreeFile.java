@@ -0,0 +1,508 @@
+// BPlusTreeFile.java - 以頁為單位存放在檔案中的 B+ 樹
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 以頁為單位存放在檔案中的 B+ 樹
+ * -------------------------
+ * 鍵為（日期, 編號）的 LedgerKey，值為一個 long（通常是記錄在資料檔中的位置）
+ * 每個節點佔一個 4 KB 頁，透過 FileChannel 依頁讀寫；葉節點以 next 串成鏈，區間查詢只讀取路徑上與區間內的頁
+ * 最近使用的頁保留在有上限的頁快取中（LRU），修改過的頁在 flush 或被淘汰時寫回
+ * 刪除時不合併節點（允許葉節點不滿），大量刪除後可用 bulkLoad 重建成緊密的樹
+ * 檔頭保留幾個 long 欄位給使用者存放中繼資料（例如資料檔長度）
+ */
+public class BPlusTreeFile implements AutoCloseable {
+    public static final int PAGE_SIZE = 4096;
+    // 檔頭識別碼（"BPTL"）
+    private static final int MAGIC = 0x4250544C;
+    private static final int VERSION = 1;
+    // 使用者中繼資料欄位數
+    public static final int META_SLOTS = 4;
+    // 節點標頭：類型（1）、筆數（2）、下一個葉節點（4），保留到 16
+    private static final int NODE_HEADER = 16;
+    // 葉節點：鍵（16）+ 值（8）
+    static final int LEAF_CAPACITY = (PAGE_SIZE - NODE_HEADER) / 24;
+    // 內部節點：最左子節點（4）+ 每個（鍵 16 + 子節點 4）
+    static final int INTERNAL_CAPACITY = (PAGE_SIZE - NODE_HEADER - 4) / 20;
+    private static final int NO_PAGE = -1;
+
+    /**
+     * 走訪區間時的回呼
+     */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        /**
+         * @param key 鍵
+         * @param value 值
+         * @return 返回 false 停止走訪
+         */
+        boolean visit(LedgerKey key, long value);
+    }
+
+    // 解碼後的節點（陣列多留一格，供分裂前暫時超出容量）
+    private static final class Node {
+        final int page;
+        final boolean leaf;
+        int count;
+        int next = NO_PAGE;
+        final LedgerKey[] keys;
+        final long[] values;
+        final int[] children;
+        boolean dirty;
+
+        Node(int page, boolean leaf) {
+            this.page = page;
+            this.leaf = leaf;
+            this.keys = new LedgerKey[(leaf ? LEAF_CAPACITY : INTERNAL_CAPACITY) + 1];
+            this.values = leaf ? new long[LEAF_CAPACITY + 1] : null;
+            this.children = leaf ? null : new int[INTERNAL_CAPACITY + 2];
+        }
+    }
+
+    // 分裂結果：提升到父節點的分隔鍵與新的右節點
+    private record Split(LedgerKey separator, int rightPage) {
+    }
+
+    private final FileChannel channel;
+    private final int cacheCapacity;
+    // 頁快取（存取順序的 LRU，淘汰時寫回修改過的頁）
+    private final LinkedHashMap<Integer, Node> cache;
+    private int rootPage;
+    private int pageCount;
+    private long size;
+    private final long[] meta = new long[META_SLOTS];
+    private boolean headerDirty;
+    // 統計：從檔案讀入的頁數
+    private long pageReads;
+
+    /**
+     * 開啟（或建立）B+ 樹檔案
+     *
+     * @param file 檔案路徑
+     * @param cachePages 頁快取的頁數上限
+     * @throws IOException 開啟失敗或檔案格式錯誤
+     */
+    public BPlusTreeFile(Path file, int cachePages) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.cacheCapacity = Math.max(16, cachePages);
+        this.cache = new LinkedHashMap<>(cacheCapacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Node> eldest) {
+                if (size() <= cacheCapacity) return false;
+                if (eldest.getValue().dirty) {
+                    writeNodeUnchecked(eldest.getValue());
+                }
+                return true;
+            }
+        };
+        if (channel.size() == 0) {
+            initEmpty();
+        } else {
+            readHeader();
+        }
+    }
+
+    private void initEmpty() throws IOException {
+        cache.clear();
+        channel.truncate(0);
+        pageCount = 1; // 第 0 頁為檔頭
+        size = 0;
+        Node root = allocate(true);
+        rootPage = root.page;
+        headerDirty = true;
+        flush();
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer buf = readPage(0);
+        if (buf.getInt() != MAGIC) throw new IOException("不是 B+ 樹索引檔");
+        int version = buf.getInt();
+        if (version != VERSION) throw new IOException("不支援的索引檔版本: " + version);
+        if (buf.getInt() != PAGE_SIZE) throw new IOException("索引檔頁大小不符");
+        rootPage = buf.getInt();
+        pageCount = buf.getInt();
+        size = buf.getLong();
+        for (int i = 0; i < META_SLOTS; i++) {
+            meta[i] = buf.getLong();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(PAGE_SIZE).putInt(rootPage).putInt(pageCount).putLong(size);
+        for (long m : meta) {
+            buf.putLong(m);
+        }
+        buf.clear();
+        writePage(0, buf);
+        headerDirty = false;
+    }
+
+    // --- 頁存取 ---
+
+    private ByteBuffer readPage(int page) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+        long position = (long) page * PAGE_SIZE;
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("索引檔在第 " + page + " 頁截斷");
+            }
+        }
+        buf.flip();
+        pageReads++;
+        return buf;
+    }
+
+    private void writePage(int page, ByteBuffer buf) throws IOException {
+        long position = (long) page * PAGE_SIZE;
+        while (buf.hasRemaining()) {
+            channel.write(buf, position + buf.position());
+        }
+    }
+
+    private Node node(int page) throws IOException {
+        Node cached = cache.get(page);
+        if (cached != null) return cached;
+        ByteBuffer buf = readPage(page);
+        boolean leaf = buf.get() == 0;
+        Node n = new Node(page, leaf);
+        n.count = buf.getShort() & 0xFFFF;
+        n.next = buf.getInt();
+        buf.position(NODE_HEADER);
+        if (leaf) {
+            for (int i = 0; i < n.count; i++) {
+                n.keys[i] = new LedgerKey(buf.getLong(), buf.getLong());
+                n.values[i] = buf.getLong();
+            }
+        } else {
+            n.children[0] = buf.getInt();
+            for (int i = 0; i < n.count; i++) {
+                n.keys[i] = new LedgerKey(buf.getLong(), buf.getLong());
+                n.children[i + 1] = buf.getInt();
+            }
+        }
+        cache.put(page, n);
+        return n;
+    }
+
+    private void writeNode(Node n) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+        buf.put((byte) (n.leaf ? 0 : 1)).putShort((short) n.count).putInt(n.next);
+        buf.position(NODE_HEADER);
+        if (n.leaf) {
+            for (int i = 0; i < n.count; i++) {
+                buf.putLong(n.keys[i].epochDay()).putLong(n.keys[i].id()).putLong(n.values[i]);
+            }
+        } else {
+            buf.putInt(n.children[0]);
+            for (int i = 0; i < n.count; i++) {
+                buf.putLong(n.keys[i].epochDay()).putLong(n.keys[i].id()).putInt(n.children[i + 1]);
+            }
+        }
+        buf.clear();
+        writePage(n.page, buf);
+        n.dirty = false;
+    }
+
+    private void writeNodeUnchecked(Node n) {
+        try {
+            writeNode(n);
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    // 標記為已修改，並確保仍在快取中（避免修改到已被淘汰的副本）
+    private void touch(Node n) {
+        n.dirty = true;
+        cache.put(n.page, n);
+    }
+
+    private Node allocate(boolean leaf) {
+        Node n = new Node(pageCount++, leaf);
+        touch(n);
+        headerDirty = true;
+        return n;
+    }
+
+    // --- 查詢 ---
+
+    /**
+     * 取得鍵對應的值
+     *
+     * @param key 鍵
+     * @return 值，找不到時為 null
+     * @throws IOException 讀取失敗
+     */
+    public synchronized Long get(LedgerKey key) throws IOException {
+        Node leaf = findLeaf(key);
+        int i = search(leaf, key);
+        return i >= 0 ? leaf.values[i] : null;
+    }
+
+    /**
+     * 依鍵的順序走訪 [from, to] 區間（皆含）
+     *
+     * @param from 起始鍵
+     * @param to 結束鍵
+     * @param visitor 回呼
+     * @throws IOException 讀取失敗
+     */
+    public synchronized void range(LedgerKey from, LedgerKey to, EntryVisitor visitor) throws IOException {
+        Node leaf = findLeaf(from);
+        int i = search(leaf, from);
+        if (i < 0) i = -i - 1;
+        while (true) {
+            for (; i < leaf.count; i++) {
+                if (leaf.keys[i].compareTo(to) > 0) return;
+                if (!visitor.visit(leaf.keys[i], leaf.values[i])) return;
+            }
+            if (leaf.next == NO_PAGE) return;
+            leaf = node(leaf.next);
+            i = 0;
+        }
+    }
+
+    private Node findLeaf(LedgerKey key) throws IOException {
+        Node n = node(rootPage);
+        while (!n.leaf) {
+            n = node(n.children[childIndex(n, key)]);
+        }
+        return n;
+    }
+
+    // 內部節點中應往下走的子節點：分隔鍵小於等於 key 的個數
+    private static int childIndex(Node n, LedgerKey key) {
+        int i = Arrays.binarySearch(n.keys, 0, n.count, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private static int search(Node leaf, LedgerKey key) {
+        return Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+    }
+
+    // --- 修改 ---
+
+    /**
+     * 新增或覆蓋一個鍵
+     *
+     * @param key 鍵
+     * @param value 值
+     * @throws IOException 讀寫失敗
+     */
+    public synchronized void put(LedgerKey key, long value) throws IOException {
+        Split split = insert(node(rootPage), key, value);
+        if (split != null) {
+            Node root = allocate(false);
+            root.children[0] = rootPage;
+            root.keys[0] = split.separator();
+            root.children[1] = split.rightPage();
+            root.count = 1;
+            rootPage = root.page;
+            headerDirty = true;
+        }
+    }
+
+    private Split insert(Node n, LedgerKey key, long value) throws IOException {
+        if (n.leaf) {
+            int i = search(n, key);
+            if (i >= 0) {
+                n.values[i] = value;
+                touch(n);
+                return null;
+            }
+            int pos = -i - 1;
+            System.arraycopy(n.keys, pos, n.keys, pos + 1, n.count - pos);
+            System.arraycopy(n.values, pos, n.values, pos + 1, n.count - pos);
+            n.keys[pos] = key;
+            n.values[pos] = value;
+            n.count++;
+            size++;
+            headerDirty = true;
+            touch(n);
+            return n.count > LEAF_CAPACITY ? splitLeaf(n) : null;
+        }
+        int c = childIndex(n, key);
+        Split split = insert(node(n.children[c]), key, value);
+        if (split == null) return null;
+        System.arraycopy(n.keys, c, n.keys, c + 1, n.count - c);
+        System.arraycopy(n.children, c + 1, n.children, c + 2, n.count - c);
+        n.keys[c] = split.separator();
+        n.children[c + 1] = split.rightPage();
+        n.count++;
+        touch(n);
+        return n.count > INTERNAL_CAPACITY ? splitInternal(n) : null;
+    }
+
+    private Split splitLeaf(Node left) {
+        Node right = allocate(true);
+        int half = left.count / 2;
+        right.count = left.count - half;
+        System.arraycopy(left.keys, half, right.keys, 0, right.count);
+        System.arraycopy(left.values, half, right.values, 0, right.count);
+        Arrays.fill(left.keys, half, left.count, null);
+        left.count = half;
+        right.next = left.next;
+        left.next = right.page;
+        touch(left);
+        return new Split(right.keys[0], right.page);
+    }
+
+    private Split splitInternal(Node left) {
+        Node right = allocate(false);
+        int mid = left.count / 2;
+        LedgerKey separator = left.keys[mid];
+        right.count = left.count - mid - 1;
+        System.arraycopy(left.keys, mid + 1, right.keys, 0, right.count);
+        System.arraycopy(left.children, mid + 1, right.children, 0, right.count + 1);
+        Arrays.fill(left.keys, mid, left.count, null);
+        left.count = mid;
+        touch(left);
+        return new Split(separator, right.page);
+    }
+
+    /**
+     * 移除一個鍵（不合併節點）
+     *
+     * @param key 鍵
+     * @return 原本的值，找不到時為 null
+     * @throws IOException 讀寫失敗
+     */
+    public synchronized Long remove(LedgerKey key) throws IOException {
+        Node leaf = findLeaf(key);
+        int i = search(leaf, key);
+        if (i < 0) return null;
+        long old = leaf.values[i];
+        System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.count - i - 1);
+        System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.count - i - 1);
+        leaf.count--;
+        leaf.keys[leaf.count] = null;
+        size--;
+        headerDirty = true;
+        touch(leaf);
+        return old;
+    }
+
+    /**
+     * 清空並由已排序的鍵值由下而上重建（葉節點填滿，不需逐筆分裂）
+     *
+     * @param keys 已依升冪排序、不重複的鍵
+     * @param values 對應的值
+     * @throws IOException 寫入失敗
+     */
+    public synchronized void bulkLoad(List<LedgerKey> keys, long[] values) throws IOException {
+        long[] savedMeta = meta.clone();
+        cache.clear();
+        channel.truncate(0);
+        pageCount = 1;
+        size = keys.size();
+        List<LedgerKey> levelKeys = new ArrayList<>();
+        List<Integer> levelPages = new ArrayList<>();
+        // 葉節點依序配置在連續的頁上，next 直接指向下一頁
+        int leafCount = Math.max(1, (keys.size() + LEAF_CAPACITY - 1) / LEAF_CAPACITY);
+        for (int l = 0; l < leafCount; l++) {
+            Node leaf = allocate(true);
+            int start = l * LEAF_CAPACITY;
+            leaf.count = Math.min(LEAF_CAPACITY, keys.size() - start);
+            for (int i = 0; i < leaf.count; i++) {
+                leaf.keys[i] = keys.get(start + i);
+                leaf.values[i] = values[start + i];
+            }
+            leaf.next = l + 1 < leafCount ? leaf.page + 1 : NO_PAGE;
+            writeNode(leaf);
+            levelKeys.add(leaf.count > 0 ? leaf.keys[0] : null);
+            levelPages.add(leaf.page);
+        }
+        while (levelPages.size() > 1) {
+            List<LedgerKey> upperKeys = new ArrayList<>();
+            List<Integer> upperPages = new ArrayList<>();
+            int fan = INTERNAL_CAPACITY + 1;
+            for (int start = 0; start < levelPages.size(); start += fan) {
+                int end = Math.min(levelPages.size(), start + fan);
+                Node n = allocate(false);
+                n.children[0] = levelPages.get(start);
+                for (int i = start + 1; i < end; i++) {
+                    n.keys[n.count] = levelKeys.get(i);
+                    n.children[n.count + 1] = levelPages.get(i);
+                    n.count++;
+                }
+                writeNode(n);
+                upperKeys.add(levelKeys.get(start));
+                upperPages.add(n.page);
+            }
+            levelKeys = upperKeys;
+            levelPages = upperPages;
+        }
+        rootPage = levelPages.get(0);
+        System.arraycopy(savedMeta, 0, meta, 0, META_SLOTS);
+        headerDirty = true;
+        flush();
+    }
+
+    // --- 中繼資料與統計 ---
+
+    public synchronized long getMeta(int slot) {
+        return meta[slot];
+    }
+
+    public synchronized void setMeta(int slot, long value) {
+        meta[slot] = value;
+        headerDirty = true;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int getPageCount() {
+        return pageCount;
+    }
+
+    public synchronized long getPageReads() {
+        return pageReads;
+    }
+
+    /**
+     * 清空頁快取（之後的查詢從檔案讀取，用來量測冷快取的讀取頁數）
+     *
+     * @throws IOException 寫回失敗
+     */
+    public synchronized void dropCache() throws IOException {
+        flush();
+        cache.clear();
+    }
+
+    /**
+     * 寫回所有修改過的頁與檔頭
+     *
+     * @throws IOException 寫入失敗
+     */
+    public synchronized void flush() throws IOException {
+        for (Node n : cache.values()) {
+            if (n.dirty) writeNode(n);
+        }
+        if (headerDirty) writeHeader();
+    }
+
+    /**
+     * 寫回並強制寫到磁碟
+     *
+     * @throws IOException 寫入失敗
+     */
+    public synchronized void sync() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) return;
+        sync();
+        channel.close();
+    }
+}
@@ -0,0 +1,265 @@
+// BalanceIndex.java - 餘額前綴和索引
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 餘額前綴和索引
+ * ------------
+ * 以日為單位的 Fenwick tree（Binary Indexed Tree），維護每日淨額（收入為正、支出為負）的前綴和
+ * 查詢某日的累計餘額與兩日之間的淨額皆為 O(log D)（D 為涵蓋的天數），
+ * 新增、編輯、刪除記錄時以 LedgerListener 遞增更新，同樣是 O(log D)
+ * 同時維護每日筆數的前綴和，可 O(log D) 取得日期區間內的記錄筆數
+ * 日期超出目前涵蓋範圍時容量加倍並重建，攤銷後仍為 O(log D)
+ */
+public class BalanceIndex implements LedgerListener {
+    // 初始涵蓋天數
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // 記帳管理器（重新載入時用來重建）
+    private final ExpenseManager expenseManager;
+    // 索引第 1 格對應的 epoch day
+    private long baseDay;
+    // 涵蓋天數
+    private int capacity;
+    // 每日淨額（原始值，擴充時用來重建）
+    private BigDecimal[] daily;
+    // 淨額的 Fenwick tree（索引由 1 開始）
+    private BigDecimal[] tree;
+    // 每日筆數
+    private long[] dailyCount;
+    // 筆數的 Fenwick tree
+    private long[] countTree;
+    // 是否已有任何資料（決定第一筆資料時的基準日）
+    private boolean initialized;
+    // 已封存年度（重建時以其每日淨額補上；未設定時為 null）
+    private LedgerArchive archive;
+
+    /**
+     * 建構子：依目前帳本建立索引，並開始監聽變更
+     *
+     * @param expenseManager 記帳管理器
+     */
+    public BalanceIndex(ExpenseManager expenseManager) {
+        this.expenseManager = expenseManager;
+        rebuild();
+        expenseManager.getChangeStream().addListener(this);
+    }
+
+    @Override
+    public synchronized void onChange(LedgerChange change) {
+        switch (change.getKind()) {
+            case EXPENSE_ADD, EXPENSE_EDIT, EXPENSE_DELETE -> {
+                if (change.getBefore() != null) apply(change.getBefore(), -1);
+                if (change.getAfter() != null) apply(change.getAfter(), 1);
+            }
+            case LEDGER_LOAD -> rebuild();
+            default -> { }
+        }
+    }
+
+    /**
+     * 設定已封存年度的來源並重建（封存年度以常駐的每日淨額計入，不需讀取明細）
+     *
+     * @param archive 封存，null 表示只涵蓋記憶體中的記錄
+     */
+    public synchronized void setArchive(LedgerArchive archive) {
+        this.archive = archive;
+        rebuild();
+    }
+
+    /**
+     * 依目前帳本重建索引（O(n + D)）
+     */
+    public synchronized void rebuild() {
+        List<Expense> expenses = expenseManager.getExpenses();
+        List<LedgerArchive.DailyNet> archived = archive == null ? List.of() : archive.dailyNets();
+        initialized = false;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (Expense e : expenses) {
+            long day = e.getDate().toEpochDay();
+            min = Math.min(min, day);
+            max = Math.max(max, day);
+        }
+        for (LedgerArchive.DailyNet d : archived) {
+            min = Math.min(min, d.date().toEpochDay());
+            max = Math.max(max, d.date().toEpochDay());
+        }
+        if (expenses.isEmpty() && archived.isEmpty()) {
+            allocate(LocalDate.now().toEpochDay() - INITIAL_CAPACITY / 2, INITIAL_CAPACITY);
+            return;
+        }
+        allocate(min, capacityFor(max - min + 1));
+        initialized = true;
+        for (Expense e : expenses) {
+            int slot = (int) (e.getDate().toEpochDay() - baseDay);
+            daily[slot] = daily[slot].add(signed(e));
+            dailyCount[slot]++;
+        }
+        for (LedgerArchive.DailyNet d : archived) {
+            int slot = (int) (d.date().toEpochDay() - baseDay);
+            daily[slot] = daily[slot].add(d.net());
+            dailyCount[slot] += d.count();
+        }
+        buildTrees();
+    }
+
+    private void allocate(long base, int cap) {
+        baseDay = base;
+        capacity = cap;
+        daily = new BigDecimal[cap];
+        Arrays.fill(daily, BigDecimal.ZERO);
+        dailyCount = new long[cap];
+        tree = new BigDecimal[cap + 1];
+        countTree = new long[cap + 1];
+        buildTrees();
+    }
+
+    // 由每日原始值以 O(D) 建立兩棵 Fenwick tree
+    private void buildTrees() {
+        Arrays.fill(tree, BigDecimal.ZERO);
+        Arrays.fill(countTree, 0);
+        for (int i = 1; i <= capacity; i++) {
+            tree[i] = tree[i].add(daily[i - 1]);
+            countTree[i] += dailyCount[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= capacity) {
+                tree[parent] = tree[parent].add(tree[i]);
+                countTree[parent] += countTree[i];
+            }
+        }
+    }
+
+    private static int capacityFor(long days) {
+        int cap = INITIAL_CAPACITY;
+        while (cap < days) {
+            cap <<= 1;
+        }
+        return cap;
+    }
+
+    // 收入為正、支出為負
+    private static BigDecimal signed(Expense e) {
+        return e.getType() == TransactionType.支出 ? e.getAmount().negate() : e.getAmount();
+    }
+
+    private void apply(Expense e, int sign) {
+        long day = e.getDate().toEpochDay();
+        ensureCovered(day);
+        BigDecimal delta = sign > 0 ? signed(e) : signed(e).negate();
+        int slot = (int) (day - baseDay);
+        daily[slot] = daily[slot].add(delta);
+        dailyCount[slot] += sign;
+        for (int i = slot + 1; i <= capacity; i += i & -i) {
+            tree[i] = tree[i].add(delta);
+            countTree[i] += sign;
+        }
+    }
+
+    // 日期超出涵蓋範圍時，容量加倍（往需要的方向延伸）並重建
+    private void ensureCovered(long day) {
+        if (!initialized) {
+            allocate(day - INITIAL_CAPACITY / 2, INITIAL_CAPACITY);
+            initialized = true;
+            return;
+        }
+        if (day >= baseDay && day < baseDay + capacity) return;
+        long newMin = Math.min(baseDay, day);
+        long newMax = Math.max(baseDay + capacity - 1, day);
+        int newCap = capacityFor(newMax - newMin + 1);
+        if (newCap == capacity) newCap <<= 1;
+        // 往新資料的方向預留空間，減少連續擴充
+        long newBase = day < baseDay ? newMax - newCap + 1 : newMin;
+        BigDecimal[] oldDaily = daily;
+        long[] oldCount = dailyCount;
+        long oldBase = baseDay;
+        allocate(newBase, newCap);
+        int offset = (int) (oldBase - newBase);
+        System.arraycopy(oldDaily, 0, daily, offset, oldDaily.length);
+        System.arraycopy(oldCount, 0, dailyCount, offset, oldCount.length);
+        buildTrees();
+    }
+
+    // 前 n 格（slot 0..n-1）的淨額總和
+    private BigDecimal prefixSum(int n) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = Math.min(n, capacity); i > 0; i -= i & -i) {
+            sum = sum.add(tree[i]);
+        }
+        return sum;
+    }
+
+    private long prefixCount(int n) {
+        long sum = 0;
+        for (int i = Math.min(n, capacity); i > 0; i -= i & -i) {
+            sum += countTree[i];
+        }
+        return sum;
+    }
+
+    // 截至 day（含）的格數，範圍外時夾在 [0, capacity]
+    private int slotsThrough(LocalDate date) {
+        long n = date.toEpochDay() - baseDay + 1;
+        return (int) Math.max(0, Math.min(capacity, n));
+    }
+
+    /**
+     * 查詢截至某日（含當日）的累計餘額
+     *
+     * @param date 日期
+     * @return 累計餘額（收入減支出）
+     */
+    public synchronized BigDecimal balanceAt(LocalDate date) {
+        return prefixSum(slotsThrough(date));
+    }
+
+    /**
+     * 查詢兩日之間（皆含）的淨額
+     *
+     * @param from 起始日期
+     * @param to 結束日期
+     * @return 區間淨額（收入減支出），from 晚於 to 時為 0
+     */
+    public synchronized BigDecimal balanceBetween(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) return BigDecimal.ZERO;
+        return prefixSum(slotsThrough(to)).subtract(prefixSum(slotsThrough(from.minusDays(1))));
+    }
+
+    /**
+     * 查詢兩日之間（皆含）的記錄筆數
+     *
+     * @param from 起始日期
+     * @param to 結束日期
+     * @return 區間內的記錄筆數
+     */
+    public synchronized long countBetween(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) return 0;
+        return prefixCount(slotsThrough(to)) - prefixCount(slotsThrough(from.minusDays(1)));
+    }
+
+    /**
+     * 產生餘額走勢：從 from 開始每隔 step 取一次截至當日的累計餘額，直到 to
+     * 每個點 O(log D)，不需掃描帳本
+     *
+     * @param from 起始日期
+     * @param to 結束日期
+     * @param step 取樣間隔（例如 Period.ofMonths(1)）
+     * @return 日期對應累計餘額（依日期排序）
+     */
+    public synchronized Map<LocalDate, BigDecimal> balanceSeries(LocalDate from, LocalDate to, Period step) {
+        if (step.isZero() || step.isNegative()) {
+            throw new IllegalArgumentException("取樣間隔必須為正: " + step);
+        }
+        Map<LocalDate, BigDecimal> series = new LinkedHashMap<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plus(step)) {
+            series.put(d, balanceAt(d));
+        }
+        return series;
+    }
+}
@@ -0,0 +1,367 @@
+// BatchRunner.java - 非互動批次指令模式
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * 非互動批次指令模式
+ * --------------
+ * 執行指令檔中的指令（MainApp --batch 指令檔），不經過 Scanner 選單，可重複執行相同的工作負載
+ * 整個指令檔在一個 ExpenseManager 批次中執行，結束時只儲存一次；
+ * 連續的 add 指令會累積後以 addExpenses 一次新增（只排序一次）
+ *
+ * 指令格式（每行一個指令，# 開頭為註解，含空白的參數以雙引號括住）：
+ * <pre>
+ * add 2024-05-01 120 支出 飲食 "麥當勞 早餐"
+ * add 2024-05-02 45 支出 交通 "捷運 通勤"
+ * add 2024-05-05 52000 收入 薪資 "五月薪水"
+ * delete 42
+ * search 早餐
+ * query from=2024-01-01 to=2024-03-31 type=支出 main=生活日常 min=100 remark=午餐 sort=amountDesc limit=10 explain
+ *                        （組合條件查詢，條件皆可省略；category= 指定分類，explain 顯示查詢計畫）
+ * report 2024-05        （或 report 2024）
+ * report 2024-05 asof=2024-06-30      （以當時的帳本產生報表，也可寫 asof=2024-06-30T18:00）
+ * export 記帳紀錄.csv
+ * archive 2019           （封存已結束的年度；restore 2019 還原）
+ * commit                 （立即儲存目前為止的變更）
+ * </pre>
+ */
+public class BatchRunner {
+    // 記帳管理器
+    private final ExpenseManager manager;
+    // 分類管理器（驗證分類）
+    private final CategoryManager categoryManager;
+    // 彙總報表來源
+    private final LedgerCube cube;
+    // 多版本帳本（asof 報表使用；未提供時為 null）
+    private final VersionedLedger versions;
+    // 年度封存（archive、restore 使用；未提供時為 null）
+    private LedgerArchive archive;
+    // 輸出
+    private final PrintStream out;
+    // 尚未送出的 add
+    private final List<Expense> pendingAdds = new ArrayList<>();
+    // 搜尋結果表格
+    private final TableRenderer<Expense> table = new TableRenderer<Expense>(e -> new String[] {
+        String.valueOf(e.getId()),
+        e.getDate().toString(),
+        e.getAmount().toPlainString(),
+        String.valueOf(e.getType()),
+        e.getCategory(),
+        e.getRemark() == null ? "" : e.getRemark()
+    }, "編號", "日期", "金額", "類型", "分類", "備註").alignRight(0).alignRight(2);
+
+    private int executed;
+    private int failed;
+
+    /**
+     * 建構子
+     *
+     * @param manager 記帳管理器
+     * @param categoryManager 分類管理器
+     * @param cube 彙總報表來源
+     * @param out 輸出
+     */
+    public BatchRunner(ExpenseManager manager, CategoryManager categoryManager, LedgerCube cube, PrintStream out) {
+        this(manager, categoryManager, cube, null, out);
+    }
+
+    /**
+     * 建構子：支援 asof 報表
+     *
+     * @param manager 記帳管理器
+     * @param categoryManager 分類管理器
+     * @param cube 彙總報表來源
+     * @param versions 多版本帳本
+     * @param out 輸出
+     */
+    public BatchRunner(ExpenseManager manager, CategoryManager categoryManager, LedgerCube cube,
+                       VersionedLedger versions, PrintStream out) {
+        this.manager = manager;
+        this.categoryManager = categoryManager;
+        this.cube = cube;
+        this.versions = versions;
+        this.out = out;
+    }
+
+    /**
+     * 啟用 archive、restore 指令
+     *
+     * @param archive 年度封存
+     * @return 此執行器
+     */
+    public BatchRunner withArchive(LedgerArchive archive) {
+        this.archive = archive;
+        return this;
+    }
+
+    /**
+     * 執行指令檔
+     *
+     * @param file 指令檔（UTF-8）
+     * @return 失敗的指令數
+     * @throws IOException 讀取指令檔失敗
+     */
+    public int run(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return run(reader);
+        }
+    }
+
+    /**
+     * 執行指令
+     *
+     * @param reader 指令來源
+     * @return 失敗的指令數
+     * @throws IOException 讀取失敗
+     */
+    public int run(BufferedReader reader) throws IOException {
+        manager.beginBatch();
+        try {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                try {
+                    execute(tokenize(line));
+                    executed++;
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    failed++;
+                    out.println("第 " + lineNo + " 行錯誤：" + e.getMessage());
+                }
+            }
+            flushAdds();
+        } finally {
+            manager.commitBatch();
+        }
+        out.println("批次完成：成功 " + executed + " 筆指令，失敗 " + failed + " 筆。");
+        return failed;
+    }
+
+    private void execute(List<String> args) {
+        String command = args.get(0).toLowerCase(Locale.ROOT);
+        if (!command.equals("add")) {
+            flushAdds(); // 其他指令要看到先前新增的記錄
+        }
+        switch (command) {
+            case "add" -> pendingAdds.add(parseAdd(args));
+            case "delete" -> {
+                require(args, 2, "delete <編號>");
+                long id;
+                try {
+                    id = Long.parseLong(args.get(1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("編號格式錯誤: " + args.get(1));
+                }
+                if (!manager.deleteExpenseById(id)) {
+                    throw new IllegalArgumentException("找不到編號 " + id + " 的記錄");
+                }
+            }
+            case "search" -> {
+                require(args, 2, "search <關鍵字>");
+                List<Expense> results = manager.searchByRemark(args.get(1));
+                out.println("搜尋「" + args.get(1) + "」：" + results.size() + " 筆");
+                if (!results.isEmpty()) table.print(results, out);
+            }
+            case "query" -> query(args);
+            case "report" -> {
+                require(args, 2, "report <yyyy-MM|yyyy> [asof=<日期或時間>]");
+                if (args.size() > 2 && args.get(2).startsWith("asof=")) {
+                    reportAsOf(args.get(1), args.get(2).substring("asof=".length()));
+                } else {
+                    report(cube, args.get(1));
+                }
+            }
+            case "export" -> {
+                require(args, 2, "export <檔名>");
+                manager.exportExpensesToCSV(args.get(1));
+            }
+            case "archive", "restore" -> {
+                require(args, 2, command + " <年度>");
+                if (archive == null) {
+                    throw new IllegalArgumentException("未啟用年度封存");
+                }
+                int year;
+                try {
+                    year = Integer.parseInt(args.get(1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("年度格式錯誤: " + args.get(1));
+                }
+                try {
+                    long count = command.equals("archive") ? archive.archiveYear(manager, year) : archive.restoreYear(manager, year);
+                    out.println((command.equals("archive") ? "已封存 " : "已還原 ") + year + " 年 " + count + " 筆記錄");
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("無法" + (command.equals("archive") ? "封存" : "還原") + "年度: " + e.getMessage());
+                }
+            }
+            case "commit" -> {
+                manager.commitBatch();
+                manager.beginBatch();
+            }
+            default -> throw new IllegalArgumentException("未知指令: " + args.get(0));
+        }
+    }
+
+    // 組合條件查詢：參數為 名稱=值，explain 另外印出查詢計畫
+    private void query(List<String> args) {
+        LedgerQuery query = manager.query();
+        LocalDate from = null;
+        LocalDate to = null;
+        BigDecimal min = null;
+        BigDecimal max = null;
+        boolean explain = false;
+        for (String arg : args.subList(1, args.size())) {
+            if (arg.equalsIgnoreCase("explain")) {
+                explain = true;
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("查詢條件格式應為 名稱=值: " + arg);
+            }
+            String name = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            try {
+                switch (name) {
+                    case "from" -> from = LocalDate.parse(value);
+                    case "to" -> to = LocalDate.parse(value);
+                    case "type" -> query.type(TransactionType.valueOf(value));
+                    case "category" -> query.category(value);
+                    case "main" -> query.mainCategory(value);
+                    case "min" -> min = new BigDecimal(value);
+                    case "max" -> max = new BigDecimal(value);
+                    case "remark" -> query.remarkContains(value);
+                    case "sort" -> query.sortBy(value);
+                    case "limit" -> query.limit(Integer.parseInt(value));
+                    default -> throw new IllegalArgumentException("未知的查詢條件: " + name);
+                }
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("查詢條件 " + name + " 的值格式錯誤: " + value);
+            }
+        }
+        query.between(from, to).amountBetween(min, max);
+        if (explain) {
+            out.println(query.explain());
+        }
+        List<Expense> results = query.list();
+        out.println("查詢結果：" + results.size() + " 筆");
+        if (!results.isEmpty()) table.print(results, out);
+    }
+
+    private Expense parseAdd(List<String> args) {
+        require(args, 5, "add <日期> <金額> <收入|支出> <分類> [備註]");
+        LocalDate date = LocalDate.parse(args.get(1));
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(args.get(2));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("金額格式錯誤: " + args.get(2));
+        }
+        if (amount.signum() <= 0) {
+            throw new IllegalArgumentException("金額必須大於 0: " + args.get(2));
+        }
+        TransactionType type;
+        try {
+            type = TransactionType.valueOf(args.get(3));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("類型必須是收入或支出: " + args.get(3));
+        }
+        String category = args.get(4);
+        if (!categoryManager.isValidCategory(type, category)) {
+            throw new IllegalArgumentException("分類 '" + category + "' 對於類型 '" + type + "' 無效");
+        }
+        String remark = args.size() > 5 ? String.join(" ", args.subList(5, args.size())) : "";
+        return new Expense(date, amount, category, remark, type);
+    }
+
+    // 以過去某個時間點的帳本快照彙總（只有日期時取該日結束時）
+    private void reportAsOf(String period, String time) {
+        if (versions == null) {
+            throw new IllegalArgumentException("未啟用版本記錄，無法使用 asof");
+        }
+        LocalDateTime at = time.contains("T") ? LocalDateTime.parse(time) : LocalDate.parse(time).plusDays(1).atStartOfDay();
+        try (VersionedLedger.Snapshot snapshot = versions.asOf(at.atZone(ZoneId.systemDefault()).toInstant())) {
+            out.println("（以 " + time + " 當時的帳本，變更編號 " + snapshot.getSequence() + "）");
+            report(LedgerCube.build(snapshot.expenses(), categoryManager), period);
+        }
+    }
+
+    // 依類型、主分類彙總某月或某年
+    private void report(LedgerCube cube, String period) {
+        Map<LedgerCube.Dimension, String> filters = new EnumMap<>(LedgerCube.Dimension.class);
+        LedgerCube.Granularity granularity;
+        if (period.matches("\\d{4}")) {
+            granularity = LedgerCube.Granularity.YEAR;
+        } else {
+            granularity = LedgerCube.Granularity.MONTH;
+            period = YearMonth.parse(period).toString();
+        }
+        filters.put(LedgerCube.Dimension.PERIOD, period);
+        List<LedgerCube.Row> rows = cube.query(
+            List.of(LedgerCube.Dimension.TYPE, LedgerCube.Dimension.MAIN_CATEGORY), filters, granularity);
+        out.println("=== " + period + " 報表 ===");
+        for (LedgerCube.Row row : rows) {
+            out.println(row.labels().get(0) + " | " + row.labels().get(1) + " | "
+                + row.sum().toPlainString() + " 元（" + row.count() + " 筆）");
+        }
+    }
+
+    private void flushAdds() {
+        if (pendingAdds.isEmpty()) return;
+        manager.addExpenses(new ArrayList<>(pendingAdds));
+        pendingAdds.clear();
+    }
+
+    private static void require(List<String> args, int count, String usage) {
+        if (args.size() < count) {
+            throw new IllegalArgumentException("參數不足，用法: " + usage);
+        }
+    }
+
+    // 以空白分隔參數，雙引號內的空白保留（"" 表示引號本身）
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean inToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+                inToken = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("引號未結束");
+        }
+        if (inToken) tokens.add(current.toString());
+        return tokens;
+    }
+}
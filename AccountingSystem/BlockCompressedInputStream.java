@@ -0,0 +1,161 @@
+// BlockCompressedInputStream.java - 分區塊壓縮輸入串流
+
+import java.io.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 分區塊壓縮輸入串流
+ * --------------
+ * 讀取 BlockCompressedOutputStream 寫出的檔案，一次只解壓縮一個區塊（串流讀取，不需整檔載入），
+ * 每個區塊解壓縮後比對 CRC32，損毀或缺少結尾標記時拋出 IOException
+ * open 會依檔頭判斷格式：舊版未壓縮的存檔直接以原始串流讀取，不需轉檔
+ */
+public class BlockCompressedInputStream extends InputStream {
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+    private final CRC32 crc = new CRC32();
+    private byte[] block;
+    private byte[] compressed;
+    private int position;
+    private int limit;
+    private long blockIndex;
+    private boolean finished;
+
+    /**
+     * 開啟檔案：新格式以區塊解壓縮讀取，舊版未壓縮的檔案原樣讀取
+     *
+     * @param filename 檔案路徑
+     * @return 輸入串流
+     * @throws IOException 開啟失敗或檔頭損毀
+     */
+    public static InputStream open(String filename) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(new FileInputStream(filename), 1 << 16);
+        return isCompressed(buffered) ? new BlockCompressedInputStream(buffered) : buffered;
+    }
+
+    // 讀取前 4 個位元組判斷是否為區塊壓縮格式（讀完後還原位置）
+    private static boolean isCompressed(BufferedInputStream in) throws IOException {
+        in.mark(4);
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0) {
+                in.reset();
+                return false;
+            }
+            magic = (magic << 8) | b;
+        }
+        in.reset();
+        return magic == BlockCompressedOutputStream.MAGIC;
+    }
+
+    /**
+     * 建構子（讀取並驗證檔頭）
+     *
+     * @param in 底層輸入
+     * @throws IOException 檔頭錯誤
+     */
+    public BlockCompressedInputStream(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        if (this.in.readInt() != BlockCompressedOutputStream.MAGIC) {
+            throw new IOException("不是區塊壓縮檔");
+        }
+        int version = this.in.readByte();
+        if (version != BlockCompressedOutputStream.VERSION) {
+            throw new IOException("不支援的壓縮檔版本: " + version);
+        }
+        this.in.readByte(); // 壓縮等級（讀取時不需要）
+        int blockSize = this.in.readInt();
+        if (blockSize <= 0 || blockSize > (1 << 26)) {
+            throw new IOException("區塊大小錯誤: " + blockSize);
+        }
+        this.block = new byte[blockSize];
+        this.compressed = new byte[blockSize + blockSize / 1000 + 64];
+    }
+
+    // 讀入下一個區塊，沒有更多資料時返回 false
+    private boolean nextBlock() throws IOException {
+        if (finished) return false;
+        byte codec;
+        int rawLength;
+        int storedLength;
+        int expected;
+        try {
+            codec = in.readByte();
+            rawLength = in.readInt();
+            storedLength = in.readInt();
+            expected = in.readInt();
+        } catch (EOFException e) {
+            throw new EOFException("壓縮檔不完整（缺少結尾標記）");
+        }
+        if (rawLength == 0) {
+            finished = true;
+            return false;
+        }
+        blockIndex++;
+        if (rawLength < 0 || rawLength > block.length || storedLength < 0 || storedLength > compressed.length) {
+            throw new IOException("第 " + blockIndex + " 個區塊標頭損毀");
+        }
+        // 讀取前先檢查編碼與未壓縮區塊的長度，避免損毀的標頭造成越界
+        if (codec != BlockCompressedOutputStream.STORED && codec != BlockCompressedOutputStream.DEFLATED) {
+            throw new IOException("第 " + blockIndex + " 個區塊編碼未知: " + codec);
+        }
+        if (codec == BlockCompressedOutputStream.STORED && storedLength != rawLength) {
+            throw new IOException("第 " + blockIndex + " 個區塊長度不符");
+        }
+        try {
+            in.readFully(codec == BlockCompressedOutputStream.DEFLATED ? compressed : block, 0, storedLength);
+        } catch (EOFException e) {
+            throw new EOFException("壓縮檔不完整（第 " + blockIndex + " 個區塊被截斷）");
+        }
+        if (codec == BlockCompressedOutputStream.DEFLATED) {
+            inflater.reset();
+            inflater.setInput(compressed, 0, storedLength);
+            try {
+                int n = inflater.inflate(block, 0, rawLength);
+                if (n != rawLength || !inflater.finished()) {
+                    throw new IOException("第 " + blockIndex + " 個區塊長度不符");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("第 " + blockIndex + " 個區塊解壓縮失敗: " + e.getMessage());
+            }
+        }
+        crc.reset();
+        crc.update(block, 0, rawLength);
+        if ((int) crc.getValue() != expected) {
+            throw new IOException("第 " + blockIndex + " 個區塊校驗錯誤（檔案已損毀）");
+        }
+        position = 0;
+        limit = rawLength;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !nextBlock()) return -1;
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position == limit && !nextBlock()) return -1;
+        int n = Math.min(len, limit - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+}
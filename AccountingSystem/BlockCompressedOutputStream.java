@@ -0,0 +1,163 @@
+// BlockCompressedOutputStream.java - 分區塊壓縮輸出串流
+
+import java.io.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 分區塊壓縮輸出串流
+ * --------------
+ * 把資料切成固定大小的區塊，每個區塊各自以 Deflater 壓縮並附上原始資料的 CRC32，
+ * 讀取時可逐區塊串流解壓縮，並在任何一個區塊損毀時立即發現
+ * 壓縮後沒有變小的區塊直接以原始資料存放；等級 0 表示全部不壓縮（仍保留校驗）
+ *
+ * 檔案格式：
+ * <pre>
+ * 檔頭：magic "LBLK"（int）、版本（byte）、壓縮等級（byte）、區塊大小（int）
+ * 區塊：編碼（byte，0 原始 / 1 deflate）、原始長度（int）、存放長度（int）、CRC32（int）、資料
+ * 結尾：原始長度為 0 的區塊
+ * </pre>
+ * 預設壓縮等級由 -Dledger.compression.level（0-9）指定
+ */
+public class BlockCompressedOutputStream extends FilterOutputStream {
+    static final int MAGIC = 0x4C424C4B;
+    static final int VERSION = 1;
+    static final byte STORED = 0;
+    static final byte DEFLATED = 1;
+    // 預設區塊大小
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    // 預設壓縮等級（速度與大小的取捨見 LedgerBenchmark 的 save/load 量測）
+    private static volatile int defaultLevel = Integer.getInteger("ledger.compression.level", Deflater.BEST_SPEED);
+
+    private final byte[] block;
+    private final byte[] compressed;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final DataOutputStream data;
+    private int count;
+    private boolean closed;
+
+    /**
+     * 以預設壓縮等級開啟檔案
+     *
+     * @param filename 檔案路徑
+     * @return 輸出串流
+     * @throws IOException 開啟失敗
+     */
+    public static BlockCompressedOutputStream open(String filename) throws IOException {
+        return new BlockCompressedOutputStream(new FileOutputStream(filename), defaultLevel, DEFAULT_BLOCK_SIZE);
+    }
+
+    public static int getDefaultLevel() {
+        return defaultLevel;
+    }
+
+    public static void setDefaultLevel(int level) {
+        checkLevel(level);
+        defaultLevel = level;
+    }
+
+    private static void checkLevel(int level) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("壓縮等級必須介於 0 到 9: " + level);
+        }
+    }
+
+    /**
+     * 建構子（立即寫出檔頭）
+     *
+     * @param out 底層輸出
+     * @param level 壓縮等級（0-9）
+     * @param blockSize 區塊大小
+     * @throws IOException 寫入失敗
+     */
+    public BlockCompressedOutputStream(OutputStream out, int level, int blockSize) throws IOException {
+        super(out);
+        checkLevel(level);
+        this.block = new byte[blockSize];
+        // deflate 最壞情況會比原始資料略大
+        this.compressed = new byte[blockSize + blockSize / 1000 + 64];
+        this.deflater = level == 0 ? null : new Deflater(level);
+        this.data = new DataOutputStream(new BufferedOutputStream(out, blockSize + 64));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte(level);
+        data.writeInt(blockSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == block.length) writeBlock();
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == block.length) writeBlock();
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (count == 0) return;
+        crc.reset();
+        crc.update(block, 0, count);
+        int stored = 0;
+        if (deflater != null) {
+            deflater.reset();
+            deflater.setInput(block, 0, count);
+            deflater.finish();
+            stored = deflater.deflate(compressed);
+            if (!deflater.finished()) stored = count; // 壓縮後更大，改存原始資料
+        }
+        if (deflater != null && stored < count) {
+            data.writeByte(DEFLATED);
+            data.writeInt(count);
+            data.writeInt(stored);
+            data.writeInt((int) crc.getValue());
+            data.write(compressed, 0, stored);
+        } else {
+            data.writeByte(STORED);
+            data.writeInt(count);
+            data.writeInt(count);
+            data.writeInt((int) crc.getValue());
+            data.write(block, 0, count);
+        }
+        count = 0;
+    }
+
+    /**
+     * 寫出目前不滿的區塊
+     */
+    @Override
+    public void flush() throws IOException {
+        writeBlock();
+        data.flush();
+    }
+
+    /**
+     * 寫出剩餘資料與結尾標記並關閉
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            writeBlock();
+            data.writeByte(STORED);
+            data.writeInt(0);
+            data.writeInt(0);
+            data.writeInt(0);
+            data.flush();
+        } finally {
+            if (deflater != null) deflater.end();
+            data.close();
+        }
+    }
+}
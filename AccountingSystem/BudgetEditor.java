@@ -0,0 +1,150 @@
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+public class BudgetEditor {
+    private final BudgetManager budgetManager;
+    private final CategoryManager categoryManager;
+    private final Scanner scanner;
+
+    public BudgetEditor(BudgetManager budgetManager, CategoryManager categoryManager, Scanner scanner) {
+        this.budgetManager = budgetManager;
+        this.categoryManager = categoryManager;
+        this.scanner = scanner;
+    }
+
+    public void showMenu() {
+        while (true) {
+            System.out.println("\n=== 編輯預算 ===");
+            System.out.println("1. 設定每月預算");
+            System.out.println("2. 設定單月預算");
+            System.out.println("3. 刪除預算");
+            System.out.println("4. 查看本月預算");
+            System.out.println("0. 返回主選單");
+            System.out.print("請選擇操作：");
+            String input = scanner.nextLine().trim();
+            switch (input) {
+                case "1" -> setMonthlyLimit();
+                case "2" -> setLimitForMonth();
+                case "3" -> removeLimit();
+                case "4" -> showStatus(YearMonth.now());
+                case "0" -> { return; }
+                default -> System.out.println("無效輸入");
+            }
+        }
+    }
+
+    private void setMonthlyLimit() {
+        String category = selectCategory();
+        if (category == null) return;
+        BigDecimal limit = inputLimit();
+        if (limit == null) return;
+        budgetManager.setMonthlyLimit(category, limit);
+        System.out.println("設定成功！");
+    }
+
+    private void setLimitForMonth() {
+        String category = selectCategory();
+        if (category == null) return;
+        System.out.print("請輸入月份（YYYY-MM）：");
+        YearMonth month;
+        try {
+            month = YearMonth.parse(scanner.nextLine().trim());
+        } catch (Exception e) {
+            System.out.println("月份格式錯誤");
+            return;
+        }
+        BigDecimal limit = inputLimit();
+        if (limit == null) return;
+        budgetManager.setLimitForMonth(category, month, limit);
+        System.out.println("設定成功！");
+    }
+
+    private void removeLimit() {
+        List<String> names = new ArrayList<>(budgetManager.getBudgetCategories());
+        if (names.isEmpty()) {
+            System.out.println("目前沒有設定預算");
+            return;
+        }
+        for (int i = 0; i < names.size(); i++) {
+            System.out.printf("%d. %s\n", i + 1, names.get(i));
+        }
+        System.out.print("請輸入要刪除的預算編號（0返回）：");
+        try {
+            int idx = Integer.parseInt(scanner.nextLine().trim());
+            if (idx == 0) return;
+            if (idx < 1 || idx > names.size()) {
+                System.out.println("無效編號");
+                return;
+            }
+            budgetManager.removeLimit(names.get(idx - 1));
+            System.out.println("刪除成功！");
+        } catch (NumberFormatException e) {
+            System.out.println("請輸入數字");
+        }
+    }
+
+    private void showStatus(YearMonth month) {
+        System.out.printf("\n=== %s 預算 ===\n", month);
+        if (budgetManager.getBudgetCategories().isEmpty()) {
+            System.out.println("目前沒有設定預算");
+            return;
+        }
+        for (String category : budgetManager.getBudgetCategories()) {
+            BigDecimal limit = budgetManager.getLimit(category, month);
+            if (limit == null) continue;
+            System.out.printf("%s：已花費 %s / 預算 %s 元，剩餘 %s 元\n", category,
+                budgetManager.getSpent(category, month).toPlainString(),
+                limit.toPlainString(),
+                budgetManager.getRemaining(category, month).toPlainString());
+        }
+    }
+
+    // 選擇支出主分類，或再進一步選擇其子分類
+    private String selectCategory() {
+        Map<Integer, String> mains = categoryManager.getExpenseMainCategories();
+        System.out.println("\n=== 選擇主分類 ===");
+        mains.forEach((k, v) -> System.out.printf("%d. %s%n", k, v));
+        System.out.print("請選擇主分類編號（0返回）：");
+        try {
+            int mainChoice = Integer.parseInt(scanner.nextLine().trim());
+            if (mainChoice == 0) return null;
+            String main = mains.get(mainChoice);
+            if (main == null) {
+                System.out.println("無效選擇");
+                return null;
+            }
+            Map<Integer, String> subs = categoryManager.getExpenseSubCategories(main);
+            System.out.println("\n=== 選擇子分類 ===");
+            subs.forEach((k, v) -> System.out.printf("%d. %s%n", k, v));
+            System.out.println("0. 整個主分類（" + main + "）");
+            System.out.print("請選擇子分類編號：");
+            int subChoice = Integer.parseInt(scanner.nextLine().trim());
+            if (subChoice == 0) return main;
+            String sub = subs.get(subChoice);
+            if (sub == null) System.out.println("無效選擇");
+            return sub;
+        } catch (NumberFormatException e) {
+            System.out.println("請輸入數字編號");
+            return null;
+        }
+    }
+
+    private BigDecimal inputLimit() {
+        System.out.print("請輸入預算金額：");
+        try {
+            BigDecimal limit = new BigDecimal(scanner.nextLine().trim());
+            if (limit.signum() <= 0) {
+                System.out.println("預算金額必須大於 0");
+                return null;
+            }
+            return limit;
+        } catch (NumberFormatException e) {
+            System.out.println("金額格式錯誤");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+// BudgetManager.java - 預算管理類
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * 預算管理類
+ * ---------
+ * 為支出分類設定每月預算（可設在子分類，也可設在主分類以涵蓋其下所有子分類）
+ * 以 LedgerListener 監聽帳本變更，隨每次新增、編輯、刪除遞增更新各分類每月已花費金額，
+ * 因此查詢剩餘預算是 O(1)，不需要重新掃描帳本
+ * 已花費金額跨越提醒門檻（80%、100%）時產生預算提醒，由 MainApp 與繳費提醒一起顯示
+ */
+public class BudgetManager implements LedgerListener {
+    private static final String BUDGET_FILE = "budgets.ser";
+    // 提醒門檻（已花費 / 預算）
+    private static final BigDecimal[] THRESHOLDS = {new BigDecimal("0.8"), BigDecimal.ONE};
+
+    // 記帳管理器（重新載入時用來重建）
+    private final ExpenseManager expenseManager;
+    // 分類管理器（查詢子分類所屬主分類）
+    private final CategoryManager categoryManager;
+    // 每個分類的預設每月預算（分類名稱 -> 金額）
+    private final LinkedHashMap<String, BigDecimal> monthlyLimits = new LinkedHashMap<>();
+    // 特定月份覆寫的預算（"yyyy-MM" -> 分類名稱 -> 金額）
+    private final LinkedHashMap<String, LinkedHashMap<String, BigDecimal>> monthOverrides = new LinkedHashMap<>();
+    // 子分類每月已花費
+    private final Map<SpendKey, BigDecimal> subSpent = new HashMap<>();
+    // 主分類每月已花費（含其下所有子分類）
+    private final Map<SpendKey, BigDecimal> mainSpent = new HashMap<>();
+    // 子分類 -> 主分類的快取（分類變更時清空）
+    private final Map<String, String> parentCache = new HashMap<>();
+    // 改名過的分類（舊名稱 -> 目前名稱；帳本中的記錄仍使用舊名稱，與預算一起存檔）
+    private final Map<String, String> renamed = new HashMap<>();
+    // 尚未顯示的門檻提醒
+    private final Deque<String> pendingAlerts = new ArrayDeque<>();
+
+    /**
+     * 建構子：載入預算設定，依目前帳本建立已花費金額，並開始監聽變更
+     *
+     * @param expenseManager 記帳管理器
+     * @param categoryManager 分類管理器
+     */
+    public BudgetManager(ExpenseManager expenseManager, CategoryManager categoryManager) {
+        this.expenseManager = expenseManager;
+        this.categoryManager = categoryManager;
+        loadBudgets();
+        rebuild();
+        expenseManager.getChangeStream().addListener(this);
+    }
+
+    // 每月已花費的索引鍵（分類名稱 + 年月）
+    private record SpendKey(String category, YearMonth month) {
+    }
+
+    @Override
+    public synchronized void onChange(LedgerChange change) {
+        switch (change.getKind()) {
+            case EXPENSE_ADD, EXPENSE_EDIT, EXPENSE_DELETE -> applyChange(change.getBefore(), change.getAfter());
+            case LEDGER_LOAD -> rebuild();
+            case CATEGORY_RENAME -> {
+                parentCache.clear();
+                renameSpent(change.getOldName(), change.getNewName());
+                renameBudget(change.getOldName(), change.getNewName());
+            }
+            case CATEGORY_ADD, CATEGORY_DELETE -> parentCache.clear();
+            default -> { }
+        }
+    }
+
+    // 依目前帳本重新計算所有已花費金額（不產生提醒）
+    private synchronized void rebuild() {
+        subSpent.clear();
+        mainSpent.clear();
+        parentCache.clear();
+        for (Expense e : expenseManager.getExpenses()) {
+            apply(e, 1);
+        }
+    }
+
+    /**
+     * 套用一筆新增、編輯或刪除，並以整筆變更的淨增減檢查門檻
+     * 編輯時先移出舊內容再加入新內容，比較的是編輯前後的已花費金額，
+     * 因此調整一筆已超出預算的記錄（例如調低金額）不會再次產生提醒
+     *
+     * @param before 變更前的記錄（新增時為 null）
+     * @param after 變更後的記錄（刪除時為 null）
+     */
+    private void applyChange(Expense before, Expense after) {
+        Map<SpendKey, BigDecimal> subBefore = new HashMap<>();
+        Map<SpendKey, BigDecimal> mainBefore = new HashMap<>();
+        if (after != null && isExpense(after)) {
+            SpendKey sub = subKey(after);
+            subBefore.put(sub, subSpent.getOrDefault(sub, BigDecimal.ZERO));
+            SpendKey main = mainKey(after);
+            if (main != null) mainBefore.put(main, mainSpent.getOrDefault(main, BigDecimal.ZERO));
+        }
+        if (before != null) apply(before, -1);
+        if (after != null) apply(after, 1);
+        alertIfCrossed(subSpent, subBefore);
+        alertIfCrossed(mainSpent, mainBefore);
+    }
+
+    /**
+     * 將一筆支出加入或移出已花費金額（不產生提醒）
+     *
+     * @param e 記帳記錄
+     * @param sign 1 表示加入，-1 表示移出
+     */
+    private void apply(Expense e, int sign) {
+        if (!isExpense(e)) return;
+        BigDecimal delta = sign > 0 ? e.getAmount() : e.getAmount().negate();
+        add(subSpent, subKey(e), delta);
+        SpendKey main = mainKey(e);
+        if (main != null) {
+            add(mainSpent, main, delta);
+        }
+    }
+
+    private static boolean isExpense(Expense e) {
+        return e.getType() == TransactionType.支出 && e.getCategory() != null;
+    }
+
+    // 記錄所屬子分類的索引鍵（分類改名後歸到新名稱）
+    private SpendKey subKey(Expense e) {
+        return new SpendKey(renamed.getOrDefault(e.getCategory(), e.getCategory()), YearMonth.from(e.getDate()));
+    }
+
+    // 記錄所屬主分類的索引鍵，找不到主分類時返回 null
+    private SpendKey mainKey(Expense e) {
+        String main = mainCategoryOf(renamed.getOrDefault(e.getCategory(), e.getCategory()));
+        return main == null ? null : new SpendKey(main, YearMonth.from(e.getDate()));
+    }
+
+    private static void add(Map<SpendKey, BigDecimal> spent, SpendKey key, BigDecimal delta) {
+        BigDecimal after = spent.getOrDefault(key, BigDecimal.ZERO).add(delta);
+        if (after.signum() == 0) {
+            spent.remove(key);
+        } else {
+            spent.put(key, after);
+        }
+    }
+
+    // 已花費比變更前增加且跨越門檻時產生提醒
+    private void alertIfCrossed(Map<SpendKey, BigDecimal> spent, Map<SpendKey, BigDecimal> previous) {
+        for (Map.Entry<SpendKey, BigDecimal> entry : previous.entrySet()) {
+            SpendKey key = entry.getKey();
+            BigDecimal after = spent.getOrDefault(key, BigDecimal.ZERO);
+            if (after.compareTo(entry.getValue()) <= 0) continue;
+            BigDecimal limit = getLimit(key.category(), key.month());
+            if (limit != null && limit.signum() > 0) {
+                checkThresholds(key, limit, entry.getValue(), after);
+            }
+        }
+    }
+
+    // 分類改名：已花費金額改記在新名稱下，之後舊名稱的記錄也歸到新名稱
+    private void renameSpent(String oldName, String newName) {
+        if (oldName == null || newName == null || oldName.equals(newName)) return;
+        renamed.remove(newName);
+        renamed.replaceAll((old, current) -> current.equals(oldName) ? newName : current);
+        renamed.put(oldName, newName);
+        for (Map<SpendKey, BigDecimal> spent : List.of(subSpent, mainSpent)) {
+            Map<SpendKey, BigDecimal> moved = new HashMap<>();
+            spent.entrySet().removeIf(entry -> {
+                if (!entry.getKey().category().equals(oldName)) return false;
+                moved.put(new SpendKey(newName, entry.getKey().month()), entry.getValue());
+                return true;
+            });
+            moved.forEach((key, amount) -> add(spent, key, amount));
+        }
+    }
+
+    // 已花費由門檻之下跨到門檻之上時產生提醒
+    private void checkThresholds(SpendKey key, BigDecimal limit, BigDecimal before, BigDecimal after) {
+        for (int i = THRESHOLDS.length - 1; i >= 0; i--) {
+            BigDecimal line = limit.multiply(THRESHOLDS[i]);
+            if (before.compareTo(line) < 0 && after.compareTo(line) >= 0) {
+                String msg = THRESHOLDS[i].compareTo(BigDecimal.ONE) >= 0
+                    ? String.format("%s %s 已超出預算！（%s / %s 元）", key.month(), key.category(), after.toPlainString(), limit.toPlainString())
+                    : String.format("%s %s 已使用預算 %s%%（%s / %s 元）", key.month(), key.category(),
+                        percent(after, limit), after.toPlainString(), limit.toPlainString());
+                pendingAlerts.add(msg);
+                return; // 同時跨越多個門檻時只提醒最高的一個
+            }
+        }
+    }
+
+    // 子分類所屬主分類；分類本身就是主分類時歸到自己，找不到時返回 null
+    private String mainCategoryOf(String category) {
+        String main = parentCache.computeIfAbsent(category, c -> {
+            String m = categoryManager.getMainCategoryOf(c);
+            if (m == null && categoryManager.isExpenseMainCategory(c)) m = c;
+            return m == null ? "" : m;
+        });
+        return main.isEmpty() ? null : main;
+    }
+
+    private void renameBudget(String oldName, String newName) {
+        if (oldName == null || newName == null) return;
+        BigDecimal limit = monthlyLimits.remove(oldName);
+        if (limit != null) monthlyLimits.put(newName, limit);
+        for (LinkedHashMap<String, BigDecimal> limits : monthOverrides.values()) {
+            BigDecimal v = limits.remove(oldName);
+            if (v != null) limits.put(newName, v);
+        }
+        saveBudgets();
+    }
+
+    /**
+     * 設定分類的每月預算（適用於所有月份）
+     *
+     * @param category 子分類或主分類名稱
+     * @param limit 每月預算金額
+     */
+    public synchronized void setMonthlyLimit(String category, BigDecimal limit) {
+        monthlyLimits.put(category, limit);
+        saveBudgets();
+    }
+
+    /**
+     * 設定分類在特定月份的預算（覆寫每月預算）
+     *
+     * @param category 子分類或主分類名稱
+     * @param month 年月
+     * @param limit 預算金額
+     */
+    public synchronized void setLimitForMonth(String category, YearMonth month, BigDecimal limit) {
+        monthOverrides.computeIfAbsent(month.toString(), k -> new LinkedHashMap<>()).put(category, limit);
+        saveBudgets();
+    }
+
+    /**
+     * 移除分類的所有預算設定
+     *
+     * @param category 分類名稱
+     */
+    public synchronized void removeLimit(String category) {
+        monthlyLimits.remove(category);
+        monthOverrides.values().forEach(m -> m.remove(category));
+        monthOverrides.values().removeIf(Map::isEmpty);
+        saveBudgets();
+    }
+
+    /**
+     * 取得分類在某月的預算
+     *
+     * @param category 分類名稱
+     * @param month 年月
+     * @return 預算金額，未設定時返回 null
+     */
+    public synchronized BigDecimal getLimit(String category, YearMonth month) {
+        LinkedHashMap<String, BigDecimal> overrides = monthOverrides.get(month.toString());
+        if (overrides != null && overrides.containsKey(category)) {
+            return overrides.get(category);
+        }
+        return monthlyLimits.get(category);
+    }
+
+    /**
+     * 取得分類在某月的已花費金額（主分類包含其下所有子分類）
+     *
+     * @param category 分類名稱
+     * @param month 年月
+     * @return 已花費金額
+     */
+    public synchronized BigDecimal getSpent(String category, YearMonth month) {
+        SpendKey key = new SpendKey(category, month);
+        Map<SpendKey, BigDecimal> spent = categoryManager.isExpenseMainCategory(category) ? mainSpent : subSpent;
+        return spent.getOrDefault(key, BigDecimal.ZERO);
+    }
+
+    /**
+     * 取得分類在某月的剩餘預算
+     *
+     * @param category 分類名稱
+     * @param month 年月
+     * @return 剩餘金額（負數表示超支），未設定預算時返回 null
+     */
+    public synchronized BigDecimal getRemaining(String category, YearMonth month) {
+        BigDecimal limit = getLimit(category, month);
+        return limit == null ? null : limit.subtract(getSpent(category, month));
+    }
+
+    /**
+     * 取得所有設有預算的分類名稱
+     *
+     * @return 分類名稱集合（依設定順序）
+     */
+    public synchronized Set<String> getBudgetCategories() {
+        Set<String> names = new LinkedHashSet<>(monthlyLimits.keySet());
+        monthOverrides.values().forEach(m -> names.addAll(m.keySet()));
+        return names;
+    }
+
+    /**
+     * 取出並清空尚未顯示的門檻提醒
+     *
+     * @return 提醒訊息列表
+     */
+    public synchronized List<String> drainAlerts() {
+        List<String> alerts = new ArrayList<>(pendingAlerts);
+        pendingAlerts.clear();
+        return alerts;
+    }
+
+    /**
+     * 產生某月已達提醒門檻的預算狀態訊息
+     *
+     * @param month 年月
+     * @return 狀態訊息列表
+     */
+    public synchronized List<String> getWarnings(YearMonth month) {
+        List<String> lines = new ArrayList<>();
+        for (String category : getBudgetCategories()) {
+            BigDecimal limit = getLimit(category, month);
+            if (limit == null || limit.signum() <= 0) continue;
+            BigDecimal spent = getSpent(category, month);
+            if (spent.compareTo(limit) > 0) {
+                lines.add(String.format("%s 已超支 %s 元（%s / %s 元）", category,
+                    spent.subtract(limit).toPlainString(), spent.toPlainString(), limit.toPlainString()));
+            } else if (spent.compareTo(limit.multiply(THRESHOLDS[0])) >= 0) {
+                lines.add(String.format("%s 已使用 %s%%，剩餘 %s 元", category,
+                    percent(spent, limit), limit.subtract(spent).toPlainString()));
+            }
+        }
+        return lines;
+    }
+
+    private static String percent(BigDecimal spent, BigDecimal limit) {
+        return spent.multiply(BigDecimal.valueOf(100)).divide(limit, 0, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    public synchronized void saveBudgets() {
+        List<Object> snapshot = List.of(new LinkedHashMap<>(monthlyLimits), new LinkedHashMap<>(monthOverrides),
+            new HashMap<>(renamed));
+        try {
+            AtomicFile.write(BUDGET_FILE, out -> {
+                ObjectOutputStream oos = new ObjectOutputStream(out);
+                oos.writeObject(snapshot);
+                oos.flush();
+            });
+        } catch (IOException e) {
+            System.err.println("預算資料儲存失敗: " + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized void loadBudgets() {
+        if (!AtomicFile.exists(BUDGET_FILE)) return;
+        try {
+            Object obj = AtomicFile.read(BUDGET_FILE, in -> new ObjectInputStream(in).readObject());
+            // 舊版存檔只有預算兩項，沒有改名對照
+            if (obj instanceof List<?> list && (list.size() == 2 || list.size() == 3)) {
+                monthlyLimits.clear();
+                monthOverrides.clear();
+                renamed.clear();
+                monthlyLimits.putAll((Map<String, BigDecimal>) list.get(0));
+                monthOverrides.putAll((Map<String, LinkedHashMap<String, BigDecimal>>) list.get(1));
+                if (list.size() == 3) renamed.putAll((Map<String, String>) list.get(2));
+            }
+        } catch (Exception e) {
+            System.err.println("預算資料載入失敗: " + e.getMessage());
+        }
+    }
+}
@@ -15,14 +15,19 @@ import java.util.List; // <--- 匯入 List
  * 支出分類採用兩層結構（主分類和子分類）
  */
 public class CategoryManager {
-    // 定義檔案名稱常數
-    private static final String CATEGORIES_FILE = "categories.ser"; // <--- 檔案名稱
+    // 持久化儲存（預設為目前目錄的 categories.ser）
+    private static volatile LedgerStore store = SerializedFileStore.getDefault();
 
     // --- 分類結構維持 static ---
     private static final LinkedHashMap<Integer, String> INCOME_CATEGORIES = new LinkedHashMap<>();
     private static final LinkedHashMap<Integer, String> EXPENSE_MAIN_CATEGORIES = new LinkedHashMap<>();
     private static final LinkedHashMap<String, LinkedHashMap<Integer, String>> EXPENSE_SUB_CATEGORIES = new LinkedHashMap<>();
     private Map<Integer, String> incomeCategories = new LinkedHashMap<>();
+    // 收入分類在變更事件中的範圍名稱
+    private static final String INCOME_SCOPE = "收入";
+    // 執行期指標（存檔、載入耗時）
+    private static final LedgerMetrics.Timer SAVE_TIMER = LedgerMetrics.getDefault().timer("categories.save");
+    private static final LedgerMetrics.Timer LOAD_TIMER = LedgerMetrics.getDefault().timer("categories.load");
 
 
 
@@ -97,7 +102,8 @@ public class CategoryManager {
     public void addIncomeCategory(String newCategory) {
         int newKey = INCOME_CATEGORIES.isEmpty() ? 1 : Collections.max(INCOME_CATEGORIES.keySet()) + 1;
         INCOME_CATEGORIES.put(newKey, newCategory);
-        saveCategories(CATEGORIES_FILE); // <--- 新增後儲存
+        publish(LedgerChange.Kind.CATEGORY_ADD, INCOME_SCOPE, null, newCategory);
+        saveCategories(); // <--- 新增後儲存
     }
 
     /**
@@ -112,7 +118,8 @@ public class CategoryManager {
         LinkedHashMap<Integer, String> defaultSub = new LinkedHashMap<>();
         defaultSub.put(1, newCategory); // 使用 newCategory 作為預設子分類名稱
         EXPENSE_SUB_CATEGORIES.put(newCategory, defaultSub);
-        saveCategories(CATEGORIES_FILE); // <--- 新增後儲存
+        publish(LedgerChange.Kind.CATEGORY_ADD, null, null, newCategory);
+        saveCategories(); // <--- 新增後儲存
     }
 
 
@@ -127,7 +134,8 @@ public class CategoryManager {
         if (subMap != null) { // 確保主分類存在
             int newKey = subMap.isEmpty() ? 1 : Collections.max(subMap.keySet()) + 1;
             subMap.put(newKey, newSubCategory);
-            saveCategories(CATEGORIES_FILE); // <--- 新增後儲存
+            publish(LedgerChange.Kind.CATEGORY_ADD, mainCategory, null, newSubCategory);
+            saveCategories(); // <--- 新增後儲存
         } else {
             System.out.println("錯誤：找不到主分類 " + mainCategory);
         }
@@ -139,9 +147,12 @@ public class CategoryManager {
      * @param key 要刪除的收入分類 ID
      */
     public void removeIncomeCategory(int key) {
-        INCOME_CATEGORIES.remove(key);
+        String removed = INCOME_CATEGORIES.remove(key);
         reindexCategories(INCOME_CATEGORIES);
-        saveCategories(CATEGORIES_FILE); // <--- 刪除後儲存
+        if (removed != null) {
+            publish(LedgerChange.Kind.CATEGORY_DELETE, INCOME_SCOPE, removed, null);
+        }
+        saveCategories(); // <--- 刪除後儲存
     }
 
     /**
@@ -153,10 +164,13 @@ public class CategoryManager {
     public void removeExpenseSubCategory(String mainCategory, int subKey) {
         LinkedHashMap<Integer, String> subMap = EXPENSE_SUB_CATEGORIES.get(mainCategory);
         if (subMap != null) { // 確保主分類存在
-            subMap.remove(subKey);
+            String removed = subMap.remove(subKey);
             reindexCategories(subMap);
+            if (removed != null) {
+                publish(LedgerChange.Kind.CATEGORY_DELETE, mainCategory, removed, null);
+            }
             // 如果主分類下沒有子分類了，可以考慮是否要移除主分類（這裡暫不處理）
-            saveCategories(CATEGORIES_FILE); // <--- 刪除後儲存
+            saveCategories(); // <--- 刪除後儲存
         } else {
              System.out.println("錯誤：找不到主分類 " + mainCategory);
         }
@@ -177,6 +191,21 @@ public class CategoryManager {
         map.putAll(temp);
     }
 
+    /**
+     * 發布分類變更到預設變更串流
+     *
+     * @param kind 變更種類
+     * @param scope 分類範圍（"收入"、支出主分類名稱，新增主分類時為 null）
+     * @param oldName 舊名稱
+     * @param newName 新名稱
+     */
+    private static void publish(LedgerChange.Kind kind, String scope, String oldName, String newName) {
+        LedgerEvents.CategoryOperation event = new LedgerEvents.CategoryOperation();
+        event.begin();
+        LedgerChangeStream.getDefault().publish(LedgerChange.ofCategory(kind, scope, oldName, newName));
+        event.finish(kind.name(), newName != null ? newName : oldName, true);
+    }
+
     // --- 以下 Getters 維持不變，但確保返回副本 ---
 
     public Map<Integer, String> getIncomeCategories() {
@@ -208,18 +237,32 @@ public class CategoryManager {
      * @return 如果有效返回 true，否則返回 false
      */
     public boolean isValidCategory(TransactionType type, String category) {
+        LedgerEvents.CategoryOperation event = new LedgerEvents.CategoryOperation();
+        event.begin();
+        boolean valid;
         switch (type) {
             case 收入:
-                return INCOME_CATEGORIES.containsValue(category);
+                valid = INCOME_CATEGORIES.containsValue(category);
+                break;
             case 支出:
-                // 先檢查主分類
-                if (EXPENSE_MAIN_CATEGORIES.containsValue(category)) return true;
-                // 再檢查所有子分類
-                return EXPENSE_SUB_CATEGORIES.values().stream()
-                    .anyMatch(subMap -> subMap.containsValue(category));
+                // 先檢查主分類，再檢查所有子分類
+                valid = EXPENSE_MAIN_CATEGORIES.containsValue(category)
+                    || EXPENSE_SUB_CATEGORIES.values().stream().anyMatch(subMap -> subMap.containsValue(category));
+                break;
             default:
-                return false;
+                valid = false;
         }
+        event.finish("validate", category, valid);
+        return valid;
+    }
+
+    // 所有分類的數量（收入、主分類與子分類）
+    private static int categoryCount() {
+        int count = INCOME_CATEGORIES.size() + EXPENSE_MAIN_CATEGORIES.size();
+        for (Map<Integer, String> subs : EXPENSE_SUB_CATEGORIES.values()) {
+            count += subs.size();
+        }
+        return count;
     }
 
     /**
@@ -252,6 +295,21 @@ public class CategoryManager {
         return EXPENSE_MAIN_CATEGORIES.containsValue(category);
     }
 
+    /**
+     * 取得支出子分類所屬的主分類
+     *
+     * @param subCategory 子分類名稱
+     * @return 主分類名稱，若不是任何主分類下的子分類則返回 null
+     */
+    public String getMainCategoryOf(String subCategory) {
+        for (Map.Entry<String, LinkedHashMap<Integer, String>> entry : EXPENSE_SUB_CATEGORIES.entrySet()) {
+            if (entry.getValue().containsValue(subCategory)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
     /**
      * 檢查指定類型和分類是否有子分類
      *
@@ -272,80 +330,135 @@ public class CategoryManager {
 
     
 
+    /**
+     * 設定持久化儲存（之後的 saveCategories()、loadCategories() 經由此儲存）
+     *
+     * @param ledgerStore 儲存
+     */
+    public static void setStore(LedgerStore ledgerStore) {
+        store = ledgerStore;
+    }
+
+    // 目前的靜態分類資料（複本）
+    private static LedgerStore.CategoryData snapshot() {
+        LinkedHashMap<String, LinkedHashMap<Integer, String>> sub = new LinkedHashMap<>();
+        EXPENSE_SUB_CATEGORIES.forEach((main, children) -> sub.put(main, new LinkedHashMap<>(children)));
+        return new LedgerStore.CategoryData(new LinkedHashMap<>(INCOME_CATEGORIES),
+            new LinkedHashMap<>(EXPENSE_MAIN_CATEGORIES), sub);
+    }
+
+    // 寫入分類資料的動作
+    @FunctionalInterface
+    private interface CategoryWriter {
+        void write(LedgerStore.CategoryData data) throws IOException;
+    }
+
+    // 讀取分類資料的動作
+    @FunctionalInterface
+    private interface CategoryReader {
+        LedgerStore.CategoryData read() throws IOException;
+    }
+
+    /**
+     * 將目前的靜態分類資料寫入目前的儲存
+     */
+    public static void saveCategories() {
+        LedgerStore target = store;
+        save(target.describe("categories"), target::saveCategories);
+    }
+
     /**
      * 將目前的靜態分類資料儲存到檔案
      *
      * @param filename 檔案路徑
      */
     public static void saveCategories(String filename) {
-        // 將三個 Map 打包到一個 List 中以便序列化
-        List<Object> categoryData = List.of(
-                new LinkedHashMap<>(INCOME_CATEGORIES),
-                new LinkedHashMap<>(EXPENSE_MAIN_CATEGORIES),
-                new LinkedHashMap<>(EXPENSE_SUB_CATEGORIES)
-        );
-
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename))) {
-            oos.writeObject(categoryData);
-            // System.out.println("分類資料已儲存到 " + filename); // 可選：儲存成功提示
+        save(filename, data -> SerializedFileStore.writeCategories(filename, data));
+    }
+
+    private static void save(String target, CategoryWriter writer) {
+        LedgerStore.CategoryData categoryData = snapshot();
+        long start = SAVE_TIMER.start();
+        LedgerEvents.Persistence event = new LedgerEvents.Persistence();
+        event.begin();
+        try {
+            writer.write(categoryData);
+            // System.out.println("分類資料已儲存到 " + target); // 可選：儲存成功提示
         } catch (IOException e) {
             System.err.println("儲存分類資料時發生錯誤: " + e.getMessage());
             e.printStackTrace(); // 顯示詳細錯誤
+        } finally {
+            SAVE_TIMER.stop(start);
+            event.finish("categories", "save", target, categoryCount());
         }
     }
 
+    /**
+     * 從目前的儲存載入分類資料到靜態變數中
+     * 如果沒有存檔或載入失敗，則初始化預設分類
+     */
+    public static void loadCategories() {
+        LedgerStore source = store;
+        load(source.describe("categories"), source::loadCategories, CategoryManager::saveCategories);
+    }
+
     /**
      * 從檔案載入分類資料到靜態變數中
-     * 如果檔案不存在或載入失敗，則初始化預設分類
+     * 正式檔案損毀時改讀上一版存檔；如果檔案不存在或所有版本都無法載入，則初始化預設分類
      *
      * @param filename 檔案路徑
      */
-    @SuppressWarnings("unchecked") // 抑制讀取 Object 時的類型轉換警告
     public static void loadCategories(String filename) {
-        File file = new File(filename);
-        if (!file.exists()) {
-            System.out.println("找不到分類存檔，將初始化預設分類...");
-            initDefaultCategories();
-            saveCategories(filename); // 順便保存一次預設分類
-            return;
-        }
+        load(filename, () -> SerializedFileStore.readCategories(filename), () -> saveCategories(filename));
+    }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename))) {
-            Object loadedObject = ois.readObject();
-            if (loadedObject instanceof List<?> loadedList && loadedList.size() == 3) {
-                // 清空目前的靜態 Map
-                INCOME_CATEGORIES.clear();
-                EXPENSE_MAIN_CATEGORIES.clear();
-                EXPENSE_SUB_CATEGORIES.clear();
-
-                // 載入資料，需要類型轉換
-                INCOME_CATEGORIES.putAll((LinkedHashMap<Integer, String>) loadedList.get(0));
-                EXPENSE_MAIN_CATEGORIES.putAll((LinkedHashMap<Integer, String>) loadedList.get(1));
-                EXPENSE_SUB_CATEGORIES.putAll((LinkedHashMap<String, LinkedHashMap<Integer, String>>) loadedList.get(2));
-
-                System.out.println("分類資料已從 " + filename + " 載入。");
-            } else {
-                 System.err.println("分類檔案格式錯誤，將初始化預設分類...");
-                 initDefaultCategories();
-                 saveCategories(filename); // 覆蓋錯誤的檔案
+    private static void load(String source, CategoryReader reader, Runnable resave) {
+        long start = LOAD_TIMER.start();
+        LedgerEvents.Persistence event = new LedgerEvents.Persistence();
+        event.begin();
+        try {
+            LedgerStore.CategoryData loaded = reader.read();
+            if (loaded == null) {
+                System.out.println("找不到分類存檔，將初始化預設分類...");
+                initDefaultCategories();
+                resave.run(); // 順便保存一次預設分類
+                return;
             }
-        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // 清空目前的靜態 Map
+            INCOME_CATEGORIES.clear();
+            EXPENSE_MAIN_CATEGORIES.clear();
+            EXPENSE_SUB_CATEGORIES.clear();
+
+            // 載入資料
+            INCOME_CATEGORIES.putAll(loaded.income());
+            EXPENSE_MAIN_CATEGORIES.putAll(loaded.expenseMain());
+            EXPENSE_SUB_CATEGORIES.putAll(loaded.expenseSub());
+
+            System.out.println("分類資料已從 " + source + " 載入。");
+        } catch (IOException | ClassCastException e) {
             System.err.println("讀取分類資料時發生錯誤: " + e.getMessage() + "，將初始化預設分類...");
             e.printStackTrace(); // 顯示詳細錯誤
             initDefaultCategories();
-            saveCategories(filename); // 覆蓋可能有問題的檔案
+            resave.run(); // 覆蓋可能有問題的檔案
+        } finally {
+            LOAD_TIMER.stop(start);
+            event.finish("categories", "load", source, categoryCount());
         }
     }
     public void editIncomeCategory(int index, String newName) {
-    	INCOME_CATEGORIES.put(index, newName);
-    	saveCategories(CATEGORIES_FILE);
+    	String oldName = INCOME_CATEGORIES.put(index, newName);
+    	publish(oldName == null ? LedgerChange.Kind.CATEGORY_ADD : LedgerChange.Kind.CATEGORY_RENAME,
+    	        INCOME_SCOPE, oldName, newName);
+    	saveCategories();
     }
 
     public void editExpenseSubCategory(String mainCategory, int index, String newName) {
         Map<Integer, String> subCategories = EXPENSE_SUB_CATEGORIES.get(mainCategory);
         if (subCategories != null) {
-            subCategories.put(index, newName);
-            saveCategories(CATEGORIES_FILE); // 加上儲存功能
+            String oldName = subCategories.put(index, newName);
+            publish(oldName == null ? LedgerChange.Kind.CATEGORY_ADD : LedgerChange.Kind.CATEGORY_RENAME,
+                    mainCategory, oldName, newName);
+            saveCategories(); // 加上儲存功能
         } else {
             System.out.println("錯誤：找不到主分類 " + mainCategory);
         }
@@ -0,0 +1,133 @@
+// ChangeLogReader.java - 變更紀錄檔讀取器
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 變更紀錄檔讀取器
+ * -------------
+ * 讀取 ChangeLogWriter 產生的 JSON lines 變更紀錄
+ * 下游工具以編號（offset）記住讀取進度，每次從 offset 之後繼續讀取，
+ * 不需要重新讀取整個 expenses.ser
+ * 也可直接執行：java ChangeLogReader [目錄] [起始編號] [--follow]
+ */
+public class ChangeLogReader {
+    // 檔名前綴與副檔名
+    private static final String PREFIX = "changes-";
+    private static final String SUFFIX = ".jsonl";
+
+    // 紀錄檔目錄
+    private final Path directory;
+
+    /**
+     * 建構子：指定紀錄檔目錄
+     *
+     * @param directory 紀錄檔目錄
+     */
+    public ChangeLogReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 讀取編號大於等於 offset 的變更，最多 maxCount 筆
+     * 依檔名（檔內第一筆編號）直接定位到起始檔案，不掃描更早的檔案
+     *
+     * @param offset 起始編號（含）
+     * @param maxCount 最多讀取筆數
+     * @return 依編號排序的變更列表
+     * @throws IOException 若讀取失敗
+     */
+    public List<LedgerChange> readFrom(long offset, int maxCount) throws IOException {
+        List<LedgerChange> result = new ArrayList<>();
+        List<Path> files = listLogFiles(directory);
+        int start = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if (firstSequenceOf(files.get(i)) <= offset) {
+                start = i;
+            }
+        }
+        for (int i = start; i < files.size() && result.size() < maxCount; i++) {
+            try (BufferedReader reader = Files.newBufferedReader(files.get(i), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null && result.size() < maxCount) {
+                    if (line.isBlank()) continue;
+                    LedgerChange change;
+                    try {
+                        change = LedgerChange.fromJson(line);
+                    } catch (IllegalArgumentException e) {
+                        break; // 寫入中的最後一行可能不完整，下次再讀
+                    }
+                    if (change.getSequence() >= offset) {
+                        result.add(change);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 列出目錄中的變更紀錄檔（依第一筆編號排序）
+     *
+     * @param directory 紀錄檔目錄
+     * @return 檔案列表
+     * @throws IOException 若讀取目錄失敗
+     */
+    static List<Path> listLogFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort((a, b) -> Long.compare(firstSequenceOf(a), firstSequenceOf(b)));
+        return files;
+    }
+
+    /**
+     * 取得以指定編號開頭的紀錄檔名稱
+     *
+     * @param firstSequence 檔內第一筆編號
+     * @return 檔名
+     */
+    static String fileNameFor(long firstSequence) {
+        return String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX);
+    }
+
+    private static long firstSequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * 命令列工具：從指定編號開始輸出變更，--follow 時持續等待新變更
+     *
+     * @param args [目錄] [起始編號] [--follow]
+     * @throws Exception 若讀取失敗或被中斷
+     */
+    public static void main(String[] args) throws Exception {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "changelog");
+        long offset = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        boolean follow = args.length > 2 && args[2].equals("--follow");
+        ChangeLogReader reader = new ChangeLogReader(dir);
+        while (true) {
+            List<LedgerChange> changes = reader.readFrom(offset, 1000);
+            for (LedgerChange change : changes) {
+                System.out.println(change.toJson());
+                offset = change.getSequence() + 1;
+            }
+            if (changes.isEmpty()) {
+                if (!follow) return;
+                Thread.sleep(1000);
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+// ChangeLogWriter.java - 變更紀錄檔寫入器
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 變更紀錄檔寫入器
+ * -------------
+ * 以 Flow 訂閱者的身分接收 LedgerChangeStream 的變更，
+ * 依序寫成本機的 JSON lines 檔案（每行一筆事件）
+ * 檔案名稱以該檔第一筆事件的編號命名（changes-00000000000000000001.jsonl），
+ * 超過大小上限時換新檔，並只保留最近的若干個檔案
+ * 下游可用 ChangeLogReader 從任意編號（offset）開始讀取
+ *
+ * 每筆事件寫出後 flush，讓 tail 的讀取端立即看得到；換檔與關閉時把檔案內容同步到磁碟
+ * 寫入失敗時停止訂閱並標記為失敗，不再寫入之後的事件，避免紀錄中出現無聲的編號缺口；
+ * 失敗時執行 onFailure 設定的動作（例如要求下次存檔改存整本快照）
+ */
+public class ChangeLogWriter implements Flow.Subscriber<LedgerChange> {
+    // 預設單檔大小上限（位元組）
+    public static final long DEFAULT_MAX_FILE_BYTES = 4L * 1024 * 1024;
+    // 預設保留檔案數
+    public static final int DEFAULT_MAX_FILES = 16;
+    // 每次向發布者請求的事件數
+    private static final int REQUEST_BATCH = 64;
+
+    // 紀錄檔目錄
+    private final Path directory;
+    // 單檔大小上限
+    private final long maxFileBytes;
+    // 保留檔案數
+    private final int maxFiles;
+    // 目前檔案已寫入的位元組數
+    private long currentBytes;
+    // 目前寫入中的檔案（writer 寫入 channel，channel 用來同步到磁碟）
+    private BufferedWriter writer;
+    private FileChannel channel;
+    // 寫入是否已失敗（失敗後不再寫入任何事件）
+    private volatile boolean failed;
+    // 寫入失敗時執行的動作（在串流的傳遞執行緒上執行，不可等待其他鎖）
+    private volatile Runnable onFailure;
+    // 已寫入的最後編號
+    private volatile long lastSequence;
+    // 訂閱
+    private Flow.Subscription subscription;
+    // 本批尚未處理的請求數
+    private int outstanding;
+    // 訂閱結束的通知
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private ChangeLogWriter(Path directory, long maxFileBytes, int maxFiles, long lastSequence) {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.lastSequence = lastSequence;
+    }
+
+    /**
+     * 以預設大小上限與保留數開啟變更紀錄目錄
+     *
+     * @param directory 紀錄檔目錄（不存在時會建立）
+     * @return 寫入器
+     * @throws IOException 若目錄無法建立或讀取
+     */
+    public static ChangeLogWriter open(Path directory) throws IOException {
+        return open(directory, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    /**
+     * 開啟變更紀錄目錄，並找出既有紀錄的最後編號以便接續
+     *
+     * @param directory 紀錄檔目錄（不存在時會建立）
+     * @param maxFileBytes 單檔大小上限
+     * @param maxFiles 保留檔案數
+     * @return 寫入器
+     * @throws IOException 若目錄無法建立或讀取
+     */
+    public static ChangeLogWriter open(Path directory, long maxFileBytes, int maxFiles) throws IOException {
+        Files.createDirectories(directory);
+        long last = 0;
+        List<Path> files = ChangeLogReader.listLogFiles(directory);
+        if (!files.isEmpty()) {
+            for (String line : Files.readAllLines(files.get(files.size() - 1), StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    try {
+                        last = Math.max(last, LedgerChange.fromJson(line).getSequence());
+                    } catch (IllegalArgumentException e) {
+                        // 最後一行可能因當機而不完整，略過
+                    }
+                }
+            }
+        }
+        return new ChangeLogWriter(directory, maxFileBytes, maxFiles, last);
+    }
+
+    /**
+     * 取得已寫入的最後編號
+     *
+     * @return 最後編號（沒有任何紀錄則為 0）
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * 寫入是否已失敗（失敗後紀錄停在失敗前的最後一筆）
+     *
+     * @return 已失敗返回 true
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * 設定寫入失敗時執行的動作
+     *
+     * @param action 動作（在串流的傳遞執行緒上執行）
+     */
+    public void setOnFailure(Runnable action) {
+        this.onFailure = action;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        outstanding = REQUEST_BATCH;
+        subscription.request(REQUEST_BATCH);
+    }
+
+    @Override
+    public void onNext(LedgerChange change) {
+        if (failed) return; // 取消訂閱前已送出的事件
+        // 重播或重複的事件不再寫入，保持檔案內編號嚴格遞增
+        if (change.getSequence() > lastSequence) {
+            try {
+                write(change);
+                lastSequence = change.getSequence();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+        }
+        // 處理完半批就補請求，讓發布者的緩衝保持流動
+        if (--outstanding <= REQUEST_BATCH / 2) {
+            subscription.request(REQUEST_BATCH - outstanding);
+            outstanding = REQUEST_BATCH;
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        System.err.println("變更串流發生錯誤: " + throwable.getMessage());
+        closeQuietly();
+    }
+
+    @Override
+    public void onComplete() {
+        closeQuietly();
+    }
+
+    /**
+     * 等待串流結束且檔案關閉
+     *
+     * @param timeout 最長等待時間
+     * @return 如果在時間內結束返回 true
+     */
+    public boolean awaitTermination(Duration timeout) {
+        try {
+            return terminated.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // 寫入失敗：停止訂閱並關閉檔案，之後的事件都不寫入（紀錄停在最後一筆成功的事件）
+    private void fail(IOException cause) {
+        failed = true;
+        System.err.println("寫入變更紀錄時發生錯誤，停止記錄（編號 " + (lastSequence + 1)
+            + " 之後的變更只存在存檔中）: " + cause.getMessage());
+        subscription.cancel();
+        closeQuietly();
+        Runnable action = onFailure;
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    private void write(LedgerChange change) throws IOException {
+        String line = change.toJson();
+        int length = line.getBytes(StandardCharsets.UTF_8).length + 1;
+        if (writer == null || currentBytes + length > maxFileBytes) {
+            rotate(change.getSequence());
+        }
+        writer.write(line);
+        writer.write('\n');
+        writer.flush(); // 每筆寫出，讓 tail 的讀取端立即看得到
+        currentBytes += length;
+    }
+
+    // 換新檔並刪除超過保留數的舊檔
+    private void rotate(long firstSequence) throws IOException {
+        if (writer != null) {
+            syncAndClose();
+        }
+        Path file = directory.resolve(ChangeLogReader.fileNameFor(firstSequence));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+        currentBytes = channel.size();
+
+        List<Path> files = ChangeLogReader.listLogFiles(directory);
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    // 寫出緩衝、同步到磁碟後關閉目前檔案
+    private void syncAndClose() throws IOException {
+        try {
+            writer.flush();
+            channel.force(false);
+        } finally {
+            writer.close();
+            writer = null;
+            channel = null;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            if (writer != null) {
+                syncAndClose();
+            }
+        } catch (IOException e) {
+            System.err.println("關閉變更紀錄時發生錯誤: " + e.getMessage());
+        } finally {
+            terminated.countDown();
+        }
+    }
+}
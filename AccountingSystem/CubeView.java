@@ -0,0 +1,221 @@
+// CubeView.java - 交叉分析報表檢視
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 交叉分析報表檢視
+ * -------------
+ * 在 LedgerCube 之上提供可上捲（roll-up）與下鑽（drill-down）的交叉表：
+ * 列為目前的分析維度（類型 → 主分類 → 子分類），欄為期間（月、季或年），最後一欄為合計
+ * 下鑽會把所選列的值加入篩選條件並展開下一層維度，上捲則回到前一個狀態
+ * 報表可輸出到主控台或匯出為 CSV（UTF-8 含 BOM，與記帳記錄匯出格式一致）
+ */
+public class CubeView {
+    // 列維度的展開順序
+    private static final List<LedgerCube.Dimension> DRILL_PATH = List.of(
+        LedgerCube.Dimension.TYPE, LedgerCube.Dimension.MAIN_CATEGORY, LedgerCube.Dimension.SUB_CATEGORY);
+
+    // 彙總資料來源
+    private final LedgerCube cube;
+    // 目前的列維度
+    private LedgerCube.Dimension rowDimension = LedgerCube.Dimension.TYPE;
+    // 目前的篩選條件
+    private Map<LedgerCube.Dimension, String> filters = new LinkedHashMap<>();
+    // 期間粒度
+    private LedgerCube.Granularity granularity;
+    // 上捲用的歷史狀態
+    private final Deque<State> history = new ArrayDeque<>();
+
+    // 可還原的檢視狀態
+    private record State(LedgerCube.Dimension rowDimension, Map<LedgerCube.Dimension, String> filters) {
+    }
+
+    /**
+     * 交叉表：列標籤、欄標籤（期間）與各格金額
+     */
+    public record Table(List<String> rowLabels, List<String> columnLabels, BigDecimal[][] values, BigDecimal[] rowTotals) {
+    }
+
+    /**
+     * 建構子：從「類型 × 期間」開始
+     *
+     * @param cube 彙總資料來源
+     * @param granularity 期間粒度
+     */
+    public CubeView(LedgerCube cube, LedgerCube.Granularity granularity) {
+        this.cube = cube;
+        this.granularity = granularity;
+    }
+
+    /**
+     * 是否還能往下鑽
+     *
+     * @return 如果目前不是最細的維度返回 true
+     */
+    public boolean canDrillDown() {
+        return DRILL_PATH.indexOf(rowDimension) < DRILL_PATH.size() - 1;
+    }
+
+    /**
+     * 是否能上捲
+     *
+     * @return 如果有上一層狀態返回 true
+     */
+    public boolean canRollUp() {
+        return !history.isEmpty();
+    }
+
+    /**
+     * 下鑽：以指定列的值為篩選條件，展開下一層維度
+     *
+     * @param rowLabel 列標籤
+     */
+    public void drillDown(String rowLabel) {
+        if (!canDrillDown()) return;
+        history.push(new State(rowDimension, new LinkedHashMap<>(filters)));
+        filters.put(rowDimension, rowLabel);
+        rowDimension = DRILL_PATH.get(DRILL_PATH.indexOf(rowDimension) + 1);
+    }
+
+    /**
+     * 上捲：回到前一層
+     */
+    public void rollUp() {
+        if (history.isEmpty()) return;
+        State state = history.pop();
+        rowDimension = state.rowDimension();
+        filters = state.filters();
+    }
+
+    /**
+     * 切換期間粒度（保留目前的列維度與篩選）
+     *
+     * @param granularity 期間粒度
+     */
+    public void setGranularity(LedgerCube.Granularity granularity) {
+        this.granularity = granularity;
+    }
+
+    public LedgerCube.Granularity getGranularity() {
+        return granularity;
+    }
+
+    public LedgerCube.Dimension getRowDimension() {
+        return rowDimension;
+    }
+
+    /**
+     * 取得目前的篩選路徑描述（例如「支出 > 生活日常」）
+     *
+     * @return 篩選路徑，沒有篩選時為「全部」
+     */
+    public String getPath() {
+        return filters.isEmpty() ? "全部" : String.join(" > ", filters.values());
+    }
+
+    /**
+     * 依目前狀態計算交叉表
+     *
+     * @return 交叉表
+     */
+    public Table table() {
+        List<LedgerCube.Row> rows = cube.query(
+            List.of(rowDimension, LedgerCube.Dimension.PERIOD), filters, granularity);
+        TreeSet<String> rowSet = new TreeSet<>();
+        TreeSet<String> columnSet = new TreeSet<>();
+        for (LedgerCube.Row row : rows) {
+            rowSet.add(row.labels().get(0));
+            columnSet.add(row.labels().get(1));
+        }
+        List<String> rowLabels = new ArrayList<>(rowSet);
+        List<String> columnLabels = new ArrayList<>(columnSet);
+        Map<String, Integer> rowIndex = indexOf(rowLabels);
+        Map<String, Integer> columnIndex = indexOf(columnLabels);
+        BigDecimal[][] values = new BigDecimal[rowLabels.size()][columnLabels.size()];
+        BigDecimal[] totals = new BigDecimal[rowLabels.size()];
+        Arrays.fill(totals, BigDecimal.ZERO);
+        for (LedgerCube.Row row : rows) {
+            int r = rowIndex.get(row.labels().get(0));
+            values[r][columnIndex.get(row.labels().get(1))] = row.sum();
+            totals[r] = totals[r].add(row.sum());
+        }
+        return new Table(rowLabels, columnLabels, values, totals);
+    }
+
+    private static Map<String, Integer> indexOf(List<String> labels) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < labels.size(); i++) {
+            index.put(labels.get(i), i);
+        }
+        return index;
+    }
+
+    /**
+     * 將交叉表輸出為文字（列前附編號，供下鑽選擇）
+     *
+     * @param table 交叉表
+     * @return 文字報表
+     */
+    public String render(Table table) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-4s %-16s", "#", rowDimension.getLabel()));
+        for (String column : table.columnLabels()) {
+            sb.append(String.format(" | %12s", column));
+        }
+        sb.append(String.format(" | %14s%n", "合計"));
+        for (int r = 0; r < table.rowLabels().size(); r++) {
+            sb.append(String.format("%-4d %-16s", r + 1, table.rowLabels().get(r)));
+            for (BigDecimal value : table.values()[r]) {
+                sb.append(String.format(" | %12s", value == null ? "-" : value.toPlainString()));
+            }
+            sb.append(String.format(" | %14s%n", table.rowTotals()[r].toPlainString()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 將交叉表匯出為 CSV 檔
+     *
+     * @param table 交叉表
+     * @param filename 檔案名稱
+     */
+    public void exportToCSV(Table table, String filename) {
+        File file = new File(filename);
+        try (OutputStream fos = new FileOutputStream(file);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            // 手動寫入 BOM，讓 Excel 正確辨識 UTF-8
+            fos.write(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+            List<String> header = new ArrayList<>();
+            header.add(rowDimension.getLabel());
+            header.addAll(table.columnLabels());
+            header.add("合計");
+            writer.write(toCsvLine(header));
+            writer.newLine();
+            for (int r = 0; r < table.rowLabels().size(); r++) {
+                List<String> line = new ArrayList<>();
+                line.add(table.rowLabels().get(r));
+                for (BigDecimal value : table.values()[r]) {
+                    line.add(value == null ? "0" : value.toPlainString());
+                }
+                line.add(table.rowTotals()[r].toPlainString());
+                writer.write(toCsvLine(line));
+                writer.newLine();
+            }
+            System.out.println("報表已匯出至: " + file.getAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("匯出報表時發生錯誤: " + e.getMessage());
+        }
+    }
+
+    private static String toCsvLine(List<String> fields) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (String field : fields) {
+            String escaped = field.replace("\"", "\"\"");
+            joiner.add(field.contains(",") || field.contains("\"") || field.contains("\n") ? "\"" + escaped + "\"" : escaped);
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,335 @@
+// DateIndexedLedger.java - 以磁碟 B+ 樹依日期索引的帳本檔
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * 以磁碟 B+ 樹依日期索引的帳本檔
+ * -------------------------
+ * 目錄中有兩個檔案：ledger.dat 依序附加每筆記錄（ExpenseCodec 編碼，前置長度），
+ * ledger.idx 為以（日期, 編號）為鍵、記錄位置為值的 BPlusTreeFile
+ * 月份、年份或任意日期區間的查詢只讀取樹上相關的頁與區間內的記錄，不需要先把整個帳本載入記憶體，
+ * 因此多年的帳本也能直接開檔查詢（見 main）
+ * 作為 LedgerListener 時同步寫入每筆變更：新增附加記錄並插入索引，刪除只移除索引，
+ * 失效的記錄超過一半時整理資料檔
+ * 檔頭保存帳本內容的指紋（各記錄雜湊的總和，可隨增刪遞增維護），載入帳本時與記憶體內容比對，不一致才重建
+ */
+public class DateIndexedLedger implements LedgerListener, AutoCloseable {
+    private static final String DATA_FILE = "ledger.dat";
+    private static final String INDEX_FILE = "ledger.idx";
+    // 資料檔檔頭（"LDAT" + 版本）
+    private static final int DATA_MAGIC = 0x4C444154;
+    private static final int DATA_HEADER = 8;
+    // 索引檔中繼資料欄位
+    private static final int META_DATA_END = 0;
+    private static final int META_FINGERPRINT = 1;
+    private static final int META_LIVE_BYTES = 2;
+    private static final int META_STATE = 3;
+    // 索引狀態：重建中（中斷後不可使用）與完成
+    private static final long STATE_REBUILDING = 1;
+    private static final long STATE_READY = 2;
+    // 頁快取大小（頁數）
+    private static final int CACHE_PAGES = 256;
+
+    private final Path dir;
+    private final ExpenseManager expenseManager;
+    private BPlusTreeFile tree;
+    private FileChannel data;
+    // 記錄編碼緩衝
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+    /**
+     * 只讀取用：直接開啟既有的索引帳本（不需要 ExpenseManager）
+     *
+     * @param dir 目錄
+     * @return 索引帳本
+     * @throws IOException 開啟失敗或索引未完成
+     */
+    public static DateIndexedLedger open(Path dir) throws IOException {
+        DateIndexedLedger ledger = new DateIndexedLedger(dir, null);
+        if (ledger.tree.getMeta(META_STATE) != STATE_READY) {
+            ledger.close();
+            throw new IOException("索引帳本尚未建立完成: " + dir);
+        }
+        return ledger;
+    }
+
+    /**
+     * 建構子：開啟索引帳本，與目前帳本比對（不一致時重建），並開始同步寫入變更
+     *
+     * @param dir 目錄
+     * @param expenseManager 記帳管理器
+     * @throws IOException 開啟失敗
+     */
+    public DateIndexedLedger(Path dir, ExpenseManager expenseManager) throws IOException {
+        this.dir = dir;
+        this.expenseManager = expenseManager;
+        Files.createDirectories(dir);
+        openFiles();
+        if (expenseManager != null) {
+            syncWith(expenseManager.getExpenses());
+            expenseManager.getChangeStream().addListener(this);
+        }
+    }
+
+    private void openFiles() throws IOException {
+        tree = new BPlusTreeFile(dir.resolve(INDEX_FILE), CACHE_PAGES);
+        data = FileChannel.open(dir.resolve(DATA_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (data.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER).putInt(DATA_MAGIC).putInt(1);
+            header.flip();
+            data.write(header, 0);
+            tree.setMeta(META_DATA_END, DATA_HEADER);
+        }
+        // 上次異常結束時資料檔可能多出未被索引的尾端，以索引記錄的長度為準
+        long end = Math.max(DATA_HEADER, tree.getMeta(META_DATA_END));
+        if (data.size() > end) {
+            data.truncate(end);
+        }
+    }
+
+    // 指紋與記憶體內容不一致（或上次重建中斷）時重建
+    private synchronized void syncWith(List<Expense> expenses) throws IOException {
+        long fingerprint = 0;
+        for (Expense e : expenses) {
+            fingerprint += fingerprintOf(e);
+        }
+        if (tree.getMeta(META_STATE) == STATE_READY
+            && tree.size() == expenses.size()
+            && tree.getMeta(META_FINGERPRINT) == fingerprint) {
+            return;
+        }
+        rebuild(expenses);
+    }
+
+    /**
+     * 以指定記錄重寫資料檔並由下而上重建索引
+     *
+     * @param expenses 記錄
+     * @throws IOException 寫入失敗
+     */
+    public synchronized void rebuild(Collection<Expense> expenses) throws IOException {
+        tree.setMeta(META_STATE, STATE_REBUILDING);
+        tree.sync();
+        List<Expense> sorted = new ArrayList<>(expenses);
+        sorted.sort(Comparator.comparing(LedgerKey::of));
+        List<LedgerKey> keys = new ArrayList<>(sorted.size());
+        long[] offsets = new long[sorted.size()];
+        long fingerprint = 0;
+        long position = DATA_HEADER;
+        data.close();
+        try (FileOutputStream fos = new FileOutputStream(dir.resolve(DATA_FILE).toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeInt(DATA_MAGIC);
+            out.writeInt(1);
+            for (int i = 0; i < sorted.size(); i++) {
+                Expense e = sorted.get(i);
+                LedgerKey key = LedgerKey.of(e);
+                if (i > 0 && key.equals(keys.get(i - 1))) {
+                    throw new IOException("記錄編號重複: " + e.getId());
+                }
+                byte[] record = encode(e);
+                out.write(record);
+                keys.add(key);
+                offsets[i] = position;
+                position += record.length;
+                fingerprint += fingerprintOf(e);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            data = FileChannel.open(dir.resolve(DATA_FILE), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        tree.setMeta(META_DATA_END, position);
+        tree.setMeta(META_LIVE_BYTES, position - DATA_HEADER);
+        tree.setMeta(META_FINGERPRINT, fingerprint);
+        tree.setMeta(META_STATE, STATE_READY);
+        tree.bulkLoad(keys, offsets);
+        tree.sync();
+    }
+
+    // --- 記錄讀寫 ---
+
+    // 長度前置的記錄
+    private byte[] encode(Expense e) throws IOException {
+        buffer.reset();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(0);
+        ExpenseCodec.write(out, e);
+        byte[] record = buffer.toByteArray();
+        ByteBuffer.wrap(record).putInt(record.length - 4);
+        return record;
+    }
+
+    private Expense readAt(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, offset);
+        ByteBuffer payload = ByteBuffer.allocate(length.flip().getInt());
+        readFully(payload, offset + 4);
+        return ExpenseCodec.read(new DataInputStream(new ByteArrayInputStream(payload.array())));
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (data.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("資料檔在位置 " + position + " 截斷");
+            }
+        }
+    }
+
+    private long append(Expense e) throws IOException {
+        byte[] record = encode(e);
+        long offset = tree.getMeta(META_DATA_END);
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        while (buf.hasRemaining()) {
+            data.write(buf, offset + buf.position());
+        }
+        tree.setMeta(META_DATA_END, offset + record.length);
+        tree.setMeta(META_LIVE_BYTES, tree.getMeta(META_LIVE_BYTES) + record.length);
+        return offset;
+    }
+
+    private long recordLength(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, offset);
+        return 4 + length.flip().getInt();
+    }
+
+    // --- 查詢 ---
+
+    /**
+     * 取得日期區間（皆含）內的記錄，依（日期, 編號）排序
+     *
+     * @param from 起始日期
+     * @param to 結束日期
+     * @return 記錄
+     * @throws IOException 讀取失敗
+     */
+    public synchronized List<Expense> range(LocalDate from, LocalDate to) throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        tree.range(LedgerKey.lowest(from), LedgerKey.highest(to), (key, offset) -> offsets.add(offset));
+        List<Expense> result = new ArrayList<>(offsets.size());
+        for (long offset : offsets) {
+            result.add(readAt(offset));
+        }
+        return result;
+    }
+
+    public List<Expense> byMonth(YearMonth month) throws IOException {
+        return range(month.atDay(1), month.atEndOfMonth());
+    }
+
+    public List<Expense> byYear(int year) throws IOException {
+        return range(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+    }
+
+    public synchronized long size() {
+        return tree.size();
+    }
+
+    /**
+     * 取得 B+ 樹從檔案讀入的頁數（量測查詢實際讀取了多少頁）
+     *
+     * @return 讀入頁數
+     */
+    public synchronized long getPageReads() {
+        return tree.getPageReads();
+    }
+
+    // --- 同步寫入 ---
+
+    @Override
+    public synchronized void onChange(LedgerChange change) {
+        try {
+            switch (change.getKind()) {
+                case EXPENSE_ADD, EXPENSE_EDIT, EXPENSE_DELETE -> {
+                    Expense before = change.getBefore();
+                    Expense after = change.getAfter();
+                    if (before != null) remove(before);
+                    if (after != null) insert(after);
+                    compactIfSparse();
+                    tree.flush();
+                }
+                case LEDGER_LOAD -> {
+                    if (expenseManager != null) syncWith(expenseManager.getExpenses());
+                }
+                default -> { }
+            }
+        } catch (IOException e) {
+            System.err.println("更新日期索引時發生錯誤: " + e.getMessage());
+        }
+    }
+
+    private void insert(Expense e) throws IOException {
+        long offset = append(e);
+        Long old = tree.get(LedgerKey.of(e));
+        if (old != null) {
+            tree.setMeta(META_LIVE_BYTES, tree.getMeta(META_LIVE_BYTES) - recordLength(old));
+        }
+        tree.put(LedgerKey.of(e), offset);
+        tree.setMeta(META_FINGERPRINT, tree.getMeta(META_FINGERPRINT) + fingerprintOf(e));
+    }
+
+    private void remove(Expense e) throws IOException {
+        Long offset = tree.remove(LedgerKey.of(e));
+        if (offset == null) return;
+        tree.setMeta(META_LIVE_BYTES, tree.getMeta(META_LIVE_BYTES) - recordLength(offset));
+        tree.setMeta(META_FINGERPRINT, tree.getMeta(META_FINGERPRINT) - fingerprintOf(e));
+    }
+
+    // 失效記錄超過一半時，依索引順序讀出有效記錄並重建
+    private void compactIfSparse() throws IOException {
+        long total = tree.getMeta(META_DATA_END) - DATA_HEADER;
+        long live = tree.getMeta(META_LIVE_BYTES);
+        if (total < (1 << 20) || live * 2 >= total) return;
+        List<Expense> all = range(LocalDate.MIN, LocalDate.MAX);
+        rebuild(all);
+    }
+
+    // 記錄內容的雜湊（欄位皆取跨執行穩定的值）
+    static long fingerprintOf(Expense e) {
+        int h = Objects.hash(e.getDate(), e.getAmount().stripTrailingZeros(),
+            e.getType() == null ? null : e.getType().name(), e.getCategory(), e.getRemark());
+        long x = ((long) h << 32) ^ e.getId();
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (expenseManager != null) {
+            expenseManager.getChangeStream().removeListener(this);
+        }
+        tree.close();
+        data.force(false);
+        data.close();
+    }
+
+    /**
+     * 命令列工具：不載入帳本，直接從索引帳本輸出某月（或某年）的記錄
+     *
+     * @param args 目錄 期間（yyyy-MM 或 yyyy）
+     * @throws IOException 讀取失敗
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("用法: java DateIndexedLedger <目錄> <yyyy-MM|yyyy>");
+            System.exit(2);
+        }
+        try (DateIndexedLedger ledger = open(Paths.get(args[0]))) {
+            List<Expense> rows = args[1].length() == 4
+                ? ledger.byYear(Integer.parseInt(args[1]))
+                : ledger.byMonth(YearMonth.parse(args[1]));
+            TableRenderer.forExpenses().print(rows, System.out);
+            System.out.println("共 " + rows.size() + " 筆（全帳本 " + ledger.size() + " 筆，讀取 "
+                + ledger.getPageReads() + " 個索引頁）");
+        }
+    }
+}
@@ -15,6 +15,8 @@ public class Expense implements Serializable {
     // 加入 serialVersionUID
     private static final long serialVersionUID = 1L; // <--- 加入版本 ID
 
+    // 記錄編號（由 ExpenseManager 指派，0 表示尚未指派）
+    private long id;
     // 記錄日期
     private LocalDate date;
     // 交易金額，使用 BigDecimal 確保精確度
@@ -43,6 +45,35 @@ public class Expense implements Serializable {
         this.type = type;
     }
 
+    /**
+     * 複製建構子：建立一筆內容相同的記錄
+     * 用於在變更通知中保留當下的快照，避免之後的修改影響已發布的事件
+     *
+     * @param other 要複製的記錄
+     */
+    public Expense(Expense other) {
+        this(other.date, other.amount, other.category, other.remark, other.type);
+        this.id = other.id;
+    }
+
+    /**
+     * 取得記錄編號
+     *
+     * @return 記錄編號（long），0 表示尚未指派
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * 設定記錄編號
+     *
+     * @param id 要設定的記錄編號
+     */
+    public void setId(long id) {
+        this.id = id;
+    }
+
     /**
      * 取得記錄日期
      *
@@ -0,0 +1,75 @@
+// ExpenseCodec.java - 記帳記錄的二進位編碼
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+
+/**
+ * 記帳記錄的二進位編碼
+ * ----------------
+ * 以固定欄位順序寫出一筆記錄（編號、日期、金額、類型、分類、備註），
+ * 比 Java 序列化小且不需要類別描述，供 LSM 存檔、B+ 樹索引等磁碟結構共用
+ * 金額以 scale 與未縮放整數的位元組表示，不損失 BigDecimal 精確度
+ */
+public final class ExpenseCodec {
+
+    private ExpenseCodec() {
+    }
+
+    /**
+     * 寫出一筆記錄
+     *
+     * @param out 輸出
+     * @param e 記錄
+     * @throws IOException 寫入失敗
+     */
+    public static void write(DataOutput out, Expense e) throws IOException {
+        out.writeLong(e.getId());
+        out.writeInt((int) e.getDate().toEpochDay());
+        byte[] unscaled = e.getAmount().unscaledValue().toByteArray();
+        out.writeByte(e.getAmount().scale());
+        out.writeByte(unscaled.length);
+        out.write(unscaled);
+        out.writeByte(e.getType() == null ? -1 : e.getType().ordinal());
+        writeString(out, e.getCategory());
+        writeString(out, e.getRemark());
+    }
+
+    /**
+     * 讀入一筆記錄
+     *
+     * @param in 輸入
+     * @return 記錄
+     * @throws IOException 讀取失敗或資料損毀
+     */
+    public static Expense read(DataInput in) throws IOException {
+        long id = in.readLong();
+        LocalDate date = LocalDate.ofEpochDay(in.readInt());
+        int scale = in.readByte();
+        byte[] unscaled = new byte[in.readUnsignedByte()];
+        in.readFully(unscaled);
+        int type = in.readByte();
+        TransactionType[] types = TransactionType.values();
+        if (type >= types.length) {
+            throw new IOException("未知的交易類型: " + type);
+        }
+        String category = readString(in);
+        String remark = readString(in);
+        Expense e = new Expense(date, new BigDecimal(new BigInteger(unscaled), scale), category, remark,
+            type < 0 ? null : types[type]);
+        e.setId(id);
+        return e;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -2,25 +2,77 @@ import java.io.*;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets; // 保持這個匯入
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class ExpenseManager {
-    // 定義檔案名稱常數
-    private static final String EXPENSES_FILE = "expenses.ser"; // <--- 檔案名稱
-
     // 所有記帳記錄的列表 (維持 non-static)
     private List<Expense> expenses = new ArrayList<>();
     // 分類管理器 (維持 final)
     private final CategoryManager categoryManager = new CategoryManager();
+    // 變更串流（新增、編輯、刪除、載入都會發布）
+    private final LedgerChangeStream changeStream;
+    // 下一個可用的記錄編號
+    private long nextId = 1;
+    // 執行期指標（存檔、載入與查詢的耗時與次數）
+    private static final LedgerMetrics.Timer SAVE_TIMER = LedgerMetrics.getDefault().timer("expenses.save");
+    private static final LedgerMetrics.Timer LOAD_TIMER = LedgerMetrics.getDefault().timer("expenses.load");
+    private static final LedgerMetrics.Timer SEARCH_TIMER = LedgerMetrics.getDefault().timer("query.searchByRemark");
+    private static final LedgerMetrics.Timer MONTH_TIMER = LedgerMetrics.getDefault().timer("query.byMonth");
+    private static final LedgerMetrics.Timer YEAR_TIMER = LedgerMetrics.getDefault().timer("query.byYear");
+    private static final LedgerMetrics.Timer AMOUNT_TIMER = LedgerMetrics.getDefault().timer("query.byAmount");
+    private static final LedgerMetrics.Counter MUTATIONS = LedgerMetrics.getDefault().counter("expenses.mutations");
+    // 批次深度（大於 0 時延後儲存，批次結束時若有變更才儲存一次）
+    private int batchDepth;
+    // 尚未寫入儲存的變更（批次中累積，批次結束時一次寫入）
+    private final List<LedgerChange> pendingChanges = new ArrayList<>();
+    // 是否需要寫入整本快照（重新載入、封存等無法逐筆表示的變更）
+    private boolean fullSaveNeeded;
+    // 變更紀錄寫入失敗後要求下次存檔寫入整本快照（由其他執行緒設定，不取得管理器的鎖）
+    private volatile boolean snapshotRequested;
+    // 持久化儲存（預設為目前目錄的 .ser 存檔）
+    private LedgerStore store = SerializedFileStore.getDefault();
+    // 以下索引與封存由查詢在管理器的鎖外讀取（查詢期間排程執行緒仍可新增記錄），因此為 volatile
+    // 磁碟日期索引（設定後月份、年份查詢只讀取相關的頁；未設定時為 null）
+    private volatile DateIndexedLedger dateIndex;
+    // 區塊摘要索引（未設定時逐筆掃描）
+    private volatile ZoneMapIndex zoneMaps;
+    // 日期、金額排序索引（未設定時篩選後排序）
+    private volatile ExpenseOrderIndex orderIndex;
+    // 已封存年度（月份、年份查詢涵蓋封存年度時一併讀取；未設定時為 null）
+    private volatile LedgerArchive archive;
+    // 已被封存記錄使用的最大編號（新編號不得重複）
+    private long reservedId;
+    // 復原用的變更紀錄（載入時補回存檔之後的變更；未設定時為 null）
+    private ChangeLogReader recoveryLog;
     /**
      * 建構子：初始化記帳管理器
      * (現在不載入資料，由 MainApp 控制)
      */
     public ExpenseManager() {
+        this(LedgerChangeStream.getDefault());
+    }
+
+    /**
+     * 建構子：指定要發布變更的串流
+     *
+     * @param changeStream 變更串流
+     */
+    public ExpenseManager(LedgerChangeStream changeStream) {
         // 初始化空的記帳列表
         expenses = new ArrayList<>();
+        this.changeStream = changeStream;
+    }
+
+    /**
+     * 取得此管理器發布變更的串流
+     *
+     * @return 變更串流
+     */
+    public LedgerChangeStream getChangeStream() {
+        return changeStream;
     }
 
     /**
@@ -29,11 +81,124 @@ public class ExpenseManager {
      * @param expense 要新增的記錄
      * @throws IllegalArgumentException 若分類不符合類型要求
      */
-    public void addExpense(Expense expense) {
+    public synchronized void addExpense(Expense expense) {
         // validateCategory(expense.getType(), expense.getCategory()); // 分類驗證移到 MainApp 輸入階段更佳
+        LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+        event.begin();
+        assignId(expense);
         expenses.add(expense);
         sortByDate(); // 按日期排序（可選）
-        saveExpenses(EXPENSES_FILE); // <--- 新增後儲存
+        persist(List.of(changeStream.publish(LedgerChange.ofExpense(LedgerChange.Kind.EXPENSE_ADD, null, expense)))); // <--- 新增後儲存
+        event.finish("add", 1, expenses.size());
+    }
+
+    /**
+     * 批次新增多筆記錄
+     * 只排序一次、儲存一次，適合補記多期定期交易等大量新增
+     *
+     * @param batch 要新增的記錄
+     */
+    public synchronized void addExpenses(Collection<Expense> batch) {
+        if (batch.isEmpty()) return;
+        LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+        event.begin();
+        for (Expense expense : batch) {
+            assignId(expense);
+        }
+        expenses.addAll(batch);
+        sortByDate();
+        List<LedgerChange> changes = new ArrayList<>(batch.size());
+        for (Expense expense : batch) {
+            changes.add(changeStream.publish(LedgerChange.ofExpense(LedgerChange.Kind.EXPENSE_ADD, null, expense)));
+        }
+        persist(changes);
+        event.finish("addBatch", batch.size(), expenses.size());
+    }
+
+    /**
+     * 開始批次：之後的新增、編輯、刪除暫不儲存，直到對應的 commitBatch
+     * 可巢狀呼叫，最外層的 commitBatch 才會儲存
+     */
+    public synchronized void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * 結束批次：最外層批次結束時，若批次中有變更則儲存一次
+     */
+    public synchronized void commitBatch() {
+        if (batchDepth == 0) return;
+        if (--batchDepth == 0) {
+            flush();
+        }
+    }
+
+    // 變更後儲存（批次中只記下需要儲存）；changes 為 null 表示需要寫入整本快照
+    private void persist(List<LedgerChange> changes) {
+        MUTATIONS.increment();
+        if (changes == null) {
+            fullSaveNeeded = true;
+        } else {
+            pendingChanges.addAll(changes);
+        }
+        if (batchDepth == 0) {
+            flush();
+        }
+    }
+
+    // 把累積的變更寫入儲存：支援逐筆寫入的儲存只寫變更的記錄，否則寫入整本快照
+    private void flush() {
+        if (!fullSaveNeeded && !snapshotRequested && pendingChanges.isEmpty()) return;
+        List<LedgerChange> changes = new ArrayList<>(pendingChanges);
+        boolean full = fullSaveNeeded || snapshotRequested;
+        pendingChanges.clear();
+        fullSaveNeeded = false;
+        snapshotRequested = false;
+        if (full) {
+            saveExpenses();
+            return;
+        }
+        saveSnapshot(store.describe("expenses"), (list, sequence) -> {
+            if (!store.saveChanges(changes, sequence)) {
+                store.saveExpenses(list, sequence);
+            }
+        });
+    }
+
+    /**
+     * 要求下次存檔寫入整本快照（例如變更紀錄寫入失敗，之後的變更無法由紀錄補回）
+     * 不取得管理器的鎖，可在變更串流的傳遞執行緒上呼叫；下一次儲存（含批次結束）時生效
+     */
+    public void requestSnapshot() {
+        snapshotRequested = true;
+    }
+
+    /**
+     * 設定持久化儲存（之後的載入、儲存與可下推的查詢都經由此儲存）
+     *
+     * @param store 儲存
+     */
+    public synchronized void setStore(LedgerStore store) {
+        this.store = store;
+    }
+
+    public synchronized LedgerStore getStore() {
+        return store;
+    }
+
+    // 儲存端可查詢且沒有尚未寫入的變更時返回儲存，否則返回 null（改為掃描記憶體中的列表）
+    synchronized QueryableLedgerStore queryableStore() {
+        return store instanceof QueryableLedgerStore queryable && pendingChanges.isEmpty() && !fullSaveNeeded
+            ? queryable : null;
+    }
+
+    // 為尚未有編號的記錄指派新編號
+    private void assignId(Expense expense) {
+        if (expense.getId() <= 0) {
+            expense.setId(nextId++);
+        } else {
+            nextId = Math.max(nextId, expense.getId() + 1);
+        }
     }
 
     // 驗證分類的方法可以保留，但建議在 MainApp 輸入時就做
@@ -59,27 +224,41 @@ public class ExpenseManager {
      * @param index 要編輯的記錄索引
      * @param newAmount 新金額
      */
-    public void editExpense(int index, BigDecimal newAmount) {
+    public synchronized void editExpense(int index, BigDecimal newAmount) {
         if (index >= 0 && index < expenses.size()) {
-            expenses.get(index).setAmount(newAmount);
-            saveExpenses(EXPENSES_FILE); // <--- 編輯後儲存
+            LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+            event.begin();
+            Expense expense = expenses.get(index);
+            Expense before = new Expense(expense);
+            expense.setAmount(newAmount);
+            persist(List.of(changeStream.publish(LedgerChange.ofExpense(LedgerChange.Kind.EXPENSE_EDIT, before, expense)))); // <--- 編輯後儲存
+            event.finish("edit", 1, expenses.size());
         } else {
              System.out.println("錯誤：無效的記錄索引。");
         }
     }
 
     // --- getExpenses, searchByKeyword, sortByDate, getExpensesByMonth, getExpensesByYear, sort, searchByRemark 維持不變 ---
-    public List<Expense> getExpenses() {
+    public synchronized List<Expense> getExpenses() {
         return new ArrayList<>(expenses);
     }
 
+    /**
+     * 目前記憶體中的記錄筆數（不複製列表）
+     *
+     * @return 筆數
+     */
+    public synchronized int size() {
+        return expenses.size();
+    }
+
     /**
      * 根據關鍵字搜尋記帳記錄
      *
      * @param keyword 要搜尋的關鍵字
      * @return 符合的記帳記錄列表
      */
-    public List<Expense> searchByKeyword(String keyword) {
+    public synchronized List<Expense> searchByKeyword(String keyword) {
         return expenses.stream()
             .filter(e -> e.getRemark().contains(keyword))
             .collect(Collectors.toList());
@@ -88,10 +267,95 @@ public class ExpenseManager {
     /**
      * 按日期排序所有記帳記錄
      */
-    public void sortByDate() {
+    public synchronized void sortByDate() {
         expenses.sort(Comparator.comparing(Expense::getDate));
     }
 
+    /**
+     * 設定磁碟日期索引（索引須已掛在此管理器的變更串流上，與記憶體內容同步）
+     *
+     * @param dateIndex 日期索引，null 表示改回掃描記憶體中的列表
+     */
+    public synchronized void setDateIndex(DateIndexedLedger dateIndex) {
+        this.dateIndex = dateIndex;
+    }
+
+    /**
+     * 設定區塊摘要索引（索引須已掛在此管理器的變更串流上，與記憶體內容同步）
+     *
+     * @param zoneMaps 區塊摘要索引，null 表示改回逐筆掃描
+     */
+    public synchronized void setZoneMaps(ZoneMapIndex zoneMaps) {
+        this.zoneMaps = zoneMaps;
+    }
+
+    /**
+     * 設定排序索引（索引須已掛在此管理器的變更串流上，與記憶體內容同步）
+     *
+     * @param orderIndex 排序索引，null 表示改回篩選後排序
+     */
+    public synchronized void setOrderIndex(ExpenseOrderIndex orderIndex) {
+        this.orderIndex = orderIndex;
+    }
+
+    // 查詢規劃使用的索引（未設定時為 null）
+    synchronized ExpenseOrderIndex orderIndex() {
+        return orderIndex;
+    }
+
+    synchronized ZoneMapIndex zoneMaps() {
+        return zoneMaps;
+    }
+
+    // 區間是否涵蓋已封存的年度
+    boolean archiveCovers(LocalDate from, LocalDate to) {
+        return archive != null && archive.covers(from, to);
+    }
+
+    /**
+     * 建立組合條件查詢（日期、類型、分類、金額、備註，可排序與限制筆數）
+     * 執行時由查詢規劃選擇可用的索引，explain() 可查看選擇結果
+     *
+     * @return 新的查詢
+     */
+    public LedgerQuery query() {
+        return new LedgerQuery(this);
+    }
+
+    // 區間內已封存年度的明細（依需要解壓縮）
+    List<Expense> rangeFromArchive(LocalDate from, LocalDate to) {
+        if (archive == null || !archive.covers(from, to)) return List.of();
+        try {
+            return archive.range(from, to);
+        } catch (IOException e) {
+            System.err.println("讀取封存年度時發生錯誤: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    // 從磁碟日期索引讀取區間；未設定或讀取失敗時返回 null，由呼叫端改為掃描列表
+    private List<Expense> rangeFromIndex(LocalDate from, LocalDate to) {
+        if (dateIndex == null) return null;
+        try {
+            return dateIndex.range(from, to);
+        } catch (IOException e) {
+            System.err.println("讀取日期索引時發生錯誤，改為掃描全部記錄: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // 在儲存端查詢日期區間；儲存不支援查詢、有尚未寫入的變更或查詢失敗時返回 null
+    private List<Expense> rangeFromStore(LocalDate from, LocalDate to) {
+        QueryableLedgerStore queryable = queryableStore();
+        if (queryable == null) return null;
+        try {
+            return queryable.range(from, to);
+        } catch (IOException e) {
+            System.err.println("儲存端查詢失敗，改為掃描全部記錄: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * 獲取特定月份的記帳記錄
      *
@@ -100,9 +364,30 @@ public class ExpenseManager {
      * @return 該月份的記帳記錄列表
      */
     public List<Expense> getExpensesByMonth(int year, int month) {
-        return expenses.stream()
-            .filter(e -> e.getDate().getYear() == year && e.getDate().getMonthValue() == month)
-            .collect(Collectors.toList());
+        long start = MONTH_TIMER.start();
+        LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+        event.begin();
+        YearMonth ym = YearMonth.of(year, month);
+        List<Expense> result = rangeFromIndex(ym.atDay(1), ym.atEndOfMonth());
+        if (result == null) {
+            result = rangeFromStore(ym.atDay(1), ym.atEndOfMonth());
+        }
+        if (result == null && zoneMaps != null) {
+            result = zoneMaps.range(ym.atDay(1), ym.atEndOfMonth());
+        }
+        if (result == null) {
+            result = getExpenses().stream()
+                .filter(e -> e.getDate().getYear() == year && e.getDate().getMonthValue() == month)
+                .collect(Collectors.toList());
+        }
+        List<Expense> archived = rangeFromArchive(ym.atDay(1), ym.atEndOfMonth());
+        if (!archived.isEmpty()) {
+            result = new ArrayList<>(result);
+            result.addAll(0, archived);
+        }
+        MONTH_TIMER.stop(start);
+        event.finish("queryByMonth", result.size(), size());
+        return result;
     }
 
     /**
@@ -112,9 +397,29 @@ public class ExpenseManager {
      * @return 該年份的記帳記錄列表
      */
     public List<Expense> getExpensesByYear(int year) {
-        return expenses.stream()
-            .filter(e -> e.getDate().getYear() == year)
-            .collect(Collectors.toList());
+        long start = YEAR_TIMER.start();
+        LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+        event.begin();
+        List<Expense> result = rangeFromIndex(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+        if (result == null) {
+            result = rangeFromStore(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+        }
+        if (result == null && zoneMaps != null) {
+            result = zoneMaps.range(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+        }
+        if (result == null) {
+            result = getExpenses().stream()
+                .filter(e -> e.getDate().getYear() == year)
+                .collect(Collectors.toList());
+        }
+        List<Expense> archived = rangeFromArchive(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+        if (!archived.isEmpty()) {
+            result = new ArrayList<>(result);
+            result.addAll(0, archived);
+        }
+        YEAR_TIMER.stop(start);
+        event.finish("queryByYear", result.size(), size());
+        return result;
     }
 
     /**
@@ -124,12 +429,15 @@ public class ExpenseManager {
      * @param sortType 排序類型（amountDesc、amountAsc、dateAsc、dateDesc）
      */
     public void sort(List<Expense> list, String sortType) {
+        LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+        event.begin();
         switch (sortType) {
             case "amountDesc" -> list.sort(Comparator.comparing(Expense::getAmount).reversed());
             case "amountAsc" -> list.sort(Comparator.comparing(Expense::getAmount));
             case "dateAsc" -> list.sort(Comparator.comparing(Expense::getDate));
             default -> list.sort(Comparator.comparing(Expense::getDate).reversed());
         }
+        event.finish("sort:" + sortType, list.size(), size());
     }
 
     /**
@@ -140,8 +448,27 @@ public class ExpenseManager {
      * @return 排序後的搜尋結果列表
      */
     public List<Expense> searchByRemark(String keyword) {
-        return expenses.stream()
-            .filter(e -> e.getRemark().contains(keyword))
+        long start = SEARCH_TIMER.start();
+        LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+        event.begin();
+        List<Expense> matches = null;
+        QueryableLedgerStore queryable = queryableStore();
+        if (queryable != null) {
+            try {
+                matches = queryable.searchRemark(keyword);
+            } catch (IOException e) {
+                System.err.println("儲存端查詢失敗，改為掃描全部記錄: " + e.getMessage());
+            }
+        }
+        if (matches == null && zoneMaps != null) {
+            matches = zoneMaps.search(keyword);
+        }
+        if (matches == null) {
+            matches = getExpenses().stream()
+                .filter(e -> e.getRemark().contains(keyword))
+                .collect(Collectors.toList());
+        }
+        List<Expense> result = matches.stream()
             .sorted((a,b) -> {
                 boolean exactMatchA = a.getRemark().equalsIgnoreCase(keyword);
                 boolean exactMatchB = b.getRemark().equalsIgnoreCase(keyword);
@@ -149,68 +476,425 @@ public class ExpenseManager {
                 return exactMatchA ? -1 : 1;
             })
             .collect(Collectors.toList());
+        SEARCH_TIMER.stop(start);
+        event.finish("searchByRemark", result.size(), size());
+        return result;
+    }
+
+    /**
+     * 獲取金額區間內的記帳記錄（不含已封存年度）
+     *
+     * @param minAmount 最小金額（含），null 表示不限
+     * @param maxAmount 最大金額（含），null 表示不限
+     * @return 依金額由小到大排序的記帳記錄列表
+     */
+    public List<Expense> getExpensesByAmount(BigDecimal minAmount, BigDecimal maxAmount) {
+        return getExpensesByAmount(null, null, minAmount, maxAmount);
+    }
+
+    /**
+     * 獲取日期與金額區間內的記帳記錄（不含已封存年度）
+     * 設定排序索引時由日期或金額索引中筆數較少的一方取出；
+     * 否則有區塊摘要索引時只檢查範圍有交集的區塊，都沒有時逐筆掃描
+     *
+     * @param from 起日（含），null 表示不限
+     * @param to 迄日（含），null 表示不限
+     * @param minAmount 最小金額（含），null 表示不限
+     * @param maxAmount 最大金額（含），null 表示不限
+     * @return 依金額由小到大排序的記帳記錄列表
+     */
+    public List<Expense> getExpensesByAmount(LocalDate from, LocalDate to, BigDecimal minAmount, BigDecimal maxAmount) {
+        long start = AMOUNT_TIMER.start();
+        LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+        event.begin();
+        List<Expense> result;
+        if (orderIndex != null) {
+            result = orderIndex.query(from, to, minAmount, maxAmount);
+        } else {
+            List<Expense> candidates = zoneMaps != null ? zoneMaps.scan(from, to, minAmount, maxAmount, null, null) : getExpenses();
+            result = candidates.stream()
+                .filter(e -> from == null || !e.getDate().isBefore(from))
+                .filter(e -> to == null || !e.getDate().isAfter(to))
+                .filter(e -> minAmount == null || e.getAmount().compareTo(minAmount) >= 0)
+                .filter(e -> maxAmount == null || e.getAmount().compareTo(maxAmount) <= 0)
+                .sorted(Comparator.comparing(Expense::getAmount).thenComparingLong(Expense::getId))
+                .collect(Collectors.toList());
+        }
+        AMOUNT_TIMER.stop(start);
+        event.finish("queryByAmount", result.size(), size());
+        return result;
+    }
+
+    /**
+     * 依排序方式取得日期區間內的記帳記錄
+     * 設定排序索引時直接依索引順序取出，不需重新排序；
+     * 起迄日皆指定時與 getExpensesByMonth/Year 相同，併入區間內已封存年度的記錄後再依排序方式排序
+     *
+     * @param from 起日（含），null 表示不限
+     * @param to 迄日（含），null 表示不限
+     * @param sortType 排序類型（amountDesc、amountAsc、dateAsc、dateDesc）
+     * @return 排序後的記帳記錄列表
+     */
+    public List<Expense> getSortedExpenses(LocalDate from, LocalDate to, String sortType) {
+        List<Expense> archived = from != null && to != null ? rangeFromArchive(from, to) : List.of();
+        if (orderIndex != null && archived.isEmpty()) {
+            return orderIndex.sorted(sortType, from, to);
+        }
+        List<Expense> list = new ArrayList<>(archived);
+        if (orderIndex != null) {
+            list.addAll(orderIndex.sorted(sortType, from, to));
+        } else {
+            for (Expense e : getExpenses()) {
+                if ((from == null || !e.getDate().isBefore(from)) && (to == null || !e.getDate().isAfter(to))) {
+                    list.add(e);
+                }
+            }
+        }
+        sort(list, sortType);
+        return list;
+    }
+
+    /**
+     * 計算日期區間內某類型各分類的金額合計（含已封存年度）
+     * 儲存支援查詢時由儲存端加總，否則掃描記憶體中的列表
+     *
+     * @param from 起日（含）
+     * @param to 迄日（含）
+     * @param type 收入或支出
+     * @return 分類 → 合計（依分類名稱排序）
+     */
+    public Map<String, BigDecimal> getCategoryTotals(LocalDate from, LocalDate to, TransactionType type) {
+        Map<String, BigDecimal> totals = null;
+        QueryableLedgerStore queryable = queryableStore();
+        if (queryable != null) {
+            try {
+                totals = new TreeMap<>(queryable.totalsByCategory(from, to, type));
+            } catch (IOException e) {
+                System.err.println("儲存端查詢失敗，改為掃描全部記錄: " + e.getMessage());
+            }
+        }
+        if (totals == null) {
+            totals = new TreeMap<>();
+            for (Expense e : getExpenses()) {
+                if (e.getType() == type && !e.getDate().isBefore(from) && !e.getDate().isAfter(to)) {
+                    totals.merge(e.getCategory(), e.getAmount(), BigDecimal::add);
+                }
+            }
+        }
+        for (Expense e : rangeFromArchive(from, to)) {
+            if (e.getType() == type) {
+                totals.merge(e.getCategory(), e.getAmount(), BigDecimal::add);
+            }
+        }
+        return totals;
     }
 
 
     /**
-     * 將目前的 expenses 列表儲存到檔案
+     * 將目前的 expenses 列表寫入目前的儲存（整本快照）
+     */
+    public void saveExpenses() {
+        LedgerStore target = getStore();
+        saveSnapshot(target.describe("expenses"), target::saveExpenses);
+    }
+
+    /**
+     * 將目前的 expenses 列表儲存到檔案（不論目前使用哪種儲存）
+     * 以 AtomicFile 原子化寫入，並在列表後記下已涵蓋的變更編號，載入時據此由變更紀錄補回之後的變更
      *
      * @param filename 檔案路徑
      */
     public void saveExpenses(String filename) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename))) {
-            oos.writeObject(new ArrayList<>(this.expenses)); // 儲存 expenses 列表的副本
-            // System.out.println("記帳記錄已儲存到 " + filename); // 可選：儲存成功提示
+        saveSnapshot(filename, (list, sequence) -> SerializedFileStore.writeExpenses(filename, list, sequence));
+    }
+
+    // 寫入快照的動作
+    @FunctionalInterface
+    private interface SnapshotWriter {
+        void write(List<Expense> expenses, long sequence) throws IOException;
+    }
+
+    // 讀取快照的動作
+    @FunctionalInterface
+    private interface SnapshotReader {
+        LedgerStore.ExpenseSnapshot read() throws IOException;
+    }
+
+    private void saveSnapshot(String target, SnapshotWriter writer) {
+        long start = SAVE_TIMER.start();
+        LedgerEvents.Persistence event = new LedgerEvents.Persistence();
+        event.begin();
+        List<Expense> snapshot;
+        long sequence;
+        synchronized (this) {
+            snapshot = new ArrayList<>(this.expenses); // 儲存 expenses 列表的副本
+            sequence = changeStream.getLastSequence();
+        }
+        try {
+            writer.write(snapshot, sequence);
+            // System.out.println("記帳記錄已儲存到 " + target); // 可選：儲存成功提示
         } catch (IOException e) {
             System.err.println("儲存記帳記錄時發生錯誤: " + e.getMessage());
              e.printStackTrace(); // 顯示詳細錯誤
+        } finally {
+            SAVE_TIMER.stop(start);
+            event.finish("expenses", "save", target, snapshot.size());
         }
     }
 
+    /**
+     * 從目前的儲存載入記帳記錄到 expenses 列表
+     * 之後由變更紀錄補回快照之後的新增、編輯、刪除，
+     * 所以復原時間只與上次存檔後的變更數有關，與帳本大小無關
+     * 如果載入失敗，則保持列表為空
+     */
+    public synchronized void loadExpenses() {
+        LedgerStore source = store;
+        loadSnapshot(source.describe("expenses"), source::loadExpenses, this::saveExpenses);
+    }
+
     /**
      * 從檔案載入記帳記錄到 expenses 列表
-     * 如果檔案不存在或載入失敗，則保持列表為空
+     * 正式檔案損毀時改用上一版存檔（.bak），之後同樣由變更紀錄補回存檔之後的變更
+     * 如果檔案不存在或所有版本都無法載入，則保持列表為空
      *
      * @param filename 檔案路徑
      */
-    @SuppressWarnings("unchecked") // 抑制讀取 Object 時的類型轉換警告
-    public void loadExpenses(String filename) {
-        File file = new File(filename);
-        if (!file.exists()) {
-            System.out.println("找不到記帳記錄存檔，將從空記錄開始...");
-            this.expenses = new ArrayList<>(); // 確保是空列表
-            return;
-        }
+    public synchronized void loadExpenses(String filename) {
+        loadSnapshot(filename, () -> SerializedFileStore.readExpenses(filename), () -> saveExpenses(filename));
+    }
 
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename))) {
-            Object loadedObject = ois.readObject();
-             if (loadedObject instanceof List<?>) {
-                 // 清空目前列表，確保不重複載入
-                this.expenses.clear();
-                // 載入資料，需要類型轉換
-                this.expenses.addAll((List<Expense>) loadedObject);
-                System.out.println("記帳記錄已從 " + filename + " 載入。");
-                sortByDate(); // 載入後排序一次
+    private void loadSnapshot(String source, SnapshotReader reader, Runnable resave) {
+        long start = LOAD_TIMER.start();
+        LedgerEvents.Persistence event = new LedgerEvents.Persistence();
+        event.begin();
+        int replayed = 0;
+        int duplicates = 0;
+        pendingChanges.clear();
+        fullSaveNeeded = false;
+        try {
+            LedgerStore.ExpenseSnapshot snapshot = reader.read();
+            // 清空目前列表，確保不重複載入
+            this.expenses = new ArrayList<>();
+            if (snapshot == null) {
+                System.out.println("找不到記帳記錄存檔，將從空記錄開始...");
             } else {
-                 System.err.println("記帳記錄檔案格式錯誤，將從空記錄開始...");
-                 this.expenses = new ArrayList<>();
+                this.expenses.addAll(snapshot.expenses());
+                System.out.println("記帳記錄已從 " + source + " 載入。");
+                // 存檔可能比變更紀錄新（例如紀錄寫入失敗後仍有存檔），新的編號要接在存檔之後
+                changeStream.resumeFrom(snapshot.sequence());
+                if (recoveryLog != null && snapshot.sequence() >= 0) {
+                    replayed = replayChanges(snapshot.sequence());
+                }
+                sortByDate(); // 載入後排序一次
+                assignMissingIds();
+                duplicates = dropArchivedDuplicates();
             }
-
-        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+        } catch (IOException | ClassCastException e) {
             System.err.println("讀取記帳記錄時發生錯誤: " + e.getMessage() + "，將從空記錄開始...");
              e.printStackTrace(); // 顯示詳細錯誤
             this.expenses = new ArrayList<>(); // 出錯時確保是空列表
         }
+        LOAD_TIMER.stop(start);
+        event.finish("expenses", "load", source, expenses.size());
+        changeStream.publish(LedgerChange.ofLoad()); // 通知監聽者依新內容重建
+        if (replayed > 0) {
+            System.out.println("已由變更紀錄補回 " + replayed + " 筆存檔後的變更。");
+        }
+        if (replayed > 0 || duplicates > 0) {
+            resave.run(); // 補回或移除重複後立即存成新的快照
+        }
+    }
+
+    // 封存在寫出年度檔後、移出記憶體前中斷時，快照仍留有已封存的記錄；依編號移除這些重複的列
+    // 只比對與年度檔相同編號的記錄，封存後才補記到該年度的記錄照常保留
+    private int dropArchivedDuplicates() {
+        if (archive == null) return 0;
+        Set<Integer> years = new TreeSet<>();
+        for (Expense e : expenses) {
+            if (archive.isArchived(e.getDate().getYear())) years.add(e.getDate().getYear());
+        }
+        int dropped = 0;
+        for (int year : years) {
+            Set<Long> archivedIds = new HashSet<>();
+            try {
+                for (Expense e : archive.records(year)) {
+                    archivedIds.add(e.getId());
+                }
+            } catch (IOException e) {
+                System.err.println("讀取 " + year + " 年封存明細時發生錯誤，未檢查重複記錄: " + e.getMessage());
+                continue;
+            }
+            int before = expenses.size();
+            expenses.removeIf(e -> e.getDate().getYear() == year && archivedIds.contains(e.getId()));
+            dropped += before - expenses.size();
+        }
+        if (dropped > 0) {
+            System.out.println("已移除 " + dropped + " 筆已在封存年度檔中的重複記錄。");
+        }
+        return dropped;
+    }
+
+    /**
+     * 設定復原用的變更紀錄（載入時補回存檔之後的變更；未設定時只載入存檔）
+     *
+     * @param reader 變更紀錄讀取器，null 表示不補回
+     */
+    public synchronized void setRecoveryLog(ChangeLogReader reader) {
+        this.recoveryLog = reader;
+    }
+
+    // 將編號大於 afterSequence 的記帳記錄變更套用到目前列表（不重新發布；這些變更已在紀錄中）
+    // 編號必須從 afterSequence + 1 起連續；遇到缺口時只套用缺口之前的變更，缺口之後的不套用
+    private int replayChanges(long afterSequence) throws IOException {
+        List<LedgerChange> changes = recoveryLog.readFrom(afterSequence + 1, Integer.MAX_VALUE);
+        long expected = afterSequence + 1;
+        for (int i = 0; i < changes.size(); i++) {
+            long sequence = changes.get(i).getSequence();
+            if (sequence != expected) {
+                System.err.println("變更紀錄缺少編號 " + expected + " 到 " + (sequence - 1)
+                    + "（已輪替刪除或寫入失敗），只補回到編號 " + (expected - 1) + " 為止，之後的 "
+                    + (changes.size() - i) + " 筆不套用。");
+                changes = changes.subList(0, i);
+                break;
+            }
+            expected++;
+        }
+        Map<Long, Integer> positions = new HashMap<>();
+        for (int i = 0; i < expenses.size(); i++) {
+            positions.put(expenses.get(i).getId(), i);
+        }
+        int applied = 0;
+        for (LedgerChange change : changes) {
+            switch (change.getKind()) {
+                case EXPENSE_ADD, EXPENSE_EDIT -> {
+                    Expense after = change.getAfter();
+                    if (archive != null && archive.isArchived(after.getDate().getYear())) continue;
+                    Integer position = positions.get(after.getId());
+                    if (position != null) {
+                        expenses.set(position, new Expense(after));
+                    } else {
+                        positions.put(after.getId(), expenses.size());
+                        expenses.add(new Expense(after));
+                    }
+                    applied++;
+                }
+                case EXPENSE_DELETE -> {
+                    Integer position = positions.remove(change.getBefore().getId());
+                    if (position != null) {
+                        expenses.set(position, null); // 最後一次移除，避免逐筆位移
+                        applied++;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        expenses.removeIf(Objects::isNull);
+        return applied;
+    }
+
+    /**
+     * 保留編號（封存在記憶體外的記錄仍佔用這些編號）
+     *
+     * @param maxId 已使用的最大編號
+     */
+    public synchronized void reserveIds(long maxId) {
+        reservedId = Math.max(reservedId, maxId);
+        nextId = Math.max(nextId, reservedId + 1);
+    }
+
+    /**
+     * 將某年度的記錄移出記憶體（由 LedgerArchive 封存後呼叫）
+     * 之後發布 LEDGER_LOAD，讓監聽者依剩下的記錄與封存摘要重建
+     *
+     * @param year 年度
+     * @return 移出的記錄
+     */
+    public synchronized List<Expense> detachYear(int year) {
+        List<Expense> detached = new ArrayList<>();
+        expenses.removeIf(e -> {
+            if (e.getDate().getYear() != year) return false;
+            detached.add(e);
+            return true;
+        });
+        if (!detached.isEmpty()) {
+            changeStream.publish(LedgerChange.ofLoad());
+            persist(null);
+        }
+        return detached;
+    }
+
+    /**
+     * 將封存的記錄放回記憶體（保留原編號），之後發布 LEDGER_LOAD
+     *
+     * @param records 記錄
+     */
+    public synchronized void attachRecords(Collection<Expense> records) {
+        if (records.isEmpty()) return;
+        for (Expense e : records) {
+            assignId(e);
+        }
+        expenses.addAll(records);
+        sortByDate();
+        changeStream.publish(LedgerChange.ofLoad());
+        persist(null);
+    }
+
+    /**
+     * 設定封存來源（查詢涵蓋封存年度時讀取封存明細）
+     *
+     * @param archive 封存，null 表示不讀取
+     */
+    public synchronized void setArchive(LedgerArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * 根據記錄編號刪除記帳記錄
+     *
+     * @param id 記錄編號
+     * @return 找到並刪除返回 true
+     */
+    public synchronized boolean deleteExpenseById(long id) {
+        for (int i = 0; i < expenses.size(); i++) {
+            if (expenses.get(i).getId() == id) {
+                LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+                event.begin();
+                Expense removed = expenses.remove(i);
+                persist(List.of(changeStream.publish(LedgerChange.ofExpense(LedgerChange.Kind.EXPENSE_DELETE, removed, null))));
+                event.finish("delete", 1, expenses.size());
+                return true;
+            }
+        }
+        return false;
     }
+
+    // 舊版存檔的記錄沒有編號，載入後依日期順序補上
+    private void assignMissingIds() {
+        nextId = reservedId + 1;
+        for (Expense e : expenses) {
+            nextId = Math.max(nextId, e.getId() + 1);
+        }
+        for (Expense e : expenses) {
+            if (e.getId() <= 0) {
+                e.setId(nextId++);
+            }
+        }
+    }
+
     /**
      * 根據索引刪除記帳記錄
      *
      * @param index 要刪除的記錄索引
      */
-    public void deleteExpense(int index) {
+    public synchronized void deleteExpense(int index) {
         if (index >= 0 && index < expenses.size()) {
-            expenses.remove(index);
-            saveExpenses(EXPENSES_FILE); // 刪除後儲存更新
+            LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+            event.begin();
+            Expense removed = expenses.remove(index);
+            persist(List.of(changeStream.publish(LedgerChange.ofExpense(LedgerChange.Kind.EXPENSE_DELETE, removed, null)))); // 刪除後儲存更新
+            event.finish("delete", 1, expenses.size());
             System.out.println("記錄已刪除。");
         } else {
             System.out.println("錯誤：無效的記錄索引。");
@@ -247,7 +931,7 @@ public class ExpenseManager {
             writer.newLine();
 
             // 逐筆寫入資料
-            for (Expense expense : this.expenses) {
+            for (Expense expense : getExpenses()) { // 快照：排程執行緒可能同時新增記錄
                 List<String> rowData = new ArrayList<>();
                 rowData.add(escapeCsvField(expense.getDate().format(dateFormatter)));
                 rowData.add(escapeCsvField(expense.getAmount().toPlainString()));
@@ -0,0 +1,267 @@
+// ExpenseOrderIndex.java - 記錄排序索引（游標分頁用）
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 記錄排序索引
+ * ----------
+ * 以（日期, 編號）與（金額, 編號）兩個有序索引保存所有記錄，作為 LedgerListener 隨變更遞增維護
+ * 提供 PaginationHelper 的游標分頁來源：每次只從游標位置往後（或往前）取一頁，
+ * 不需要先建立並排序完整結果；以（排序鍵, 編號）為游標，翻頁期間新增或刪除其他記錄也不會造成重複或跳過
+ * 日期排序時區間篩選直接對應到索引的子範圍（O(log n + 頁大小)）；
+ * 金額排序時日期篩選在走訪中過濾
+ *
+ * 金額索引也直接回答金額區間查詢（O(log n + k)），並提供金額排序的完整結果，不必每次重新排序
+ * 同時限制日期與金額時，兩個索引的子範圍交替走訪計數，先走完的一方筆數較少，
+ * 只逐筆檢查該子範圍（代價為兩者中較小筆數的兩倍）
+ */
+public class ExpenseOrderIndex implements LedgerListener {
+
+    /**
+     * 游標：記錄的排序鍵與編號（建立時的快照，之後記錄被修改也不影響游標位置）
+     */
+    public record OrderKey(LocalDate date, BigDecimal amount, long id) {
+        static OrderKey of(Expense e) {
+            return new OrderKey(e.getDate(), e.getAmount(), e.getId());
+        }
+    }
+
+    private static final Comparator<OrderKey> BY_DATE =
+        Comparator.comparing(OrderKey::date).thenComparingLong(OrderKey::id);
+    private static final Comparator<OrderKey> BY_AMOUNT =
+        Comparator.comparing(OrderKey::amount).thenComparingLong(OrderKey::id);
+    private static final Comparator<Expense> BY_AMOUNT_ID =
+        Comparator.comparing(Expense::getAmount).thenComparingLong(Expense::getId);
+
+    /**
+     * 查詢使用的索引
+     */
+    public enum Access { DATE, AMOUNT }
+
+    // 記帳管理器（重新載入時用來重建）
+    private final ExpenseManager expenseManager;
+    // 依日期排序的索引
+    private final TreeMap<OrderKey, Expense> byDate = new TreeMap<>(BY_DATE);
+    // 依金額排序的索引
+    private final TreeMap<OrderKey, Expense> byAmount = new TreeMap<>(BY_AMOUNT);
+
+    /**
+     * 建構子：依目前帳本建立索引，並開始監聽變更
+     *
+     * @param expenseManager 記帳管理器
+     */
+    public ExpenseOrderIndex(ExpenseManager expenseManager) {
+        this.expenseManager = expenseManager;
+        rebuild();
+        expenseManager.getChangeStream().addListener(this);
+    }
+
+    @Override
+    public synchronized void onChange(LedgerChange change) {
+        switch (change.getKind()) {
+            case EXPENSE_ADD, EXPENSE_EDIT, EXPENSE_DELETE -> {
+                if (change.getBefore() != null) remove(change.getBefore());
+                if (change.getAfter() != null) put(change.getAfter());
+            }
+            case LEDGER_LOAD -> rebuild();
+            default -> { }
+        }
+    }
+
+    private synchronized void rebuild() {
+        byDate.clear();
+        byAmount.clear();
+        for (Expense e : expenseManager.getExpenses()) {
+            put(new Expense(e));
+        }
+    }
+
+    private void put(Expense e) {
+        OrderKey key = OrderKey.of(e);
+        byDate.put(key, e);
+        byAmount.put(key, e);
+    }
+
+    private void remove(Expense e) {
+        OrderKey key = OrderKey.of(e);
+        byDate.remove(key);
+        byAmount.remove(key);
+    }
+
+    public synchronized int size() {
+        return byDate.size();
+    }
+
+    /**
+     * 依排序方式取得日期區間內的全部記錄（直接依索引順序走訪，不需排序）
+     *
+     * @param sortType 排序類型（amountDesc、amountAsc、dateAsc、dateDesc）
+     * @param from 起始日期（含，null 表示不限）
+     * @param to 結束日期（含，null 表示不限）
+     * @return 記錄（索引中的快照）
+     */
+    public synchronized List<Expense> sorted(String sortType, LocalDate from, LocalDate to) {
+        if (sortType.startsWith("amount") && (from != null || to != null)) {
+            // 日期區間遠小於全部記錄時（k log k < n），取出區間再排序比走訪整個金額索引快
+            NavigableMap<OrderKey, Expense> dates = dateRange(from, to);
+            int n = byAmount.size();
+            int limit = n / Math.max(1, 32 - Integer.numberOfLeadingZeros(n));
+            Iterator<OrderKey> it = dates.keySet().iterator();
+            int k = 0;
+            while (k <= limit && it.hasNext()) {
+                it.next();
+                k++;
+            }
+            if (k <= limit) {
+                List<Expense> list = new ArrayList<>(dates.values());
+                list.sort(sortType.endsWith("Asc") ? BY_AMOUNT_ID : BY_AMOUNT_ID.reversed());
+                return list;
+            }
+        }
+        return take(ordered(sortType, from, to, null, null), from, to, null, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 查詢日期與金額區間內的記錄，自動選用筆數較少的索引
+     *
+     * @param from 起始日期（含，null 表示不限）
+     * @param to 結束日期（含，null 表示不限）
+     * @param minAmount 最小金額（含，null 表示不限）
+     * @param maxAmount 最大金額（含，null 表示不限）
+     * @return 依金額、編號排序的記錄（索引中的快照）
+     */
+    public synchronized List<Expense> query(LocalDate from, LocalDate to, BigDecimal minAmount, BigDecimal maxAmount) {
+        List<Expense> result = new ArrayList<>();
+        if (choose(from, to, minAmount, maxAmount) == Access.AMOUNT) {
+            for (Expense e : amountRange(minAmount, maxAmount).values()) {
+                if (inDates(e.getDate(), from, to)) result.add(e);
+            }
+        } else {
+            for (Expense e : dateRange(from, to).values()) {
+                if (inAmounts(e.getAmount(), minAmount, maxAmount)) result.add(e);
+            }
+            result.sort(BY_AMOUNT_ID);
+        }
+        return result;
+    }
+
+    /**
+     * 判斷日期與金額條件下哪一個索引的子範圍較小
+     * 只有一邊有條件時直接選那一邊；兩邊都有時交替走訪兩個子範圍，先走完的較小
+     *
+     * @param from 起始日期（含，null 表示不限）
+     * @param to 結束日期（含，null 表示不限）
+     * @param minAmount 最小金額（含，null 表示不限）
+     * @param maxAmount 最大金額（含，null 表示不限）
+     * @return 較有選擇性的索引
+     */
+    public synchronized Access choose(LocalDate from, LocalDate to, BigDecimal minAmount, BigDecimal maxAmount) {
+        boolean hasDates = from != null || to != null;
+        boolean hasAmounts = minAmount != null || maxAmount != null;
+        if (hasDates != hasAmounts) return hasDates ? Access.DATE : Access.AMOUNT;
+        Iterator<OrderKey> dates = dateRange(from, to).keySet().iterator();
+        Iterator<OrderKey> amounts = amountRange(minAmount, maxAmount).keySet().iterator();
+        while (dates.hasNext() && amounts.hasNext()) {
+            dates.next();
+            amounts.next();
+        }
+        return dates.hasNext() ? Access.AMOUNT : Access.DATE;
+    }
+
+    // 日期索引的子範圍
+    private NavigableMap<OrderKey, Expense> dateRange(LocalDate from, LocalDate to) {
+        NavigableMap<OrderKey, Expense> range = byDate;
+        if (from != null) range = range.tailMap(new OrderKey(from, null, Long.MIN_VALUE), true);
+        if (to != null) range = range.headMap(new OrderKey(to, null, Long.MAX_VALUE), true);
+        return range;
+    }
+
+    // 金額索引的子範圍
+    private NavigableMap<OrderKey, Expense> amountRange(BigDecimal minAmount, BigDecimal maxAmount) {
+        NavigableMap<OrderKey, Expense> range = byAmount;
+        if (minAmount != null) range = range.tailMap(new OrderKey(null, minAmount, Long.MIN_VALUE), true);
+        if (maxAmount != null) range = range.headMap(new OrderKey(null, maxAmount, Long.MAX_VALUE), true);
+        return range;
+    }
+
+    private static boolean inDates(LocalDate date, LocalDate from, LocalDate to) {
+        return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+    }
+
+    private static boolean inAmounts(BigDecimal amount, BigDecimal minAmount, BigDecimal maxAmount) {
+        return (minAmount == null || amount.compareTo(minAmount) >= 0)
+            && (maxAmount == null || amount.compareTo(maxAmount) <= 0);
+    }
+
+    /**
+     * 建立游標分頁來源
+     *
+     * @param sortType 排序類型（amountDesc、amountAsc、dateAsc、dateDesc）
+     * @param from 起始日期（含，null 表示不限）
+     * @param to 結束日期（含，null 表示不限）
+     * @return 分頁來源（回傳的記錄為索引中的快照）
+     */
+    public PaginationHelper.PageSource<Expense, OrderKey> source(String sortType, LocalDate from, LocalDate to) {
+        return source(sortType, from, to, null, null);
+    }
+
+    /**
+     * 建立游標分頁來源，並限制金額區間（金額排序時直接對應到金額索引的子範圍）
+     *
+     * @param sortType 排序類型（amountDesc、amountAsc、dateAsc、dateDesc）
+     * @param from 起始日期（含，null 表示不限）
+     * @param to 結束日期（含，null 表示不限）
+     * @param minAmount 最小金額（含，null 表示不限）
+     * @param maxAmount 最大金額（含，null 表示不限）
+     * @return 分頁來源（回傳的記錄為索引中的快照）
+     */
+    public PaginationHelper.PageSource<Expense, OrderKey> source(String sortType, LocalDate from, LocalDate to,
+                                                                  BigDecimal minAmount, BigDecimal maxAmount) {
+        return new PaginationHelper.PageSource<>() {
+            @Override
+            public OrderKey keyOf(Expense item) {
+                return OrderKey.of(item);
+            }
+
+            @Override
+            public List<Expense> after(OrderKey cursor, int limit) {
+                synchronized (ExpenseOrderIndex.this) {
+                    NavigableMap<OrderKey, Expense> order = ordered(sortType, from, to, minAmount, maxAmount);
+                    return take(cursor == null ? order : order.tailMap(cursor, false), from, to, minAmount, maxAmount, limit);
+                }
+            }
+
+            @Override
+            public List<Expense> before(OrderKey cursor, int limit) {
+                synchronized (ExpenseOrderIndex.this) {
+                    NavigableMap<OrderKey, Expense> order = ordered(sortType, from, to, minAmount, maxAmount);
+                    List<Expense> page = take(order.headMap(cursor, false).descendingMap(), from, to, minAmount, maxAmount, limit);
+                    Collections.reverse(page);
+                    return page;
+                }
+            }
+        };
+    }
+
+    // 依排序類型取得索引的有序檢視（先縮小到排序鍵的區間）
+    private NavigableMap<OrderKey, Expense> ordered(String sortType, LocalDate from, LocalDate to,
+                                                    BigDecimal minAmount, BigDecimal maxAmount) {
+        NavigableMap<OrderKey, Expense> order = sortType.startsWith("amount")
+            ? amountRange(minAmount, maxAmount) : dateRange(from, to);
+        return sortType.endsWith("Asc") ? order : order.descendingMap();
+    }
+
+    private static List<Expense> take(NavigableMap<OrderKey, Expense> order, LocalDate from, LocalDate to,
+                                      BigDecimal minAmount, BigDecimal maxAmount, int limit) {
+        List<Expense> page = new ArrayList<>(Math.min(limit, 64));
+        for (Map.Entry<OrderKey, Expense> entry : order.entrySet()) {
+            if (page.size() >= limit) break;
+            if (inDates(entry.getKey().date(), from, to) && inAmounts(entry.getKey().amount(), minAmount, maxAmount)) {
+                page.add(entry.getValue());
+            }
+        }
+        return page;
+    }
+}
@@ -0,0 +1,412 @@
+// JdbcLedgerStore.java - 內嵌 SQL 資料庫儲存
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 內嵌 SQL 資料庫儲存
+ * ----------------
+ * 以 JDBC 連線到同一個行程內的資料庫（例如 H2 的 jdbc:h2:./ledger 或 SQLite 的 jdbc:sqlite:ledger.db，
+ * 執行時把驅動程式 jar 放在 classpath 上即可），把帳本存成有索引的資料表：
+ * <pre>
+ * ledger_expenses   (id PK, epoch_day, amount, amount_scale, type, category, remark)
+ *                   索引 (epoch_day)、(type, epoch_day)
+ * ledger_categories (kind, parent, slot, name)       kind：income / main / sub
+ * ledger_reminders  (slot PK, name, payload)          payload 為序列化的 Reminder
+ * ledger_meta       (meta_key PK, meta_value)         記帳快照已涵蓋的變更編號
+ * </pre>
+ * 所有寫入都使用預先編譯、批次送出的語句，並在一個交易中完成；逐筆變更只寫入受影響的列
+ * 日期以 epoch day 整數存放，區間查詢與分類加總直接在資料庫執行
+ * 只使用 H2 與 SQLite 共同支援的語法（INSERT 前先 DELETE 取代 upsert）
+ */
+public class JdbcLedgerStore implements LedgerStore, QueryableLedgerStore {
+    // 每批送出的列數
+    private static final int BATCH_SIZE = 1000;
+    // 記帳快照變更編號在 ledger_meta 的名稱
+    private static final String SEQUENCE_KEY = "expenses.sequence";
+
+    private static final String EXPENSE_COLUMNS = "id, epoch_day, amount, amount_scale, type, category, remark";
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS ledger_expenses (id BIGINT PRIMARY KEY, epoch_day BIGINT NOT NULL, "
+            + "amount DECIMAL(24,6) NOT NULL, amount_scale INT NOT NULL, type VARCHAR(16), "
+            + "category VARCHAR(255), remark VARCHAR(4000))",
+        "CREATE INDEX IF NOT EXISTS ledger_expenses_day ON ledger_expenses (epoch_day)",
+        "CREATE INDEX IF NOT EXISTS ledger_expenses_type_day ON ledger_expenses (type, epoch_day)",
+        "CREATE TABLE IF NOT EXISTS ledger_categories (kind VARCHAR(8) NOT NULL, parent VARCHAR(255) NOT NULL, "
+            + "slot INT NOT NULL, name VARCHAR(255) NOT NULL, PRIMARY KEY (kind, parent, slot))",
+        "CREATE TABLE IF NOT EXISTS ledger_reminders (slot INT PRIMARY KEY, name VARCHAR(255), payload BLOB)",
+        "CREATE TABLE IF NOT EXISTS ledger_meta (meta_key VARCHAR(64) PRIMARY KEY, meta_value BIGINT NOT NULL)"
+    };
+
+    private final Connection connection;
+    // 連線的 URL（訊息顯示用）
+    private final String url;
+
+    /**
+     * 連線並建立資料表（已存在時沿用）
+     *
+     * @param url JDBC URL
+     * @param user 使用者（不需要時為 null）
+     * @param password 密碼（不需要時為 null）
+     * @return 儲存
+     * @throws IOException 找不到驅動程式或連線失敗
+     */
+    public static JdbcLedgerStore open(String url, String user, String password) throws IOException {
+        try {
+            Connection connection = user == null
+                ? DriverManager.getConnection(url)
+                : DriverManager.getConnection(url, user, password);
+            return new JdbcLedgerStore(connection);
+        } catch (SQLException e) {
+            throw new IOException("無法連線到資料庫 " + url + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 建構子：使用已開啟的連線並建立資料表
+     *
+     * @param connection 連線（之後由此儲存負責關閉）
+     * @throws SQLException 建立資料表失敗
+     */
+    public JdbcLedgerStore(Connection connection) throws SQLException {
+        this.connection = connection;
+        this.url = connection.getMetaData().getURL();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+
+    // 在一個交易中執行寫入，失敗時回復並轉成 IOException
+    @FunctionalInterface
+    private interface Work<T> {
+        T run() throws SQLException, IOException;
+    }
+
+    private synchronized <T> T inTransaction(String what, Work<T> work) throws IOException {
+        try {
+            T result = work.run();
+            connection.commit();
+            return result;
+        } catch (SQLException | IOException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollback) {
+                e.addSuppressed(rollback);
+            }
+            if (e instanceof IOException io) throw io;
+            throw new IOException(what + "失敗: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 資料庫中是否還沒有任何帳本資料（第一次使用，需要匯入）
+     *
+     * @return 沒有記帳記錄、分類與提醒時返回 true
+     * @throws IOException 查詢失敗
+     */
+    public boolean isEmpty() throws IOException {
+        return inTransaction("查詢資料庫", () -> {
+            try (Statement statement = connection.createStatement()) {
+                for (String table : List.of("ledger_meta", "ledger_categories", "ledger_reminders")) {
+                    try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                        if (rs.next() && rs.getLong(1) > 0) return false;
+                    }
+                }
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public ExpenseSnapshot loadExpenses() throws IOException {
+        return inTransaction("讀取記帳記錄", () -> {
+            Long sequence = readMeta(SEQUENCE_KEY);
+            if (sequence == null) return null;
+            return new ExpenseSnapshot(query("SELECT " + EXPENSE_COLUMNS
+                + " FROM ledger_expenses ORDER BY epoch_day, id"), sequence);
+        });
+    }
+
+    @Override
+    public void saveExpenses(List<Expense> expenses, long sequence) throws IOException {
+        List<Expense> snapshot = new ArrayList<>(expenses);
+        inTransaction("儲存記帳記錄", () -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM ledger_expenses");
+            }
+            insertExpenses(snapshot);
+            writeMeta(SEQUENCE_KEY, sequence);
+            return null;
+        });
+    }
+
+    /**
+     * 只寫入受影響的列：同一筆記錄多次變更時只寫最後狀態
+     */
+    @Override
+    public boolean saveChanges(List<LedgerChange> changes, long sequence) throws IOException {
+        Map<Long, Expense> finalState = new LinkedHashMap<>();
+        for (LedgerChange change : changes) {
+            switch (change.getKind()) {
+                case EXPENSE_ADD, EXPENSE_EDIT -> finalState.put(change.getAfter().getId(), change.getAfter());
+                case EXPENSE_DELETE -> finalState.put(change.getBefore().getId(), null);
+                default -> {
+                    return false; // 整本重新載入等事件無法逐筆表示
+                }
+            }
+        }
+        inTransaction("儲存記帳變更", () -> {
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM ledger_expenses WHERE id = ?")) {
+                int pending = 0;
+                for (Long id : finalState.keySet()) {
+                    delete.setLong(1, id);
+                    delete.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        delete.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) delete.executeBatch();
+            }
+            List<Expense> rows = new ArrayList<>();
+            for (Expense e : finalState.values()) {
+                if (e != null) rows.add(e);
+            }
+            insertExpenses(rows);
+            writeMeta(SEQUENCE_KEY, sequence);
+            return null;
+        });
+        return true;
+    }
+
+    private void insertExpenses(List<Expense> expenses) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO ledger_expenses (" + EXPENSE_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            int pending = 0;
+            for (Expense e : expenses) {
+                insert.setLong(1, e.getId());
+                insert.setLong(2, e.getDate().toEpochDay());
+                insert.setBigDecimal(3, e.getAmount());
+                insert.setInt(4, e.getAmount().scale());
+                insert.setString(5, e.getType() == null ? null : e.getType().name());
+                insert.setString(6, e.getCategory());
+                insert.setString(7, e.getRemark());
+                insert.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    insert.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) insert.executeBatch();
+        }
+    }
+
+    @Override
+    public CategoryData loadCategories() throws IOException {
+        return inTransaction("讀取分類", () -> {
+            LinkedHashMap<Integer, String> income = new LinkedHashMap<>();
+            LinkedHashMap<Integer, String> main = new LinkedHashMap<>();
+            LinkedHashMap<String, LinkedHashMap<Integer, String>> sub = new LinkedHashMap<>();
+            boolean any = false;
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(
+                     "SELECT kind, parent, slot, name FROM ledger_categories ORDER BY kind, parent, slot")) {
+                while (rs.next()) {
+                    any = true;
+                    String kind = rs.getString(1);
+                    int position = rs.getInt(3);
+                    String name = rs.getString(4);
+                    switch (kind) {
+                        case "income" -> income.put(position, name);
+                        case "main" -> main.put(position, name);
+                        default -> sub.computeIfAbsent(rs.getString(2), k -> new LinkedHashMap<>()).put(position, name);
+                    }
+                }
+            }
+            if (!any) return null;
+            // 子分類依主分類順序排列，與檔案儲存的順序一致
+            LinkedHashMap<String, LinkedHashMap<Integer, String>> ordered = new LinkedHashMap<>();
+            for (String mainName : main.values()) {
+                LinkedHashMap<Integer, String> children = sub.remove(mainName);
+                if (children != null) ordered.put(mainName, children);
+            }
+            ordered.putAll(sub);
+            return new CategoryData(income, main, ordered);
+        });
+    }
+
+    @Override
+    public void saveCategories(CategoryData data) throws IOException {
+        inTransaction("儲存分類", () -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM ledger_categories");
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO ledger_categories (kind, parent, slot, name) VALUES (?, ?, ?, ?)")) {
+                addCategories(insert, "income", "", data.income());
+                addCategories(insert, "main", "", data.expenseMain());
+                for (Map.Entry<String, LinkedHashMap<Integer, String>> entry : data.expenseSub().entrySet()) {
+                    addCategories(insert, "sub", entry.getKey(), entry.getValue());
+                }
+                insert.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    private static void addCategories(PreparedStatement insert, String kind, String parent,
+                                      Map<Integer, String> categories) throws SQLException {
+        for (Map.Entry<Integer, String> entry : categories.entrySet()) {
+            insert.setString(1, kind);
+            insert.setString(2, parent);
+            insert.setInt(3, entry.getKey());
+            insert.setString(4, entry.getValue());
+            insert.addBatch();
+        }
+    }
+
+    @Override
+    public List<Reminder> loadReminders() throws IOException {
+        return inTransaction("讀取提醒", () -> {
+            List<Reminder> reminders = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT payload FROM ledger_reminders ORDER BY slot")) {
+                while (rs.next()) {
+                    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(rs.getBytes(1)))) {
+                        reminders.add((Reminder) ois.readObject());
+                    } catch (ClassNotFoundException | ClassCastException e) {
+                        throw new InvalidObjectException("提醒資料格式錯誤: " + e.getMessage());
+                    }
+                }
+            }
+            return reminders.isEmpty() ? null : reminders;
+        });
+    }
+
+    @Override
+    public void saveReminders(List<Reminder> reminders) throws IOException {
+        List<Reminder> snapshot = new ArrayList<>(reminders);
+        inTransaction("儲存提醒", () -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM ledger_reminders");
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO ledger_reminders (slot, name, payload) VALUES (?, ?, ?)")) {
+                for (int i = 0; i < snapshot.size(); i++) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                        oos.writeObject(snapshot.get(i));
+                    }
+                    insert.setInt(1, i);
+                    insert.setString(2, snapshot.get(i).getName());
+                    insert.setBytes(3, bytes.toByteArray());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public List<Expense> range(LocalDate from, LocalDate to) throws IOException {
+        return inTransaction("查詢日期區間", () -> query("SELECT " + EXPENSE_COLUMNS
+            + " FROM ledger_expenses WHERE epoch_day BETWEEN ? AND ? ORDER BY epoch_day, id",
+            from.toEpochDay(), to.toEpochDay()));
+    }
+
+    @Override
+    public List<Expense> searchRemark(String keyword) throws IOException {
+        // INSTR 區分大小寫（LIKE 在部分資料庫不區分），結果與 String.contains 一致
+        return inTransaction("搜尋備註", () -> query("SELECT " + EXPENSE_COLUMNS
+            + " FROM ledger_expenses WHERE INSTR(remark, ?) > 0 ORDER BY epoch_day, id", keyword));
+    }
+
+    @Override
+    public Map<String, BigDecimal> totalsByCategory(LocalDate from, LocalDate to, TransactionType type)
+            throws IOException {
+        return inTransaction("分類加總", () -> {
+            Map<String, BigDecimal> totals = new LinkedHashMap<>();
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT category, SUM(amount), MAX(amount_scale) FROM ledger_expenses "
+                        + "WHERE type = ? AND epoch_day BETWEEN ? AND ? GROUP BY category ORDER BY category")) {
+                select.setString(1, type.name());
+                select.setLong(2, from.toEpochDay());
+                select.setLong(3, to.toEpochDay());
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        totals.put(rs.getString(1), rs.getBigDecimal(2).setScale(rs.getInt(3), RoundingMode.HALF_UP));
+                    }
+                }
+            }
+            return totals;
+        });
+    }
+
+    // 執行查詢並把每一列轉成記錄
+    private List<Expense> query(String sql, Object... parameters) throws SQLException {
+        List<Expense> result = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                select.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    String type = rs.getString(5);
+                    Expense e = new Expense(LocalDate.ofEpochDay(rs.getLong(2)),
+                        rs.getBigDecimal(3).setScale(rs.getInt(4), RoundingMode.HALF_UP),
+                        rs.getString(6), rs.getString(7), type == null ? null : TransactionType.valueOf(type));
+                    e.setId(rs.getLong(1));
+                    result.add(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Long readMeta(String name) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement("SELECT meta_value FROM ledger_meta WHERE meta_key = ?")) {
+            select.setString(1, name);
+            try (ResultSet rs = select.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    private void writeMeta(String name, long value) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM ledger_meta WHERE meta_key = ?")) {
+            delete.setString(1, name);
+            delete.executeUpdate();
+        }
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO ledger_meta (meta_key, meta_value) VALUES (?, ?)")) {
+            insert.setString(1, name);
+            insert.setLong(2, value);
+            insert.executeUpdate();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException("關閉資料庫失敗: " + e.getMessage(), e);
+        }
+    }
+}
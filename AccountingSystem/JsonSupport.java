@@ -0,0 +1,221 @@
+// JsonSupport.java - 簡易 JSON 輔助類
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 簡易 JSON 輔助類
+ * --------------
+ * 提供變更紀錄（JSON lines）所需的最小 JSON 功能：字串跳脫與解析
+ * 解析結果以 Map（物件）、List（陣列）、String、BigDecimal 字串（數字保留原文）、
+ * Boolean 與 null 表示，不依賴任何第三方函式庫
+ */
+public final class JsonSupport {
+
+    private JsonSupport() {
+    }
+
+    /**
+     * 將字串轉為 JSON 字串常值（含雙引號），null 轉為 null
+     *
+     * @param value 原始字串
+     * @return JSON 字串常值
+     */
+    public static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * 解析一段 JSON 文字
+     *
+     * @param text JSON 文字
+     * @return 解析結果（Map、List、String、Boolean 或 null；數字以原文字串表示）
+     * @throws IllegalArgumentException 若格式錯誤
+     */
+    public static Object parse(String text) {
+        Parser parser = new Parser(text);
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) {
+            throw new IllegalArgumentException("JSON 格式錯誤：多餘的內容於位置 " + parser.pos);
+        }
+        return value;
+    }
+
+    /**
+     * 解析 JSON 物件
+     *
+     * @param text JSON 文字
+     * @return 物件內容（保留欄位順序）
+     * @throws IllegalArgumentException 若不是 JSON 物件
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String text) {
+        Object value = parse(text);
+        if (!(value instanceof Map<?, ?>)) {
+            throw new IllegalArgumentException("JSON 格式錯誤：預期為物件");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    // 遞迴下降解析器
+    private static final class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw new IllegalArgumentException("JSON 格式錯誤：內容不完整");
+            }
+            char c = text.charAt(pos);
+            return switch (c) {
+                case '{' -> readObject();
+                case '[' -> readArray();
+                case '"' -> readString();
+                case 't' -> readLiteral("true", Boolean.TRUE);
+                case 'f' -> readLiteral("false", Boolean.FALSE);
+                case 'n' -> readLiteral("null", null);
+                default -> readNumber();
+            };
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            pos++; // 跳過 {
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return map;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                map.put(key, readValue());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') return map;
+                if (c != ',') throw new IllegalArgumentException("JSON 格式錯誤：位置 " + (pos - 1));
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> list = new ArrayList<>();
+            pos++; // 跳過 [
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                list.add(readValue());
+                skipWhitespace();
+                char c = next();
+                if (c == ']') return list;
+                if (c != ',') throw new IllegalArgumentException("JSON 格式錯誤：位置 " + (pos - 1));
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char esc = next();
+                switch (esc) {
+                    case '"', '\\', '/' -> sb.append(esc);
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("JSON 格式錯誤：不完整的 unicode 跳脫");
+                        }
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> throw new IllegalArgumentException("JSON 格式錯誤：未知跳脫字元 " + esc);
+                }
+            }
+        }
+
+        private String readNumber() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            if (start == pos) {
+                throw new IllegalArgumentException("JSON 格式錯誤：位置 " + pos);
+            }
+            return text.substring(start, pos);
+        }
+
+        private Object readLiteral(String literal, Object value) {
+            if (!text.startsWith(literal, pos)) {
+                throw new IllegalArgumentException("JSON 格式錯誤：位置 " + pos);
+            }
+            pos += literal.length();
+            return value;
+        }
+
+        private char peek() {
+            return pos < text.length() ? text.charAt(pos) : '\0';
+        }
+
+        private char next() {
+            if (pos >= text.length()) {
+                throw new IllegalArgumentException("JSON 格式錯誤：內容不完整");
+            }
+            return text.charAt(pos++);
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw new IllegalArgumentException("JSON 格式錯誤：預期 '" + c + "' 於位置 " + (pos - 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,407 @@
+// LedgerArchive.java - 已結束年度的壓縮封存（冷資料層）
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 已結束年度的壓縮封存
+ * ----------------
+ * 把已結束的年度移出 ExpenseManager 的記憶體列表與 expenses.ser，寫成唯讀的年度檔 year-YYYY.seg：
+ * 檔頭之後是該年的摘要（每月 × 類型 × 分類的合計與筆數、每日淨額與筆數），再來是壓縮過的明細
+ * 開啟時只讀入各年度的摘要（常駐記憶體），LedgerCube 與 BalanceIndex 以摘要補上封存年度，
+ * 報表與餘額仍涵蓋全部年度；明細只在查詢封存年度時才解壓縮（保留最近一個年度的明細）
+ * 記憶體中的記錄與每次存檔的成本因此只與近期資料成正比
+ */
+public class LedgerArchive {
+    // 年度檔識別碼（"LARC"）
+    private static final int MAGIC = 0x4C415243;
+    private static final int VERSION = 1;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("year-(\\d{4})\\.seg");
+
+    /**
+     * 某月、某類型、某分類的合計
+     */
+    public record MonthlyTotal(YearMonth month, TransactionType type, String category, BigDecimal sum, long count) {
+    }
+
+    /**
+     * 某日的淨額（收入為正、支出為負）與筆數
+     */
+    public record DailyNet(LocalDate date, BigDecimal net, long count) {
+    }
+
+    /**
+     * 一個封存年度的常駐摘要
+     */
+    public record YearSummary(int year, long recordCount, long maxId, long compressedBytes,
+                              List<MonthlyTotal> monthly, List<DailyNet> daily) {
+        /**
+         * 該年某類型的合計
+         *
+         * @param type 交易類型
+         * @return 合計
+         */
+        public BigDecimal total(TransactionType type) {
+            BigDecimal sum = BigDecimal.ZERO;
+            for (MonthlyTotal t : monthly) {
+                if (t.type() == type) sum = sum.add(t.sum());
+            }
+            return sum;
+        }
+    }
+
+    // 封存目錄
+    private final Path dir;
+    // 年度 -> 摘要
+    private final TreeMap<Integer, YearSummary> years = new TreeMap<>();
+    // 最近一次解壓縮的年度明細
+    private int cachedYear;
+    private List<Expense> cachedRecords;
+
+    /**
+     * 建構子：讀入目錄中所有年度檔的摘要（不解壓縮明細）
+     *
+     * @param dir 封存目錄
+     * @throws IOException 讀取失敗或年度檔損毀
+     */
+    public LedgerArchive(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                Matcher m = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (!m.matches()) continue;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    YearSummary summary = readSummary(in);
+                    years.put(summary.year(), summary);
+                }
+            }
+        }
+    }
+
+    private static Path segmentFile(Path dir, int year) {
+        return dir.resolve("year-" + year + ".seg");
+    }
+
+    // --- 摘要 ---
+
+    public synchronized boolean isArchived(int year) {
+        return years.containsKey(year);
+    }
+
+    public synchronized Set<Integer> archivedYears() {
+        return Set.copyOf(years.keySet());
+    }
+
+    public synchronized YearSummary summary(int year) {
+        return years.get(year);
+    }
+
+    /**
+     * 是否有封存年度與日期區間重疊
+     *
+     * @param from 起始日期
+     * @param to 結束日期
+     * @return 有重疊返回 true
+     */
+    public synchronized boolean covers(LocalDate from, LocalDate to) {
+        Integer year = years.ceilingKey(from.getYear());
+        return year != null && year <= to.getYear();
+    }
+
+    /**
+     * 所有封存年度的每月合計（供 LedgerCube 補上封存年度）
+     *
+     * @return 每月合計
+     */
+    public synchronized List<MonthlyTotal> monthlyTotals() {
+        List<MonthlyTotal> all = new ArrayList<>();
+        for (YearSummary summary : years.values()) {
+            all.addAll(summary.monthly());
+        }
+        return all;
+    }
+
+    /**
+     * 所有封存年度的每日淨額（供 BalanceIndex 補上封存年度）
+     *
+     * @return 每日淨額
+     */
+    public synchronized List<DailyNet> dailyNets() {
+        List<DailyNet> all = new ArrayList<>();
+        for (YearSummary summary : years.values()) {
+            all.addAll(summary.daily());
+        }
+        return all;
+    }
+
+    /**
+     * 所有封存記錄使用過的最大編號
+     *
+     * @return 最大編號（沒有封存時為 0）
+     */
+    public synchronized long maxId() {
+        long max = 0;
+        for (YearSummary summary : years.values()) {
+            max = Math.max(max, summary.maxId());
+        }
+        return max;
+    }
+
+    // --- 明細 ---
+
+    /**
+     * 解壓縮某個封存年度的明細
+     *
+     * @param year 年度
+     * @return 依日期排序的記錄副本，未封存時為空列表
+     * @throws IOException 讀取失敗
+     */
+    public synchronized List<Expense> records(int year) throws IOException {
+        if (!years.containsKey(year)) return List.of();
+        if (cachedRecords == null || cachedYear != year) {
+            cachedRecords = readRecords(segmentFile(dir, year));
+            cachedYear = year;
+        }
+        List<Expense> copies = new ArrayList<>(cachedRecords.size());
+        for (Expense e : cachedRecords) {
+            copies.add(new Expense(e));
+        }
+        return copies;
+    }
+
+    /**
+     * 取得日期區間（皆含）內封存年度的記錄
+     *
+     * @param from 起始日期
+     * @param to 結束日期
+     * @return 依日期排序的記錄
+     * @throws IOException 讀取失敗
+     */
+    public synchronized List<Expense> range(LocalDate from, LocalDate to) throws IOException {
+        List<Expense> result = new ArrayList<>();
+        for (int year : years.subMap(from.getYear(), true, to.getYear(), true).keySet()) {
+            for (Expense e : records(year)) {
+                if (!e.getDate().isBefore(from) && !e.getDate().isAfter(to)) {
+                    result.add(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    // --- 封存與還原 ---
+
+    /**
+     * 封存一個已結束的年度：寫出年度檔後把記錄移出記憶體
+     * 已封存的年度再次封存時（例如事後補記），與既有明細合併後重寫
+     *
+     * @param manager 記帳管理器
+     * @param year 年度（必須早於今年）
+     * @return 封存後該年度的筆數
+     * @throws IOException 寫入失敗（此時記錄仍留在記憶體中）
+     */
+    public synchronized long archiveYear(ExpenseManager manager, int year) throws IOException {
+        if (year >= LocalDate.now().getYear()) {
+            throw new IllegalArgumentException("只能封存已結束的年度: " + year);
+        }
+        // 依編號合併：上次封存中斷時記憶體中可能仍有同一批記錄，以記憶體中的版本為準
+        Map<Long, Expense> byId = new LinkedHashMap<>();
+        for (Expense e : records(year)) {
+            byId.put(e.getId(), e);
+        }
+        for (Expense e : manager.getExpenses()) {
+            if (e.getDate().getYear() == year) byId.put(e.getId(), e);
+        }
+        if (byId.isEmpty()) return 0;
+        List<Expense> rows = new ArrayList<>(byId.values());
+        rows.sort(Comparator.comparing(Expense::getDate).thenComparingLong(Expense::getId));
+        YearSummary summary = writeSegment(year, rows);
+        years.put(year, summary);
+        cachedRecords = null;
+        manager.detachYear(year);
+        return summary.recordCount();
+    }
+
+    /**
+     * 封存早於最近 keepYears 個年度的所有年度
+     *
+     * @param manager 記帳管理器
+     * @param keepYears 保留在記憶體中的年度數（含今年）
+     * @return 封存的筆數
+     * @throws IOException 寫入失敗
+     */
+    public synchronized long archiveClosedYears(ExpenseManager manager, int keepYears) throws IOException {
+        int firstHot = LocalDate.now().getYear() - Math.max(1, keepYears) + 1;
+        TreeSet<Integer> closed = new TreeSet<>();
+        for (Expense e : manager.getExpenses()) {
+            if (e.getDate().getYear() < firstHot) closed.add(e.getDate().getYear());
+        }
+        long archived = 0;
+        for (int year : closed) {
+            archived += archiveYear(manager, year);
+        }
+        return archived;
+    }
+
+    /**
+     * 還原一個封存年度：明細放回記憶體並刪除年度檔
+     *
+     * @param manager 記帳管理器
+     * @param year 年度
+     * @return 還原的筆數
+     * @throws IOException 讀取失敗
+     */
+    public synchronized int restoreYear(ExpenseManager manager, int year) throws IOException {
+        List<Expense> rows = records(year);
+        if (rows.isEmpty()) return 0;
+        years.remove(year);
+        cachedRecords = null;
+        manager.attachRecords(rows);
+        Files.deleteIfExists(segmentFile(dir, year));
+        return rows.size();
+    }
+
+    // --- 年度檔格式 ---
+
+    private YearSummary writeSegment(int year, List<Expense> rows) throws IOException {
+        Map<List<Object>, BigDecimal[]> monthly = new LinkedHashMap<>();
+        TreeMap<LocalDate, BigDecimal> dailyNet = new TreeMap<>();
+        Map<LocalDate, Long> dailyCount = new HashMap<>();
+        long maxId = 0;
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(
+                new DeflaterOutputStream(body, new Deflater(Deflater.BEST_COMPRESSION), 1 << 16))) {
+            for (Expense e : rows) {
+                ExpenseCodec.write(out, e);
+                maxId = Math.max(maxId, e.getId());
+                BigDecimal[] cell = monthly.computeIfAbsent(
+                    Arrays.asList(YearMonth.from(e.getDate()), e.getType(), e.getCategory()),
+                    k -> new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO});
+                cell[0] = cell[0].add(e.getAmount());
+                cell[1] = cell[1].add(BigDecimal.ONE);
+                BigDecimal signed = e.getType() == TransactionType.支出 ? e.getAmount().negate() : e.getAmount();
+                dailyNet.merge(e.getDate(), signed, BigDecimal::add);
+                dailyCount.merge(e.getDate(), 1L, Long::sum);
+            }
+        }
+        List<MonthlyTotal> totals = new ArrayList<>();
+        monthly.forEach((k, v) -> totals.add(new MonthlyTotal(
+            (YearMonth) k.get(0), (TransactionType) k.get(1), (String) k.get(2), v[0], v[1].longValue())));
+        List<DailyNet> daily = new ArrayList<>();
+        dailyNet.forEach((date, net) -> daily.add(new DailyNet(date, net, dailyCount.get(date))));
+        YearSummary summary = new YearSummary(year, rows.size(), maxId, body.size(), List.copyOf(totals), List.copyOf(daily));
+
+        Path target = segmentFile(dir, year);
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            writeSummary(out, summary);
+            out.writeInt(body.size());
+            body.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return summary;
+    }
+
+    private static void writeSummary(DataOutputStream out, YearSummary summary) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(summary.year());
+        out.writeLong(summary.recordCount());
+        out.writeLong(summary.maxId());
+        out.writeLong(summary.compressedBytes());
+        out.writeInt(summary.monthly().size());
+        for (MonthlyTotal t : summary.monthly()) {
+            out.writeByte(t.month().getMonthValue());
+            out.writeByte(t.type() == null ? -1 : t.type().ordinal());
+            out.writeBoolean(t.category() != null);
+            if (t.category() != null) out.writeUTF(t.category());
+            out.writeUTF(t.sum().toPlainString());
+            out.writeLong(t.count());
+        }
+        out.writeInt(summary.daily().size());
+        for (DailyNet d : summary.daily()) {
+            out.writeShort(d.date().getDayOfYear());
+            out.writeUTF(d.net().toPlainString());
+            out.writeLong(d.count());
+        }
+    }
+
+    private static YearSummary readSummary(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("不是封存年度檔");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("不支援的封存檔版本: " + version);
+        int year = in.readInt();
+        long recordCount = in.readLong();
+        long maxId = in.readLong();
+        long compressedBytes = in.readLong();
+        TransactionType[] types = TransactionType.values();
+        int monthlyCount = in.readInt();
+        List<MonthlyTotal> monthly = new ArrayList<>(monthlyCount);
+        for (int i = 0; i < monthlyCount; i++) {
+            YearMonth month = YearMonth.of(year, in.readByte());
+            int type = in.readByte();
+            String category = in.readBoolean() ? in.readUTF() : null;
+            monthly.add(new MonthlyTotal(month, type < 0 ? null : types[type], category,
+                new BigDecimal(in.readUTF()), in.readLong()));
+        }
+        int dailyCount = in.readInt();
+        List<DailyNet> daily = new ArrayList<>(dailyCount);
+        for (int i = 0; i < dailyCount; i++) {
+            daily.add(new DailyNet(LocalDate.ofYearDay(year, in.readShort()), new BigDecimal(in.readUTF()), in.readLong()));
+        }
+        return new YearSummary(year, recordCount, maxId, compressedBytes, List.copyOf(monthly), List.copyOf(daily));
+    }
+
+    private static List<Expense> readRecords(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            YearSummary summary = readSummary(in);
+            int bodyLength = in.readInt();
+            DataInputStream records = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new BoundedInputStream(in, bodyLength)), 1 << 16));
+            List<Expense> result = new ArrayList<>((int) summary.recordCount());
+            for (long i = 0; i < summary.recordCount(); i++) {
+                result.add(ExpenseCodec.read(records));
+            }
+            return result;
+        }
+    }
+
+    // 只讀取前 limit 個位元組（壓縮區段之後不應被解壓縮器讀到）
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+// LedgerBenchmark.java - 熱點操作效能基準測試
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 熱點操作效能基準測試
+ * ----------------
+ * 在 1 萬、100 萬、1000 萬筆的帳本上量測記帳、查詢、排序、存檔與算式計算的每次操作平均時間，
+ * 結果以 JSON 輸出（欄位沿用 JMH 的 benchmark / params / primaryMetric 結構），方便比較不同版本
+ * 每個項目先暖機數輪讓 JIT 編譯完成，再量測數輪；每輪重複執行直到至少經過指定時間
+ *
+ * 使用方式：
+ * <pre>
+ * java -Xmx8g LedgerBenchmark [--sizes 10000,1000000,10000000] [--warmup 3] [--iterations 5]
+ *                             [--time-ms 500] [--only 名稱,...] [--out 結果.json]
+ * </pre>
+ * 量測時使用獨立的變更串流，帳本處於批次模式，不會寫入 expenses.ser；存檔測試寫到暫存目錄，
+ * 並在壓縮等級 0、1、6、9 下各量測一次存檔與載入（檔案大小輸出到標準錯誤）
+ */
+public class LedgerBenchmark {
+
+    // 單一量測項目：執行一次操作並回傳結果（避免被 JIT 消除）
+    @FunctionalInterface
+    private interface Operation {
+        Object run(int invocation) throws Exception;
+    }
+
+    // 量測結果
+    private record Result(String benchmark, int size, double mean, double error, double[] raw, long opsPerIteration) {
+    }
+
+    private static final String[] KEYWORDS = {"早餐", "薪水", "電影", "Uniqlo", "不存在的關鍵字"};
+    private static final int[] COMPRESSION_LEVELS = {0, 1, 6, 9};
+    private static final String[] EXPRESSIONS = {"120+35*2", "(1500-200)/4", "3 + 5 * (2 - 1)", "99.5*12-(30/3)"};
+
+    private final int warmup;
+    private final int iterations;
+    private final long minIterationNanos;
+    private final Set<String> only;
+    private final Path workDir;
+    // 防止結果被最佳化掉
+    private long sink;
+
+    private LedgerBenchmark(int warmup, int iterations, long minIterationMillis, Set<String> only, Path workDir) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.minIterationNanos = minIterationMillis * 1_000_000L;
+        this.only = only;
+        this.workDir = workDir;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> sizes = List.of(10_000, 1_000_000, 10_000_000);
+        int warmup = 3;
+        int iterations = 5;
+        long timeMs = 500;
+        Set<String> only = Set.of();
+        String out = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--sizes" -> sizes = Arrays.stream(value.split(",")).map(String::trim).map(Integer::valueOf).toList();
+                case "--warmup" -> warmup = Integer.parseInt(value);
+                case "--iterations" -> iterations = Integer.parseInt(value);
+                case "--time-ms" -> timeMs = Long.parseLong(value);
+                case "--only" -> only = Set.of(value.split(","));
+                case "--out" -> out = value;
+                default -> {
+                    System.err.println("未知參數: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+
+        // 量測期間關閉各管理器的主控台訊息（例如每次載入的提示），進度與結果另外輸出
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Path workDir = Files.createTempDirectory("ledger-bench");
+        CategoryManager.loadCategories(workDir.resolve("categories.ser").toString()); // 預設分類
+        LedgerBenchmark bench = new LedgerBenchmark(warmup, iterations, timeMs, only, workDir);
+        List<Result> results = new ArrayList<>();
+        for (int size : sizes) {
+            results.addAll(bench.runAll(size));
+        }
+        System.setOut(stdout);
+        System.err.println("checksum: " + bench.sink);
+
+        String json = bench.toJson(results);
+        if (out != null) {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(out), StandardCharsets.UTF_8)) {
+                writer.write(json);
+            }
+            System.out.println("結果已寫入: " + Paths.get(out).toAbsolutePath());
+        } else {
+            System.out.println(json);
+        }
+    }
+
+    private List<Result> runAll(int size) throws Exception {
+        System.err.printf("== 準備 %,d 筆資料 ==%n", size);
+        List<Expense> data = new LedgerGenerator(42L, size).toList();
+        ExpenseManager manager = new ExpenseManager(new LedgerChangeStream());
+        manager.beginBatch(); // 不寫入 expenses.ser
+        manager.addExpenses(data);
+        CategoryManager categories = new CategoryManager();
+        Random random = new Random(7);
+        LocalDate first = data.isEmpty() ? LocalDate.now() : data.get(0).getDate();
+        int years = Math.max(1, LocalDate.now().getYear() - first.getYear() + 1);
+        String saveFile = workDir.resolve("bench-" + size + ".ser").toString();
+
+        List<Result> results = new ArrayList<>();
+        results.add(measure("addExpense", size, i -> {
+            Expense e = new Expense(LocalDate.now().minusDays(random.nextInt(365)),
+                BigDecimal.valueOf(1 + random.nextInt(5000)), "飲食", "基準測試", TransactionType.支出);
+            manager.addExpense(e);
+            return e;
+        }));
+        results.add(measure("getExpensesByMonth", size,
+            i -> manager.getExpensesByMonth(first.getYear() + random.nextInt(years), 1 + random.nextInt(12)).size()));
+        results.add(measure("searchByRemark", size,
+            i -> manager.searchByRemark(KEYWORDS[i % KEYWORDS.length]).size()));
+        String[] sortTypes = {"amountDesc", "amountAsc", "dateAsc", "dateDesc"};
+        results.add(measure("sort", size, i -> {
+            List<Expense> copy = manager.getExpenses();
+            manager.sort(copy, sortTypes[i % sortTypes.length]);
+            return copy.get(0);
+        }));
+        // 存檔與載入在各壓縮等級下量測（0 為不壓縮，只有區塊校驗），並記錄檔案大小
+        int defaultLevel = BlockCompressedOutputStream.getDefaultLevel();
+        for (int level : COMPRESSION_LEVELS) {
+            BlockCompressedOutputStream.setDefaultLevel(level);
+            results.add(measure("saveExpenses.level" + level, size, i -> {
+                manager.saveExpenses(saveFile);
+                return saveFile;
+            }));
+            manager.saveExpenses(saveFile);
+            System.err.printf("%-20s size=%,-12d %,14d bytes%n", "  file.level" + level, size, Files.size(Paths.get(saveFile)));
+            results.add(measure("loadExpenses.level" + level, size, i -> {
+                manager.loadExpenses(saveFile);
+                return manager;
+            }));
+        }
+        BlockCompressedOutputStream.setDefaultLevel(defaultLevel);
+        String[] names = {"飲食", "薪資", "虛擬貨幣", "不存在", "其他"};
+        results.add(measure("isValidCategory", size,
+            i -> categories.isValidCategory(i % 2 == 0 ? TransactionType.支出 : TransactionType.收入, names[i % names.length])));
+        results.add(measure("evaluate", size, i -> ExpressionEvaluator.evaluate(EXPRESSIONS[i % EXPRESSIONS.length])));
+        results.removeIf(Objects::isNull);
+        Files.deleteIfExists(Paths.get(saveFile));
+        return results;
+    }
+
+    // 暖機後量測數輪，每輪至少 minIterationNanos，回傳每次操作的平均奈秒數
+    private Result measure(String name, int size, Operation op) throws Exception {
+        if (!only.isEmpty() && !only.contains(name)) return null;
+        PrintStream log = System.err;
+        int invocation = 0;
+        double[] raw = new double[iterations];
+        long totalOps = 0;
+        for (int round = 0; round < warmup + iterations; round++) {
+            long ops = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                Object value = op.run(invocation++);
+                sink += value == null ? 0 : value.hashCode();
+                ops++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < minIterationNanos);
+            if (round >= warmup) {
+                raw[round - warmup] = (double) elapsed / ops;
+                totalOps += ops;
+            }
+        }
+        double mean = Arrays.stream(raw).average().orElse(0);
+        double variance = Arrays.stream(raw).map(v -> (v - mean) * (v - mean)).sum() / Math.max(1, raw.length - 1);
+        // 約 99.9% 信賴區間（常態近似）
+        double error = raw.length > 1 ? 3.29 * Math.sqrt(variance / raw.length) : Double.NaN;
+        log.printf("%-20s size=%,-12d %,14.1f ± %,.1f ns/op%n", name, size, mean, error);
+        return new Result(name, size, mean, error, raw, totalOps / Math.max(1, iterations));
+    }
+
+    private String toJson(List<Result> results) {
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            sb.append("  {\"benchmark\": ").append(JsonSupport.quote("LedgerBenchmark." + r.benchmark()))
+                .append(", \"mode\": \"avgt\"")
+                .append(", \"warmupIterations\": ").append(warmup)
+                .append(", \"measurementIterations\": ").append(iterations)
+                .append(", \"params\": {\"size\": \"").append(r.size()).append("\"}")
+                .append(", \"primaryMetric\": {\"score\": ").append(number(r.mean()))
+                .append(", \"scoreError\": ").append(number(r.error()))
+                .append(", \"scoreUnit\": \"ns/op\", \"rawData\": [[");
+            for (int j = 0; j < r.raw().length; j++) {
+                if (j > 0) sb.append(", ");
+                sb.append(number(r.raw()[j]));
+            }
+            sb.append("]], \"opsPerIteration\": ").append(r.opsPerIteration()).append("}}");
+            sb.append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        return sb.append("]\n").toString();
+    }
+
+    private static String number(double value) {
+        return Double.isFinite(value) ? String.format(Locale.ROOT, "%.3f", value) : "\"NaN\"";
+    }
+}
@@ -0,0 +1,213 @@
+// LedgerChange.java - 帳本變更事件類別
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * LedgerChange 類別 - 帳本變更事件
+ * ---------------
+ * 代表記帳記錄、分類或提醒的一次變更，由 LedgerChangeStream 依序編號後發布
+ * 記帳記錄的變更以 before/after 兩份快照表示：
+ * 新增時 before 為 null，刪除時 after 為 null，編輯時兩者皆有
+ * 此類別為不可變物件，可安全地在多個訂閱者之間共用
+ */
+public final class LedgerChange {
+
+    /**
+     * 變更種類
+     */
+    public enum Kind {
+        EXPENSE_ADD,
+        EXPENSE_EDIT,
+        EXPENSE_DELETE,
+        /** 整本帳本重新載入（訂閱者應依目前資料重建自身狀態） */
+        LEDGER_LOAD,
+        CATEGORY_ADD,
+        CATEGORY_RENAME,
+        CATEGORY_DELETE,
+        REMINDER_ADD,
+        REMINDER_EDIT,
+        REMINDER_DELETE
+    }
+
+    // 發布順序編號（由 1 開始，嚴格遞增）
+    private final long sequence;
+    // 發布時間
+    private final Instant timestamp;
+    // 變更種類
+    private final Kind kind;
+    // 變更前的記帳記錄快照
+    private final Expense before;
+    // 變更後的記帳記錄快照
+    private final Expense after;
+    // 分類範圍（"收入" 或支出主分類名稱）；提醒變更時為 null
+    private final String scope;
+    // 分類或提醒的舊名稱
+    private final String oldName;
+    // 分類或提醒的新名稱
+    private final String newName;
+
+    private LedgerChange(long sequence, Instant timestamp, Kind kind, Expense before, Expense after,
+                         String scope, String oldName, String newName) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.kind = kind;
+        this.before = before;
+        this.after = after;
+        this.scope = scope;
+        this.oldName = oldName;
+        this.newName = newName;
+    }
+
+    /**
+     * 建立記帳記錄變更事件（尚未編號）
+     *
+     * @param kind 變更種類
+     * @param before 變更前的記錄（新增時為 null）
+     * @param after 變更後的記錄（刪除時為 null）
+     * @return 變更事件
+     */
+    public static LedgerChange ofExpense(Kind kind, Expense before, Expense after) {
+        return new LedgerChange(0, null, kind,
+            before == null ? null : new Expense(before),
+            after == null ? null : new Expense(after),
+            null, null, null);
+    }
+
+    /**
+     * 建立帳本重新載入事件（尚未編號）
+     *
+     * @return 變更事件
+     */
+    public static LedgerChange ofLoad() {
+        return new LedgerChange(0, null, Kind.LEDGER_LOAD, null, null, null, null, null);
+    }
+
+    /**
+     * 建立分類變更事件（尚未編號）
+     *
+     * @param kind 變更種類
+     * @param scope 分類範圍（"收入" 或支出主分類名稱）
+     * @param oldName 舊名稱（新增時為 null）
+     * @param newName 新名稱（刪除時為 null）
+     * @return 變更事件
+     */
+    public static LedgerChange ofCategory(Kind kind, String scope, String oldName, String newName) {
+        return new LedgerChange(0, null, kind, null, null, scope, oldName, newName);
+    }
+
+    /**
+     * 建立提醒變更事件（尚未編號）
+     *
+     * @param kind 變更種類
+     * @param oldName 變更前的提醒描述（新增時為 null）
+     * @param newName 變更後的提醒描述（刪除時為 null）
+     * @return 變更事件
+     */
+    public static LedgerChange ofReminder(Kind kind, String oldName, String newName) {
+        return new LedgerChange(0, null, kind, null, null, null, oldName, newName);
+    }
+
+    /**
+     * 由 LedgerChangeStream 指派編號與時間
+     */
+    LedgerChange stamp(long sequence, Instant timestamp) {
+        return new LedgerChange(sequence, timestamp, kind, before, after, scope, oldName, newName);
+    }
+
+    public long getSequence() { return sequence; }
+    public Instant getTimestamp() { return timestamp; }
+    public Kind getKind() { return kind; }
+    public Expense getBefore() { return before; }
+    public Expense getAfter() { return after; }
+    public String getScope() { return scope; }
+    public String getOldName() { return oldName; }
+    public String getNewName() { return newName; }
+
+    /**
+     * 是否為記帳記錄的新增、編輯或刪除
+     *
+     * @return 如果是記帳記錄變更返回 true
+     */
+    public boolean isExpenseChange() {
+        return kind == Kind.EXPENSE_ADD || kind == Kind.EXPENSE_EDIT || kind == Kind.EXPENSE_DELETE;
+    }
+
+    /**
+     * 轉為單行 JSON（供 JSON lines 變更紀錄使用）
+     *
+     * @return JSON 字串
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("{\"seq\":").append(sequence)
+          .append(",\"ts\":").append(JsonSupport.quote(timestamp == null ? null : timestamp.toString()))
+          .append(",\"kind\":").append(JsonSupport.quote(kind.name()));
+        if (isExpenseChange()) {
+            sb.append(",\"before\":");
+            appendExpense(sb, before);
+            sb.append(",\"after\":");
+            appendExpense(sb, after);
+        } else if (kind != Kind.LEDGER_LOAD) {
+            sb.append(",\"scope\":").append(JsonSupport.quote(scope))
+              .append(",\"oldName\":").append(JsonSupport.quote(oldName))
+              .append(",\"newName\":").append(JsonSupport.quote(newName));
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void appendExpense(StringBuilder sb, Expense e) {
+        if (e == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append("{\"id\":").append(e.getId())
+          .append(",\"date\":").append(JsonSupport.quote(e.getDate().toString()))
+          .append(",\"amount\":").append(JsonSupport.quote(e.getAmount().toPlainString()))
+          .append(",\"type\":").append(JsonSupport.quote(e.getType() == null ? null : e.getType().name()))
+          .append(",\"category\":").append(JsonSupport.quote(e.getCategory()))
+          .append(",\"remark\":").append(JsonSupport.quote(e.getRemark()))
+          .append('}');
+    }
+
+    /**
+     * 由 toJson 產生的單行 JSON 還原變更事件
+     *
+     * @param line JSON 字串
+     * @return 變更事件
+     * @throws IllegalArgumentException 若格式錯誤
+     */
+    public static LedgerChange fromJson(String line) {
+        Map<String, Object> map = JsonSupport.parseObject(line);
+        long seq = Long.parseLong((String) map.get("seq"));
+        String ts = (String) map.get("ts");
+        Kind kind = Kind.valueOf((String) map.get("kind"));
+        return new LedgerChange(seq, ts == null ? null : Instant.parse(ts), kind,
+            readExpense(map.get("before")), readExpense(map.get("after")),
+            (String) map.get("scope"), (String) map.get("oldName"), (String) map.get("newName"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Expense readExpense(Object value) {
+        if (!(value instanceof Map<?, ?>)) {
+            return null;
+        }
+        Map<String, Object> m = (Map<String, Object>) value;
+        String type = (String) m.get("type");
+        Expense e = new Expense(
+            LocalDate.parse((String) m.get("date")),
+            new BigDecimal((String) m.get("amount")),
+            (String) m.get("category"),
+            (String) m.get("remark"),
+            type == null ? null : TransactionType.valueOf(type));
+        e.setId(Long.parseLong((String) m.get("id")));
+        return e;
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
@@ -0,0 +1,122 @@
+// LedgerChangeStream.java - 帳本變更串流
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * 帳本變更串流
+ * ----------
+ * 將 ExpenseManager、CategoryManager 與 ReminderManager 的變更依序編號後發布
+ * 非同步的下游（如變更紀錄檔、儀表板）透過 java.util.concurrent.Flow 訂閱，
+ * 由 SubmissionPublisher 的有界緩衝提供背壓：訂閱者跟不上時 publish 會等待
+ * 需要即時一致的內部元件則以 LedgerListener 同步監聽
+ */
+public class LedgerChangeStream implements Flow.Publisher<LedgerChange>, AutoCloseable {
+    // 預設共用串流（主程式的三個管理器共用）
+    private static final LedgerChangeStream DEFAULT = new LedgerChangeStream();
+
+    // 非同步發布器（每個訂閱者各自有界緩衝，保證依序送達）
+    private final SubmissionPublisher<LedgerChange> publisher;
+    // 同步監聽者
+    private final List<LedgerListener> listeners = new CopyOnWriteArrayList<>();
+    // 最後一個已發布的編號
+    private long sequence;
+
+    /**
+     * 建構子：使用 JDK 預設的緩衝大小
+     */
+    public LedgerChangeStream() {
+        this(Flow.defaultBufferSize());
+    }
+
+    /**
+     * 建構子：指定每個訂閱者的最大緩衝筆數
+     *
+     * @param maxBufferCapacity 每個訂閱者的最大緩衝筆數
+     */
+    public LedgerChangeStream(int maxBufferCapacity) {
+        this.publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), maxBufferCapacity);
+    }
+
+    /**
+     * 取得預設共用串流
+     *
+     * @return 預設串流
+     */
+    public static LedgerChangeStream getDefault() {
+        return DEFAULT;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super LedgerChange> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * 註冊同步監聽者
+     *
+     * @param listener 監聽者
+     */
+    public void addListener(LedgerListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 移除同步監聽者
+     *
+     * @param listener 監聽者
+     */
+    public void removeListener(LedgerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 讓編號從指定值之後繼續（例如接續既有變更紀錄檔的最後編號）
+     * 只會往前推進，不會讓編號倒退
+     *
+     * @param lastSequence 已使用的最後編號
+     */
+    public synchronized void resumeFrom(long lastSequence) {
+        sequence = Math.max(sequence, lastSequence);
+    }
+
+    /**
+     * 取得最後一個已發布的編號
+     *
+     * @return 最後編號（尚未發布過則為 0）
+     */
+    public synchronized long getLastSequence() {
+        return sequence;
+    }
+
+    /**
+     * 編號並發布一筆變更
+     * 先通知同步監聽者，再交給非同步訂閱者；
+     * 若有訂閱者的緩衝已滿，會在此等待（背壓），以維持順序且不遺失事件
+     *
+     * @param change 尚未編號的變更
+     * @return 已編號的變更
+     */
+    public synchronized LedgerChange publish(LedgerChange change) {
+        LedgerChange stamped = change.stamp(++sequence, Instant.now());
+        for (LedgerListener listener : listeners) {
+            listener.onChange(stamped);
+        }
+        if (!publisher.isClosed() && publisher.hasSubscribers()) {
+            publisher.submit(stamped);
+        }
+        return stamped;
+    }
+
+    /**
+     * 關閉串流，通知所有訂閱者 onComplete
+     */
+    @Override
+    public void close() {
+        publisher.close();
+    }
+}
@@ -0,0 +1,286 @@
+// LedgerCube.java - 帳本多維彙總（類型 × 主分類 × 子分類 × 月份）
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * 帳本多維彙總
+ * ----------
+ * 以（類型, 主分類, 子分類, 月份）為最細粒度維護每格的金額合計與筆數
+ * 作為 LedgerListener 時隨新增、編輯、刪除遞增更新；也可用 build 對任意記錄來源一次掃描建立
+ * 報表查詢只讀取彙總格（數量與分類數 × 月份數成正比），與帳本筆數無關，
+ * 季、年粒度與任意維度的上捲都由月份格再彙總而得，不需重新掃描帳本
+ */
+public class LedgerCube implements LedgerListener {
+
+    /**
+     * 報表維度
+     */
+    public enum Dimension {
+        TYPE("類型"),
+        MAIN_CATEGORY("主分類"),
+        SUB_CATEGORY("子分類"),
+        PERIOD("期間");
+
+        private final String label;
+
+        Dimension(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * 期間粒度
+     */
+    public enum Granularity {
+        MONTH("月"),
+        QUARTER("季"),
+        YEAR("年");
+
+        private final String label;
+
+        Granularity(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * 查詢結果的一列：各維度的值（依 groupBy 順序）與合計
+     */
+    public record Row(List<String> labels, BigDecimal sum, long count) {
+    }
+
+    // 最細粒度的格子鍵
+    private record CellKey(TransactionType type, String main, String sub, YearMonth month) {
+    }
+
+    // 格子內容
+    private static final class Cell {
+        BigDecimal sum = BigDecimal.ZERO;
+        long count;
+    }
+
+    // 記帳管理器（重新載入時用來重建；由 build 建立時為 null）
+    private final ExpenseManager expenseManager;
+    // 分類管理器（查詢子分類所屬主分類）
+    private final CategoryManager categoryManager;
+    // 最細粒度的格子
+    private final Map<CellKey, Cell> cells = new HashMap<>();
+    // 子分類 -> 主分類的快取（分類變更時清空）
+    private final Map<String, String> parentCache = new HashMap<>();
+    // 改名前的分類名稱 -> 目前名稱（之後異動的舊名稱記錄也歸到新名稱）
+    private final Map<String, String> renamed = new HashMap<>();
+    // 分類新增或刪除後，子分類的歸屬需要重新計算（在 query 時進行）
+    private boolean regroupNeeded;
+    // 已封存年度（重建時以其每月合計補上；未設定時為 null）
+    private LedgerArchive archive;
+
+    /**
+     * 建構子：依目前帳本建立彙總，並開始監聽變更
+     *
+     * @param expenseManager 記帳管理器
+     * @param categoryManager 分類管理器
+     */
+    public LedgerCube(ExpenseManager expenseManager, CategoryManager categoryManager) {
+        this.expenseManager = expenseManager;
+        this.categoryManager = categoryManager;
+        rebuild();
+        expenseManager.getChangeStream().addListener(this);
+    }
+
+    private LedgerCube(CategoryManager categoryManager) {
+        this.expenseManager = null;
+        this.categoryManager = categoryManager;
+    }
+
+    /**
+     * 對任意記錄來源一次掃描建立彙總（不監聽變更）
+     *
+     * @param expenses 記錄來源
+     * @param categoryManager 分類管理器
+     * @return 彙總
+     */
+    public static LedgerCube build(Iterable<Expense> expenses, CategoryManager categoryManager) {
+        LedgerCube cube = new LedgerCube(categoryManager);
+        for (Expense e : expenses) {
+            cube.apply(e, 1);
+        }
+        return cube;
+    }
+
+    @Override
+    public synchronized void onChange(LedgerChange change) {
+        switch (change.getKind()) {
+            case EXPENSE_ADD, EXPENSE_EDIT, EXPENSE_DELETE -> {
+                if (change.getBefore() != null) apply(change.getBefore(), -1);
+                if (change.getAfter() != null) apply(change.getAfter(), 1);
+            }
+            // LEDGER_LOAD 只由 ExpenseManager 在持有自身鎖時發布，重建時讀取帳本不會反向等鎖
+            case LEDGER_LOAD -> rebuild();
+            // 分類事件可能在其他執行緒持有 ExpenseManager 鎖時發布，這裡不可回頭讀取帳本，只調整既有的格子
+            case CATEGORY_RENAME -> renameCells(change.getOldName(), change.getNewName());
+            case CATEGORY_ADD, CATEGORY_DELETE -> regroupNeeded = true;
+            default -> { }
+        }
+    }
+
+    /**
+     * 設定已封存年度的來源（封存年度以常駐的每月合計計入，不需讀取明細）
+     * 只增減封存年度的格子，不重新讀取帳本
+     *
+     * @param archive 封存，null 表示只彙總記憶體中的記錄
+     */
+    public synchronized void setArchive(LedgerArchive archive) {
+        if (expenseManager != null) addArchive(-1);
+        this.archive = archive;
+        if (expenseManager != null) addArchive(1);
+    }
+
+    private synchronized void rebuild() {
+        cells.clear();
+        parentCache.clear();
+        regroupNeeded = false;
+        for (Expense e : expenseManager.getExpenses()) {
+            apply(e, 1);
+        }
+        addArchive(1);
+    }
+
+    private void addArchive(int sign) {
+        if (archive == null) return;
+        for (LedgerArchive.MonthlyTotal t : archive.monthlyTotals()) {
+            add(t.type(), t.category(), t.month(), sign > 0 ? t.sum() : t.sum().negate(), sign * t.count());
+        }
+    }
+
+    // 分類改名：舊名稱的格子改記在新名稱下（收入分類的主分類即為本身）
+    private void renameCells(String oldName, String newName) {
+        if (oldName == null || newName == null || oldName.equals(newName)) return;
+        renamed.remove(newName);
+        renamed.replaceAll((old, current) -> current.equals(oldName) ? newName : current);
+        renamed.put(oldName, newName);
+        parentCache.clear();
+        moveCells(key -> key.sub().equals(oldName) || key.main().equals(oldName));
+    }
+
+    // 子分類的歸屬改變後，把所有格子依目前的分類重新歸到主分類
+    private void regroup() {
+        parentCache.clear();
+        regroupNeeded = false;
+        moveCells(key -> true);
+    }
+
+    // 取出符合條件的格子，依目前的名稱與歸屬重新加入
+    private void moveCells(Predicate<CellKey> affected) {
+        Map<CellKey, Cell> moved = new HashMap<>();
+        cells.entrySet().removeIf(entry -> {
+            if (!affected.test(entry.getKey())) return false;
+            moved.put(entry.getKey(), entry.getValue());
+            return true;
+        });
+        moved.forEach((key, cell) -> add(key.type(), key.sub(), key.month(), cell.sum, cell.count));
+    }
+
+    private void apply(Expense e, int sign) {
+        add(e.getType(), e.getCategory(), YearMonth.from(e.getDate()),
+            sign > 0 ? e.getAmount() : e.getAmount().negate(), sign);
+    }
+
+    private void add(TransactionType type, String category, YearMonth month, BigDecimal sum, long count) {
+        if (type == null) return;
+        String sub = category == null ? "未分類" : renamed.getOrDefault(category, category);
+        CellKey key = new CellKey(type, mainCategoryOf(type, sub), sub, month);
+        Cell cell = cells.computeIfAbsent(key, k -> new Cell());
+        cell.sum = cell.sum.add(sum);
+        cell.count += count;
+        if (cell.count == 0) {
+            cells.remove(key);
+        }
+    }
+
+    // 收入分類沒有階層，主分類即為本身；找不到歸屬的支出分類視為自成一類
+    private String mainCategoryOf(TransactionType type, String category) {
+        if (type == TransactionType.收入) return category;
+        return parentCache.computeIfAbsent(category, c -> {
+            String main = categoryManager.getMainCategoryOf(c);
+            return main != null ? main : c;
+        });
+    }
+
+    /**
+     * 依指定維度彙總
+     *
+     * @param groupBy 分組維度（依顯示順序）
+     * @param filters 篩選條件（維度 -> 值；期間的值須與 granularity 的標籤格式一致）
+     * @param granularity 期間粒度
+     * @return 彙總列（依各維度值排序）
+     */
+    public synchronized List<Row> query(List<Dimension> groupBy, Map<Dimension, String> filters, Granularity granularity) {
+        if (regroupNeeded) regroup();
+        Map<List<String>, Cell> groups = new HashMap<>();
+        for (Map.Entry<CellKey, Cell> entry : cells.entrySet()) {
+            CellKey key = entry.getKey();
+            if (!matches(key, filters, granularity)) continue;
+            List<String> labels = new ArrayList<>(groupBy.size());
+            for (Dimension d : groupBy) {
+                labels.add(valueOf(key, d, granularity));
+            }
+            Cell group = groups.computeIfAbsent(labels, k -> new Cell());
+            group.sum = group.sum.add(entry.getValue().sum);
+            group.count += entry.getValue().count;
+        }
+        List<Row> rows = new ArrayList<>(groups.size());
+        groups.forEach((labels, cell) -> rows.add(new Row(List.copyOf(labels), cell.sum, cell.count)));
+        rows.sort((a, b) -> {
+            for (int i = 0; i < a.labels().size(); i++) {
+                int c = a.labels().get(i).compareTo(b.labels().get(i));
+                if (c != 0) return c;
+            }
+            return 0;
+        });
+        return rows;
+    }
+
+    private static boolean matches(CellKey key, Map<Dimension, String> filters, Granularity granularity) {
+        for (Map.Entry<Dimension, String> filter : filters.entrySet()) {
+            if (!valueOf(key, filter.getKey(), granularity).equals(filter.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String valueOf(CellKey key, Dimension dimension, Granularity granularity) {
+        return switch (dimension) {
+            case TYPE -> key.type().name();
+            case MAIN_CATEGORY -> key.main();
+            case SUB_CATEGORY -> key.sub();
+            case PERIOD -> periodLabel(key.month(), granularity);
+        };
+    }
+
+    /**
+     * 取得月份在指定粒度下的期間標籤（例如 2024-05、2024-Q2、2024）
+     *
+     * @param month 月份
+     * @param granularity 期間粒度
+     * @return 期間標籤
+     */
+    public static String periodLabel(YearMonth month, Granularity granularity) {
+        return switch (granularity) {
+            case MONTH -> month.toString();
+            case QUARTER -> month.getYear() + "-Q" + ((month.getMonthValue() - 1) / 3 + 1);
+            case YEAR -> String.valueOf(month.getYear());
+        };
+    }
+}
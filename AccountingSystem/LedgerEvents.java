@@ -0,0 +1,139 @@
+// LedgerEvents.java - JFR 自訂事件
+
+import java.io.File;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR 自訂事件
+ * ----------
+ * 記帳、查詢、存檔與載入在 JFR 錄製中顯示為有起訖時間的事件，可與 GC、I/O 事件對照，判斷卡頓來源
+ * 使用方式：建立事件後 begin()，操作結束時呼叫 finish(...)；
+ * 未錄製（或事件未啟用）時 shouldCommit() 為 false，finish 不計算任何欄位，事件物件也會被 JIT 消除
+ */
+public final class LedgerEvents {
+
+    private LedgerEvents() {
+    }
+
+    /**
+     * 記帳記錄的新增、編輯、刪除與查詢
+     */
+    @Name("accounting.ExpenseOperation")
+    @Label("Expense Operation")
+    @Category({"Accounting", "Ledger"})
+    @Description("記帳記錄的新增、編輯、刪除、查詢與排序")
+    @StackTrace(false)
+    public static final class ExpenseOperation extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Records")
+        @Description("本次操作處理或回傳的記錄數")
+        int records;
+
+        @Label("Ledger Size")
+        int ledgerSize;
+
+        public void finish(String operation, int records, int ledgerSize) {
+            if (!shouldCommit()) return;
+            this.operation = operation;
+            this.records = records;
+            this.ledgerSize = ledgerSize;
+            commit();
+        }
+    }
+
+    /**
+     * 存檔與載入
+     */
+    @Name("accounting.Persistence")
+    @Label("Persistence")
+    @Category({"Accounting", "I/O"})
+    @Description("記帳記錄、分類與提醒的存檔與載入")
+    @StackTrace(false)
+    public static final class Persistence extends Event {
+        @Label("Store")
+        String store;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("File")
+        String file;
+
+        @Label("Records")
+        int records;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        public void finish(String store, String operation, String file, int records) {
+            if (!shouldCommit()) return;
+            this.store = store;
+            this.operation = operation;
+            this.file = file;
+            this.records = records;
+            this.bytes = new File(file).length();
+            commit();
+        }
+    }
+
+    /**
+     * 分類的驗證與變更
+     */
+    @Name("accounting.CategoryOperation")
+    @Label("Category Operation")
+    @Category({"Accounting", "Category"})
+    @StackTrace(false)
+    public static final class CategoryOperation extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Category")
+        String category;
+
+        @Label("Result")
+        boolean result;
+
+        public void finish(String operation, String category, boolean result) {
+            if (!shouldCommit()) return;
+            this.operation = operation;
+            this.category = category;
+            this.result = result;
+            commit();
+        }
+    }
+
+    /**
+     * 提醒的新增、刪除與排程變更
+     */
+    @Name("accounting.ReminderOperation")
+    @Label("Reminder Operation")
+    @Category({"Accounting", "Reminder"})
+    @StackTrace(false)
+    public static final class ReminderOperation extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Reminder")
+        String reminder;
+
+        @Label("Reminders")
+        int reminders;
+
+        public void finish(String operation, String reminder, int reminders) {
+            if (!shouldCommit()) return;
+            this.operation = operation;
+            this.reminder = reminder;
+            this.reminders = reminders;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+// LedgerGenerator.java - 可重現的大量帳本資料產生器
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * 可重現的大量帳本資料產生器
+ * ---------------------
+ * 以固定種子產生任意筆數的記帳記錄，供壓力測試與效能基準使用；相同的種子與參數一定產生相同的資料
+ * 記錄依日期遞增產生並平均分布在區間內；每月第一筆固定為薪資與房租，
+ * 其餘依權重選擇預設分類，金額為各分類中位數附近的對數常態分布，備註取自各分類常見的中文描述
+ * 以 Iterator 逐筆產生，寫入 CSV 時記憶體用量固定；加入帳本時分批呼叫 addExpenses 並只儲存一次
+ *
+ * 使用方式：
+ * <pre>
+ * java LedgerGenerator 筆數 [--seed 42] [--from 2020-01-01] [--to 2024-12-31] [--csv 檔名 | --ser 檔名]
+ * </pre>
+ */
+public class LedgerGenerator implements Iterable<Expense> {
+
+    // 分類設定：類型、分類、權重、金額中位數、對數標準差與備註
+    private record Profile(TransactionType type, String category, double weight, double median, double sigma, String[] remarks) {
+    }
+
+    // 每月固定的收支（每月第一筆產生）
+    private static final Profile SALARY = new Profile(TransactionType.收入, "薪資", 0, 52000, 0.05, new String[] {"每月薪水"});
+    private static final Profile RENT = new Profile(TransactionType.支出, "房租", 0, 16000, 0.0, new String[] {"每月房租"});
+
+    // 日常收支（依權重抽選）
+    private static final Profile[] PROFILES = {
+        new Profile(TransactionType.支出, "飲食", 38, 120, 0.6, new String[] {"早餐", "午餐便當", "晚餐", "手搖飲", "超商咖啡", "聚餐", "宵夜"}),
+        new Profile(TransactionType.支出, "交通", 14, 60, 0.8, new String[] {"捷運交通卡儲值", "計程車費用", "公車", "高鐵車票", "加油"}),
+        new Profile(TransactionType.支出, "日用品", 9, 350, 0.7, new String[] {"超市日用品採購", "衛生紙", "洗衣精", "藥妝店"}),
+        new Profile(TransactionType.支出, "衣服&配件", 4, 1200, 0.8, new String[] {"Uniqlo購物", "球鞋", "換季衣服"}),
+        new Profile(TransactionType.支出, "通訊(手機&網路)", 2, 699, 0.2, new String[] {"手機月租費", "家用網路費"}),
+        new Profile(TransactionType.支出, "水電瓦斯", 2, 900, 0.4, new String[] {"電費繳費", "水費", "瓦斯費"}),
+        new Profile(TransactionType.支出, "居家用品", 2, 800, 0.9, new String[] {"收納櫃", "燈泡", "廚具"}),
+        new Profile(TransactionType.支出, "醫療", 2, 300, 0.9, new String[] {"感冒掛號費", "牙醫", "藥品"}),
+        new Profile(TransactionType.支出, "保險", 1, 3000, 0.5, new String[] {"醫療險繳費", "意外險保費"}),
+        new Profile(TransactionType.支出, "電影", 3, 330, 0.3, new String[] {"週末看電影", "Marvel電影票"}),
+        new Profile(TransactionType.支出, "訂閱服務", 2, 290, 0.4, new String[] {"Netflix", "Spotify", "雲端空間"}),
+        new Profile(TransactionType.支出, "旅遊", 1, 8000, 0.9, new String[] {"沖繩自由行", "墾丁住宿", "機票"}),
+        new Profile(TransactionType.支出, "禮物", 2, 1200, 0.7, new String[] {"生日禮物", "聖誕禮物購買"}),
+        new Profile(TransactionType.支出, "節慶開銷", 1, 2000, 0.8, new String[] {"過年紅包", "中秋烤肉"}),
+        new Profile(TransactionType.支出, "股票買進", 1, 20000, 0.8, new String[] {"購入台積電股票", "定期定額ETF"}),
+        new Profile(TransactionType.支出, "基金投資", 1, 5000, 0.6, new String[] {"新購科技基金", "基金扣款"}),
+        new Profile(TransactionType.支出, "虛擬貨幣", 1, 10000, 1.0, new String[] {"購買比特幣", "以太坊投資"}),
+        new Profile(TransactionType.支出, "其他", 2, 500, 1.0, new String[] {"雜支", "罰單", "捐款"}),
+        new Profile(TransactionType.收入, "獎金", 1, 8000, 0.8, new String[] {"績效獎金", "推薦獎金", "年終獎金"}),
+        new Profile(TransactionType.收入, "投資收入", 2, 3000, 1.0, new String[] {"股票分紅", "基金收益", "利息收入"}),
+        new Profile(TransactionType.收入, "其他收入", 1, 2000, 0.9, new String[] {"二手販售", "退稅收入", "發票中獎"}),
+    };
+
+    // 權重的累積和（二分搜尋抽選分類）
+    private static final double[] CUMULATIVE = new double[PROFILES.length];
+    static {
+        double sum = 0;
+        for (int i = 0; i < PROFILES.length; i++) {
+            sum += PROFILES[i].weight();
+            CUMULATIVE[i] = sum;
+        }
+    }
+
+    private final long seed;
+    private final long count;
+    private final LocalDate from;
+    private final long days;
+
+    /**
+     * 建構子
+     *
+     * @param seed 亂數種子
+     * @param count 產生筆數
+     * @param from 起始日期（含）
+     * @param to 結束日期（含）
+     */
+    public LedgerGenerator(long seed, long count, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("結束日期早於起始日期: " + from + " ~ " + to);
+        }
+        this.seed = seed;
+        this.count = count;
+        this.from = from;
+        this.days = ChronoUnit.DAYS.between(from, to) + 1;
+    }
+
+    /**
+     * 建構子：資料分布在今天往前五年內
+     *
+     * @param seed 亂數種子
+     * @param count 產生筆數
+     */
+    public LedgerGenerator(long seed, long count) {
+        this(seed, count, LocalDate.now().minusYears(5).plusDays(1), LocalDate.now());
+    }
+
+    /**
+     * 逐筆產生記錄（每次呼叫都從頭產生相同的序列）
+     *
+     * @return 依日期遞增的記錄
+     */
+    @Override
+    public Iterator<Expense> iterator() {
+        return new Iterator<>() {
+            private final SplittableRandom random = new SplittableRandom(seed);
+            private long index;
+            private YearMonth month;
+            // 本月尚未產生的固定收支
+            private final Deque<Profile> monthly = new ArrayDeque<>();
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public Expense next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                LocalDate date = from.plusDays(index * days / count);
+                index++;
+                YearMonth current = YearMonth.from(date);
+                if (!current.equals(month)) {
+                    month = current;
+                    monthly.clear();
+                    monthly.add(SALARY);
+                    monthly.add(RENT);
+                }
+                Profile profile = monthly.isEmpty() ? pick(random) : monthly.poll();
+                return create(profile, date, random);
+            }
+        };
+    }
+
+    private static Profile pick(SplittableRandom random) {
+        double r = random.nextDouble() * CUMULATIVE[CUMULATIVE.length - 1];
+        int i = Arrays.binarySearch(CUMULATIVE, r);
+        return PROFILES[i >= 0 ? i : -i - 1];
+    }
+
+    // 金額取對數常態分布並四捨五入到整數元
+    private static Expense create(Profile p, LocalDate date, SplittableRandom random) {
+        double amount = p.median() * Math.exp(p.sigma() * random.nextGaussian());
+        String remark = p.remarks()[random.nextInt(p.remarks().length)];
+        return new Expense(date, BigDecimal.valueOf(Math.max(1, Math.round(amount))), p.category(), remark, p.type());
+    }
+
+    /**
+     * 分批加入帳本，整批只儲存一次
+     *
+     * @param manager 記帳管理器
+     * @param chunkSize 每批筆數
+     * @return 加入的筆數
+     */
+    public long appendTo(ExpenseManager manager, int chunkSize) {
+        long added = 0;
+        List<Expense> chunk = new ArrayList<>(chunkSize);
+        manager.beginBatch();
+        try {
+            for (Expense e : this) {
+                chunk.add(e);
+                if (chunk.size() == chunkSize) {
+                    manager.addExpenses(chunk);
+                    added += chunk.size();
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            manager.addExpenses(chunk);
+            added += chunk.size();
+        } finally {
+            manager.commitBatch();
+        }
+        return added;
+    }
+
+    /**
+     * 產生全部記錄成列表（筆數必須在 int 範圍內）
+     *
+     * @return 記錄列表
+     */
+    public List<Expense> toList() {
+        List<Expense> list = new ArrayList<>(Math.toIntExact(count));
+        long id = 1;
+        for (Expense e : this) {
+            e.setId(id++);
+            list.add(e);
+        }
+        return list;
+    }
+
+    /**
+     * 串流寫出 CSV（與 exportExpensesToCSV 相同格式：UTF-8 含 BOM），記憶體用量固定
+     *
+     * @param file 檔案路徑
+     * @return 寫出的筆數
+     * @throws IOException 寫入失敗
+     */
+    public long writeCsv(Path file) throws IOException {
+        long written = 0;
+        try (OutputStream os = Files.newOutputStream(file);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 1 << 16)) {
+            os.write(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+            writer.write("日期,金額,類型,分類,備註\n");
+            for (Expense e : this) {
+                writer.write(e.getDate().toString());
+                writer.write(',');
+                writer.write(e.getAmount().toPlainString());
+                writer.write(',');
+                writer.write(e.getType().name());
+                writer.write(',');
+                writer.write(e.getCategory());
+                writer.write(',');
+                writer.write(e.getRemark());
+                writer.write('\n');
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 寫出可由 ExpenseManager.loadExpenses 載入的存檔
+     * 存檔格式是一個序列化的列表，因此需要先產生完整列表
+     *
+     * @param file 檔案路徑
+     * @return 寫出的筆數
+     * @throws IOException 寫入失敗
+     */
+    public long writeSerialized(Path file) throws IOException {
+        List<Expense> list = toList();
+        try (ObjectOutputStream oos = new ObjectOutputStream(BlockCompressedOutputStream.open(file.toString()))) {
+            oos.writeObject(list);
+        }
+        return list.size();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("用法: java LedgerGenerator 筆數 [--seed 42] [--from yyyy-MM-dd] [--to yyyy-MM-dd] [--csv 檔名 | --ser 檔名]");
+            System.exit(2);
+        }
+        long count = Long.parseLong(args[0]);
+        long seed = 42;
+        LocalDate to = LocalDate.now();
+        LocalDate from = to.minusYears(5).plusDays(1);
+        String csv = null;
+        String ser = null;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--seed" -> seed = Long.parseLong(args[i + 1]);
+                case "--from" -> from = LocalDate.parse(args[i + 1]);
+                case "--to" -> to = LocalDate.parse(args[i + 1]);
+                case "--csv" -> csv = args[i + 1];
+                case "--ser" -> ser = args[i + 1];
+                default -> {
+                    System.err.println("未知參數: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+        LedgerGenerator generator = new LedgerGenerator(seed, count, from, to);
+        long start = System.nanoTime();
+        long written;
+        String target;
+        if (ser != null) {
+            written = generator.writeSerialized(Paths.get(ser));
+            target = ser;
+        } else {
+            target = csv != null ? csv : "generated.csv";
+            written = generator.writeCsv(Paths.get(target));
+        }
+        System.out.printf("已產生 %,d 筆記錄到 %s（%.1f 秒）%n", written, target, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,35 @@
+// LedgerKey.java - 記錄的排序鍵（日期, 編號）
+
+import java.time.LocalDate;
+
+/**
+ * 記錄的排序鍵
+ * ----------
+ * 以（epochDay, id）唯一識別一筆記錄並決定其在磁碟結構中的順序：先依日期，再依編號
+ * 日期區間查詢可用 lowest/highest 產生區間的邊界鍵
+ *
+ * @param epochDay 記錄日期（LocalDate.toEpochDay）
+ * @param id 記錄編號
+ */
+public record LedgerKey(long epochDay, long id) implements Comparable<LedgerKey> {
+
+    public static LedgerKey of(Expense e) {
+        return new LedgerKey(e.getDate().toEpochDay(), e.getId());
+    }
+
+    // 某日期的第一個可能鍵
+    public static LedgerKey lowest(LocalDate date) {
+        return new LedgerKey(date.toEpochDay(), Long.MIN_VALUE);
+    }
+
+    // 某日期的最後一個可能鍵
+    public static LedgerKey highest(LocalDate date) {
+        return new LedgerKey(date.toEpochDay(), Long.MAX_VALUE);
+    }
+
+    @Override
+    public int compareTo(LedgerKey other) {
+        int c = Long.compare(epochDay, other.epochDay);
+        return c != 0 ? c : Long.compare(id, other.id);
+    }
+}
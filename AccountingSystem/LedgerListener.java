@@ -0,0 +1,19 @@
+// LedgerListener.java - 帳本變更同步監聽介面
+
+/**
+ * 帳本變更同步監聽介面
+ * ----------------
+ * 由需要與帳本保持一致的元件（如索引、統計）實作
+ * 與 Flow 訂閱者不同，監聽者在發布變更的執行緒上同步被呼叫，
+ * 因此在 addExpense 等方法返回時其狀態已經更新完成
+ */
+@FunctionalInterface
+public interface LedgerListener {
+
+    /**
+     * 處理一筆已編號的帳本變更
+     *
+     * @param change 變更事件
+     */
+    void onChange(LedgerChange change);
+}
@@ -0,0 +1,296 @@
+// LedgerMetrics.java - 執行期指標（計數、量測值、延遲分布）
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.*;
+
+/**
+ * 執行期指標
+ * --------
+ * 提供計數器、量測值（gauge）與延遲分布（timer），記錄存檔、載入、查詢與畫面輸出的次數與耗時
+ * 記錄路徑只有 LongAdder 累加與一次陣列遞增，不取得鎖，對被量測的操作影響很小
+ * 延遲以 2 的次方微秒分桶，百分位數取所在分桶的上界
+ * 透過 JMX（AccountingSystem:type=LedgerMetrics）以動態屬性公開，也可定期將快照以 JSON lines 附加到檔案
+ */
+public class LedgerMetrics implements DynamicMBean {
+    // 預設共用的指標登錄
+    private static final LedgerMetrics DEFAULT = new LedgerMetrics();
+    // JMX 物件名稱
+    public static final String OBJECT_NAME = "AccountingSystem:type=LedgerMetrics";
+
+    /**
+     * 計數器
+     */
+    public static final class Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long n) {
+            count.add(n);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * 延遲分布
+     * 使用方式：long t = timer.start(); try { ... } finally { timer.stop(t); }
+     */
+    public static final class Timer {
+        // 分桶數：第 i 桶為 [2^(i-1), 2^i) 微秒，最後一桶收所有更長的延遲
+        private static final int BUCKETS = 40;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        public long start() {
+            return System.nanoTime();
+        }
+
+        public void stop(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            long micros = nanos / 1000;
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /**
+         * 取得延遲百分位數（分桶上界）
+         *
+         * @param q 0~1
+         * @return 毫秒
+         */
+        public double getPercentileMillis(double q) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min((1L << i) / 1000.0, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+    }
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    // 定期輸出檔案的執行緒
+    private ScheduledExecutorService dumper;
+
+    /**
+     * 取得預設共用的指標登錄
+     *
+     * @return 指標登錄
+     */
+    public static LedgerMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, n -> new Timer());
+    }
+
+    /**
+     * 登錄量測值（同名時取代）
+     *
+     * @param name 名稱
+     * @param supplier 讀取目前值
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * 取得所有指標的目前值（名稱排序；timer 展開為 count、meanMs、p50Ms、p95Ms、p99Ms、maxMs）
+     *
+     * @return 指標名稱 -> 數值
+     */
+    public SortedMap<String, Number> snapshot() {
+        SortedMap<String, Number> values = new ConcurrentSkipListMap<>();
+        counters.forEach((name, c) -> values.put(name, c.get()));
+        gauges.forEach((name, g) -> {
+            try {
+                values.put(name, g.getAsLong());
+            } catch (RuntimeException e) {
+                // 量測值讀取失敗時略過
+            }
+        });
+        timers.forEach((name, t) -> {
+            values.put(name + ".count", t.getCount());
+            values.put(name + ".meanMs", t.getMeanMillis());
+            values.put(name + ".p50Ms", t.getPercentileMillis(0.50));
+            values.put(name + ".p95Ms", t.getPercentileMillis(0.95));
+            values.put(name + ".p99Ms", t.getPercentileMillis(0.99));
+            values.put(name + ".maxMs", t.getMaxMillis());
+        });
+        return values;
+    }
+
+    /**
+     * 將目前快照轉為一行 JSON
+     *
+     * @return JSON 物件字串
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"timestamp\":").append(JsonSupport.quote(Instant.now().toString()));
+        snapshot().forEach((name, value) -> sb.append(',').append(JsonSupport.quote(name)).append(':')
+            .append(value instanceof Double d ? String.format(Locale.ROOT, "%.3f", d) : value.toString()));
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 向平台 MBeanServer 註冊（已註冊時略過）
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            System.err.println("無法註冊指標 MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 定期將快照附加到檔案（每行一個 JSON 物件）
+     *
+     * @param file 輸出檔案
+     * @param interval 間隔
+     */
+    public synchronized void startFileDump(Path file, Duration interval) {
+        if (dumper != null) return;
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        long millis = Math.max(1, interval.toMillis());
+        dumper.scheduleAtFixedRate(() -> dumpTo(file), millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定期輸出，並寫出最後一次快照
+     *
+     * @param file 輸出檔案（null 表示不寫）
+     */
+    public synchronized void stopFileDump(Path file) {
+        if (dumper == null) return;
+        dumper.shutdownNow();
+        dumper = null;
+        if (file != null) dumpTo(file);
+    }
+
+    private void dumpTo(Path file) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(toJson());
+            writer.write('\n');
+        } catch (IOException e) {
+            System.err.println("寫入指標檔案失敗: " + e.getMessage());
+        }
+    }
+
+    // --- DynamicMBean：每個快照項目是一個唯讀屬性 ---
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = snapshot().get(attribute);
+        if (value == null) throw new AttributeNotFoundException(attribute);
+        return value instanceof Double ? value : value.longValue();
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("指標為唯讀: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        SortedMap<String, Number> values = snapshot();
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            Number value = values.get(name);
+            if (value != null) list.add(new Attribute(name, value instanceof Double ? value : value.longValue()));
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if ("dump".equals(actionName)) return toJson();
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        snapshot().forEach((name, value) -> attributes.add(new MBeanAttributeInfo(name,
+            value instanceof Double ? "double" : "long", name, true, false, false)));
+        MBeanOperationInfo dump = new MBeanOperationInfo("dump", "以 JSON 取得所有指標",
+            new MBeanParameterInfo[0], "java.lang.String", MBeanOperationInfo.INFO);
+        return new MBeanInfo(getClass().getName(), "記帳系統執行期指標",
+            attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] {dump}, null);
+    }
+}
@@ -0,0 +1,437 @@
+// LedgerQuery.java - 組合條件查詢與查詢規劃
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 組合條件查詢
+ * ----------
+ * 以串接方式組合條件（日期區間、類型、分類或主分類下的全部子分類、金額區間、備註關鍵字），
+ * 再指定排序方式與筆數上限，例如：
+ * <pre>
+ * manager.query().between(from, to).type(TransactionType.支出).mainCategory("生活日常")
+ *        .amountBetween(new BigDecimal("100"), null).sortBy("amountDesc").limit(20).list();
+ * </pre>
+ *
+ * 執行時依可用的索引選擇存取路徑（explain() 顯示選擇結果）：
+ * 1. 排序索引：日期或金額有限制時，兩個子範圍中筆數較少的一方（ExpenseOrderIndex.choose）；
+ *    只有排序時依排序鍵走訪。以游標逐頁取出（每頁 PAGE_SIZE 筆），搭配 limit 取滿即停止
+ * 2. 區塊摘要：日期、金額沒有限制但有分類或備註條件時，只檢查摘要可能符合的區塊
+ * 3. 儲存端查詢：儲存支援查詢時以日期區間或備註關鍵字在儲存端篩選
+ * 4. 逐筆掃描記憶體中的列表
+ * 存取路徑本身的順序與要求的排序一致時不再排序，否則取出後排序；其餘條件在走訪中逐筆檢查
+ * 指定日期區間且涵蓋已封存年度時，一併讀取封存明細（與月份、年份查詢相同）
+ */
+public class LedgerQuery {
+    // 游標分頁每次取出的筆數
+    static final int PAGE_SIZE = 256;
+
+    private static final Comparator<Expense> BY_DATE_ID =
+        Comparator.comparing(Expense::getDate).thenComparingLong(Expense::getId);
+    private static final Comparator<Expense> BY_AMOUNT_ID =
+        Comparator.comparing(Expense::getAmount).thenComparingLong(Expense::getId);
+
+    // 查詢耗時
+    private static final LedgerMetrics.Timer QUERY_TIMER = LedgerMetrics.getDefault().timer("query.planned");
+
+    /**
+     * 存取路徑
+     */
+    public enum Access {
+        DATE_INDEX("日期排序索引"),
+        AMOUNT_INDEX("金額排序索引"),
+        ZONE_MAPS("區塊摘要"),
+        STORE("儲存端查詢"),
+        FULL_SCAN("逐筆掃描");
+
+        private final String label;
+
+        Access(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * 查詢計畫
+     *
+     * @param access 存取路徑
+     * @param reason 選擇原因
+     * @param sorted 存取路徑的順序是否已符合要求的排序
+     * @param archived 是否一併讀取封存年度
+     */
+    public record Plan(Access access, String reason, boolean sorted, boolean archived) {
+    }
+
+    // 記帳管理器
+    private final ExpenseManager manager;
+    // 條件（null 表示不限）
+    private LocalDate from;
+    private LocalDate to;
+    private TransactionType type;
+    private final Set<String> categories = new LinkedHashSet<>();
+    private final List<String> mainCategories = new ArrayList<>();
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+    private String remark;
+    // 排序類型（amountDesc、amountAsc、dateAsc、dateDesc；null 表示不指定）
+    private String sortType;
+    // 筆數上限（0 表示不限）
+    private int limit;
+
+    /**
+     * 建構子（由 ExpenseManager.query() 建立）
+     *
+     * @param manager 記帳管理器
+     */
+    LedgerQuery(ExpenseManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * 限制日期區間
+     *
+     * @param from 起日（含），null 表示不限
+     * @param to 迄日（含），null 表示不限
+     * @return 此查詢
+     */
+    public LedgerQuery between(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * 限制交易類型
+     *
+     * @param type 收入或支出
+     * @return 此查詢
+     */
+    public LedgerQuery type(TransactionType type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * 限制分類（多次呼叫時符合任一分類即可）
+     *
+     * @param category 分類名稱
+     * @return 此查詢
+     */
+    public LedgerQuery category(String category) {
+        categories.add(category);
+        return this;
+    }
+
+    /**
+     * 限制為支出主分類及其下全部子分類（執行時依目前的分類展開）
+     *
+     * @param mainCategory 主分類名稱
+     * @return 此查詢
+     */
+    public LedgerQuery mainCategory(String mainCategory) {
+        mainCategories.add(mainCategory);
+        return this;
+    }
+
+    /**
+     * 限制金額區間
+     *
+     * @param minAmount 最小金額（含），null 表示不限
+     * @param maxAmount 最大金額（含），null 表示不限
+     * @return 此查詢
+     */
+    public LedgerQuery amountBetween(BigDecimal minAmount, BigDecimal maxAmount) {
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        return this;
+    }
+
+    /**
+     * 限制備註包含關鍵字（區分大小寫，與 String.contains 相同）
+     *
+     * @param keyword 關鍵字
+     * @return 此查詢
+     */
+    public LedgerQuery remarkContains(String keyword) {
+        this.remark = keyword;
+        return this;
+    }
+
+    /**
+     * 指定排序方式
+     *
+     * @param sortType 排序類型（amountDesc、amountAsc、dateAsc、dateDesc）
+     * @return 此查詢
+     */
+    public LedgerQuery sortBy(String sortType) {
+        if (!List.of("amountDesc", "amountAsc", "dateAsc", "dateDesc").contains(sortType)) {
+            throw new IllegalArgumentException("未知的排序方式: " + sortType);
+        }
+        this.sortType = sortType;
+        return this;
+    }
+
+    /**
+     * 限制最多筆數
+     *
+     * @param limit 筆數上限（0 表示不限）
+     * @return 此查詢
+     */
+    public LedgerQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("筆數上限不可為負數: " + limit);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    // --- 規劃 ---
+
+    private boolean hasDates() {
+        return from != null || to != null;
+    }
+
+    private boolean hasAmounts() {
+        return minAmount != null || maxAmount != null;
+    }
+
+    // 分類條件展開後的分類名稱（沒有分類條件時為 null）
+    private Set<String> resolvedCategories() {
+        if (categories.isEmpty() && mainCategories.isEmpty()) return null;
+        Set<String> resolved = new LinkedHashSet<>(categories);
+        CategoryManager categoryManager = new CategoryManager();
+        for (String main : mainCategories) {
+            resolved.add(main);
+            resolved.addAll(categoryManager.getExpenseSubCategories(main).values());
+        }
+        return resolved;
+    }
+
+    /**
+     * 依目前的條件與可用的索引決定查詢計畫
+     *
+     * @return 查詢計畫
+     */
+    public Plan plan() {
+        boolean archived = hasDates()
+            && manager.archiveCovers(from != null ? from : LocalDate.MIN, to != null ? to : LocalDate.MAX);
+        ExpenseOrderIndex orderIndex = manager.orderIndex();
+        ZoneMapIndex zoneMaps = manager.zoneMaps();
+        Access access;
+        String reason;
+        if (orderIndex != null && (hasDates() || hasAmounts())) {
+            access = orderIndex.choose(from, to, minAmount, maxAmount) == ExpenseOrderIndex.Access.DATE
+                ? Access.DATE_INDEX : Access.AMOUNT_INDEX;
+            reason = hasDates() && hasAmounts()
+                ? "日期與金額子範圍中此範圍筆數較少"
+                : (hasDates() ? "只限制日期區間" : "只限制金額區間");
+        } else if (zoneMaps != null && (hasDates() || hasAmounts() || remark != null || !categories.isEmpty() || !mainCategories.isEmpty())) {
+            int candidates = zoneMaps.countCandidateBlocks(from, to, minAmount, maxAmount, singleCategory(), remark);
+            access = Access.ZONE_MAPS;
+            reason = "需讀取 " + candidates + "/" + zoneMaps.getBlockCount() + " 個區塊";
+        } else if (orderIndex != null && sortType != null) {
+            access = sortType.startsWith("amount") ? Access.AMOUNT_INDEX : Access.DATE_INDEX;
+            reason = "沒有範圍條件，依排序鍵走訪";
+        } else if (manager.queryableStore() != null && (hasDates() || remark != null)) {
+            access = Access.STORE;
+            reason = hasDates() ? "在儲存端篩選日期區間" : "在儲存端搜尋備註";
+        } else {
+            access = Access.FULL_SCAN;
+            reason = "沒有可用的索引";
+        }
+        boolean sorted = sortType == null
+            || (access == Access.DATE_INDEX && sortType.startsWith("date"))
+            || (access == Access.ZONE_MAPS && sortType.equals("dateAsc"))
+            || (access == Access.AMOUNT_INDEX && sortType.startsWith("amount"));
+        // 併入封存明細後順序不再依存取路徑；未指定排序時不排序，照封存在前、存取路徑在後的順序
+        return new Plan(access, reason, sorted && !(archived && sortType != null), archived);
+    }
+
+    // 分類條件只有一個分類時返回該分類（區塊摘要可用分類略過區塊），否則返回 null
+    private String singleCategory() {
+        Set<String> resolved = resolvedCategories();
+        return resolved != null && resolved.size() == 1 ? resolved.iterator().next() : null;
+    }
+
+    /**
+     * 說明查詢計畫：存取路徑與原因、逐筆檢查的條件、是否需要排序、筆數上限
+     *
+     * @return 多行說明
+     */
+    public String explain() {
+        Plan plan = plan();
+        StringBuilder sb = new StringBuilder();
+        sb.append("存取路徑：").append(plan.access().getLabel()).append("（").append(plan.reason()).append("）\n");
+        Set<String> resolved = resolvedCategories();
+        List<String> narrowed = new ArrayList<>();
+        List<String> residual = new ArrayList<>();
+        boolean datesNarrowed = plan.access() == Access.DATE_INDEX || plan.access() == Access.ZONE_MAPS
+            || plan.access() == Access.STORE && hasDates();
+        boolean amountsNarrowed = plan.access() == Access.AMOUNT_INDEX || plan.access() == Access.ZONE_MAPS;
+        boolean remarkNarrowed = plan.access() == Access.ZONE_MAPS || plan.access() == Access.STORE && !hasDates();
+        if (hasDates()) (datesNarrowed ? narrowed : residual).add("日期 " + rangeText(from, to));
+        if (hasAmounts()) (amountsNarrowed ? narrowed : residual).add("金額 " + rangeText(minAmount, maxAmount));
+        if (type != null) residual.add("類型=" + type);
+        if (resolved != null) {
+            boolean categoryNarrowed = plan.access() == Access.ZONE_MAPS && resolved.size() == 1;
+            (categoryNarrowed ? narrowed : residual).add("分類 ∈ " + resolved);
+        }
+        if (remark != null) (remarkNarrowed ? narrowed : residual).add("備註包含「" + remark + "」");
+        if (!narrowed.isEmpty()) {
+            sb.append(plan.access() == Access.ZONE_MAPS ? "略過區塊依據：" : "索引條件：")
+                .append(String.join("，", narrowed)).append('\n');
+        }
+        if (plan.access() == Access.ZONE_MAPS) {
+            // 區塊摘要只負責略過區塊，讀取的區塊仍逐筆比對全部條件
+            residual.addAll(0, narrowed);
+        }
+        sb.append("逐筆檢查：").append(residual.isEmpty() ? "無" : String.join("，", residual)).append('\n');
+        if (plan.archived()) {
+            sb.append("封存年度：一併讀取區間內的封存明細\n");
+        }
+        if (sortType == null) {
+            sb.append("排序：不指定（依存取路徑順序）\n");
+        } else {
+            sb.append("排序：").append(sortType).append(plan.sorted() ? "（依存取路徑順序，不需排序）" : "（取出後排序）").append('\n');
+        }
+        sb.append("筆數上限：").append(limit == 0 ? "不限" : limit + (plan.sorted() ? "（取滿即停止）" : ""));
+        return sb.toString();
+    }
+
+    private static String rangeText(Object low, Object high) {
+        return "[" + (low == null ? "不限" : low) + ", " + (high == null ? "不限" : high) + "]";
+    }
+
+    // --- 執行 ---
+
+    /**
+     * 依查詢計畫執行，逐筆產生結果
+     * 走訪排序索引時以游標逐頁取出，只在需要時讀取下一頁；需要排序時才會先取出全部
+     *
+     * @return 結果串流
+     */
+    public Stream<Expense> stream() {
+        return stream(plan());
+    }
+
+    private Stream<Expense> stream(Plan plan) {
+        Predicate<Expense> filter = filter();
+        Stream<Expense> source = switch (plan.access()) {
+            case DATE_INDEX, AMOUNT_INDEX -> paged(manager.orderIndex().source(indexOrder(plan.access()),
+                from, to, minAmount, maxAmount));
+            case ZONE_MAPS -> manager.zoneMaps().scan(from, to, minAmount, maxAmount, singleCategory(), remark).stream();
+            case STORE -> fromStore();
+            case FULL_SCAN -> manager.getExpenses().stream();
+        };
+        if (plan.archived()) {
+            List<Expense> archived = manager.rangeFromArchive(
+                from != null ? from : LocalDate.MIN, to != null ? to : LocalDate.MAX);
+            source = Stream.concat(archived.stream(), source);
+        }
+        Stream<Expense> result = source.filter(filter);
+        if (!plan.sorted()) {
+            result = result.sorted(comparator());
+        }
+        return limit > 0 ? result.limit(limit) : result;
+    }
+
+    /**
+     * 執行並取出全部結果
+     *
+     * @return 結果列表
+     */
+    public List<Expense> list() {
+        long start = QUERY_TIMER.start();
+        LedgerEvents.ExpenseOperation event = new LedgerEvents.ExpenseOperation();
+        event.begin();
+        Plan plan = plan();
+        List<Expense> result = stream(plan).collect(Collectors.toList());
+        QUERY_TIMER.stop(start);
+        event.finish("query:" + plan.access(), result.size(), manager.size());
+        return result;
+    }
+
+    // 走訪排序索引時的方向（指定排序時照排序，否則遞增）
+    private String indexOrder(Access access) {
+        String key = access == Access.AMOUNT_INDEX ? "amount" : "date";
+        if (sortType != null && sortType.startsWith(key)) return sortType;
+        return key + "Asc";
+    }
+
+    private Comparator<Expense> comparator() {
+        return switch (sortType) {
+            case "amountDesc" -> BY_AMOUNT_ID.reversed();
+            case "amountAsc" -> BY_AMOUNT_ID;
+            case "dateAsc" -> BY_DATE_ID;
+            default -> BY_DATE_ID.reversed();
+        };
+    }
+
+    // 全部條件（存取路徑已處理的條件再檢查一次也不影響結果）
+    private Predicate<Expense> filter() {
+        Set<String> resolved = resolvedCategories();
+        return e -> (from == null || !e.getDate().isBefore(from))
+            && (to == null || !e.getDate().isAfter(to))
+            && (type == null || e.getType() == type)
+            && (resolved == null || resolved.contains(e.getCategory()))
+            && (minAmount == null || e.getAmount().compareTo(minAmount) >= 0)
+            && (maxAmount == null || e.getAmount().compareTo(maxAmount) <= 0)
+            && (remark == null || (e.getRemark() != null && e.getRemark().contains(remark)));
+    }
+
+    // 在儲存端篩選；失敗時改為逐筆掃描
+    private Stream<Expense> fromStore() {
+        QueryableLedgerStore store = manager.queryableStore();
+        try {
+            if (store != null && hasDates()) {
+                return store.range(from != null ? from : LocalDate.MIN, to != null ? to : LocalDate.MAX).stream();
+            }
+            if (store != null && remark != null) {
+                return store.searchRemark(remark).stream();
+            }
+        } catch (IOException e) {
+            System.err.println("儲存端查詢失敗，改為掃描全部記錄: " + e.getMessage());
+        }
+        return manager.getExpenses().stream();
+    }
+
+    // 以游標逐頁取出的串流
+    private static Stream<Expense> paged(PaginationHelper.PageSource<Expense, ExpenseOrderIndex.OrderKey> source) {
+        Iterator<Expense> pages = new Iterator<>() {
+            private List<Expense> page = List.of();
+            private int position;
+            private ExpenseOrderIndex.OrderKey cursor;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (position < page.size()) return true;
+                if (exhausted) return false;
+                page = source.after(cursor, PAGE_SIZE);
+                position = 0;
+                exhausted = page.size() < PAGE_SIZE;
+                if (page.isEmpty()) return false;
+                cursor = source.keyOf(page.get(page.size() - 1));
+                return true;
+            }
+
+            @Override
+            public Expense next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.get(position++);
+            }
+        };
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
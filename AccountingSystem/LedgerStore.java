@@ -0,0 +1,132 @@
+// LedgerStore.java - 帳本儲存介面
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * 帳本儲存介面
+ * ----------
+ * ExpenseManager、CategoryManager、ReminderManager 透過此介面存取持久化資料，不直接處理檔案
+ * 內建兩種實作：SerializedFileStore（原本的 .ser 存檔）與 JdbcLedgerStore（內嵌 SQL 資料庫）
+ *
+ * 記帳記錄以「整本快照 + 已涵蓋的變更編號」存放；支援逐筆寫入的實作可覆寫 saveChanges，
+ * 只寫入變更的記錄，不必每次重寫整本帳本
+ * 支援查詢的實作另外實作 QueryableLedgerStore，可直接在儲存端執行區間、備註搜尋與分類加總
+ */
+public interface LedgerStore extends AutoCloseable {
+
+    /**
+     * 記帳記錄快照
+     *
+     * @param expenses 記錄
+     * @param sequence 快照已涵蓋的最後變更編號（未知時為 -1）
+     */
+    record ExpenseSnapshot(List<Expense> expenses, long sequence) {
+    }
+
+    /**
+     * 分類資料（收入分類、支出主分類、各主分類的子分類）
+     */
+    record CategoryData(LinkedHashMap<Integer, String> income,
+                        LinkedHashMap<Integer, String> expenseMain,
+                        LinkedHashMap<String, LinkedHashMap<Integer, String>> expenseSub) {
+    }
+
+    /**
+     * 資料存放位置（訊息與事件顯示用）
+     *
+     * @param part "expenses"、"categories" 或 "reminders"
+     * @return 位置描述
+     */
+    default String describe(String part) {
+        return toString();
+    }
+
+    /**
+     * 讀取記帳記錄快照
+     *
+     * @return 快照；從未存過時返回 null
+     * @throws IOException 讀取失敗或資料損毀
+     */
+    ExpenseSnapshot loadExpenses() throws IOException;
+
+    /**
+     * 以整本快照取代目前存放的記帳記錄
+     *
+     * @param expenses 記錄
+     * @param sequence 快照已涵蓋的最後變更編號
+     * @throws IOException 寫入失敗
+     */
+    void saveExpenses(List<Expense> expenses, long sequence) throws IOException;
+
+    /**
+     * 只寫入變更的記錄（依序套用新增、編輯、刪除）
+     *
+     * @param changes 記帳記錄變更
+     * @param sequence 套用後已涵蓋的最後變更編號
+     * @return 已寫入返回 true；此儲存不支援逐筆寫入時返回 false，由呼叫端改存整本快照
+     * @throws IOException 寫入失敗
+     */
+    default boolean saveChanges(List<LedgerChange> changes, long sequence) throws IOException {
+        return false;
+    }
+
+    /**
+     * 讀取分類資料
+     *
+     * @return 分類資料；從未存過時返回 null
+     * @throws IOException 讀取失敗或資料損毀
+     */
+    CategoryData loadCategories() throws IOException;
+
+    /**
+     * 儲存分類資料
+     *
+     * @param data 分類資料
+     * @throws IOException 寫入失敗
+     */
+    void saveCategories(CategoryData data) throws IOException;
+
+    /**
+     * 讀取提醒
+     *
+     * @return 提醒；從未存過時返回 null
+     * @throws IOException 讀取失敗或資料損毀
+     */
+    List<Reminder> loadReminders() throws IOException;
+
+    /**
+     * 儲存提醒
+     *
+     * @param reminders 提醒
+     * @throws IOException 寫入失敗
+     */
+    void saveReminders(List<Reminder> reminders) throws IOException;
+
+    /**
+     * 關閉儲存
+     *
+     * @throws IOException 關閉失敗
+     */
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * 把一個儲存的全部資料複製到另一個（例如第一次啟用資料庫時匯入原本的 .ser 存檔）
+     * 來源沒有的部分不會寫入
+     *
+     * @param from 來源
+     * @param to 目的
+     * @throws IOException 讀取或寫入失敗
+     */
+    static void copy(LedgerStore from, LedgerStore to) throws IOException {
+        ExpenseSnapshot expenses = from.loadExpenses();
+        if (expenses != null) to.saveExpenses(expenses.expenses(), expenses.sequence());
+        CategoryData categories = from.loadCategories();
+        if (categories != null) to.saveCategories(categories);
+        List<Reminder> reminders = from.loadReminders();
+        if (reminders != null) to.saveReminders(reminders);
+    }
+}
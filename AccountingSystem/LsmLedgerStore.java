@@ -0,0 +1,791 @@
+// LsmLedgerStore.java - 日誌結構（LSM）帳本儲存引擎
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * 日誌結構（LSM）帳本儲存引擎
+ * ----------------------
+ * 適合大量寫入（例如銀行帳單一次匯入數千筆）：
+ * 新增、修改與刪除先附加到預寫日誌（WAL），再寫入記憶體中依（日期, 編號）排序的 memtable；
+ * memtable 滿了之後整批寫成不可變、依日期排序的 run 檔，並清空 WAL，不需要每次改寫整個存檔
+ * run 檔分層：同一層累積 fanIn 個 run 時，由背景執行緒合併成下一層的一個 run，
+ * 每筆記錄約被改寫 log_fanIn(總筆數 / memtable 大小) 次，寫入放大有上限
+ * 讀取時合併 memtable 與所有 run（較新的覆蓋較舊的，刪除以墓碑表示），run 檔內以稀疏索引跳到區間起點
+ * 可作為 LedgerListener 掛在 ExpenseManager 上，同步寫入每一筆變更；
+ * 實作 QueryableLedgerStore，區間、備註搜尋與分類加總皆由 scan 合併後在儲存端完成
+ */
+public class LsmLedgerStore implements LedgerListener, QueryableLedgerStore, AutoCloseable {
+    // run 檔標頭與結尾的識別碼（"LSMR"）
+    private static final int RUN_MAGIC = 0x4C534D52;
+    private static final int RUN_VERSION = 1;
+    // 稀疏索引間隔（每幾筆記錄一個索引項）
+    private static final int INDEX_INTERVAL = 128;
+    // 記錄種類
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final String WAL_FILE = "wal.log";
+    private static final Pattern RUN_NAME = Pattern.compile("run-L(\\d+)-(\\d+)\\.dat");
+    // 預設 memtable 筆數上限與每層合併的 run 數
+    private static final int DEFAULT_MEMTABLE_LIMIT = 64 * 1024;
+    private static final int DEFAULT_FAN_IN = 4;
+
+    // 一筆鍵值（value 為 null 表示墓碑）
+    private record Entry(LedgerKey key, Expense value) {
+    }
+
+    // 墓碑在 memtable 中的佔位（ConcurrentSkipListMap 不接受 null）
+    private static final Expense TOMBSTONE = new Expense(LocalDate.EPOCH, BigDecimal.ZERO, null, null, null);
+
+    private final Path dir;
+    private final int memtableLimit;
+    private final int fanIn;
+    private final boolean syncWal;
+    // 目前的 memtable
+    private ConcurrentSkipListMap<LedgerKey, Expense> memtable = new ConcurrentSkipListMap<>();
+    // 所有 run，依新舊排序（最新的在前）
+    private List<SortedRun> runs = List.of();
+    // 預寫日誌
+    private FileOutputStream walFile;
+    private DataOutputStream wal;
+    // WAL 記錄的編碼緩衝
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream(256);
+    private final CRC32 crc = new CRC32();
+    // 下一個 run 序號
+    private long nextSeq = 1;
+    // 刪除 run 檔時需等待進行中的讀取
+    private final ReentrantReadWriteLock filesLock = new ReentrantReadWriteLock();
+    // 背景合併
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "lsm-compaction");
+        t.setDaemon(true);
+        return t;
+    });
+    // 統計：使用者寫入的位元組與實際寫到 run 檔的位元組
+    private long userBytes;
+    private long runBytes;
+    private boolean closed;
+
+    /**
+     * 開啟（或建立）儲存目錄，載入既有的 run 並重播 WAL
+     *
+     * @param dir 儲存目錄
+     * @return 儲存引擎
+     * @throws IOException 開啟失敗
+     */
+    public static LsmLedgerStore open(Path dir) throws IOException {
+        return new LsmLedgerStore(dir, DEFAULT_MEMTABLE_LIMIT, DEFAULT_FAN_IN, false);
+    }
+
+    /**
+     * 建構子
+     *
+     * @param dir 儲存目錄
+     * @param memtableLimit memtable 筆數上限
+     * @param fanIn 每層累積幾個 run 時合併
+     * @param syncWal 每次寫入 WAL 後是否強制寫到磁碟（fsync）
+     * @throws IOException 開啟失敗
+     */
+    public LsmLedgerStore(Path dir, int memtableLimit, int fanIn, boolean syncWal) throws IOException {
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("fanIn 必須至少為 2: " + fanIn);
+        }
+        this.dir = dir;
+        this.memtableLimit = memtableLimit;
+        this.fanIn = fanIn;
+        this.syncWal = syncWal;
+        Files.createDirectories(dir);
+        loadRuns();
+        replayWal();
+        openWal(true);
+        scheduleCompaction();
+    }
+
+    // --- 開啟與復原 ---
+
+    private void loadRuns() throws IOException {
+        List<SortedRun> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file); // 未完成的 flush 或合併
+                    continue;
+                }
+                Matcher m = RUN_NAME.matcher(name);
+                if (!m.matches()) continue;
+                loaded.add(SortedRun.open(file, Integer.parseInt(m.group(1)), Long.parseLong(m.group(2))));
+            }
+        }
+        // 合併完成但尚未刪除輸入就中斷：下一層序號以下的同層 run 都已併入，直接刪除
+        Map<Integer, Long> maxSeqByLevel = new HashMap<>();
+        for (SortedRun run : loaded) {
+            maxSeqByLevel.merge(run.level, run.seq, Math::max);
+        }
+        Iterator<SortedRun> it = loaded.iterator();
+        while (it.hasNext()) {
+            SortedRun run = it.next();
+            Long merged = maxSeqByLevel.get(run.level + 1);
+            if (merged != null && run.seq <= merged) {
+                Files.deleteIfExists(run.path);
+                it.remove();
+            }
+        }
+        loaded.sort(NEWEST_FIRST);
+        runs = List.copyOf(loaded);
+        for (SortedRun run : loaded) {
+            nextSeq = Math.max(nextSeq, run.seq + 1);
+        }
+    }
+
+    private static final Comparator<SortedRun> NEWEST_FIRST =
+        Comparator.comparingLong((SortedRun r) -> r.seq).thenComparingInt(r -> r.level).reversed();
+
+    // 依序讀入 WAL 的完整記錄，遇到不完整或校驗錯誤的尾端時截斷
+    private void replayWal() throws IOException {
+        Path walPath = dir.resolve(WAL_FILE);
+        if (!Files.exists(walPath)) return;
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(walPath)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                long expected = in.readInt() & 0xFFFFFFFFL;
+                if (length <= 0 || length > (1 << 20)) break;
+                byte[] payload = new byte[length];
+                try {
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload);
+                if (crc.getValue() != expected) break;
+                applyToMemtable(new DataInputStream(new ByteArrayInputStream(payload)));
+                good += 8 + length;
+            }
+        } catch (EOFException e) {
+            // 尾端不完整，保留已讀入的部分
+        }
+        if (good < Files.size(walPath)) {
+            try (FileChannel channel = FileChannel.open(walPath, StandardOpenOption.WRITE)) {
+                channel.truncate(good);
+            }
+        }
+    }
+
+    private void applyToMemtable(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        if (op == PUT) {
+            Expense e = ExpenseCodec.read(in);
+            memtable.put(LedgerKey.of(e), e);
+        } else if (op == DELETE) {
+            memtable.put(new LedgerKey(in.readLong(), in.readLong()), TOMBSTONE);
+        } else {
+            throw new IOException("未知的 WAL 記錄種類: " + op);
+        }
+    }
+
+    private void openWal(boolean append) throws IOException {
+        walFile = new FileOutputStream(dir.resolve(WAL_FILE).toFile(), append);
+        wal = new DataOutputStream(new BufferedOutputStream(walFile, 1 << 16));
+    }
+
+    // --- 寫入 ---
+
+    /**
+     * 新增或覆蓋一筆記錄（以日期與編號為鍵）
+     *
+     * @param e 記錄（必須已有編號）
+     * @throws IOException 寫入 WAL 失敗
+     */
+    public synchronized void put(Expense e) throws IOException {
+        ensureOpen();
+        frame.reset();
+        DataOutputStream out = new DataOutputStream(frame);
+        out.writeByte(PUT);
+        ExpenseCodec.write(out, e);
+        appendWal();
+        memtable.put(LedgerKey.of(e), new Expense(e));
+        maybeFlush();
+    }
+
+    /**
+     * 刪除一筆記錄（寫入墓碑）
+     *
+     * @param key 記錄的鍵
+     * @throws IOException 寫入 WAL 失敗
+     */
+    public synchronized void delete(LedgerKey key) throws IOException {
+        ensureOpen();
+        frame.reset();
+        DataOutputStream out = new DataOutputStream(frame);
+        out.writeByte(DELETE);
+        out.writeLong(key.epochDay());
+        out.writeLong(key.id());
+        appendWal();
+        memtable.put(key, TOMBSTONE);
+        maybeFlush();
+    }
+
+    /**
+     * 大量寫入（結束後把 memtable 寫成 run）
+     *
+     * @param expenses 記錄
+     * @throws IOException 寫入失敗
+     */
+    public synchronized void putAll(Iterable<Expense> expenses) throws IOException {
+        for (Expense e : expenses) {
+            put(e);
+        }
+        flush();
+    }
+
+    private void appendWal() throws IOException {
+        crc.reset();
+        crc.update(frame.toByteArray(), 0, frame.size());
+        wal.writeInt(frame.size());
+        wal.writeInt((int) crc.getValue());
+        frame.writeTo(wal);
+        wal.flush();
+        if (syncWal) {
+            walFile.getChannel().force(false);
+        }
+        userBytes += frame.size();
+    }
+
+    private void maybeFlush() throws IOException {
+        if (memtable.size() >= memtableLimit) {
+            flush();
+        }
+    }
+
+    /**
+     * 將 memtable 寫成第 0 層的 run，並清空 WAL
+     *
+     * @throws IOException 寫入失敗
+     */
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        if (memtable.isEmpty()) return;
+        long seq = nextSeq++;
+        List<Entry> entries = new ArrayList<>(memtable.size());
+        memtable.forEach((k, v) -> entries.add(new Entry(k, v == TOMBSTONE ? null : v)));
+        SortedRun run = writeRun(0, seq, entries.iterator(), false);
+        List<SortedRun> updated = new ArrayList<>(runs);
+        updated.add(run);
+        updated.sort(NEWEST_FIRST);
+        runs = List.copyOf(updated);
+        memtable = new ConcurrentSkipListMap<>();
+        // run 已完整寫入，WAL 可以清空
+        wal.close();
+        openWal(false);
+        scheduleCompaction();
+    }
+
+    // 寫出 run 檔（先寫暫存檔再改名，中斷時不會留下不完整的 run）
+    private SortedRun writeRun(int level, long seq, Iterator<Entry> entries, boolean dropTombstones) throws IOException {
+        Path target = dir.resolve(String.format("run-L%d-%012d.dat", level, seq));
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        List<LedgerKey> indexKeys = new ArrayList<>();
+        List<Long> indexOffsets = new ArrayList<>();
+        long count = 0;
+        LedgerKey last = null;
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(fos, 1 << 16));
+             DataOutputStream out = new DataOutputStream(counter)) {
+            out.writeInt(RUN_MAGIC);
+            out.writeInt(RUN_VERSION);
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (entry.value() == null && dropTombstones) continue;
+                if (count % INDEX_INTERVAL == 0) {
+                    out.flush();
+                    indexKeys.add(entry.key());
+                    indexOffsets.add(counter.count);
+                }
+                if (entry.value() == null) {
+                    out.writeByte(DELETE);
+                    out.writeLong(entry.key().epochDay());
+                    out.writeLong(entry.key().id());
+                } else {
+                    out.writeByte(PUT);
+                    ExpenseCodec.write(out, entry.value());
+                }
+                last = entry.key();
+                count++;
+            }
+            out.flush();
+            long indexOffset = counter.count;
+            out.writeInt(indexKeys.size());
+            for (int i = 0; i < indexKeys.size(); i++) {
+                out.writeLong(indexKeys.get(i).epochDay());
+                out.writeLong(indexKeys.get(i).id());
+                out.writeLong(indexOffsets.get(i));
+            }
+            out.writeLong(last == null ? 0 : last.epochDay());
+            out.writeLong(last == null ? 0 : last.id());
+            out.writeLong(count);
+            out.writeLong(indexOffset);
+            out.writeInt(RUN_MAGIC);
+            out.flush();
+            fos.getChannel().force(true);
+            synchronized (this) {
+                runBytes += counter.count;
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return SortedRun.open(target, level, seq);
+    }
+
+    // --- 合併 ---
+
+    private void scheduleCompaction() {
+        if (!compactor.isShutdown()) {
+            compactor.execute(this::compactSafely);
+        }
+    }
+
+    private void compactSafely() {
+        try {
+            while (compactOnce()) {
+                // 持續合併直到沒有任何一層達到 fanIn
+            }
+        } catch (IOException e) {
+            System.err.println("LSM 合併失敗: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 合併一次：找出最低的、累積 fanIn 個 run 的層，把其中最舊的 fanIn 個合併成下一層的一個 run
+     *
+     * @return 有進行合併返回 true
+     * @throws IOException 合併失敗
+     */
+    boolean compactOnce() throws IOException {
+        List<SortedRun> inputs;
+        boolean dropTombstones;
+        int level;
+        synchronized (this) {
+            if (closed) return false;
+            Map<Integer, List<SortedRun>> byLevel = new TreeMap<>();
+            for (SortedRun run : runs) {
+                byLevel.computeIfAbsent(run.level, l -> new ArrayList<>()).add(run);
+            }
+            inputs = null;
+            level = -1;
+            for (Map.Entry<Integer, List<SortedRun>> e : byLevel.entrySet()) {
+                if (e.getValue().size() >= fanIn) {
+                    List<SortedRun> candidates = new ArrayList<>(e.getValue());
+                    candidates.sort(Comparator.comparingLong(r -> r.seq));
+                    inputs = List.copyOf(candidates.subList(0, fanIn));
+                    level = e.getKey();
+                    break;
+                }
+            }
+            if (inputs == null) return false;
+            long minSeq = inputs.get(0).seq;
+            List<SortedRun> chosen = inputs;
+            // 沒有更舊的 run 時，墓碑已無需遮蓋的資料，可以丟棄
+            dropTombstones = runs.stream().noneMatch(r -> !chosen.contains(r) && r.seq < minSeq);
+        }
+        long outputSeq = inputs.get(inputs.size() - 1).seq;
+        List<Iterator<Entry>> sources = new ArrayList<>();
+        List<SortedRun> newestFirst = new ArrayList<>(inputs);
+        newestFirst.sort(NEWEST_FIRST);
+        List<RunIterator> opened = new ArrayList<>();
+        SortedRun merged;
+        try {
+            for (SortedRun run : newestFirst) {
+                RunIterator it = run.iterator(null);
+                opened.add(it);
+                sources.add(it);
+            }
+            merged = writeRun(level + 1, outputSeq, new MergeIterator(sources), dropTombstones);
+        } finally {
+            for (RunIterator it : opened) it.close();
+        }
+        synchronized (this) {
+            List<SortedRun> updated = new ArrayList<>(runs);
+            updated.removeAll(inputs);
+            updated.add(merged);
+            updated.sort(NEWEST_FIRST);
+            runs = List.copyOf(updated);
+        }
+        filesLock.writeLock().lock();
+        try {
+            for (SortedRun run : inputs) {
+                Files.deleteIfExists(run.path);
+            }
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    // --- 讀取 ---
+
+    /**
+     * 取得日期區間（皆含）內的所有記錄，依（日期, 編號）排序
+     *
+     * @param from 起始日期（null 表示不限）
+     * @param to 結束日期（null 表示不限）
+     * @return 記錄
+     * @throws IOException 讀取 run 失敗
+     */
+    public List<Expense> scan(LocalDate from, LocalDate to) throws IOException {
+        LedgerKey low = from == null ? null : LedgerKey.lowest(from);
+        LedgerKey high = to == null ? null : LedgerKey.highest(to);
+        NavigableMap<LedgerKey, Expense> mem;
+        List<SortedRun> snapshot;
+        synchronized (this) {
+            ensureOpen();
+            mem = memtable;
+            snapshot = runs;
+        }
+        filesLock.readLock().lock();
+        List<RunIterator> opened = new ArrayList<>();
+        try {
+            List<Iterator<Entry>> sources = new ArrayList<>();
+            NavigableMap<LedgerKey, Expense> range = mem;
+            if (low != null) range = range.tailMap(low, true);
+            if (high != null) range = range.headMap(high, true);
+            sources.add(range.entrySet().stream()
+                .map(e -> new Entry(e.getKey(), e.getValue() == TOMBSTONE ? null : e.getValue())).iterator());
+            for (SortedRun run : snapshot) {
+                if (!run.overlaps(low, high)) continue;
+                RunIterator it = run.iterator(low);
+                opened.add(it);
+                sources.add(it);
+            }
+            List<Expense> result = new ArrayList<>();
+            MergeIterator merged = new MergeIterator(sources);
+            while (merged.hasNext()) {
+                Entry entry = merged.next();
+                if (high != null && entry.key().compareTo(high) > 0) break;
+                if (entry.value() != null) result.add(new Expense(entry.value()));
+            }
+            return result;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (RunIterator it : opened) it.close();
+            filesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 取得所有記錄
+     *
+     * @return 依（日期, 編號）排序的記錄
+     * @throws IOException 讀取失敗
+     */
+    public List<Expense> scanAll() throws IOException {
+        return scan(null, null);
+    }
+
+    @Override
+    public List<Expense> range(LocalDate from, LocalDate to) throws IOException {
+        return scan(from, to);
+    }
+
+    @Override
+    public List<Expense> searchRemark(String keyword) throws IOException {
+        List<Expense> result = new ArrayList<>();
+        for (Expense e : scanAll()) {
+            if (e.getRemark() != null && e.getRemark().contains(keyword)) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, BigDecimal> totalsByCategory(LocalDate from, LocalDate to, TransactionType type)
+            throws IOException {
+        Map<String, BigDecimal> totals = new TreeMap<>();
+        for (Expense e : scan(from, to)) {
+            if (e.getType() == type) {
+                totals.merge(e.getCategory(), e.getAmount(), BigDecimal::add);
+            }
+        }
+        return totals;
+    }
+
+    public synchronized int getRunCount() {
+        return runs.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return memtable.isEmpty() && runs.isEmpty();
+    }
+
+    /**
+     * 寫入放大：寫到 run 檔的位元組 / 使用者寫入的位元組（本次開啟以來）
+     *
+     * @return 寫入放大倍數
+     */
+    public synchronized double getWriteAmplification() {
+        return userBytes == 0 ? 0 : (double) runBytes / userBytes;
+    }
+
+    // --- 作為 ExpenseManager 的同步寫入 ---
+
+    /**
+     * 掛在記帳管理器上，之後每一筆新增、編輯、刪除都同步寫入
+     *
+     * @param manager 記帳管理器
+     */
+    public void attach(ExpenseManager manager) {
+        manager.getChangeStream().addListener(this);
+    }
+
+    @Override
+    public void onChange(LedgerChange change) {
+        if (!change.isExpenseChange()) return;
+        try {
+            Expense before = change.getBefore();
+            Expense after = change.getAfter();
+            if (before != null && (after == null || !LedgerKey.of(before).equals(LedgerKey.of(after)))) {
+                delete(LedgerKey.of(before));
+            }
+            if (after != null) {
+                put(after);
+            }
+        } catch (IOException e) {
+            System.err.println("寫入 LSM 儲存失敗: " + e.getMessage());
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("儲存引擎已關閉");
+    }
+
+    /**
+     * 將 memtable 寫成 run、等待背景合併結束並關閉
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            flush();
+            closed = true;
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            wal.close();
+        }
+    }
+
+    // --- run 檔 ---
+
+    // 不可變的排序 run（記憶體中只保留稀疏索引）
+    private static final class SortedRun {
+        final Path path;
+        final int level;
+        final long seq;
+        final long count;
+        final long indexOffset;
+        final LedgerKey[] indexKeys;
+        final long[] indexOffsets;
+        final LedgerKey maxKey;
+
+        private SortedRun(Path path, int level, long seq, long count, long indexOffset,
+                          LedgerKey[] indexKeys, long[] indexOffsets, LedgerKey maxKey) {
+            this.path = path;
+            this.level = level;
+            this.seq = seq;
+            this.count = count;
+            this.indexOffset = indexOffset;
+            this.indexKeys = indexKeys;
+            this.indexOffsets = indexOffsets;
+            this.maxKey = maxKey;
+        }
+
+        // 讀取檔尾的稀疏索引
+        static SortedRun open(Path path, int level, long seq) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                long trailer = 8 * 4 + 4;
+                if (size < 8 + 4 + trailer) throw new IOException("run 檔過短: " + path);
+                DataInputStream tail = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(size - trailer))));
+                LedgerKey maxKey = new LedgerKey(tail.readLong(), tail.readLong());
+                long count = tail.readLong();
+                long indexOffset = tail.readLong();
+                if (tail.readInt() != RUN_MAGIC) throw new IOException("run 檔結尾損毀: " + path);
+                DataInputStream index = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(indexOffset))));
+                int entries = index.readInt();
+                LedgerKey[] keys = new LedgerKey[entries];
+                long[] offsets = new long[entries];
+                for (int i = 0; i < entries; i++) {
+                    keys[i] = new LedgerKey(index.readLong(), index.readLong());
+                    offsets[i] = index.readLong();
+                }
+                return new SortedRun(path, level, seq, count, indexOffset, keys, offsets, maxKey);
+            }
+        }
+
+        boolean overlaps(LedgerKey low, LedgerKey high) {
+            if (count == 0) return false;
+            if (low != null && maxKey.compareTo(low) < 0) return false;
+            return high == null || indexKeys[0].compareTo(high) <= 0;
+        }
+
+        // 從第一個 >= from 的記錄開始走訪（from 為 null 時從頭）
+        RunIterator iterator(LedgerKey from) throws IOException {
+            int block = 0;
+            if (from != null) {
+                int i = Arrays.binarySearch(indexKeys, from);
+                block = i >= 0 ? i : Math.max(0, -i - 2);
+            }
+            long start = indexKeys.length == 0 ? indexOffset : indexOffsets[block];
+            long remaining = count - (long) block * INDEX_INTERVAL;
+            return new RunIterator(this, start, remaining, from);
+        }
+    }
+
+    // run 檔的順序讀取
+    private static final class RunIterator implements Iterator<Entry>, Closeable {
+        private final FileChannel channel;
+        private final DataInputStream in;
+        private long remaining;
+        private Entry next;
+
+        RunIterator(SortedRun run, long start, long remaining, LedgerKey from) throws IOException {
+            this.channel = FileChannel.open(run.path, StandardOpenOption.READ);
+            this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(start)), 1 << 16));
+            this.remaining = Math.max(0, remaining);
+            advance();
+            while (from != null && next != null && next.key().compareTo(from) < 0) {
+                advance();
+            }
+        }
+
+        private void advance() {
+            if (remaining <= 0) {
+                next = null;
+                return;
+            }
+            remaining--;
+            try {
+                byte op = in.readByte();
+                if (op == PUT) {
+                    Expense e = ExpenseCodec.read(in);
+                    next = new Entry(LedgerKey.of(e), e);
+                } else if (op == DELETE) {
+                    next = new Entry(new LedgerKey(in.readLong(), in.readLong()), null);
+                } else {
+                    throw new IOException("run 檔記錄損毀");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry next() {
+            if (next == null) throw new NoSuchElementException();
+            Entry current = next;
+            advance();
+            return current;
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 關閉唯讀檔案失敗可忽略
+            }
+        }
+    }
+
+    // 多路合併：依鍵排序，相同鍵只取優先序最高（來源索引最小，即最新）的一筆
+    private static final class MergeIterator implements Iterator<Entry> {
+        private record Head(Entry entry, int source) {
+        }
+
+        private final List<Iterator<Entry>> sources;
+        private final PriorityQueue<Head> heads = new PriorityQueue<>(
+            Comparator.comparing((Head h) -> h.entry().key()).thenComparingInt(Head::source));
+
+        MergeIterator(List<Iterator<Entry>> sources) {
+            this.sources = sources;
+            for (int i = 0; i < sources.size(); i++) {
+                pull(i);
+            }
+        }
+
+        private void pull(int source) {
+            Iterator<Entry> it = sources.get(source);
+            if (it.hasNext()) heads.add(new Head(it.next(), source));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            Head head = heads.poll();
+            if (head == null) throw new NoSuchElementException();
+            pull(head.source());
+            // 較舊來源中相同鍵的版本被遮蓋
+            while (!heads.isEmpty() && heads.peek().entry().key().equals(head.entry().key())) {
+                pull(heads.poll().source());
+            }
+            return head.entry();
+        }
+    }
+
+    // 計算已寫出位元組數（用來記錄索引位置）
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
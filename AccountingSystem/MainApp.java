@@ -1,14 +1,22 @@
 // MainApp.java - 主程式入口（加入資料持久化功能）
 
 import java.io.File; // <--- 雖然沒直接用，但相關操作會產生檔案
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Scanner;
 import java.util.Map;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.function.Function;
 /**
  * 記帳系統主應用程式
  * ----------------
@@ -17,9 +25,8 @@ import java.util.ArrayList;
  */
 public class MainApp {
 	
-	// --- 定義檔案名稱常數 ---
-    private static final String EXPENSES_FILE = "expenses.ser";
-    private static final String CATEGORIES_FILE = "categories.ser";
+    // 變更紀錄（JSON lines）目錄
+    private static final String CHANGELOG_DIR = "changelog";
     // 記帳管理器
     private static final ExpenseManager manager = new ExpenseManager();
     // 輸入掃描器
@@ -27,19 +34,121 @@ public class MainApp {
     // 分類管理器
     private static final CategoryManager categoryManager = new CategoryManager();
     private static final ReminderManager reminderManager = new ReminderManager();
+    // 預算管理器（監聽 manager 的變更，遞增維護每月已花費）
+    private static final BudgetManager budgetManager = new BudgetManager(manager, categoryManager);
+    // 餘額前綴和索引（O(log n) 查詢任一日的累計餘額）
+    private static final BalanceIndex balanceIndex = new BalanceIndex(manager);
+    // 分類每月金額分布摘要（p50/p90/p99 與異常金額偵測）
+    private static final SpendingSketches sketches = new SpendingSketches(manager);
+    // 類型 × 分類 × 月份彙總（交叉分析報表的資料來源）
+    private static final LedgerCube ledgerCube = new LedgerCube(manager, categoryManager);
+    // 月份、年份與全部記錄的排序結果快取（分頁瀏覽切換時直接取用）
+    private static final SortedViewCache sortedViews = new SortedViewCache(manager);
+    // 依日期、金額排序的索引（全部記錄以游標分頁，不需整份排序）
+    private static final ExpenseOrderIndex orderIndex = new ExpenseOrderIndex(manager);
+    // 區塊摘要索引（日期、金額、分類範圍與備註 bloom filter，查詢時略過不可能符合的區塊）
+    private static final ZoneMapIndex zoneMaps = new ZoneMapIndex(manager);
+    // 定期交易自動記帳（提醒到期時依範本記帳）
+    private static final RecurringPostingEngine postingEngine = new RecurringPostingEngine(manager, reminderManager);
+    // 多版本帳本（快照與 asof 報表；舊版本保留 -Dledger.versions.retentionDays 天，預設 90）
+    private static final VersionedLedger versions =
+        new VersionedLedger(manager, Duration.ofDays(Long.getLong("ledger.versions.retentionDays", 90)));
+    // 記帳記錄表格輸出（整頁緩衝、依中文寬度對齊）
+    private static final TableRenderer<Expense> expenseTable = TableRenderer.forExpenses();
+    // 刪除時列出全部記錄用的編號表格
+    private static final TableRenderer<Expense> numberedTable = TableRenderer.forExpenses().numbered();
+    // 畫面輸出耗時
+    private static final LedgerMetrics.Timer RENDER_TIMER = LedgerMetrics.getDefault().timer("ui.renderTable");
+    // 指標定期輸出檔（-Dledger.metrics.file 指定；未指定時為 null）
+    private static final String METRICS_FILE = System.getProperty("ledger.metrics.file");
+    // 變更紀錄寫入器（開啟失敗時為 null）
+    private static ChangeLogWriter changeLog;
+    // LSM 儲存目錄（-Dledger.lsm.dir 指定時同步寫入每筆變更；未指定時為 null）
+    private static final String LSM_DIR = System.getProperty("ledger.lsm.dir");
+    // LSM 儲存引擎（未啟用或開啟失敗時為 null）
+    private static LsmLedgerStore lsmStore;
+    // 磁碟日期索引目錄（-Dledger.index.dir 指定時月份、年份查詢改讀 B+ 樹索引；未指定時為 null）
+    private static final String INDEX_DIR = System.getProperty("ledger.index.dir");
+    // 磁碟日期索引（未啟用或開啟失敗時為 null）
+    private static DateIndexedLedger dateIndex;
+    // 內嵌 SQL 資料庫（-Dledger.jdbc.url 指定時取代 .ser 存檔；可另以 ledger.jdbc.user / ledger.jdbc.password 登入）
+    private static final String JDBC_URL = System.getProperty("ledger.jdbc.url");
+    // 資料庫儲存（未啟用或開啟失敗時為 null）
+    private static JdbcLedgerStore jdbcStore;
+    // 年度封存目錄（-Dledger.archive.dir 指定時啟用；-Dledger.archive.keepYears 指定時啟動時自動封存較舊的年度）
+    private static final String ARCHIVE_DIR = System.getProperty("ledger.archive.dir");
+    // 年度封存（未啟用或開啟失敗時為 null）
+    private static LedgerArchive archive;
     /**
      * 程式入口點
      * 載入資料或初始化，然後啟動主選單
      *
-     * @param args 命令行參數（未使用）
+     * @param args 命令行參數（--batch 指令檔：執行指令檔後結束，不進入選單）
      */
     public static void main(String[] args) {
+        // --- 開啟變更紀錄，讓下游工具可以從 offset 追蹤變更 ---
+        try {
+            changeLog = ChangeLogWriter.open(Paths.get(CHANGELOG_DIR));
+            LedgerChangeStream.getDefault().resumeFrom(changeLog.getLastSequence());
+            LedgerChangeStream.getDefault().subscribe(changeLog);
+            // 紀錄寫入失敗後之後的變更無法由紀錄補回，下次存檔改存整本快照
+            changeLog.setOnFailure(manager::requestSnapshot);
+            // 記帳存檔損毀或當機時，載入後由變更紀錄補回存檔之後的變更
+            manager.setRecoveryLog(new ChangeLogReader(Paths.get(CHANGELOG_DIR)));
+        } catch (IOException e) {
+            System.err.println("無法開啟變更紀錄: " + e.getMessage());
+        }
+
+        // --- 執行期指標：以 JMX 公開，並可定期附加到檔案 ---
+        LedgerMetrics metrics = LedgerMetrics.getDefault();
+        metrics.gauge("ledger.size", manager::size);
+        metrics.gauge("reminders.size", () -> reminderManager.getReminders().size());
+        metrics.gauge("changes.lastSequence", () -> LedgerChangeStream.getDefault().getLastSequence());
+        metrics.registerMBean();
+        if (METRICS_FILE != null) {
+            long seconds = Long.getLong("ledger.metrics.interval", 60);
+            metrics.startFileDump(Paths.get(METRICS_FILE), Duration.ofSeconds(seconds));
+        }
+
         // --- 載入資料 ---
         System.out.println("正在載入分類資料...");
-        CategoryManager.loadCategories(CATEGORIES_FILE); // 載入靜態分類
+        if (JDBC_URL != null) {
+            openJdbcStore(JDBC_URL);
+        }
+        CategoryManager.loadCategories(); // 載入靜態分類
 
         System.out.println("正在載入記帳記錄...");
-        manager.loadExpenses(EXPENSES_FILE); // 載入 manager 實例的記錄
+        manager.setZoneMaps(zoneMaps);
+        manager.setOrderIndex(orderIndex);
+        if (ARCHIVE_DIR != null) {
+            openArchive(Paths.get(ARCHIVE_DIR));
+        }
+        manager.loadExpenses(); // 載入 manager 實例的記錄
+        Integer keepYears = Integer.getInteger("ledger.archive.keepYears");
+        if (archive != null && keepYears != null) {
+            try {
+                long archived = archive.archiveClosedYears(manager, keepYears);
+                if (archived > 0) {
+                    System.out.println("已封存 " + archived + " 筆較舊年度的記錄。");
+                }
+            } catch (IOException e) {
+                System.err.println("封存年度時發生錯誤: " + e.getMessage());
+            }
+        }
+        if (changeLog != null) {
+            // 由變更紀錄補回先前執行期間的版本歷史
+            try {
+                versions.loadHistory(new ChangeLogReader(Paths.get(CHANGELOG_DIR)));
+            } catch (IOException e) {
+                System.err.println("無法讀取版本歷史: " + e.getMessage());
+            }
+        }
+        if (LSM_DIR != null) {
+            openLsmStore(Paths.get(LSM_DIR));
+        }
+        if (INDEX_DIR != null) {
+            openDateIndex(Paths.get(INDEX_DIR));
+        }
         System.out.println("正在載入提醒記錄...");
         System.out.println("提醒記錄已從 reminders.ser 載入。");
         // --- 移除範例資料載入 ---
@@ -52,18 +161,159 @@ public class MainApp {
 
         System.out.println("\n--- 資料載入完成 ---\n");
 
+        if (args.length >= 2 && args[0].equals("--batch")) {
+            runBatch(args[1]);
+            return;
+        }
+
+        // 補記程式未執行期間到期的定期交易（批次新增、只儲存一次）
+        int posted = postingEngine.backfill(LocalDate.now());
+        if (posted > 0) {
+            System.out.println("已自動補記 " + posted + " 筆定期交易。");
+        }
+        // 啟動提醒排程器（背景執行緒於到期日觸發提醒）
+        reminderManager.getScheduler().start();
+
         // 顯示主選單
         
         showMainMenu();
     }
 
+    /**
+     * 執行批次指令檔，整批只儲存一次，完成後結束程式
+     *
+     * @param commandFile 指令檔路徑
+     */
+    private static void runBatch(String commandFile) {
+        int failed;
+        try {
+            failed = new BatchRunner(manager, categoryManager, ledgerCube, versions, System.out)
+                .withArchive(archive).run(Paths.get(commandFile));
+        } catch (IOException e) {
+            System.err.println("無法讀取指令檔: " + e.getMessage());
+            failed = 1;
+        }
+        CategoryManager.saveCategories();
+        budgetManager.saveBudgets();
+        reminderManager.getScheduler().close();
+        LedgerMetrics.getDefault().stopFileDump(METRICS_FILE == null ? null : Paths.get(METRICS_FILE));
+        LedgerChangeStream.getDefault().close();
+        if (changeLog != null) {
+            changeLog.awaitTermination(Duration.ofSeconds(5));
+        }
+        closeLsmStore();
+        closeDateIndex();
+        closeJdbcStore();
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * 改用內嵌 SQL 資料庫存放記帳記錄、分類與提醒（資料庫還沒有資料時先匯入目前的 .ser 存檔）
+     *
+     * @param url JDBC URL
+     */
+    private static void openJdbcStore(String url) {
+        try {
+            jdbcStore = JdbcLedgerStore.open(url, System.getProperty("ledger.jdbc.user"),
+                System.getProperty("ledger.jdbc.password"));
+            if (jdbcStore.isEmpty()) {
+                LedgerStore.copy(SerializedFileStore.getDefault(), jdbcStore);
+                System.out.println("已將現有存檔匯入資料庫 " + url + "。");
+            }
+            CategoryManager.setStore(jdbcStore);
+            manager.setStore(jdbcStore);
+            reminderManager.setStore(jdbcStore);
+        } catch (IOException e) {
+            System.err.println("無法開啟資料庫，改用檔案存檔: " + e.getMessage());
+            jdbcStore = null;
+        }
+    }
+
+    private static void closeJdbcStore() {
+        if (jdbcStore == null) return;
+        try {
+            jdbcStore.close();
+        } catch (IOException e) {
+            System.err.println("關閉資料庫時發生錯誤: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 開啟 LSM 儲存引擎並同步寫入之後的每筆變更（空的儲存會先匯入目前帳本）
+     *
+     * @param dir 儲存目錄
+     */
+    private static void openLsmStore(Path dir) {
+        try {
+            lsmStore = LsmLedgerStore.open(dir);
+            if (lsmStore.isEmpty()) {
+                lsmStore.putAll(manager.getExpenses());
+            }
+            lsmStore.attach(manager);
+        } catch (IOException e) {
+            System.err.println("無法開啟 LSM 儲存: " + e.getMessage());
+            lsmStore = null;
+        }
+    }
+
+    private static void closeLsmStore() {
+        if (lsmStore == null) return;
+        try {
+            lsmStore.close();
+        } catch (IOException e) {
+            System.err.println("關閉 LSM 儲存時發生錯誤: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 開啟年度封存：讀入各封存年度的摘要，讓報表與餘額涵蓋封存年度
+     *
+     * @param dir 封存目錄
+     */
+    private static void openArchive(Path dir) {
+        try {
+            archive = new LedgerArchive(dir);
+            manager.reserveIds(archive.maxId());
+            manager.setArchive(archive);
+            ledgerCube.setArchive(archive);
+            balanceIndex.setArchive(archive);
+        } catch (IOException e) {
+            System.err.println("無法開啟年度封存: " + e.getMessage());
+            archive = null;
+        }
+    }
+
+    /**
+     * 開啟磁碟日期索引（內容與帳本不一致時重建），之後月份、年份查詢改讀索引
+     *
+     * @param dir 索引目錄
+     */
+    private static void openDateIndex(Path dir) {
+        try {
+            dateIndex = new DateIndexedLedger(dir, manager);
+            manager.setDateIndex(dateIndex);
+        } catch (IOException e) {
+            System.err.println("無法開啟日期索引: " + e.getMessage());
+            dateIndex = null;
+        }
+    }
+
+    private static void closeDateIndex() {
+        if (dateIndex == null) return;
+        manager.setDateIndex(null);
+        try {
+            dateIndex.close();
+        } catch (IOException e) {
+            System.err.println("關閉日期索引時發生錯誤: " + e.getMessage());
+        }
+    }
+
     private static void showReminders() {
         List<Reminder> reminders = reminderManager.getReminders();
         System.out.println("\n==== 繳費提醒 ====");
         for (Reminder reminder : reminders) {
             String item = reminder.getName();
-            int targetDay = reminder.getDayOfMonth();
-            int daysLeft = reminderManager.calculateDaysRemaining(targetDay);
+            int daysLeft = reminderManager.getDaysRemaining(reminder); // 由排程器快取的到期日計算
             
             if (daysLeft == 0) {
                 System.out.println("今天要繳" + item + "！");
@@ -71,6 +321,20 @@ public class MainApp {
                 System.out.println(item + "還有 " + daysLeft + " 天要繳費");
             }
         }
+        // 上次顯示選單後由排程執行緒自動記帳的項目
+        List<String> posted = postingEngine.drainNotices();
+        if (!posted.isEmpty()) {
+            System.out.println("---- 自動記帳 ----");
+            posted.forEach(System.out::println);
+        }
+        // 預算門檻提醒：先顯示剛跨越門檻的提醒，再顯示本月仍超過門檻的分類
+        List<String> alerts = budgetManager.drainAlerts();
+        List<String> warnings = budgetManager.getWarnings(YearMonth.now());
+        if (!alerts.isEmpty() || !warnings.isEmpty()) {
+            System.out.println("---- 預算提醒 ----");
+            alerts.forEach(System.out::println);
+            warnings.forEach(System.out::println);
+        }
         System.out.println("==================");
     }
     
@@ -126,6 +390,7 @@ public class MainApp {
             System.out.println("4. 離開系統");
             System.out.println("5. 刪除記錄");
             System.out.println("6. 編輯提醒");
+            System.out.println("7. 編輯預算");
             System.out.print("請選擇操作：");
             switch (scanner.nextLine().trim()) {
                 case "1" -> addExpense();
@@ -141,9 +406,7 @@ public class MainApp {
                     }
 
                     System.out.println("\n=== 所有記帳記錄 ===");
-                    for (int i = 0; i < allExpenses.size(); i++) {
-                        System.out.println((i + 1) + ". " + allExpenses.get(i));
-                    }
+                    numberedTable.stream(allExpenses, System.out); // 逐批輸出，每批只寫出一次
 
                     System.out.print("請輸入要刪除的記錄編號（輸入 0 取消）：");
                     int indexToDelete;
@@ -167,12 +430,19 @@ public class MainApp {
                     System.out.print("確定要刪除這筆記錄嗎？(y/n)：");
                     String confirm = scanner.nextLine().trim().toLowerCase();
                     if (confirm.equals("y")) {
-                    	manager.deleteExpense(indexToDelete - 1); // 減 1 是因為列表是從 0 開始
+                        // 依記錄編號刪除：列出清單後排程執行緒可能已自動記帳，位置會改變
+                        long id = allExpenses.get(indexToDelete - 1).getId(); // 減 1 是因為列表是從 0 開始
+                        if (manager.deleteExpenseById(id)) {
+                            System.out.println("記錄已刪除。");
+                        } else {
+                            System.out.println("錯誤：該筆記錄已不存在。");
+                        }
                     } else {
                         System.out.println("取消刪除。");
                     }
                 }
-                case "6" -> new ReminderEditor(reminderManager, scanner).showMenu();
+                case "6" -> new ReminderEditor(reminderManager, scanner, categoryManager).showMenu();
+                case "7" -> new BudgetEditor(budgetManager, categoryManager, scanner).showMenu();
                 default -> System.out.println("無效輸入");
             }   
         }
@@ -204,8 +474,12 @@ public class MainApp {
             String remark = inputRemark();
 
             // 建立 Expense 物件並新增 (addExpense 內部會自動儲存)
-            manager.addExpense(new Expense(date, amount, category, remark, type));
+            Expense expense = new Expense(date, amount, category, remark, type);
+            manager.addExpense(expense);
             System.out.println("記錄新增成功！");
+            if (sketches.isOutlier(expense, 20)) {
+                System.out.println("提醒：此筆金額高於「" + category + "」近一年 99% 的記錄，請確認是否輸入正確。");
+            }
 
         } catch (IllegalArgumentException e) { // 捕捉可能的驗證錯誤
              System.out.println("輸入錯誤：" + e.getMessage());
@@ -356,10 +630,9 @@ public class MainApp {
         int year = selectYear();
         while (true) {
             System.out.printf("\n=== 當前查看：%d年 ===\n", year);
-            List<Expense> yearlyExpenses = manager.getExpensesByYear(year);
             // 直接在這裡處理分頁，整合所有操作在同一層選單
-            manager.sort(yearlyExpenses, "dateDesc"); // 預設排序
-            PaginationHelper<Expense> ph = new PaginationHelper<>(yearlyExpenses, 5, "dateDesc");
+            List<Expense> yearlyExpenses = sortedViews.yearView(year, "dateDesc"); // 預設排序（已快取）
+            PaginationHelper<Expense, ?> ph = new PaginationHelper<>(yearlyExpenses, 5, "dateDesc");
             ph.resetPage();
             while (true) {
                 // 顯示當前頁資料
@@ -452,6 +725,46 @@ public class MainApp {
         }
     }
 
+    /**
+     * 依金額範圍（可再限定年份）搜尋記帳記錄
+     */
+    private static void searchByAmount() {
+        BigDecimal min = inputOptionalAmount("請輸入最小金額（直接按 Enter 表示不限）：");
+        BigDecimal max = inputOptionalAmount("請輸入最大金額（直接按 Enter 表示不限）：");
+        System.out.print("請輸入年份（直接按 Enter 表示全部）：");
+        String yearInput = scanner.nextLine().trim();
+        LocalDate from = null;
+        LocalDate to = null;
+        if (!yearInput.isEmpty()) {
+            try {
+                int year = Integer.parseInt(yearInput);
+                from = LocalDate.of(year, 1, 1);
+                to = LocalDate.of(year, 12, 31);
+            } catch (NumberFormatException e) {
+                System.out.println("年份格式錯誤，改為搜尋全部年份");
+            }
+        }
+        List<Expense> results = manager.getExpensesByAmount(from, to, min, max);
+        if (results.isEmpty()) {
+            System.out.println("查無相關記錄！");
+        } else {
+            handlePagination(results, "金額範圍搜尋結果");
+        }
+    }
+
+    // 讀取可留空的金額（留空或格式錯誤時返回 null）
+    private static BigDecimal inputOptionalAmount(String prompt) {
+        System.out.print(prompt);
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) return null;
+        try {
+            return new BigDecimal(input);
+        } catch (NumberFormatException e) {
+            System.out.println("金額格式錯誤，視為不限");
+            return null;
+        }
+    }
+
     /**
      * 查看記錄選單
      * 提供不同方式查看記帳記錄
@@ -463,6 +776,10 @@ public class MainApp {
             System.out.println("2. 查看單月份記錄");
             System.out.println("3. 查看年份記錄");
             System.out.println("4. 透過備註搜尋");
+            System.out.println("5. 餘額查詢與走勢");
+            System.out.println("6. 金額分位數統計");
+            System.out.println("7. 交叉分析報表");
+            System.out.println("8. 依金額範圍搜尋");
             System.out.println("0. 返回主選單");
             System.out.print("請選擇操作：");
             String input = scanner.nextLine().trim();
@@ -471,6 +788,156 @@ public class MainApp {
                 case "2" -> viewMonthlyExpenses();
                 case "3" -> viewYearlyExpenses();
                 case "4" -> searchByRemark();
+                case "5" -> viewBalance();
+                case "6" -> viewQuantiles();
+                case "7" -> viewCubeReport();
+                case "8" -> searchByAmount();
+                case "0" -> { return; }
+                default -> System.out.println("無效輸入");
+            }
+        }
+    }
+
+    /**
+     * 餘額查詢選單
+     * 透過 BalanceIndex 查詢某日累計餘額、區間淨額與每月餘額走勢
+     */
+    private static void viewBalance() {
+        while (true) {
+            System.out.println("\n=== 餘額查詢 ===");
+            System.out.println("1. 查詢某日累計餘額");
+            System.out.println("2. 查詢區間淨額");
+            System.out.println("3. 查看年度每月餘額走勢");
+            System.out.println("0. 返回上一步");
+            System.out.print("請選擇操作：");
+            switch (scanner.nextLine().trim()) {
+                case "1" -> {
+                    LocalDate date = inputDate();
+                    System.out.println(date + " 累計餘額：" + balanceIndex.balanceAt(date).toPlainString() + "元");
+                }
+                case "2" -> {
+                    System.out.println("起始日期");
+                    LocalDate from = inputDate();
+                    System.out.println("結束日期");
+                    LocalDate to = inputDate();
+                    System.out.println(from + " ~ " + to + " 淨額：" + balanceIndex.balanceBetween(from, to).toPlainString()
+                        + "元（共 " + balanceIndex.countBetween(from, to) + " 筆）");
+                }
+                case "3" -> showBalanceChart(selectYear());
+                case "0" -> { return; }
+                default -> System.out.println("無效輸入");
+            }
+        }
+    }
+
+    /**
+     * 以長條圖顯示某年每月月底的累計餘額
+     *
+     * @param year 年份
+     */
+    private static void showBalanceChart(int year) {
+        Map<LocalDate, BigDecimal> series = new LinkedHashMap<>();
+        for (int month = 1; month <= 12; month++) {
+            LocalDate endOfMonth = YearMonth.of(year, month).atEndOfMonth();
+            series.put(endOfMonth, balanceIndex.balanceAt(endOfMonth));
+        }
+        BigDecimal maxAbs = series.values().stream().map(BigDecimal::abs)
+            .max(BigDecimal::compareTo).orElse(BigDecimal.ZERO);
+        System.out.printf("\n=== %d年每月月底餘額 ===\n", year);
+        for (Map.Entry<LocalDate, BigDecimal> entry : series.entrySet()) {
+            int bar = maxAbs.signum() == 0 ? 0
+                : entry.getValue().abs().multiply(BigDecimal.valueOf(40)).divide(maxAbs, 0, RoundingMode.HALF_UP).intValue();
+            System.out.printf("%02d月 %12s %s%s\n", entry.getKey().getMonthValue(),
+                entry.getValue().toPlainString(),
+                entry.getValue().signum() < 0 ? "-" : "",
+                "#".repeat(bar));
+        }
+    }
+
+    /**
+     * 顯示各分類的金額分位數（p50/p90/p99）
+     * 由 SpendingSketches 合併月份摘要，不需排序記錄
+     */
+    private static void viewQuantiles() {
+        int year = selectYear();
+        System.out.print("請輸入月份（1-12，輸入 0 查看整年）：");
+        int month;
+        try {
+            month = Integer.parseInt(scanner.nextLine().trim());
+        } catch (NumberFormatException e) {
+            System.out.println("月份格式錯誤！");
+            return;
+        }
+        if (month < 0 || month > 12) {
+            System.out.println("月份範圍錯誤！");
+            return;
+        }
+        YearMonth from = YearMonth.of(year, month == 0 ? 1 : month);
+        YearMonth to = YearMonth.of(year, month == 0 ? 12 : month);
+        Map<String, SpendingSketch> byCategory = sketches.byCategory(from, to);
+        if (byCategory.isEmpty()) {
+            System.out.println("沒有找到相關記錄");
+            return;
+        }
+        System.out.printf("\n=== %s ~ %s 金額分位數（誤差約 1%%） ===\n", from, to);
+        System.out.println("分類 | 筆數 | p50 | p90 | p99");
+        System.out.println("----------------------------------------------------------");
+        byCategory.forEach((category, sketch) ->
+            System.out.printf("%-14s | %6d | %10.0f | %10.0f | %10.0f\n", category, sketch.getCount(),
+                sketch.quantile(0.5), sketch.quantile(0.9), sketch.quantile(0.99)));
+    }
+
+    /**
+     * 交叉分析報表
+     * 顯示類型/主分類/子分類 × 期間的交叉表，支援下鑽、上捲、切換期間粒度與匯出 CSV
+     */
+    private static void viewCubeReport() {
+        CubeView view = new CubeView(ledgerCube, LedgerCube.Granularity.MONTH);
+        while (true) {
+            CubeView.Table table = view.table();
+            System.out.printf("\n=== 交叉分析：%s（依%s） ===\n", view.getPath(), view.getGranularity().getLabel());
+            if (table.rowLabels().isEmpty()) {
+                System.out.println("沒有找到相關記錄");
+            } else {
+                System.out.print(view.render(table));
+            }
+            System.out.println("\n1. 下鑽");
+            System.out.println("2. 上捲");
+            System.out.println("3. 切換期間（月/季/年）");
+            System.out.println("4. 匯出 CSV");
+            System.out.println("0. 返回上一步");
+            System.out.print("請選擇操作：");
+            switch (scanner.nextLine().trim()) {
+                case "1" -> {
+                    if (!view.canDrillDown()) {
+                        System.out.println("已是最細的分類層級！");
+                        break;
+                    }
+                    System.out.print("請輸入要下鑽的列編號：");
+                    try {
+                        int row = Integer.parseInt(scanner.nextLine().trim());
+                        if (row < 1 || row > table.rowLabels().size()) {
+                            System.out.println("錯誤：無效的編號。");
+                        } else {
+                            view.drillDown(table.rowLabels().get(row - 1));
+                        }
+                    } catch (NumberFormatException e) {
+                        System.out.println("輸入格式錯誤，請輸入數字。");
+                    }
+                }
+                case "2" -> {
+                    if (view.canRollUp()) view.rollUp();
+                    else System.out.println("已是最上層！");
+                }
+                case "3" -> {
+                    LedgerCube.Granularity next = switch (view.getGranularity()) {
+                        case MONTH -> LedgerCube.Granularity.QUARTER;
+                        case QUARTER -> LedgerCube.Granularity.YEAR;
+                        case YEAR -> LedgerCube.Granularity.MONTH;
+                    };
+                    view.setGranularity(next);
+                }
+                case "4" -> view.exportToCSV(table, "交叉分析_" + LocalDate.now() + ".csv");
                 case "0" -> { return; }
                 default -> System.out.println("無效輸入");
             }
@@ -481,8 +948,7 @@ public class MainApp {
      * 查看所有記錄
      */
     private static void viewAllExpenses() {
-        List<Expense> allExpenses = new ArrayList<>(manager.getExpenses());
-        handlePagination(allExpenses, "全部記錄");
+        handlePagination(sortType -> new PaginationHelper<>(orderIndex.source(sortType, null, null), 5, sortType), "全部記錄");
     }
 
     /**
@@ -494,7 +960,6 @@ public class MainApp {
         int month = selectMonth();
         while (true) {
             System.out.printf("\n=== 當前查看：%d年%02d月 ===\n", year, month);
-            List<Expense> monthlyExpenses = manager.getExpensesByMonth(year, month);
             System.out.println("\n=== 排序方式 ===");
             System.out.println("1. 金額由大到小");
             System.out.println("2. 金額由小到大");
@@ -513,8 +978,8 @@ public class MainApp {
                 default -> System.out.println("使用預設排序");
             }
 
-            manager.sort(monthlyExpenses, sortType);
-            PaginationHelper<Expense> ph = new PaginationHelper<>(monthlyExpenses, 5, sortType);
+            List<Expense> monthlyExpenses = sortedViews.monthView(year, month, sortType); // 已排序（快取）
+            PaginationHelper<Expense, ?> ph = new PaginationHelper<>(monthlyExpenses, 5, sortType);
             ph.resetPage();
             while (true) {
                 // 顯示當前頁數據
@@ -582,7 +1047,21 @@ public class MainApp {
      * @param context 上下文描述（顯示在頁面標題）
      * @return 分頁輔助器實例
      */
-    private static PaginationHelper<Expense> handlePagination(List<Expense> data, String context) {
+    private static PaginationHelper<Expense, ?> handlePagination(List<Expense> data, String context) {
+        return handlePagination(sortType -> {
+            manager.sort(data, sortType);
+            return new PaginationHelper<>(data, 5, sortType);
+        }, context);
+    }
+
+    /**
+     * 處理分頁顯示記帳記錄（依排序方式建立分頁輔助器，可為位移或游標分頁）
+     *
+     * @param pager 依排序類型建立分頁輔助器
+     * @param context 上下文描述（顯示在頁面標題）
+     * @return 分頁輔助器實例
+     */
+    private static PaginationHelper<Expense, ?> handlePagination(Function<String, PaginationHelper<Expense, ?>> pager, String context) {
         System.out.println("\n=== 排序方式 ===");
         System.out.println("1. 金額由大到小");
         System.out.println("2. 金額由小到大");
@@ -604,11 +1083,14 @@ public class MainApp {
             }
         }
 
-        manager.sort(data, sortType); // 排序資料
-        PaginationHelper<Expense> ph = new PaginationHelper<>(data, 5, sortType);
+        PaginationHelper<Expense, ?> ph = pager.apply(sortType);
         ph.resetPage();
         while (true) {
-            System.out.printf("\n=== %s（第%d頁/共%d頁） ===\n", context, ph.getCurrentPage()+1, ph.getTotalPages());
+            if (ph.isCursorMode()) {
+                System.out.printf("\n=== %s（第%d頁） ===\n", context, ph.getCurrentPage()+1);
+            } else {
+                System.out.printf("\n=== %s（第%d頁/共%d頁） ===\n", context, ph.getCurrentPage()+1, ph.getTotalPages());
+            }
             displayExpenses(ph.getCurrentPageData());
             System.out.println("\n1. 下一頁");
             if (ph.getCurrentPage() > 0) {
@@ -633,7 +1115,7 @@ public class MainApp {
      * @param ph 分頁輔助器實例
      * @param direction 導航方向（1表示下一頁，-1表示上一頁）
      */
-    private static void handlePageNavigation(PaginationHelper<Expense> ph, int direction) {
+    private static void handlePageNavigation(PaginationHelper<Expense, ?> ph, int direction) {
         try {
             if (direction > 0) {
                 ph.nextPage();
@@ -655,16 +1137,9 @@ public class MainApp {
             System.out.println("沒有找到相關記錄");
             return;
         }
-        System.out.println("日期 | 金額 | 類型 | 分類 | 備註");
-        System.out.println("----------------------------------------------------------");
-        expenses.forEach(exp ->
-            System.out.printf("%s | %-8s | %-4s | %-14s | %s\n",
-                exp.getDate(),
-                exp.getAmount() + "元",
-                exp.getType(),
-                exp.getCategory(),
-                exp.getRemark())
-        );
+        long start = RENDER_TIMER.start();
+        expenseTable.print(expenses, System.out); // 整頁格式化後一次寫出
+        RENDER_TIMER.stop(start);
     }
 
     
@@ -677,9 +1152,11 @@ public class MainApp {
      */
     private static void exitSystem() {
         System.out.println("正在儲存資料 (二進位)...");
-        manager.saveExpenses(EXPENSES_FILE); //
-        CategoryManager.saveCategories(CATEGORIES_FILE); //
+        manager.saveExpenses(); //
+        CategoryManager.saveCategories(); //
         reminderManager.saveReminders(); // 明確呼叫儲存提醒，確保資料一致性
+        reminderManager.getScheduler().close();
+        budgetManager.saveBudgets();
         System.out.println("二進位資料儲存完畢。");
 
         // --- 新增：匯出 CSV 檔案 ---
@@ -690,6 +1167,17 @@ public class MainApp {
         // 訊息已在 exportExpensesToCSV 方法中打印，這裡可以不再重複或只打印簡短提示
         // System.out.println("CSV 檔案匯出完成。");
 
+        LedgerMetrics.getDefault().stopFileDump(METRICS_FILE == null ? null : Paths.get(METRICS_FILE));
+
+        // 關閉變更串流，等待變更紀錄寫完
+        LedgerChangeStream.getDefault().close();
+        if (changeLog != null) {
+            changeLog.awaitTermination(Duration.ofSeconds(5));
+        }
+        closeLsmStore();
+        closeDateIndex();
+        closeJdbcStore();
+
         System.out.println("感謝使用記帳系統！");
         scanner.close();
         System.exit(0);
@@ -1,5 +1,7 @@
 // PaginationHelper.java - 分頁輔助類
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -7,12 +9,57 @@ import java.util.List;
  * --------
  * 處理資料分頁顯示的邏輯
  * 提供頁面導航、排序類型管理等功能
+ * 支援兩種模式：對完整列表以位移（offset）分頁，或以游標（排序鍵, 編號）向 PageSource 逐頁取資料
  *
  * @param <T> 分頁數據的類型
+ * @param <K> 游標類型（位移模式不使用，宣告時可寫為 ?）
  */
-public class PaginationHelper<T> {
-    // 原始資料列表
+public class PaginationHelper<T, K> {
+
+    /**
+     * 游標分頁的資料來源
+     *
+     * @param <T> 資料類型
+     * @param <K> 游標類型（排序鍵與編號）
+     */
+    public interface PageSource<T, K> {
+        /**
+         * 取得項目的游標
+         *
+         * @param item 項目
+         * @return 游標
+         */
+        K keyOf(T item);
+
+        /**
+         * 取得游標之後的項目
+         *
+         * @param cursor 游標（null 表示從頭開始）
+         * @param limit 最多筆數
+         * @return 依顯示順序排列的項目
+         */
+        List<T> after(K cursor, int limit);
+
+        /**
+         * 取得游標之前緊鄰的項目
+         *
+         * @param cursor 游標
+         * @param limit 最多筆數
+         * @return 依顯示順序排列的項目
+         */
+        List<T> before(K cursor, int limit);
+    }
+
+    // 原始資料列表（游標模式時為 null）
     private final List<T> data;
+    // 游標模式的資料來源（位移模式時為 null）
+    private final PageSource<T, K> source;
+    // 游標模式：當前頁資料與其首尾游標
+    private List<T> page = List.of();
+    private K firstKey;
+    private K lastKey;
+    // 游標模式：是否還有下一頁
+    private boolean nextExists;
     // 每頁顯示項目數
     private final int pageSize;
     // 當前頁碼（從0開始）
@@ -33,11 +80,49 @@ public class PaginationHelper<T> {
      */
     public PaginationHelper(List<T> data, int pageSize, String sortType) {
         this.data = data;
+        this.source = null;
         this.pageSize = pageSize;
         this.sortType = sortType;
         this.currentPage = 0;
     }
 
+    /**
+     * 建構子：游標分頁模式，每次翻頁只向資料來源取一頁
+     *
+     * @param source 資料來源
+     * @param pageSize 每頁顯示項目數
+     * @param sortType 排序類型
+     */
+    public PaginationHelper(PageSource<T, K> source, int pageSize, String sortType) {
+        this.data = null;
+        this.source = source;
+        this.pageSize = pageSize;
+        this.sortType = sortType;
+        this.currentPage = 0;
+        loadFirstPage();
+    }
+
+    /**
+     * 是否為游標分頁模式
+     *
+     * @return 游標模式返回 true
+     */
+    public boolean isCursorMode() {
+        return source != null;
+    }
+
+    // 多取一筆以判斷是否還有下一頁
+    private void loadFirstPage() {
+        setPage(source.after(null, pageSize + 1));
+    }
+
+    private void setPage(List<T> fetched) {
+        nextExists = fetched.size() > pageSize;
+        page = Collections.unmodifiableList(new ArrayList<>(fetched.subList(0, Math.min(pageSize, fetched.size()))));
+        firstKey = page.isEmpty() ? null : source.keyOf(page.get(0));
+        lastKey = page.isEmpty() ? null : source.keyOf(page.get(page.size() - 1));
+    }
+
     /**
      * 建構子：初始化分頁設定，包含年份和月份資訊
      *
@@ -59,6 +144,7 @@ public class PaginationHelper<T> {
      * @return 當前頁的資料子列表
      */
     public List<T> getCurrentPageData() {
+        if (source != null) return page;
         int start = currentPage * pageSize;
         int end = Math.min(start + pageSize, data.size());
         return data.subList(start, end);
@@ -70,6 +156,7 @@ public class PaginationHelper<T> {
      * @return 如果有下一頁返回 true，否則返回 false
      */
     public boolean hasNextPage() {
+        if (source != null) return nextExists;
         return (currentPage + 1) * pageSize < data.size();
     }
 
@@ -87,7 +174,17 @@ public class PaginationHelper<T> {
      * 如果已經是最後一頁，則不進行操作
      */
     public void nextPage() {
-        if (hasNextPage()) currentPage++;
+        if (!hasNextPage()) return;
+        if (source != null) {
+            List<T> fetched = source.after(lastKey, pageSize + 1);
+            if (fetched.isEmpty()) {
+                // 後面的資料已被刪除
+                nextExists = false;
+                return;
+            }
+            setPage(fetched);
+        }
+        currentPage++;
     }
 
     /**
@@ -95,7 +192,20 @@ public class PaginationHelper<T> {
      * 如果已經是第一頁，則不進行操作
      */
     public void previousPage() {
-        if (hasPreviousPage()) currentPage--;
+        if (!hasPreviousPage()) return;
+        if (source != null) {
+            List<T> fetched = source.before(firstKey, pageSize);
+            if (fetched.size() < pageSize || currentPage == 1) {
+                // 前面的資料有增減，回到第一頁重新對齊
+                resetPage();
+                return;
+            }
+            page = Collections.unmodifiableList(new ArrayList<>(fetched));
+            firstKey = source.keyOf(page.get(0));
+            lastKey = source.keyOf(page.get(page.size() - 1));
+            nextExists = true;
+        }
+        currentPage--;
     }
 
     /**
@@ -103,6 +213,7 @@ public class PaginationHelper<T> {
      */
     public void resetPage() {
         currentPage = 0;
+        if (source != null) loadFirstPage();
     }
 
     // Getters and Setters
@@ -127,9 +238,10 @@ public class PaginationHelper<T> {
     /**
      * 獲取總頁數
      *
-     * @return 總頁數
+     * @return 總頁數（游標模式不計算總數，返回 -1）
      */
     public int getTotalPages() {
+        if (source != null) return -1;
         return (int) Math.ceil((double)data.size() / pageSize);
     }
 
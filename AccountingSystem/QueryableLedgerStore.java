@@ -0,0 +1,47 @@
+// QueryableLedgerStore.java - 可在儲存端查詢的帳本儲存介面
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 可在儲存端查詢的帳本儲存介面
+ * ----------------------
+ * 直接在儲存端執行日期區間、備註搜尋與分類加總，不必把整本帳本讀進記憶體再掃描
+ * 實作：JdbcLedgerStore（以 SQL 查詢有索引的資料表）與 LsmLedgerStore（合併 memtable 與 run 檔）
+ * ExpenseManager 以 instanceof 判斷目前的儲存是否支援查詢，不支援時改為掃描記憶體中的列表
+ */
+public interface QueryableLedgerStore {
+
+    /**
+     * 日期區間內的記錄（依日期、編號排序）
+     *
+     * @param from 起日（含）
+     * @param to 迄日（含）
+     * @return 記錄
+     * @throws IOException 查詢失敗
+     */
+    List<Expense> range(LocalDate from, LocalDate to) throws IOException;
+
+    /**
+     * 備註包含關鍵字的記錄（區分大小寫，與 String.contains 相同）
+     *
+     * @param keyword 關鍵字
+     * @return 記錄（依日期、編號排序）
+     * @throws IOException 查詢失敗
+     */
+    List<Expense> searchRemark(String keyword) throws IOException;
+
+    /**
+     * 日期區間內某類型各分類的金額合計
+     *
+     * @param from 起日（含）
+     * @param to 迄日（含）
+     * @param type 收入或支出
+     * @return 分類 → 合計
+     * @throws IOException 查詢失敗
+     */
+    Map<String, BigDecimal> totalsByCategory(LocalDate from, LocalDate to, TransactionType type) throws IOException;
+}
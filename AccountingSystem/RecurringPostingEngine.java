@@ -0,0 +1,98 @@
+// RecurringPostingEngine.java - 定期交易自動記帳
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 定期交易自動記帳
+ * -------------
+ * 對附有交易範本的提醒，在到期時自動建立記帳記錄
+ * 執行期間由提醒排程器的到期回呼逐筆記帳；啟動時則以 backfill 補記程式未執行期間錯過的各期，
+ * 補記的記錄一次批次新增並只儲存一次，而不是每期呼叫一次 addExpense 各自儲存
+ * 每個提醒以 lastPosted 記錄最後一次記帳的到期日，同一期不會重複記帳
+ * 到期回呼在排程執行緒上執行，不直接輸出到畫面（會打斷選單輸入），
+ * 而是記下通知，由 MainApp 在下次顯示選單時以 drainNotices 取出顯示
+ */
+public class RecurringPostingEngine implements ReminderScheduler.FireListener {
+    // 記帳管理器
+    private final ExpenseManager expenseManager;
+    // 提醒管理器（記帳後儲存 lastPosted）
+    private final ReminderManager reminderManager;
+    // 尚未顯示的自動記帳通知
+    private final Deque<String> pendingNotices = new ArrayDeque<>();
+
+    /**
+     * 建構子：向提醒排程器註冊到期回呼
+     *
+     * @param expenseManager 記帳管理器
+     * @param reminderManager 提醒管理器
+     */
+    public RecurringPostingEngine(ExpenseManager expenseManager, ReminderManager reminderManager) {
+        this.expenseManager = expenseManager;
+        this.reminderManager = reminderManager;
+        reminderManager.getScheduler().addListener(this);
+    }
+
+    /**
+     * 補記所有附範本提醒在 lastPosted 之後、today（含）之前到期的各期
+     * 尚未記帳過的提醒不往前補記，只處理今天到期的一期
+     *
+     * @param today 補記截止日
+     * @return 補記的筆數
+     */
+    public synchronized int backfill(LocalDate today) {
+        List<Expense> batch = new ArrayList<>();
+        Map<Reminder, LocalDate> posted = new LinkedHashMap<>();
+        for (Reminder reminder : reminderManager.getReminders()) {
+            TransactionTemplate template = reminder.getTemplate();
+            if (template == null) continue;
+            LocalDate from = reminder.getLastPosted() == null ? today : reminder.getLastPosted().plusDays(1);
+            LocalDate last = null;
+            for (LocalDate due = reminder.nextDueOnOrAfter(from); !due.isAfter(today);
+                 due = reminder.nextDueOnOrAfter(due.plusDays(1))) {
+                batch.add(template.toExpense(due));
+                last = due;
+            }
+            if (last != null) {
+                posted.put(reminder, last);
+            }
+        }
+        if (!batch.isEmpty()) {
+            expenseManager.addExpenses(batch);
+            reminderManager.markPosted(posted);
+        }
+        return batch.size();
+    }
+
+    /**
+     * 提醒到期時記帳（已由 backfill 記過的期數會略過）
+     *
+     * @param reminder 到期的提醒
+     * @param dueDate 到期日
+     */
+    @Override
+    public synchronized void onFire(Reminder reminder, LocalDate dueDate) {
+        TransactionTemplate template = reminder.getTemplate();
+        if (template == null) return;
+        if (reminder.getLastPosted() != null && !dueDate.isAfter(reminder.getLastPosted())) return;
+        expenseManager.addExpense(template.toExpense(dueDate));
+        reminderManager.markPosted(Map.of(reminder, dueDate));
+        pendingNotices.add("已自動記帳：" + reminder.getName() + " " + template);
+    }
+
+    /**
+     * 取出並清除尚未顯示的自動記帳通知
+     *
+     * @return 通知訊息列表
+     */
+    public synchronized List<String> drainNotices() {
+        List<String> notices = new ArrayList<>(pendingNotices);
+        pendingNotices.clear();
+        return notices;
+    }
+}
@@ -1,22 +1,154 @@
 import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
 
 public class Reminder implements Serializable {
     private static final long serialVersionUID = 1L;
+
+    // 提醒頻率（舊版存檔沒有此欄位，讀入時為 null，視為每月）
+    public enum Frequency {
+        MONTHLY("每月"),
+        WEEKLY("每週"),
+        YEARLY("每年"),
+        LAST_BUSINESS_DAY("每月最後一個工作日"),
+        EVERY_N_MONTHS("每 N 個月");
+
+        private final String label;
+
+        Frequency(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
     private String name;
-    private int dayOfMonth; // 每月幾號
+    private int dayOfMonth; // 每月幾號（MONTHLY、YEARLY、EVERY_N_MONTHS 使用）
+    private Frequency frequency;
+    private int dayOfWeek; // 星期幾 1-7（WEEKLY 使用）
+    private int month; // 幾月 1-12（YEARLY 使用）
+    private int intervalMonths; // 間隔月數（EVERY_N_MONTHS 使用）
+    private YearMonth startMonth; // 起始月份（EVERY_N_MONTHS 使用）
+    private TransactionTemplate template; // 自動記帳範本（null 表示只提醒）
+    private LocalDate lastPosted; // 最後一次自動記帳的到期日
 
     public Reminder(String name, int dayOfMonth) {
         this.name = name;
         this.dayOfMonth = dayOfMonth;
+        this.frequency = Frequency.MONTHLY;
+    }
+
+    public static Reminder weekly(String name, DayOfWeek dayOfWeek) {
+        Reminder r = new Reminder(name, 1);
+        r.frequency = Frequency.WEEKLY;
+        r.dayOfWeek = dayOfWeek.getValue();
+        return r;
+    }
+
+    public static Reminder yearly(String name, int month, int dayOfMonth) {
+        Reminder r = new Reminder(name, dayOfMonth);
+        r.frequency = Frequency.YEARLY;
+        r.month = month;
+        return r;
+    }
+
+    public static Reminder lastBusinessDay(String name) {
+        Reminder r = new Reminder(name, 31);
+        r.frequency = Frequency.LAST_BUSINESS_DAY;
+        return r;
+    }
+
+    public static Reminder everyNMonths(String name, int intervalMonths, YearMonth startMonth, int dayOfMonth) {
+        if (intervalMonths < 1) {
+            throw new IllegalArgumentException("間隔月數必須至少為 1: " + intervalMonths);
+        }
+        Reminder r = new Reminder(name, dayOfMonth);
+        r.frequency = Frequency.EVERY_N_MONTHS;
+        r.intervalMonths = intervalMonths;
+        r.startMonth = startMonth;
+        return r;
     }
 
     public String getName() { return name; }
     public int getDayOfMonth() { return dayOfMonth; }
     public void setDayOfMonth(int dayOfMonth) { this.dayOfMonth = dayOfMonth; }
     public void setName(String name) { this.name = name; }
+    public Frequency getFrequency() { return frequency == null ? Frequency.MONTHLY : frequency; }
+    public TransactionTemplate getTemplate() { return template; }
+    public void setTemplate(TransactionTemplate template) { this.template = template; }
+    public LocalDate getLastPosted() { return lastPosted; }
+    public void setLastPosted(LocalDate lastPosted) { this.lastPosted = lastPosted; }
+
+    // 以另一個提醒的排程取代目前排程（名稱不變）
+    public void copyScheduleFrom(Reminder other) {
+        this.dayOfMonth = other.dayOfMonth;
+        this.frequency = other.frequency;
+        this.dayOfWeek = other.dayOfWeek;
+        this.month = other.month;
+        this.intervalMonths = other.intervalMonths;
+        this.startMonth = other.startMonth;
+    }
+
+    /**
+     * 計算在 from 當天或之後的下一個到期日
+     *
+     * @param from 起算日期
+     * @return 下一個到期日
+     */
+    public LocalDate nextDueOnOrAfter(LocalDate from) {
+        return switch (getFrequency()) {
+            case MONTHLY -> {
+                LocalDate due = dayIn(YearMonth.from(from), dayOfMonth);
+                yield due.isBefore(from) ? dayIn(YearMonth.from(from).plusMonths(1), dayOfMonth) : due;
+            }
+            case WEEKLY -> from.with(TemporalAdjusters.nextOrSame(DayOfWeek.of(dayOfWeek)));
+            case YEARLY -> {
+                LocalDate due = dayIn(YearMonth.of(from.getYear(), month), dayOfMonth);
+                yield due.isBefore(from) ? dayIn(YearMonth.of(from.getYear() + 1, month), dayOfMonth) : due;
+            }
+            case LAST_BUSINESS_DAY -> {
+                LocalDate due = lastBusinessDayOf(YearMonth.from(from));
+                yield due.isBefore(from) ? lastBusinessDayOf(YearMonth.from(from).plusMonths(1)) : due;
+            }
+            case EVERY_N_MONTHS -> {
+                YearMonth start = startMonth == null ? YearMonth.from(from) : startMonth;
+                long elapsed = Math.max(0, ChronoUnit.MONTHS.between(start, YearMonth.from(from)));
+                YearMonth candidate = start.plusMonths(elapsed / intervalMonths * intervalMonths);
+                while (dayIn(candidate, dayOfMonth).isBefore(from)) {
+                    candidate = candidate.plusMonths(intervalMonths);
+                }
+                yield dayIn(candidate, dayOfMonth);
+            }
+        };
+    }
+
+    // 該月的第 day 天，超過月底時取月底
+    private static LocalDate dayIn(YearMonth month, int day) {
+        return month.atDay(Math.min(day, month.lengthOfMonth()));
+    }
+
+    private static LocalDate lastBusinessDayOf(YearMonth month) {
+        LocalDate day = month.atEndOfMonth();
+        while (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            day = day.minusDays(1);
+        }
+        return day;
+    }
 
     @Override
     public String toString() {
-        return name + "（每月" + dayOfMonth + "號）";
+        String schedule = switch (getFrequency()) {
+            case MONTHLY -> name + "（每月" + dayOfMonth + "號）";
+            case WEEKLY -> name + "（每週" + "一二三四五六日".charAt(dayOfWeek - 1) + "）";
+            case YEARLY -> name + "（每年" + month + "月" + dayOfMonth + "號）";
+            case LAST_BUSINESS_DAY -> name + "（每月最後一個工作日）";
+            case EVERY_N_MONTHS -> name + "（自" + startMonth + "起每" + intervalMonths + "個月的" + dayOfMonth + "號）";
+        };
+        return template == null ? schedule : schedule + "［自動記帳：" + template + "］";
     }
-}
\ No newline at end of file
+}
@@ -1,13 +1,22 @@
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.YearMonth;
 import java.util.List;
 import java.util.Scanner;
 
 public class ReminderEditor {
     private final ReminderManager reminderManager;
     private final Scanner scanner;
+    private final CategoryManager categoryManager;
 
     public ReminderEditor(ReminderManager reminderManager, Scanner scanner) {
+        this(reminderManager, scanner, new CategoryManager());
+    }
+
+    public ReminderEditor(ReminderManager reminderManager, Scanner scanner, CategoryManager categoryManager) {
         this.reminderManager = reminderManager;
         this.scanner = scanner;
+        this.categoryManager = categoryManager;
     }
 
     public void showMenu() {
@@ -15,7 +24,8 @@ public class ReminderEditor {
             System.out.println("\n=== 編輯提醒 ===");
             System.out.println("1. 新增提醒");
             System.out.println("2. 刪除提醒");
-            System.out.println("3. 更改日期");
+            System.out.println("3. 更改排程");
+            System.out.println("4. 設定自動記帳");
             System.out.println("0. 返回主選單");
             System.out.print("請選擇操作：");
             String input = scanner.nextLine().trim();
@@ -23,6 +33,7 @@ public class ReminderEditor {
                 case "1" -> addReminder();
                 case "2" -> deleteReminder();
                 case "3" -> changeDate();
+                case "4" -> changeTemplate();
                 case "0" -> { return; }
                 default -> System.out.println("無效輸入");
             }
@@ -42,9 +53,9 @@ public class ReminderEditor {
                 return;
             }
         }
-        int day = inputDayOfMonth();
-        if (day == -1) return;
-        reminderManager.addReminder(new Reminder(name, day));
+        Reminder reminder = inputSchedule(name);
+        if (reminder == null) return;
+        reminderManager.addReminder(reminder);
         System.out.println("新增成功！");
     }
 
@@ -77,7 +88,7 @@ public class ReminderEditor {
             return;
         }
         showReminders();
-        System.out.print("請輸入要更改日期的提醒編號（0返回）：");
+        System.out.print("請輸入要更改排程的提醒編號（0返回）：");
         try {
             int idx = Integer.parseInt(scanner.nextLine());
             if (idx == 0) return;
@@ -85,15 +96,119 @@ public class ReminderEditor {
                 System.out.println("無效編號");
                 return;
             }
-            int newDay = inputDayOfMonth();
-            if (newDay == -1) return;
-            reminderManager.updateReminderDate(idx - 1, newDay);
+            Reminder schedule = inputSchedule(list.get(idx - 1).getName());
+            if (schedule == null) return;
+            reminderManager.updateReminderSchedule(idx - 1, schedule);
             System.out.println("修改成功！");
         } catch (NumberFormatException e) {
             System.out.println("請輸入數字");
         }
     }
 
+    // 為提醒設定（或取消）到期時自動記帳的交易內容
+    private void changeTemplate() {
+        List<Reminder> list = reminderManager.getReminders();
+        if (list.isEmpty()) {
+            System.out.println("沒有提醒可設定");
+            return;
+        }
+        showReminders();
+        System.out.print("請輸入要設定自動記帳的提醒編號（0返回）：");
+        try {
+            int idx = Integer.parseInt(scanner.nextLine());
+            if (idx == 0) return;
+            if (idx < 1 || idx > list.size()) {
+                System.out.println("無效編號");
+                return;
+            }
+            if (list.get(idx - 1).getTemplate() != null) {
+                System.out.print("已設定自動記帳，是否取消？(y/n)：");
+                if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                    reminderManager.setTemplate(idx - 1, null);
+                    System.out.println("已取消自動記帳");
+                    return;
+                }
+            }
+            TransactionTemplate template = inputTemplate(list.get(idx - 1).getName());
+            if (template == null) return;
+            reminderManager.setTemplate(idx - 1, template);
+            System.out.println("設定成功！之後每次到期會自動記帳");
+        } catch (NumberFormatException e) {
+            System.out.println("請輸入數字");
+        }
+    }
+
+    private TransactionTemplate inputTemplate(String defaultRemark) {
+        TransactionType type = inputNumber("請選擇類型（1. 收入 2. 支出）：", 1, 2) == 1
+            ? TransactionType.收入 : TransactionType.支出;
+        System.out.print("請輸入分類名稱：");
+        String category = scanner.nextLine().trim();
+        if (!categoryManager.isValidCategory(type, category)) {
+            System.out.println("分類 '" + category + "' 對於類型 '" + type + "' 無效");
+            return null;
+        }
+        BigDecimal amount;
+        System.out.print("請輸入金額：");
+        try {
+            amount = new BigDecimal(scanner.nextLine().trim());
+        } catch (NumberFormatException e) {
+            System.out.println("金額格式錯誤");
+            return null;
+        }
+        if (amount.signum() <= 0) {
+            System.out.println("金額必須大於 0");
+            return null;
+        }
+        System.out.print("請輸入備註（直接 Enter 使用「" + defaultRemark + "」）：");
+        String remark = scanner.nextLine().trim();
+        return new TransactionTemplate(amount, category, type, remark.isEmpty() ? defaultRemark : remark);
+    }
+
+    // 選擇提醒頻率並輸入對應的日期設定
+    private Reminder inputSchedule(String name) {
+        System.out.println("請選擇提醒頻率：");
+        Reminder.Frequency[] frequencies = Reminder.Frequency.values();
+        for (int i = 0; i < frequencies.length; i++) {
+            System.out.printf("%d. %s\n", i + 1, frequencies[i].getLabel());
+        }
+        System.out.print("請選擇（預設 1）：");
+        String input = scanner.nextLine().trim();
+        Reminder.Frequency frequency = Reminder.Frequency.MONTHLY;
+        try {
+            if (!input.isEmpty()) frequency = frequencies[Integer.parseInt(input) - 1];
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.out.println("無效選擇");
+            return null;
+        }
+        return switch (frequency) {
+            case MONTHLY -> new Reminder(name, inputDayOfMonth());
+            case WEEKLY -> Reminder.weekly(name, DayOfWeek.of(inputNumber("請輸入星期幾（1-7，1 為星期一）：", 1, 7)));
+            case YEARLY -> {
+                int month = inputNumber("請輸入月份（1-12）：", 1, 12);
+                yield Reminder.yearly(name, month, inputDayOfMonth());
+            }
+            case LAST_BUSINESS_DAY -> Reminder.lastBusinessDay(name);
+            case EVERY_N_MONTHS -> {
+                int interval = inputNumber("請輸入間隔月數（1-24）：", 1, 24);
+                yield Reminder.everyNMonths(name, interval, YearMonth.now(), inputDayOfMonth());
+            }
+        };
+    }
+
+    private int inputNumber(String prompt, int min, int max) {
+        while (true) {
+            System.out.print(prompt);
+            String input = scanner.nextLine();
+            try {
+                int value = Integer.parseInt(input.trim());
+                if (value >= min && value <= max) return value;
+                System.out.println("請輸入" + min + "~" + max + "的數字");
+            } catch (NumberFormatException e) {
+                System.out.println("請輸入數字");
+            }
+        }
+    }
+
     private int inputDayOfMonth() {
         while (true) {
             System.out.print("請輸入每月幾號（1-31）：");
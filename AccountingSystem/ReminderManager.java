@@ -5,8 +5,11 @@ import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 public class ReminderManager {
-    private static final String REMINDER_FILE = "reminders.ser";
+    // 持久化儲存（預設為目前目錄的 reminders.ser）
+    private LedgerStore store = SerializedFileStore.getDefault();
     private final List<Reminder> reminders = new ArrayList<>();
+    // 下一個到期日的排程（顯示剩餘天數與背景觸發皆由此取得）
+    private final ReminderScheduler scheduler = new ReminderScheduler();
 
     // 預設提醒
     private static final String[] DEFAULT_NAMES = {"房租", "通話費", "水電費"};
@@ -20,55 +23,122 @@ public class ReminderManager {
             }
             saveReminders();
         }
+        scheduler.scheduleAll(reminders);
     }
 
-    public List<Reminder> getReminders() {
-        return reminders;
+    public ReminderScheduler getScheduler() {
+        return scheduler;
     }
 
-    public void addReminder(Reminder reminder) {
+    // 返回副本：排程執行緒可能同時更新並儲存提醒
+    public synchronized List<Reminder> getReminders() {
+        return new ArrayList<>(reminders);
+    }
+
+    public synchronized void addReminder(Reminder reminder) {
         reminders.add(reminder);
+        scheduler.schedule(reminder);
+        publish(LedgerChange.Kind.REMINDER_ADD, null, reminder.toString());
         saveReminders();
     }
 
-    public void removeReminder(int idx) {
+    public synchronized void removeReminder(int idx) {
+        if (idx >= 0 && idx < reminders.size()) {
+            Reminder removed = reminders.remove(idx);
+            scheduler.unschedule(removed);
+            publish(LedgerChange.Kind.REMINDER_DELETE, removed.toString(), null);
+            saveReminders();
+        }
+    }
+
+    public synchronized void updateReminderDate(int idx, int newDay) {
+        if (idx >= 0 && idx < reminders.size()) {
+            Reminder reminder = reminders.get(idx);
+            String before = reminder.toString();
+            reminder.setDayOfMonth(newDay);
+            scheduler.schedule(reminder);
+            publish(LedgerChange.Kind.REMINDER_EDIT, before, reminder.toString());
+            saveReminders();
+        }
+    }
+
+    public synchronized void updateReminderSchedule(int idx, Reminder schedule) {
         if (idx >= 0 && idx < reminders.size()) {
-            reminders.remove(idx);
+            Reminder reminder = reminders.get(idx);
+            String before = reminder.toString();
+            reminder.copyScheduleFrom(schedule);
+            scheduler.schedule(reminder);
+            publish(LedgerChange.Kind.REMINDER_EDIT, before, reminder.toString());
             saveReminders();
         }
     }
 
-    public void updateReminderDate(int idx, int newDay) {
+    // 設定或移除自動記帳範本；新設定的範本從今天起到期的期數開始記帳
+    public synchronized void setTemplate(int idx, TransactionTemplate template) {
         if (idx >= 0 && idx < reminders.size()) {
-            reminders.get(idx).setDayOfMonth(newDay);
+            Reminder reminder = reminders.get(idx);
+            String before = reminder.toString();
+            reminder.setTemplate(template);
+            reminder.setLastPosted(template == null ? null : LocalDate.now().minusDays(1));
+            publish(LedgerChange.Kind.REMINDER_EDIT, before, reminder.toString());
             saveReminders();
         }
     }
 
-    public void saveReminders() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(REMINDER_FILE))) {
-            oos.writeObject(new ArrayList<>(reminders));
+    // 記下各提醒最後一次自動記帳的到期日並儲存（與選單的編輯、儲存使用同一個鎖）
+    public synchronized void markPosted(Map<Reminder, LocalDate> posted) {
+        if (posted.isEmpty()) return;
+        posted.forEach(Reminder::setLastPosted);
+        saveReminders();
+    }
+
+    // 距離提醒下一個到期日的天數（由排程器快取，不需重新計算）
+    public int getDaysRemaining(Reminder reminder) {
+        return scheduler.getDaysRemaining(reminder);
+    }
+
+    // 發布提醒變更到預設變更串流
+    private void publish(LedgerChange.Kind kind, String before, String after) {
+        LedgerEvents.ReminderOperation event = new LedgerEvents.ReminderOperation();
+        event.begin();
+        LedgerChangeStream.getDefault().publish(LedgerChange.ofReminder(kind, before, after));
+        event.finish(kind.name(), after != null ? after : before, reminders.size());
+    }
+
+    // 改用另一個儲存：重新載入提醒並重新排程
+    public synchronized void setStore(LedgerStore store) {
+        this.store = store;
+        loadReminders();
+        scheduler.scheduleAll(reminders);
+    }
+
+    public synchronized void saveReminders() {
+        LedgerEvents.Persistence event = new LedgerEvents.Persistence();
+        event.begin();
+        try {
+            store.saveReminders(reminders);
         } catch (IOException e) {
             System.err.println("提醒資料儲存失敗: " + e.getMessage());
         }
+        event.finish("reminders", "save", store.describe("reminders"), reminders.size());
     }
 
-    @SuppressWarnings("unchecked")
-    public void loadReminders() {
-        File file = new File(REMINDER_FILE);
-        if (!file.exists()) return;
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(REMINDER_FILE))) {
-            Object obj = ois.readObject();
-            if (obj instanceof List<?>) {
+    public synchronized void loadReminders() {
+        LedgerEvents.Persistence event = new LedgerEvents.Persistence();
+        event.begin();
+        try {
+            List<Reminder> loaded = store.loadReminders();
+            if (loaded != null) {
                 reminders.clear();
-                reminders.addAll((List<Reminder>) obj);
+                reminders.addAll(loaded);
             }
         } catch (Exception e) {
             System.err.println("提醒資料載入失敗: " + e.getMessage());
         }
+        event.finish("reminders", "load", store.describe("reminders"), reminders.size());
     }
 
-    // 計算距離下次繳費的天數
+    // 計算距離下次繳費的天數（每月固定日期；其他排程請使用 getDaysRemaining）
     public int calculateDaysRemaining(int targetDay) {
         LocalDate today = LocalDate.now();
         
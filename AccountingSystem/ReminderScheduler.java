@@ -0,0 +1,243 @@
+// ReminderScheduler.java - 提醒排程器
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提醒排程器
+ * --------
+ * 以依到期日排序的優先佇列保存每個提醒的下一個到期日，
+ * 由背景執行緒在到期日當天觸發，觸發後計算下一期並放回佇列
+ * 每次觸發、新增、移除皆為 O(log n)，顯示剩餘天數則直接讀取快取的到期日（O(1)），
+ * 不需要每次顯示都對所有提醒從今天重新計算
+ */
+public class ReminderScheduler implements AutoCloseable {
+
+    /**
+     * 提醒到期時的回呼
+     */
+    @FunctionalInterface
+    public interface FireListener {
+        /**
+         * 提醒到期
+         *
+         * @param reminder 到期的提醒
+         * @param dueDate 到期日
+         */
+        void onFire(Reminder reminder, LocalDate dueDate);
+    }
+
+    // 佇列中的項目（同一天到期時依加入順序）
+    private static final class Entry {
+        final Reminder reminder;
+        final long order;
+        LocalDate due;
+        LocalDate lastFired;
+
+        Entry(Reminder reminder, long order, LocalDate due) {
+            this.reminder = reminder;
+            this.order = order;
+            this.due = due;
+        }
+    }
+
+    // 一次觸發的記錄
+    private record Fired(Reminder reminder, LocalDate dueDate) {
+    }
+
+    // 依到期日排序的佇列（支援 O(log n) 移除任意項目）
+    private final TreeSet<Entry> queue = new TreeSet<>(
+        Comparator.<Entry, LocalDate>comparing(e -> e.due).thenComparingLong(e -> e.order));
+    // 提醒 -> 佇列項目
+    private final Map<Reminder, Entry> entries = new IdentityHashMap<>();
+    // 到期回呼
+    private final List<FireListener> listeners = new CopyOnWriteArrayList<>();
+    // 時鐘（可替換以便模擬日期）
+    private final Clock clock;
+    // 加入順序計數
+    private long orderCounter;
+    // 背景執行緒
+    private ScheduledExecutorService executor;
+    // 下一次喚醒
+    private ScheduledFuture<?> wakeUp;
+
+    public ReminderScheduler() {
+        this(Clock.systemDefaultZone());
+    }
+
+    public ReminderScheduler(Clock clock) {
+        this.clock = clock;
+    }
+
+    public void addListener(FireListener listener) {
+        listeners.add(listener);
+    }
+
+    private LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    /**
+     * 加入或重新排程一個提醒（排程改變後也應呼叫此方法）
+     *
+     * @param reminder 提醒
+     */
+    public synchronized void schedule(Reminder reminder) {
+        Entry old = entries.remove(reminder);
+        if (old != null) {
+            queue.remove(old);
+        }
+        Entry entry = new Entry(reminder, orderCounter++, reminder.nextDueOnOrAfter(today()));
+        entries.put(reminder, entry);
+        queue.add(entry);
+        rearm();
+    }
+
+    /**
+     * 移除一個提醒
+     *
+     * @param reminder 提醒
+     */
+    public synchronized void unschedule(Reminder reminder) {
+        Entry entry = entries.remove(reminder);
+        if (entry != null) {
+            queue.remove(entry);
+            rearm();
+        }
+    }
+
+    /**
+     * 清空並重新排程所有提醒
+     *
+     * @param reminders 提醒列表
+     */
+    public synchronized void scheduleAll(Collection<Reminder> reminders) {
+        queue.clear();
+        entries.clear();
+        LocalDate today = today();
+        for (Reminder r : reminders) {
+            Entry entry = new Entry(r, orderCounter++, r.nextDueOnOrAfter(today));
+            entries.put(r, entry);
+            queue.add(entry);
+        }
+        rearm();
+    }
+
+    /**
+     * 取得提醒的下一個到期日（今天已觸發的提醒仍回傳今天）
+     *
+     * @param reminder 提醒
+     * @return 到期日，未排程時即時計算
+     */
+    public synchronized LocalDate getNextDue(Reminder reminder) {
+        Entry entry = entries.get(reminder);
+        LocalDate today = today();
+        if (entry == null) {
+            return reminder.nextDueOnOrAfter(today);
+        }
+        if (today.equals(entry.lastFired)) {
+            return today;
+        }
+        // 背景執行緒尚未處理到的過期項目，顯示時仍以今天之後的到期日為準
+        return entry.due.isBefore(today) ? reminder.nextDueOnOrAfter(today) : entry.due;
+    }
+
+    /**
+     * 取得距離下一個到期日的天數
+     *
+     * @param reminder 提醒
+     * @return 剩餘天數（今天到期為 0）
+     */
+    public int getDaysRemaining(Reminder reminder) {
+        return (int) ChronoUnit.DAYS.between(today(), getNextDue(reminder));
+    }
+
+    /**
+     * 觸發所有到期日在今天（含）之前的提醒，並把它們排入下一期
+     * 每個觸發的提醒只花費一次佇列取出與放回（O(log n)）
+     *
+     * @return 本次觸發的提醒數
+     */
+    public int fireDue() {
+        List<Fired> fired = new ArrayList<>();
+        LocalDate today = today();
+        synchronized (this) {
+            while (!queue.isEmpty() && !queue.first().due.isAfter(today)) {
+                Entry entry = queue.pollFirst();
+                fired.add(new Fired(entry.reminder, entry.due));
+                entry.lastFired = entry.due;
+                entry.due = entry.reminder.nextDueOnOrAfter(entry.due.plusDays(1));
+                queue.add(entry);
+            }
+        }
+        // 回呼在鎖外執行，避免回呼中的耗時操作阻擋排程變更
+        for (Fired f : fired) {
+            for (FireListener listener : listeners) {
+                try {
+                    listener.onFire(f.reminder(), f.dueDate());
+                } catch (RuntimeException e) {
+                    System.err.println("處理提醒「" + f.reminder().getName() + "」時發生錯誤: " + e.getMessage());
+                }
+            }
+        }
+        return fired.size();
+    }
+
+    /**
+     * 啟動背景執行緒：立即處理今天到期的提醒，之後在下一個到期日（或隔天零時）喚醒
+     */
+    public synchronized void start() {
+        if (executor != null) return;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reminder-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.execute(this::runOnce);
+    }
+
+    private void runOnce() {
+        fireDue();
+        synchronized (this) {
+            wakeUp = null;
+            rearm();
+        }
+    }
+
+    // 依佇列最前面的到期日安排下一次喚醒（最晚隔天零時，以處理跨日）
+    private void rearm() {
+        if (executor == null) return;
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+        }
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        ZonedDateTime next = now.toLocalDate().plusDays(1).atStartOfDay(clock.getZone());
+        if (!queue.isEmpty()) {
+            ZonedDateTime due = queue.first().due.atStartOfDay(clock.getZone());
+            if (due.isBefore(next)) next = due;
+        }
+        long delay = Math.max(0, Duration.between(now, next).toMillis());
+        wakeUp = executor.schedule(this::runOnce, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止背景執行緒
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            wakeUp = null;
+        }
+    }
+}
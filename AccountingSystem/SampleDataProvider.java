@@ -4,6 +4,11 @@ import java.util.List;
 import java.util.ArrayList;
 
 public class SampleDataProvider {
+    // 以固定種子產生大量資料（壓力測試用，見 LedgerGenerator）
+    public static List<Expense> getSampleExpenses(int count, long seed) {
+        return new LedgerGenerator(seed, count).toList();
+    }
+
     // 回傳一批預設的 Expense 資料
     public static List<Expense> getSampleExpenses() {
         List<Expense> list = new ArrayList<>();
@@ -0,0 +1,186 @@
+// SerializedFileStore.java - 序列化檔案儲存
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * 序列化檔案儲存
+ * ------------
+ * LedgerStore 的預設實作：記帳記錄、分類、提醒各存成一個 Java 序列化檔
+ * （expenses.ser、categories.ser、reminders.ser），經由 AtomicFile 原子化寫入，
+ * 損毀時自動改讀上一版；檔案格式與先前版本相同，舊存檔可直接讀取
+ * 不支援逐筆寫入與儲存端查詢，每次變更都重寫整個檔案
+ */
+public class SerializedFileStore implements LedgerStore {
+    // 預設檔案名稱（目前目錄）
+    public static final String EXPENSES_FILE = "expenses.ser";
+    public static final String CATEGORIES_FILE = "categories.ser";
+    public static final String REMINDERS_FILE = "reminders.ser";
+
+    private static final SerializedFileStore DEFAULT =
+        new SerializedFileStore(EXPENSES_FILE, CATEGORIES_FILE, REMINDERS_FILE);
+
+    private final String expensesFile;
+    private final String categoriesFile;
+    private final String remindersFile;
+
+    /**
+     * 建構子
+     *
+     * @param expensesFile 記帳記錄檔
+     * @param categoriesFile 分類檔
+     * @param remindersFile 提醒檔
+     */
+    public SerializedFileStore(String expensesFile, String categoriesFile, String remindersFile) {
+        this.expensesFile = expensesFile;
+        this.categoriesFile = categoriesFile;
+        this.remindersFile = remindersFile;
+    }
+
+    /**
+     * 取得使用目前目錄預設檔名的儲存
+     *
+     * @return 預設儲存
+     */
+    public static SerializedFileStore getDefault() {
+        return DEFAULT;
+    }
+
+    @Override
+    public String describe(String part) {
+        return switch (part) {
+            case "categories" -> categoriesFile;
+            case "reminders" -> remindersFile;
+            default -> expensesFile;
+        };
+    }
+
+    @Override
+    public ExpenseSnapshot loadExpenses() throws IOException {
+        return readExpenses(expensesFile);
+    }
+
+    @Override
+    public void saveExpenses(List<Expense> expenses, long sequence) throws IOException {
+        writeExpenses(expensesFile, expenses, sequence);
+    }
+
+    @Override
+    public CategoryData loadCategories() throws IOException {
+        return readCategories(categoriesFile);
+    }
+
+    @Override
+    public void saveCategories(CategoryData data) throws IOException {
+        writeCategories(categoriesFile, data);
+    }
+
+    @Override
+    public List<Reminder> loadReminders() throws IOException {
+        if (!AtomicFile.exists(remindersFile)) return null;
+        Object obj = AtomicFile.read(remindersFile, in -> new ObjectInputStream(in).readObject());
+        if (!(obj instanceof List<?> list)) {
+            throw new InvalidObjectException("提醒檔案格式錯誤");
+        }
+        List<Reminder> reminders = new ArrayList<>();
+        for (Object item : list) {
+            reminders.add((Reminder) item);
+        }
+        return reminders;
+    }
+
+    @Override
+    public void saveReminders(List<Reminder> reminders) throws IOException {
+        List<Reminder> snapshot = new ArrayList<>(reminders);
+        AtomicFile.write(remindersFile, out -> {
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(snapshot);
+            oos.flush();
+        });
+    }
+
+    /**
+     * 讀取記帳記錄檔（列表之後記有變更編號；舊版存檔沒有編號，為 -1）
+     *
+     * @param filename 檔案路徑
+     * @return 快照；檔案不存在時返回 null
+     * @throws IOException 所有版本都無法讀取
+     */
+    @SuppressWarnings("unchecked") // 抑制讀取 Object 時的類型轉換警告
+    public static ExpenseSnapshot readExpenses(String filename) throws IOException {
+        if (!AtomicFile.exists(filename)) return null;
+        return AtomicFile.read(filename, in -> {
+            ObjectInputStream ois = new ObjectInputStream(in);
+            Object loadedObject = ois.readObject();
+            if (!(loadedObject instanceof List<?>)) {
+                throw new InvalidObjectException("記帳記錄檔案格式錯誤");
+            }
+            long sequence = -1;
+            try {
+                sequence = ois.readLong();
+            } catch (EOFException e) {
+                // 舊版存檔沒有變更編號
+            }
+            return new ExpenseSnapshot((List<Expense>) loadedObject, sequence);
+        });
+    }
+
+    /**
+     * 寫入記帳記錄檔
+     *
+     * @param filename 檔案路徑
+     * @param expenses 記錄
+     * @param sequence 已涵蓋的最後變更編號
+     * @throws IOException 寫入失敗
+     */
+    public static void writeExpenses(String filename, List<Expense> expenses, long sequence) throws IOException {
+        List<Expense> snapshot = new ArrayList<>(expenses);
+        AtomicFile.write(filename, out -> {
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(snapshot);
+            oos.writeLong(sequence);
+            oos.flush();
+        });
+    }
+
+    /**
+     * 讀取分類檔（三個 Map 打包成的 List）
+     *
+     * @param filename 檔案路徑
+     * @return 分類資料；檔案不存在時返回 null
+     * @throws IOException 所有版本都無法讀取
+     */
+    @SuppressWarnings("unchecked") // 抑制讀取 Object 時的類型轉換警告
+    public static CategoryData readCategories(String filename) throws IOException {
+        if (!AtomicFile.exists(filename)) return null;
+        return AtomicFile.read(filename, in -> {
+            Object loadedObject = new ObjectInputStream(in).readObject();
+            if (!(loadedObject instanceof List<?> list && list.size() == 3)) {
+                throw new InvalidObjectException("分類檔案格式錯誤");
+            }
+            return new CategoryData(
+                (LinkedHashMap<Integer, String>) list.get(0),
+                (LinkedHashMap<Integer, String>) list.get(1),
+                (LinkedHashMap<String, LinkedHashMap<Integer, String>>) list.get(2));
+        });
+    }
+
+    /**
+     * 寫入分類檔
+     *
+     * @param filename 檔案路徑
+     * @param data 分類資料
+     * @throws IOException 寫入失敗
+     */
+    public static void writeCategories(String filename, CategoryData data) throws IOException {
+        // 將三個 Map 打包到一個 List 中以便序列化
+        List<Object> categoryData = List.of(data.income(), data.expenseMain(), data.expenseSub());
+        AtomicFile.write(filename, out -> {
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(categoryData);
+            oos.flush();
+        });
+    }
+}
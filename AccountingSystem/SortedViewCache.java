@@ -0,0 +1,124 @@
+// SortedViewCache.java - 排序結果快取（分頁瀏覽用）
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * 排序結果快取
+ * ----------
+ * 以（日期區間, 排序方式）為鍵，保存已篩選並排序好的記錄列表，供月份、年份與全部記錄的分頁瀏覽重複使用
+ * 在月份、年份或排序方式之間來回切換時直接取用快取，不必每次重新篩選帳本並排序
+ * 以 LRU 限制快取數量；作為 LedgerListener 只清除日期區間涵蓋被異動記錄的項目，其他月份的快取保留
+ */
+public class SortedViewCache implements LedgerListener {
+    // 預設最多保留的排序結果數
+    private static final int DEFAULT_CAPACITY = 32;
+
+    // 快取鍵：日期區間（皆含，null 表示不限）與排序方式
+    private record ViewKey(LocalDate from, LocalDate to, String sortType) {
+        boolean covers(LocalDate date) {
+            return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+        }
+    }
+
+    // 記帳管理器（取得排序後的記錄）
+    private final ExpenseManager expenseManager;
+    // 依存取順序排列的快取（最久未使用的在前）
+    private final LinkedHashMap<ViewKey, List<Expense>> views;
+
+    /**
+     * 建構子：使用預設容量，並開始監聽變更
+     *
+     * @param expenseManager 記帳管理器
+     */
+    public SortedViewCache(ExpenseManager expenseManager) {
+        this(expenseManager, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 建構子：並開始監聽變更
+     *
+     * @param expenseManager 記帳管理器
+     * @param capacity 最多保留的排序結果數
+     */
+    public SortedViewCache(ExpenseManager expenseManager, int capacity) {
+        this.expenseManager = expenseManager;
+        this.views = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ViewKey, List<Expense>> eldest) {
+                return size() > capacity;
+            }
+        };
+        expenseManager.getChangeStream().addListener(this);
+    }
+
+    @Override
+    public synchronized void onChange(LedgerChange change) {
+        switch (change.getKind()) {
+            case EXPENSE_ADD, EXPENSE_EDIT, EXPENSE_DELETE -> {
+                if (change.getBefore() != null) invalidate(change.getBefore().getDate());
+                if (change.getAfter() != null) invalidate(change.getAfter().getDate());
+            }
+            case LEDGER_LOAD -> views.clear();
+            default -> { }
+        }
+    }
+
+    // 清除區間涵蓋該日期的快取
+    private void invalidate(LocalDate date) {
+        views.keySet().removeIf(key -> key.covers(date));
+    }
+
+    /**
+     * 取得某月份排序後的記錄
+     *
+     * @param year 年份
+     * @param month 月份
+     * @param sortType 排序類型（amountDesc、amountAsc、dateAsc、dateDesc）
+     * @return 排序後的唯讀列表
+     */
+    public List<Expense> monthView(int year, int month, String sortType) {
+        YearMonth ym = YearMonth.of(year, month);
+        return view(new ViewKey(ym.atDay(1), ym.atEndOfMonth(), sortType));
+    }
+
+    /**
+     * 取得某年份排序後的記錄
+     *
+     * @param year 年份
+     * @param sortType 排序類型
+     * @return 排序後的唯讀列表
+     */
+    public List<Expense> yearView(int year, String sortType) {
+        return view(new ViewKey(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31), sortType));
+    }
+
+    /**
+     * 取得全部記錄排序後的結果
+     *
+     * @param sortType 排序類型
+     * @return 排序後的唯讀列表
+     */
+    public List<Expense> allView(String sortType) {
+        return view(new ViewKey(null, null, sortType));
+    }
+
+    private synchronized List<Expense> view(ViewKey key) {
+        List<Expense> cached = views.get(key);
+        if (cached != null) return cached;
+        List<Expense> view = Collections.unmodifiableList(
+            expenseManager.getSortedExpenses(key.from(), key.to(), key.sortType()));
+        views.put(key, view);
+        return view;
+    }
+
+    /**
+     * 目前快取的排序結果數
+     *
+     * @return 快取數量
+     */
+    public synchronized int size() {
+        return views.size();
+    }
+}
@@ -0,0 +1,200 @@
+// SpendingSketch.java - 金額分布摘要（對數分桶直方圖）
+
+import java.util.Arrays;
+
+/**
+ * 金額分布摘要
+ * ----------
+ * 固定相對誤差的對數分桶直方圖：第 i 個桶涵蓋 (γ^(i-1), γ^i]，γ = (1+α)/(1-α)
+ * 任何分位數的估計值與真實值的相對誤差不超過 α（預設 1%）
+ * 與 t-digest 相比，此結構可精確地「移除」一筆資料，適合搭配記錄的編輯與刪除；
+ * 兩個摘要直接逐桶相加即可合併，因此可以把多個月份彙總成一季或一年
+ * 桶以連續陣列儲存，只涵蓋實際出現過的範圍，金額由 0.01 到上億約只需一兩千個桶
+ */
+public class SpendingSketch {
+    // 預設相對誤差
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    // 相對誤差
+    private final double relativeAccuracy;
+    // 桶寬比例 γ
+    private final double gamma;
+    // 1 / ln(γ)
+    private final double inverseLogGamma;
+    // 各桶計數；counts[0] 對應桶索引 offset
+    private long[] counts = new long[0];
+    // counts[0] 的桶索引
+    private int offset;
+    // 金額小於等於 0 的筆數
+    private long zeroCount;
+    // 總筆數
+    private long totalCount;
+
+    /**
+     * 建構子：使用預設 1% 相對誤差
+     */
+    public SpendingSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * 建構子：指定相對誤差
+     *
+     * @param relativeAccuracy 相對誤差（0 &lt; α &lt; 1）
+     */
+    public SpendingSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("相對誤差必須介於 0 與 1 之間: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.inverseLogGamma = 1.0 / Math.log(gamma);
+    }
+
+    private int indexOf(double value) {
+        return (int) Math.ceil(Math.log(value) * inverseLogGamma);
+    }
+
+    // 桶的代表值（使該桶內任一值的相對誤差不超過 α）
+    private double valueOf(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * 加入一筆金額
+     *
+     * @param value 金額
+     */
+    public void add(double value) {
+        update(value, 1);
+    }
+
+    /**
+     * 移除一筆先前加入的金額
+     *
+     * @param value 金額
+     */
+    public void remove(double value) {
+        update(value, -1);
+    }
+
+    private void update(double value, long delta) {
+        totalCount += delta;
+        if (value <= 0) {
+            zeroCount += delta;
+            return;
+        }
+        int index = indexOf(value);
+        ensureRange(index, index);
+        counts[index - offset] += delta;
+    }
+
+    // 讓陣列涵蓋 [low, high] 的桶索引
+    private void ensureRange(int low, int high) {
+        if (counts.length == 0) {
+            counts = new long[Math.max(16, high - low + 1)];
+            offset = low;
+            return;
+        }
+        int currentHigh = offset + counts.length - 1;
+        if (low >= offset && high <= currentHigh) return;
+        int newLow = Math.min(low, offset);
+        int newHigh = Math.max(high, currentHigh);
+        // 多預留一半空間，避免相鄰桶反覆擴充
+        int extra = (newHigh - newLow + 1) / 2;
+        if (low < offset) newLow -= extra; else newHigh += extra;
+        long[] grown = new long[newHigh - newLow + 1];
+        System.arraycopy(counts, 0, grown, offset - newLow, counts.length);
+        counts = grown;
+        offset = newLow;
+    }
+
+    /**
+     * 將另一個摘要合併進來（兩者須使用相同的相對誤差）
+     *
+     * @param other 另一個摘要
+     */
+    public void merge(SpendingSketch other) {
+        if (other.gamma != gamma) {
+            throw new IllegalArgumentException("無法合併相對誤差不同的摘要");
+        }
+        zeroCount += other.zeroCount;
+        totalCount += other.totalCount;
+        if (other.counts.length == 0) return;
+        ensureRange(other.offset, other.offset + other.counts.length - 1);
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[other.offset + i - offset] += other.counts[i];
+        }
+    }
+
+    /**
+     * 建立內容相同的副本
+     *
+     * @return 副本
+     */
+    public SpendingSketch copy() {
+        SpendingSketch copy = new SpendingSketch(relativeAccuracy);
+        copy.counts = Arrays.copyOf(counts, counts.length);
+        copy.offset = offset;
+        copy.zeroCount = zeroCount;
+        copy.totalCount = totalCount;
+        return copy;
+    }
+
+    /**
+     * 估計分位數
+     *
+     * @param q 分位（0 到 1，例如 0.9 表示 p90）
+     * @return 估計金額；沒有資料時返回 NaN
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("分位必須介於 0 與 1 之間: " + q);
+        }
+        if (totalCount <= 0) return Double.NaN;
+        long rank = (long) Math.floor(q * (totalCount - 1));
+        if (rank < zeroCount) return 0;
+        long seen = zeroCount;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return valueOf(offset + i);
+            }
+        }
+        return valueOf(offset + counts.length - 1);
+    }
+
+    /**
+     * 估計小於等於某金額的筆數
+     *
+     * @param value 金額
+     * @return 估計筆數
+     */
+    public long countAtMost(double value) {
+        if (value <= 0) return value < 0 ? 0 : zeroCount;
+        long seen = zeroCount;
+        int limit = Math.min(counts.length - 1, indexOf(value) - offset);
+        for (int i = 0; i <= limit; i++) {
+            seen += counts[i];
+        }
+        return seen;
+    }
+
+    /**
+     * 取得總筆數
+     *
+     * @return 總筆數
+     */
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * 取得相對誤差
+     *
+     * @return 相對誤差
+     */
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+}
@@ -0,0 +1,155 @@
+// SpendingSketches.java - 分類每月金額分布摘要
+
+import java.time.YearMonth;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 分類每月金額分布摘要
+ * ----------------
+ * 為每個（分類, 月份）維護一個 SpendingSketch，並為每月的收入、支出各維護一個總摘要
+ * 以 LedgerListener 隨新增、編輯、刪除遞增更新，查詢 p50/p90/p99 不需要排序任何記錄
+ * 跨月份的查詢只需合併各月摘要（與月份數成正比，與記錄筆數無關）
+ */
+public class SpendingSketches implements LedgerListener {
+    // 記帳管理器（重新載入時用來重建）
+    private final ExpenseManager expenseManager;
+    // 月份 -> 分類 -> 摘要
+    private final NavigableMap<YearMonth, Map<String, SpendingSketch>> byCategory = new TreeMap<>();
+    // 月份 -> 類型 -> 摘要
+    private final NavigableMap<YearMonth, EnumMap<TransactionType, SpendingSketch>> byType = new TreeMap<>();
+    // 所有記錄的整體摘要（不分月份）
+    private final EnumMap<TransactionType, SpendingSketch> overall = new EnumMap<>(TransactionType.class);
+
+    /**
+     * 建構子：依目前帳本建立摘要，並開始監聽變更
+     *
+     * @param expenseManager 記帳管理器
+     */
+    public SpendingSketches(ExpenseManager expenseManager) {
+        this.expenseManager = expenseManager;
+        rebuild();
+        expenseManager.getChangeStream().addListener(this);
+    }
+
+    @Override
+    public synchronized void onChange(LedgerChange change) {
+        switch (change.getKind()) {
+            case EXPENSE_ADD, EXPENSE_EDIT, EXPENSE_DELETE -> {
+                if (change.getBefore() != null) apply(change.getBefore(), false);
+                if (change.getAfter() != null) apply(change.getAfter(), true);
+            }
+            case LEDGER_LOAD -> rebuild();
+            default -> { }
+        }
+    }
+
+    private synchronized void rebuild() {
+        byCategory.clear();
+        byType.clear();
+        overall.clear();
+        for (Expense e : expenseManager.getExpenses()) {
+            apply(e, true);
+        }
+    }
+
+    private void apply(Expense e, boolean add) {
+        if (e.getType() == null) return;
+        YearMonth month = YearMonth.from(e.getDate());
+        double amount = e.getAmount().doubleValue();
+        String category = e.getCategory() == null ? "未分類" : e.getCategory();
+        update(byCategory.computeIfAbsent(month, m -> new HashMap<>())
+            .computeIfAbsent(category, c -> new SpendingSketch()), amount, add);
+        update(byType.computeIfAbsent(month, m -> new EnumMap<>(TransactionType.class))
+            .computeIfAbsent(e.getType(), t -> new SpendingSketch()), amount, add);
+        update(overall.computeIfAbsent(e.getType(), t -> new SpendingSketch()), amount, add);
+    }
+
+    private static void update(SpendingSketch sketch, double amount, boolean add) {
+        if (add) {
+            sketch.add(amount);
+        } else {
+            sketch.remove(amount);
+        }
+    }
+
+    /**
+     * 合併某分類在月份區間（皆含）內的摘要
+     *
+     * @param category 分類名稱
+     * @param from 起始月份
+     * @param to 結束月份
+     * @return 合併後的新摘要（可自由修改）
+     */
+    public synchronized SpendingSketch forCategory(String category, YearMonth from, YearMonth to) {
+        SpendingSketch merged = new SpendingSketch();
+        for (Map<String, SpendingSketch> sketches : byCategory.subMap(from, true, to, true).values()) {
+            SpendingSketch s = sketches.get(category);
+            if (s != null) merged.merge(s);
+        }
+        return merged;
+    }
+
+    /**
+     * 合併某類型（收入/支出）在月份區間（皆含）內的摘要
+     *
+     * @param type 交易類型
+     * @param from 起始月份
+     * @param to 結束月份
+     * @return 合併後的新摘要（可自由修改）
+     */
+    public synchronized SpendingSketch forType(TransactionType type, YearMonth from, YearMonth to) {
+        SpendingSketch merged = new SpendingSketch();
+        for (EnumMap<TransactionType, SpendingSketch> sketches : byType.subMap(from, true, to, true).values()) {
+            SpendingSketch s = sketches.get(type);
+            if (s != null) merged.merge(s);
+        }
+        return merged;
+    }
+
+    /**
+     * 取得某類型所有記錄的整體摘要副本
+     *
+     * @param type 交易類型
+     * @return 摘要副本
+     */
+    public synchronized SpendingSketch overall(TransactionType type) {
+        SpendingSketch s = overall.get(type);
+        return s == null ? new SpendingSketch() : s.copy();
+    }
+
+    /**
+     * 依分類合併月份區間（皆含）內的摘要
+     *
+     * @param from 起始月份
+     * @param to 結束月份
+     * @return 分類名稱 -> 合併後的摘要（依分類名稱排序）
+     */
+    public synchronized Map<String, SpendingSketch> byCategory(YearMonth from, YearMonth to) {
+        Map<String, SpendingSketch> result = new TreeMap<>();
+        for (Map<String, SpendingSketch> sketches : byCategory.subMap(from, true, to, true).values()) {
+            sketches.forEach((category, s) -> result.computeIfAbsent(category, c -> new SpendingSketch()).merge(s));
+        }
+        result.values().removeIf(s -> s.getCount() <= 0);
+        return new LinkedHashMap<>(result);
+    }
+
+    /**
+     * 判斷一筆記錄是否明顯高於該分類近期的金額分布
+     * 以記錄月份往前 12 個月（含當月）的 p99 為門檻，樣本太少時不判斷
+     *
+     * @param expense 記帳記錄
+     * @param minSamples 最少樣本數
+     * @return 如果金額高於 p99 返回 true
+     */
+    public boolean isOutlier(Expense expense, int minSamples) {
+        YearMonth month = YearMonth.from(expense.getDate());
+        SpendingSketch recent = forCategory(expense.getCategory(), month.minusMonths(11), month);
+        return recent.getCount() >= minSamples
+            && expense.getAmount().doubleValue() > recent.quantile(0.99);
+    }
+}
@@ -0,0 +1,218 @@
+// TableRenderer.java - 主控台表格輸出
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 主控台表格輸出
+ * ------------
+ * 將資料列格式化到可重複使用的 StringBuilder，再以一次 print 寫出整頁，
+ * 避免每列一次 printf 在自動 flush 的 PrintStream 上逐列寫出
+ * 欄寬依內容的顯示寬度計算（中日韓全形字元佔兩格），讓中文分類與備註也能對齊
+ * 大量資料可用 stream 逐批輸出：以第一批資料決定欄寬，之後每批格式化後寫出一次
+ *
+ * @param <T> 資料列的類型
+ */
+public class TableRenderer<T> {
+    // 串流模式每批輸出的列數
+    private static final int CHUNK_ROWS = 500;
+
+    // 欄位標題
+    private final String[] headers;
+    // 資料 -> 各欄文字
+    private final Function<T, String[]> cells;
+    // 靠右對齊的欄位
+    private final boolean[] rightAligned;
+    // 是否在最前面加上編號欄
+    private boolean numbered;
+    // 編號欄寬度（依筆數決定；串流模式筆數未知時取固定寬度）
+    private int numberWidth;
+    // 重複使用的輸出緩衝
+    private final StringBuilder buffer = new StringBuilder(4096);
+
+    /**
+     * 建構子
+     *
+     * @param cells 將一筆資料轉為各欄文字
+     * @param headers 欄位標題
+     */
+    public TableRenderer(Function<T, String[]> cells, String... headers) {
+        this.cells = cells;
+        this.headers = headers;
+        this.rightAligned = new boolean[headers.length];
+    }
+
+    /**
+     * 記帳記錄表格（日期、金額、類型、分類、備註）
+     *
+     * @return 表格輸出器
+     */
+    public static TableRenderer<Expense> forExpenses() {
+        return new TableRenderer<Expense>(e -> new String[] {
+            e.getDate().toString(),
+            e.getAmount().toPlainString() + "元",
+            e.getType() == null ? "未知" : e.getType().toString(),
+            e.getCategory() == null ? "未分類" : e.getCategory(),
+            e.getRemark() == null ? "" : e.getRemark()
+        }, "日期", "金額", "類型", "分類", "備註").alignRight(1);
+    }
+
+    /**
+     * 設定某欄靠右對齊
+     *
+     * @param column 欄位索引（不含編號欄）
+     * @return 此輸出器
+     */
+    public TableRenderer<T> alignRight(int column) {
+        rightAligned[column] = true;
+        return this;
+    }
+
+    /**
+     * 在最前面加上從 1 開始的編號欄
+     *
+     * @return 此輸出器
+     */
+    public TableRenderer<T> numbered() {
+        this.numbered = true;
+        return this;
+    }
+
+    /**
+     * 將整份資料格式化後一次寫出
+     *
+     * @param rows 資料
+     * @param out 輸出串流
+     */
+    public synchronized void print(List<T> rows, PrintStream out) {
+        List<String[]> table = new ArrayList<>(rows.size());
+        for (T row : rows) {
+            table.add(cells.apply(row));
+        }
+        int[] widths = widths(table);
+        numberWidth = String.valueOf(table.size()).length() + 1;
+        buffer.setLength(0);
+        appendHeader(widths);
+        for (int i = 0; i < table.size(); i++) {
+            appendRow(i + 1, table.get(i), widths);
+        }
+        out.print(buffer);
+        out.flush();
+    }
+
+    /**
+     * 逐批輸出大量資料：以第一批決定欄寬，之後每批 CHUNK_ROWS 列寫出一次
+     * 不需先把全部資料轉成文字，記憶體用量與批次大小成正比
+     *
+     * @param rows 資料
+     * @param out 輸出串流
+     * @return 輸出的列數
+     */
+    public synchronized int stream(Iterable<T> rows, PrintStream out) {
+        Iterator<T> it = rows.iterator();
+        List<String[]> chunk = new ArrayList<>(CHUNK_ROWS);
+        int[] widths = null;
+        int number = 0;
+        while (it.hasNext()) {
+            chunk.clear();
+            while (it.hasNext() && chunk.size() < CHUNK_ROWS) {
+                chunk.add(cells.apply(it.next()));
+            }
+            buffer.setLength(0);
+            if (widths == null) {
+                widths = widths(chunk);
+                numberWidth = 8;
+                appendHeader(widths);
+            }
+            for (String[] row : chunk) {
+                appendRow(++number, row, widths);
+            }
+            out.print(buffer);
+            out.flush();
+        }
+        return number;
+    }
+
+    // 每欄的顯示寬度（標題與資料中最寬者；最後一欄不補空白，不需計算）
+    private int[] widths(List<String[]> table) {
+        int[] widths = new int[headers.length];
+        for (int c = 0; c < headers.length; c++) {
+            widths[c] = displayWidth(headers[c]);
+        }
+        for (String[] row : table) {
+            for (int c = 0; c < headers.length - 1; c++) {
+                widths[c] = Math.max(widths[c], displayWidth(row[c]));
+            }
+        }
+        return widths;
+    }
+
+    private void appendHeader(int[] widths) {
+        if (numbered) pad("#", numberWidth, false).append(' ');
+        for (int c = 0; c < headers.length; c++) {
+            if (c > 0) buffer.append(" | ");
+            if (c == headers.length - 1) {
+                buffer.append(headers[c]);
+            } else {
+                pad(headers[c], widths[c], rightAligned[c]);
+            }
+        }
+        buffer.append('\n');
+        int total = (numbered ? numberWidth + 1 : 0) + 3 * (headers.length - 1);
+        for (int w : widths) total += w;
+        buffer.append("-".repeat(Math.max(total, 20))).append('\n');
+    }
+
+    private void appendRow(int number, String[] row, int[] widths) {
+        if (numbered) pad(number + ".", numberWidth, false).append(' ');
+        for (int c = 0; c < headers.length; c++) {
+            if (c > 0) buffer.append(" | ");
+            if (c == headers.length - 1) {
+                buffer.append(row[c]);
+            } else {
+                pad(row[c], widths[c], rightAligned[c]);
+            }
+        }
+        buffer.append('\n');
+    }
+
+    // 依顯示寬度補空白
+    private StringBuilder pad(String text, int width, boolean right) {
+        int padding = Math.max(0, width - displayWidth(text));
+        if (right) buffer.append(" ".repeat(padding));
+        buffer.append(text);
+        if (!right) buffer.append(" ".repeat(padding));
+        return buffer;
+    }
+
+    /**
+     * 計算文字在等寬終端機上的顯示寬度（全形字元佔兩格）
+     *
+     * @param text 文字
+     * @return 顯示寬度
+     */
+    public static int displayWidth(String text) {
+        int width = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            width += isWide(cp) ? 2 : 1;
+            i += Character.charCount(cp);
+        }
+        return width;
+    }
+
+    // 東亞寬字元（中日韓文字、全形標點與符號）
+    private static boolean isWide(int cp) {
+        return (cp >= 0x1100 && cp <= 0x115F)
+            || (cp >= 0x2E80 && cp <= 0xA4CF && cp != 0x303F)
+            || (cp >= 0xAC00 && cp <= 0xD7A3)
+            || (cp >= 0xF900 && cp <= 0xFAFF)
+            || (cp >= 0xFE30 && cp <= 0xFE4F)
+            || (cp >= 0xFF00 && cp <= 0xFF60)
+            || (cp >= 0xFFE0 && cp <= 0xFFE6)
+            || (cp >= 0x20000 && cp <= 0x3FFFD);
+    }
+}
@@ -0,0 +1,44 @@
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 定期記帳範本
+ * ----------
+ * 附加在提醒上的交易內容（金額、分類、類型、備註），提醒到期時據此自動產生記帳記錄
+ */
+public class TransactionTemplate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final BigDecimal amount;
+    private final String category;
+    private final TransactionType type;
+    private final String remark;
+
+    public TransactionTemplate(BigDecimal amount, String category, TransactionType type, String remark) {
+        this.amount = amount;
+        this.category = category;
+        this.type = type;
+        this.remark = remark;
+    }
+
+    public BigDecimal getAmount() { return amount; }
+    public String getCategory() { return category; }
+    public TransactionType getType() { return type; }
+    public String getRemark() { return remark; }
+
+    /**
+     * 以範本內容建立指定日期的記帳記錄
+     *
+     * @param date 記錄日期
+     * @return 新的記帳記錄
+     */
+    public Expense toExpense(LocalDate date) {
+        return new Expense(date, amount, category, remark, type);
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + category + " " + amount.toPlainString() + "元";
+    }
+}
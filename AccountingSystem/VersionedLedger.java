@@ -0,0 +1,386 @@
+// VersionedLedger.java - 多版本帳本（快照與任意時間點查詢）
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 多版本帳本
+ * --------
+ * 每筆記錄（以編號區分）保留一條由新到舊的版本鏈，每個版本標記產生它的變更編號與提交時間；
+ * 編輯產生新版本、刪除產生墓碑版本，舊版本不會被就地覆寫
+ * 讀取時先取快照（目前最後的變更編號），之後只看編號不大於快照的版本，
+ * 因此長時間的報表看到的是一致的帳本，也不會阻擋新增、編輯（寫入只在鏈首放上新版本）
+ * asOf 可取得過去任一時間點的帳本，例如重現上一季當時的報表
+ * 超過保留期限、且沒有任何開啟中快照需要的舊版本會被回收；程式啟動前的歷史可由變更紀錄補回
+ */
+public class VersionedLedger implements LedgerListener {
+
+    /**
+     * 一筆記錄的某個版本
+     *
+     * @param sequence 產生此版本的變更編號（0 表示開始追蹤前就存在）
+     * @param committedAt 提交時間（開始追蹤前就存在的版本為 null）
+     * @param expense 記錄內容，null 表示已刪除
+     */
+    public record Version(long sequence, Instant committedAt, Expense expense) {
+    }
+
+    // 版本鏈節點（sequence 與 committedAt 只在啟動時補回歷史的過程中調整）
+    private static final class Node {
+        long sequence;
+        Instant committedAt;
+        final Expense value;
+        volatile Node older;
+
+        Node(long sequence, Instant committedAt, Expense value, Node older) {
+            this.sequence = sequence;
+            this.committedAt = committedAt;
+            this.value = value;
+            this.older = older;
+        }
+    }
+
+    // 每處理多少筆記錄變更自動回收一次舊版本
+    private static final int GC_INTERVAL = 4096;
+
+    // 記帳管理器
+    private final ExpenseManager expenseManager;
+    // 舊版本的保留期限
+    private final Duration retention;
+    // 記錄編號 -> 最新版本
+    private final Map<Long, Node> heads = new ConcurrentHashMap<>();
+    // 提交時間 -> 該時間（含）之前的最後變更編號
+    private final ConcurrentSkipListMap<Instant, Long> commitTimes = new ConcurrentSkipListMap<>();
+    // 開啟中的快照：變更編號 -> 數量
+    private final TreeMap<Long, Integer> activeSnapshots = new TreeMap<>();
+    // 最後處理的變更編號
+    private volatile long lastSequence;
+    // 本次開始追蹤後第一個變更編號（補回歷史時只處理更早的變更）
+    private long firstTrackedSequence = Long.MAX_VALUE;
+    // 已回收到的變更編號（更早的時間點無法再查詢）
+    private long horizonSequence;
+    private int changesSinceGc;
+
+    /**
+     * 建構子：以目前帳本作為初始版本，並開始監聽變更
+     *
+     * @param expenseManager 記帳管理器
+     * @param retention 舊版本保留期限
+     */
+    public VersionedLedger(ExpenseManager expenseManager, Duration retention) {
+        this.expenseManager = expenseManager;
+        this.retention = retention;
+        rebuild();
+        expenseManager.getChangeStream().addListener(this);
+    }
+
+    @Override
+    public synchronized void onChange(LedgerChange change) {
+        switch (change.getKind()) {
+            case EXPENSE_ADD, EXPENSE_EDIT, EXPENSE_DELETE -> {
+                track(change);
+                Expense before = change.getBefore();
+                Expense after = change.getAfter();
+                if (before != null && (after == null || before.getId() != after.getId())) {
+                    push(before.getId(), change.getSequence(), change.getTimestamp(), null);
+                }
+                if (after != null) {
+                    push(after.getId(), change.getSequence(), change.getTimestamp(), new Expense(after));
+                }
+                if (++changesSinceGc >= GC_INTERVAL) {
+                    gc();
+                }
+            }
+            case LEDGER_LOAD -> {
+                track(change);
+                reconcile(change.getSequence(), change.getTimestamp());
+            }
+            default -> { }
+        }
+    }
+
+    private void track(LedgerChange change) {
+        firstTrackedSequence = Math.min(firstTrackedSequence, change.getSequence());
+        lastSequence = change.getSequence();
+        commitTimes.merge(change.getTimestamp(), change.getSequence(), Math::max);
+    }
+
+    private void push(long id, long sequence, Instant at, Expense value) {
+        heads.compute(id, (k, head) -> new Node(sequence, at, value, head));
+    }
+
+    private synchronized void rebuild() {
+        reconcile(0, null);
+    }
+
+    // 依目前帳本產生新版本：內容不同的記錄放上新版本，已不存在的記錄放上墓碑
+    // 尚未有任何版本時，載入的內容視為開始追蹤前就存在（編號 0）
+    private void reconcile(long sequence, Instant at) {
+        if (heads.isEmpty()) {
+            sequence = 0;
+            at = null;
+        }
+        Set<Long> present = new HashSet<>();
+        for (Expense e : expenseManager.getExpenses()) {
+            present.add(e.getId());
+            Node head = heads.get(e.getId());
+            if (head == null || head.value == null || !sameContent(head.value, e)) {
+                push(e.getId(), sequence, at, new Expense(e));
+            }
+        }
+        for (Map.Entry<Long, Node> entry : heads.entrySet()) {
+            if (!present.contains(entry.getKey()) && entry.getValue().value != null) {
+                push(entry.getKey(), sequence, at, null);
+            }
+        }
+    }
+
+    private static boolean sameContent(Expense a, Expense b) {
+        if (a == null || b == null) return a == b;
+        return a.getId() == b.getId()
+            && Objects.equals(a.getDate(), b.getDate())
+            && a.getAmount().compareTo(b.getAmount()) == 0
+            && a.getType() == b.getType()
+            && Objects.equals(a.getCategory(), b.getCategory())
+            && Objects.equals(a.getRemark(), b.getRemark());
+    }
+
+    /**
+     * 由變更紀錄補回開始追蹤前（保留期限內）的歷史
+     * 從最新往回逐筆還原：版本鏈最舊的版本改標為該變更產生，並在其後接上變更前的內容
+     * 某筆記錄的紀錄與目前內容對不上時（例如存檔與紀錄不同步），該記錄停止往回補
+     *
+     * @param reader 變更紀錄讀取器
+     * @return 補回的變更數
+     * @throws IOException 讀取變更紀錄失敗
+     */
+    public synchronized int loadHistory(ChangeLogReader reader) throws IOException {
+        Instant cutoff = Instant.now().minus(retention);
+        List<LedgerChange> history = new ArrayList<>();
+        long offset = 1;
+        while (true) {
+            List<LedgerChange> chunk = reader.readFrom(offset, 4096);
+            if (chunk.isEmpty()) break;
+            for (LedgerChange change : chunk) {
+                offset = change.getSequence() + 1;
+                if (change.getSequence() >= firstTrackedSequence) continue;
+                if (change.isExpenseChange() && !change.getTimestamp().isBefore(cutoff)) {
+                    history.add(change);
+                }
+            }
+        }
+        Set<Long> inconsistent = new HashSet<>();
+        int applied = 0;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            LedgerChange change = history.get(i);
+            Expense before = change.getBefore();
+            Expense after = change.getAfter();
+            long id = after != null ? after.getId() : before.getId();
+            if (id == 0 || inconsistent.contains(id)
+                || (before != null && after != null && before.getId() != after.getId())) {
+                continue;
+            }
+            Node oldest = heads.get(id);
+            if (oldest == null) {
+                // 已刪除的記錄不在目前帳本中，先補上墓碑
+                oldest = new Node(0, null, null, null);
+                heads.put(id, oldest);
+            }
+            while (oldest.older != null) {
+                oldest = oldest.older;
+            }
+            if (oldest.sequence != 0 || !sameContent(oldest.value, after)) {
+                inconsistent.add(id);
+                continue;
+            }
+            oldest.sequence = change.getSequence();
+            oldest.committedAt = change.getTimestamp();
+            oldest.older = new Node(0, null, before == null ? null : new Expense(before), null);
+            commitTimes.merge(change.getTimestamp(), change.getSequence(), Math::max);
+            applied++;
+        }
+        // 補回後整條鏈仍是墓碑的記錄（紀錄對不上）不需要保留
+        heads.entrySet().removeIf(e -> e.getValue().value == null && e.getValue().older == null);
+        return applied;
+    }
+
+    // --- 快照 ---
+
+    /**
+     * 取得目前帳本的快照（用完應關閉，讓舊版本可以回收）
+     *
+     * @return 快照
+     */
+    public synchronized Snapshot snapshot() {
+        return open(lastSequence);
+    }
+
+    /**
+     * 取得過去某個時間點的帳本快照
+     *
+     * @param time 時間點
+     * @return 快照
+     * @throws IllegalArgumentException 時間點早於已回收的保留期限
+     */
+    public synchronized Snapshot asOf(Instant time) {
+        Map.Entry<Instant, Long> floor = commitTimes.floorEntry(time);
+        long sequence = floor == null ? 0 : floor.getValue();
+        if (sequence < horizonSequence) {
+            throw new IllegalArgumentException("時間點早於版本保留期限: " + time);
+        }
+        return open(sequence);
+    }
+
+    private Snapshot open(long sequence) {
+        activeSnapshots.merge(sequence, 1, Integer::sum);
+        return new Snapshot(sequence);
+    }
+
+    private synchronized void release(long sequence) {
+        activeSnapshots.computeIfPresent(sequence, (k, n) -> n > 1 ? n - 1 : null);
+    }
+
+    /**
+     * 帳本在某個變更編號時的一致檢視（不受之後的新增、編輯、刪除影響）
+     */
+    public final class Snapshot implements AutoCloseable {
+        private final long sequence;
+        private boolean closed;
+
+        private Snapshot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * 取得快照中的所有記錄（依日期排序的副本）
+         *
+         * @return 記錄
+         */
+        public List<Expense> expenses() {
+            return between(LocalDate.MIN, LocalDate.MAX);
+        }
+
+        /**
+         * 取得快照中日期在區間（皆含）內的記錄
+         *
+         * @param from 起始日期
+         * @param to 結束日期
+         * @return 依日期排序的副本
+         */
+        public List<Expense> between(LocalDate from, LocalDate to) {
+            List<Expense> result = new ArrayList<>();
+            for (Node head : heads.values()) {
+                Expense e = visible(head, sequence);
+                if (e != null && !e.getDate().isBefore(from) && !e.getDate().isAfter(to)) {
+                    result.add(new Expense(e));
+                }
+            }
+            result.sort(Comparator.comparing(Expense::getDate).thenComparingLong(Expense::getId));
+            return result;
+        }
+
+        /**
+         * 取得快照中的某筆記錄
+         *
+         * @param id 記錄編號
+         * @return 記錄副本，不存在時為 null
+         */
+        public Expense get(long id) {
+            Expense e = visible(heads.get(id), sequence);
+            return e == null ? null : new Expense(e);
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            release(sequence);
+        }
+    }
+
+    // 版本鏈中編號不大於 sequence 的最新版本
+    private static Expense visible(Node node, long sequence) {
+        while (node != null && node.sequence > sequence) {
+            node = node.older;
+        }
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * 取得某筆記錄的所有保留版本（由新到舊）
+     *
+     * @param id 記錄編號
+     * @return 版本列表
+     */
+    public List<Version> history(long id) {
+        List<Version> versions = new ArrayList<>();
+        for (Node node = heads.get(id); node != null; node = node.older) {
+            versions.add(new Version(node.sequence, node.committedAt, node.value == null ? null : new Expense(node.value)));
+        }
+        return versions;
+    }
+
+    // --- 回收 ---
+
+    /**
+     * 回收舊版本：保留期限之前、且早於所有開啟中快照的版本，只留下當時可見的那一個
+     * 該版本若是墓碑且已是最新版本，整條鏈移除
+     *
+     * @return 回收的版本數
+     */
+    public synchronized int gc() {
+        changesSinceGc = 0;
+        Instant cutoff = Instant.now().minus(retention);
+        Map.Entry<Instant, Long> floor = commitTimes.floorEntry(cutoff);
+        long horizon = floor == null ? 0 : floor.getValue();
+        if (!activeSnapshots.isEmpty()) {
+            horizon = Math.min(horizon, activeSnapshots.firstKey());
+        }
+        if (horizon <= horizonSequence) return 0;
+        int removed = 0;
+        for (Map.Entry<Long, Node> entry : heads.entrySet()) {
+            Node head = entry.getValue();
+            Node node = head;
+            while (node != null && node.sequence > horizon) {
+                node = node.older;
+            }
+            if (node == null) continue;
+            for (Node n = node.older; n != null; n = n.older) {
+                removed++;
+            }
+            node.older = null;
+            if (node == head && head.value == null && heads.remove(entry.getKey(), head)) {
+                removed++;
+            }
+        }
+        horizonSequence = horizon;
+        // 更早的時間點已無法查詢，對照也不需要保留
+        long kept = horizon;
+        commitTimes.values().removeIf(sequence -> sequence < kept);
+        return removed;
+    }
+
+    /**
+     * 目前保留的版本總數（含墓碑）
+     *
+     * @return 版本數
+     */
+    public int versionCount() {
+        int count = 0;
+        for (Node head : heads.values()) {
+            for (Node n = head; n != null; n = n.older) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
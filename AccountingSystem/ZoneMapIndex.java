@@ -0,0 +1,388 @@
+// ZoneMapIndex.java - 區塊摘要索引（zone map 與備註 bloom filter）
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 區塊摘要索引
+ * ----------
+ * 把帳本依（日期, 編號）排序後切成固定大小的區塊，每個區塊記下：
+ * 最早與最晚日期、最小與最大金額、出現過的分類（BitSet）、備註字元與相鄰二字元（bigram）的 bloom filter
+ * 查詢時先以摘要判斷區塊是否可能有符合的記錄，不可能的區塊整塊略過，只逐筆檢查剩下的區塊
+ * 日期區間、金額區間、指定分類與備註關鍵字都可以略過區塊；條件越嚴格，需要讀取的記錄越少
+ *
+ * 作為 LedgerListener 遞增維護：新增時放入對應區塊並擴大摘要，區塊超過兩倍大小時對半切開；
+ * 刪除時從區塊移除並重算該區塊摘要（只影響一個區塊）；重新載入時整個重建
+ * 摘要只會比實際內容寬（bloom filter 只有偽陽性），所以略過區塊不會漏掉結果
+ */
+public class ZoneMapIndex implements LedgerListener {
+    // 預設區塊大小（筆數）
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+    // bloom filter 每個字元組合配置的位元數與雜湊次數（偽陽性約 1.7%）
+    private static final int BLOOM_BITS_PER_GRAM = 10;
+    private static final int BLOOM_HASHES = 3;
+
+    private static final Comparator<Expense> BY_DATE_ID =
+        Comparator.comparing(Expense::getDate).thenComparingLong(Expense::getId);
+
+    // 查詢時讀取與略過的區塊數
+    private static final LedgerMetrics.Counter BLOCKS_SCANNED = LedgerMetrics.getDefault().counter("zonemap.blocksScanned");
+    private static final LedgerMetrics.Counter BLOCKS_SKIPPED = LedgerMetrics.getDefault().counter("zonemap.blocksSkipped");
+
+    // 記帳管理器（重新載入時用來重建）
+    private final ExpenseManager expenseManager;
+    // 區塊大小
+    private final int blockSize;
+    // 依（日期, 編號）排序的區塊，區塊之間的範圍不重疊
+    private final List<Block> blocks = new ArrayList<>();
+    // 分類名稱 → 分類編號（BitSet 的位置）
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+
+    /**
+     * 一個區塊：依（日期, 編號）排序的記錄與其摘要
+     */
+    private final class Block {
+        final ArrayList<Expense> records;
+        LocalDate minDate;
+        LocalDate maxDate;
+        BigDecimal minAmount;
+        BigDecimal maxAmount;
+        final BitSet categories = new BitSet();
+        long[] bloom;
+        // bloom filter 配置時的容量與之後加入的字元組合數（超過容量時重算，維持偽陽性率）
+        int bloomCapacity;
+        int gramsAdded;
+
+        Block(List<Expense> records) {
+            this.records = new ArrayList<>(records);
+            recompute();
+        }
+
+        // 依目前記錄重算全部摘要
+        void recompute() {
+            minDate = maxDate = null;
+            minAmount = maxAmount = null;
+            categories.clear();
+            Set<Long> grams = new HashSet<>();
+            for (Expense e : records) {
+                widenRanges(e);
+                forEachGram(e.getRemark(), grams::add);
+            }
+            bloomCapacity = Math.max(64, grams.size());
+            bloom = new long[Math.max(1, Integer.highestOneBit(bloomCapacity * BLOOM_BITS_PER_GRAM - 1) * 2 / 64)];
+            gramsAdded = 0;
+            for (long gram : grams) {
+                setBits(gram);
+            }
+        }
+
+        // 加入一筆記錄後擴大摘要
+        void widen(Expense e) {
+            widenRanges(e);
+            forEachGram(e.getRemark(), gram -> {
+                setBits(gram);
+                gramsAdded++;
+            });
+            if (gramsAdded > bloomCapacity) {
+                recompute();
+            }
+        }
+
+        private void widenRanges(Expense e) {
+            if (minDate == null || e.getDate().isBefore(minDate)) minDate = e.getDate();
+            if (maxDate == null || e.getDate().isAfter(maxDate)) maxDate = e.getDate();
+            if (minAmount == null || e.getAmount().compareTo(minAmount) < 0) minAmount = e.getAmount();
+            if (maxAmount == null || e.getAmount().compareTo(maxAmount) > 0) maxAmount = e.getAmount();
+            categories.set(categoryId(e.getCategory()));
+        }
+
+        private void setBits(long gram) {
+            long hash = mix(gram);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            int mask = bloom.length * 64 - 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (h1 + i * h2) & mask;
+                bloom[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        private boolean hasBits(long gram) {
+            long hash = mix(gram);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            int mask = bloom.length * 64 - 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (h1 + i * h2) & mask;
+                if ((bloom[bit >>> 6] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        // 備註是否可能包含關鍵字（關鍵字的每個 bigram 都要在 bloom filter 中；單一字元則查該字元）
+        boolean mightContain(String keyword) {
+            if (keyword.isEmpty()) return true;
+            if (keyword.length() == 1) return hasBits(unigram(keyword.charAt(0)));
+            for (int i = 0; i + 1 < keyword.length(); i++) {
+                if (!hasBits(bigram(keyword.charAt(i), keyword.charAt(i + 1)))) return false;
+            }
+            return true;
+        }
+
+        // 摘要是否可能有符合條件的記錄
+        boolean mightMatch(Criteria c) {
+            if (c.from != null && maxDate.isBefore(c.from)) return false;
+            if (c.to != null && minDate.isAfter(c.to)) return false;
+            if (c.minAmount != null && maxAmount.compareTo(c.minAmount) < 0) return false;
+            if (c.maxAmount != null && minAmount.compareTo(c.maxAmount) > 0) return false;
+            if (c.categoryId >= 0 && !categories.get(c.categoryId)) return false;
+            return c.keyword == null || mightContain(c.keyword);
+        }
+    }
+
+    // 查詢條件（null 表示不限制；categoryId 為 -2 表示指定的分類從未出現過）
+    private record Criteria(LocalDate from, LocalDate to, BigDecimal minAmount, BigDecimal maxAmount,
+                            String category, int categoryId, String keyword) {
+        boolean matches(Expense e) {
+            if (from != null && e.getDate().isBefore(from)) return false;
+            if (to != null && e.getDate().isAfter(to)) return false;
+            if (minAmount != null && e.getAmount().compareTo(minAmount) < 0) return false;
+            if (maxAmount != null && e.getAmount().compareTo(maxAmount) > 0) return false;
+            if (category != null && !category.equals(e.getCategory())) return false;
+            return keyword == null || (e.getRemark() != null && e.getRemark().contains(keyword));
+        }
+    }
+
+    /**
+     * 建構子：以預設區塊大小依目前帳本建立索引，並開始監聽變更
+     *
+     * @param expenseManager 記帳管理器
+     */
+    public ZoneMapIndex(ExpenseManager expenseManager) {
+        this(expenseManager, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * 建構子：指定區塊大小
+     *
+     * @param expenseManager 記帳管理器
+     * @param blockSize 區塊大小（筆數）
+     */
+    public ZoneMapIndex(ExpenseManager expenseManager, int blockSize) {
+        if (blockSize < 2) {
+            throw new IllegalArgumentException("區塊大小至少為 2: " + blockSize);
+        }
+        this.expenseManager = expenseManager;
+        this.blockSize = blockSize;
+        rebuild();
+        expenseManager.getChangeStream().addListener(this);
+    }
+
+    @Override
+    public synchronized void onChange(LedgerChange change) {
+        switch (change.getKind()) {
+            case EXPENSE_ADD, EXPENSE_EDIT, EXPENSE_DELETE -> {
+                if (change.getBefore() != null) remove(change.getBefore());
+                if (change.getAfter() != null) insert(new Expense(change.getAfter()));
+            }
+            case LEDGER_LOAD -> rebuild();
+            default -> { }
+        }
+    }
+
+    /**
+     * 依目前帳本重建全部區塊（O(n log n)）
+     */
+    public synchronized void rebuild() {
+        List<Expense> sorted = new ArrayList<>();
+        for (Expense e : expenseManager.getExpenses()) {
+            sorted.add(new Expense(e));
+        }
+        sorted.sort(BY_DATE_ID);
+        blocks.clear();
+        categoryIds.clear();
+        for (int i = 0; i < sorted.size(); i += blockSize) {
+            blocks.add(new Block(sorted.subList(i, Math.min(sorted.size(), i + blockSize))));
+        }
+    }
+
+    private void insert(Expense e) {
+        if (blocks.isEmpty()) {
+            blocks.add(new Block(List.of(e)));
+            return;
+        }
+        // 放進第一筆記錄不大於它的最後一個區塊（比所有區塊都小時放第一個）
+        int lo = 0;
+        int hi = blocks.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (BY_DATE_ID.compare(blocks.get(mid).records.get(0), e) <= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        Block block = blocks.get(lo);
+        int pos = Collections.binarySearch(block.records, e, BY_DATE_ID);
+        block.records.add(pos < 0 ? -pos - 1 : pos, e);
+        block.widen(e);
+        if (block.records.size() >= 2 * blockSize) {
+            int half = block.records.size() / 2;
+            blocks.set(lo, new Block(block.records.subList(0, half)));
+            blocks.add(lo + 1, new Block(block.records.subList(half, block.records.size())));
+        }
+    }
+
+    private void remove(Expense e) {
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            if (e.getDate().isBefore(block.minDate)) return;
+            if (e.getDate().isAfter(block.maxDate)) continue;
+            for (int j = 0; j < block.records.size(); j++) {
+                if (block.records.get(j).getId() == e.getId()) {
+                    block.records.remove(j);
+                    if (block.records.isEmpty()) {
+                        blocks.remove(i);
+                    } else {
+                        block.recompute();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 依條件查詢，摘要不可能符合的區塊整塊略過（null 表示該條件不限制）
+     *
+     * @param from 起日（含）
+     * @param to 迄日（含）
+     * @param minAmount 最小金額（含）
+     * @param maxAmount 最大金額（含）
+     * @param category 分類
+     * @param keyword 備註關鍵字（區分大小寫，與 String.contains 相同）
+     * @return 符合的記錄（依日期、編號排序）
+     */
+    public synchronized List<Expense> scan(LocalDate from, LocalDate to, BigDecimal minAmount, BigDecimal maxAmount,
+                                           String category, String keyword) {
+        Criteria criteria = criteria(from, to, minAmount, maxAmount, category, keyword);
+        List<Expense> result = new ArrayList<>();
+        if (criteria.categoryId == -2) {
+            BLOCKS_SKIPPED.add(blocks.size());
+            return result;
+        }
+        int scanned = 0;
+        for (Block block : blocks) {
+            if (!block.mightMatch(criteria)) continue;
+            scanned++;
+            for (Expense e : block.records) {
+                if (criteria.matches(e)) result.add(e);
+            }
+        }
+        BLOCKS_SCANNED.add(scanned);
+        BLOCKS_SKIPPED.add(blocks.size() - scanned);
+        return result;
+    }
+
+    /**
+     * 日期區間內的記錄
+     *
+     * @param from 起日（含）
+     * @param to 迄日（含）
+     * @return 記錄（依日期、編號排序）
+     */
+    public List<Expense> range(LocalDate from, LocalDate to) {
+        return scan(from, to, null, null, null, null);
+    }
+
+    /**
+     * 備註包含關鍵字的記錄
+     *
+     * @param keyword 關鍵字
+     * @return 記錄（依日期、編號排序）
+     */
+    public List<Expense> search(String keyword) {
+        return scan(null, null, null, null, null, keyword);
+    }
+
+    /**
+     * 金額區間內的記錄
+     *
+     * @param minAmount 最小金額（含），null 表示不限
+     * @param maxAmount 最大金額（含），null 表示不限
+     * @return 記錄（依日期、編號排序）
+     */
+    public List<Expense> amountBetween(BigDecimal minAmount, BigDecimal maxAmount) {
+        return scan(null, null, minAmount, maxAmount, null, null);
+    }
+
+    public synchronized int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * 依摘要計算可能有符合記錄、需要逐筆檢查的區塊數（不讀取記錄，供查詢規劃估算）
+     *
+     * @param from 起日（含）
+     * @param to 迄日（含）
+     * @param minAmount 最小金額（含）
+     * @param maxAmount 最大金額（含）
+     * @param category 分類
+     * @param keyword 備註關鍵字
+     * @return 需要讀取的區塊數
+     */
+    public synchronized int countCandidateBlocks(LocalDate from, LocalDate to, BigDecimal minAmount, BigDecimal maxAmount,
+                                                 String category, String keyword) {
+        Criteria criteria = criteria(from, to, minAmount, maxAmount, category, keyword);
+        if (criteria.categoryId == -2) return 0;
+        int count = 0;
+        for (Block block : blocks) {
+            if (block.mightMatch(criteria)) count++;
+        }
+        return count;
+    }
+
+    private Criteria criteria(LocalDate from, LocalDate to, BigDecimal minAmount, BigDecimal maxAmount,
+                              String category, String keyword) {
+        int id = -1;
+        if (category != null) {
+            Integer known = categoryIds.get(category);
+            id = known == null ? -2 : known;
+        }
+        return new Criteria(from, to, minAmount, maxAmount, category, id, keyword);
+    }
+
+    private int categoryId(String category) {
+        return categoryIds.computeIfAbsent(category == null ? "" : category, k -> categoryIds.size());
+    }
+
+    // 走訪備註的每個字元與相鄰二字元
+    private static void forEachGram(String text, java.util.function.LongConsumer action) {
+        if (text == null) return;
+        for (int i = 0; i < text.length(); i++) {
+            action.accept(unigram(text.charAt(i)));
+            if (i + 1 < text.length()) {
+                action.accept(bigram(text.charAt(i), text.charAt(i + 1)));
+            }
+        }
+    }
+
+    private static long unigram(char c) {
+        return (1L << 32) | c;
+    }
+
+    private static long bigram(char a, char b) {
+        return ((long) a << 16) | b;
+    }
+
+    // 64 位元混合函數（MurmurHash3 fmix64）
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb34fe1a85ec9L;
+        x ^= x >>> 33;
+        return x;
+    }
+}